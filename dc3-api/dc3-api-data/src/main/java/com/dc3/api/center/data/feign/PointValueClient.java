@@ -18,8 +18,11 @@ package com.dc3.api.center.data.feign;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.dc3.api.center.data.hystrix.PointValueClientHystrix;
+import com.dc3.common.bean.CursorPage;
 import com.dc3.common.bean.R;
 import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.bean.driver.PointValueAggregate;
+import com.dc3.common.bean.driver.PointValueAggregateDto;
 import com.dc3.common.bean.driver.PointValueDto;
 import com.dc3.common.constant.Common;
 import org.springframework.cloud.openfeign.FeignClient;
@@ -93,4 +96,58 @@ public interface PointValueClient {
      */
     @PostMapping("/list")
     R<Page<PointValue>> list(@RequestBody(required = false) PointValueDto pointValueDto);
+
+    /**
+     * 游标分页查询 PointValue，按 originTime 倒序
+     *
+     * @param pointValueDto PointValueDto，cursor 为上一页返回的游标，count 为 true 时统计总数
+     * @return CursorPage<PointValue>
+     */
+    @PostMapping("/history")
+    R<CursorPage<PointValue>> history(@RequestBody(required = false) PointValueDto pointValueDto);
+
+    /**
+     * 按时间窗口聚合查询 PointValue，只统计可以转换为数值的位号值
+     *
+     * @param pointValueAggregateDto PointValueAggregateDto
+     * @return PointValueAggregate Array
+     */
+    @PostMapping("/aggregate")
+    R<List<PointValueAggregate>> aggregate(@NotNull @RequestBody PointValueAggregateDto pointValueAggregateDto);
+
+    /**
+     * LTTB 降采样查询 PointValue
+     *
+     * @param pointValueAggregateDto PointValueAggregateDto
+     * @return PointValue Array
+     */
+    @PostMapping("/downsample")
+    R<List<PointValue>> downsample(@NotNull @RequestBody PointValueAggregateDto pointValueAggregateDto);
+
+    /**
+     * 从旋转门压缩存档线性插值，需要开启压缩存档并为位号配置压缩偏差
+     *
+     * @param pointValueAggregateDto PointValueAggregateDto，startTime 等于 endTime 时查询单个时间点
+     * @return PointValue Array
+     */
+    @PostMapping("/interpolate")
+    R<List<PointValue>> interpolate(@NotNull @RequestBody PointValueAggregateDto pointValueAggregateDto);
+
+    /**
+     * 从原始数据重建 1m/1h/1d 预聚合数据，时间范围按天对齐
+     *
+     * @param pointValueDto PointValueDto，按设备、位号以及时间范围筛选
+     * @return 处理的位号值数量
+     */
+    @PostMapping("/rollup/backfill")
+    R<Long> backfill(@RequestBody(required = false) PointValueDto pointValueDto);
+
+    /**
+     * 迁移原始 PointValue 到分桶存储
+     *
+     * @param pointValueDto PointValueDto，按设备、位号以及时间范围筛选
+     * @return 迁移的位号值数量
+     */
+    @PostMapping("/migrate")
+    R<Long> migrate(@RequestBody(required = false) PointValueDto pointValueDto);
 }
@@ -18,8 +18,11 @@ package com.dc3.api.center.data.hystrix;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.dc3.api.center.data.feign.PointValueClient;
+import com.dc3.common.bean.CursorPage;
 import com.dc3.common.bean.R;
 import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.bean.driver.PointValueAggregate;
+import com.dc3.common.bean.driver.PointValueAggregateDto;
 import com.dc3.common.bean.driver.PointValueDto;
 import feign.hystrix.FallbackFactory;
 import lombok.extern.slf4j.Slf4j;
@@ -73,6 +76,36 @@ public class PointValueClientHystrix implements FallbackFactory<PointValueClient
                 return R.fail(message);
             }
 
+            @Override
+            public R<CursorPage<PointValue>> history(PointValueDto pointValueDto) {
+                return R.fail(message);
+            }
+
+            @Override
+            public R<List<PointValueAggregate>> aggregate(PointValueAggregateDto pointValueAggregateDto) {
+                return R.fail(message);
+            }
+
+            @Override
+            public R<List<PointValue>> downsample(PointValueAggregateDto pointValueAggregateDto) {
+                return R.fail(message);
+            }
+
+            @Override
+            public R<List<PointValue>> interpolate(PointValueAggregateDto pointValueAggregateDto) {
+                return R.fail(message);
+            }
+
+            @Override
+            public R<Long> backfill(PointValueDto pointValueDto) {
+                return R.fail(message);
+            }
+
+            @Override
+            public R<Long> migrate(PointValueDto pointValueDto) {
+                return R.fail(message);
+            }
+
         };
     }
 }
\ No newline at end of file
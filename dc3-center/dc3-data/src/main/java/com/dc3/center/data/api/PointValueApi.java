@@ -19,8 +19,11 @@ package com.dc3.center.data.api;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.dc3.api.center.data.feign.PointValueClient;
 import com.dc3.center.data.service.PointValueService;
+import com.dc3.common.bean.CursorPage;
 import com.dc3.common.bean.R;
 import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.bean.driver.PointValueAggregate;
+import com.dc3.common.bean.driver.PointValueAggregateDto;
 import com.dc3.common.bean.driver.PointValueDto;
 import com.dc3.common.constant.Common;
 import lombok.extern.slf4j.Slf4j;
@@ -115,4 +118,76 @@ public class PointValueApi implements PointValueClient {
         return R.fail();
     }
 
-}
\ No newline at end of file
+    @Override
+    public R<CursorPage<PointValue>> history(PointValueDto pointValueDto) {
+        try {
+            CursorPage<PointValue> page = pointValueService.history(pointValueDto);
+            if (null != page) {
+                return R.ok(page);
+            }
+        } catch (Exception e) {
+            return R.fail(e.getMessage());
+        }
+        return R.fail();
+    }
+
+    @Override
+    public R<List<PointValueAggregate>> aggregate(PointValueAggregateDto pointValueAggregateDto) {
+        try {
+            List<PointValueAggregate> pointValueAggregates = pointValueService.aggregate(pointValueAggregateDto);
+            if (null != pointValueAggregates) {
+                return R.ok(pointValueAggregates);
+            }
+        } catch (Exception e) {
+            return R.fail(e.getMessage());
+        }
+        return R.fail();
+    }
+
+    @Override
+    public R<List<PointValue>> downsample(PointValueAggregateDto pointValueAggregateDto) {
+        try {
+            List<PointValue> pointValues = pointValueService.downsample(pointValueAggregateDto);
+            if (null != pointValues) {
+                return R.ok(pointValues);
+            }
+        } catch (Exception e) {
+            return R.fail(e.getMessage());
+        }
+        return R.fail();
+    }
+
+    @Override
+    public R<List<PointValue>> interpolate(PointValueAggregateDto pointValueAggregateDto) {
+        try {
+            List<PointValue> pointValues = pointValueService.interpolate(pointValueAggregateDto);
+            if (null != pointValues) {
+                return R.ok(pointValues);
+            }
+        } catch (Exception e) {
+            return R.fail(e.getMessage());
+        }
+        return R.fail();
+    }
+
+    @Override
+    public R<Long> backfill(PointValueDto pointValueDto) {
+        try {
+            Long count = pointValueService.backfill(pointValueDto);
+            return R.ok(count);
+        } catch (Exception e) {
+            return R.fail(e.getMessage());
+        }
+    }
+
+    @Override
+    public R<Long> migrate(PointValueDto pointValueDto) {
+        try {
+            Long count = pointValueService.migrate(pointValueDto);
+            return R.ok(count);
+        } catch (Exception e) {
+            return R.fail(e.getMessage());
+        }
+    }
+
+}
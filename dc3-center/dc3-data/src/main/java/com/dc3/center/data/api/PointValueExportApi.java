@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dc3.center.data.api;
+
+import com.dc3.center.data.service.PointValueExportService;
+import com.dc3.common.bean.driver.PointValueExportDto;
+import com.dc3.common.constant.Common;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 位号值导出，直接写出响应流，不经过 FeignClient
+ *
+ * @author pnoker
+ */
+@Slf4j
+@RestController
+@RequestMapping(Common.Service.DC3_DATA_POINT_VALUE_URL_PREFIX)
+public class PointValueExportApi {
+
+    @Resource
+    private PointValueExportService pointValueExportService;
+
+    /**
+     * 流式导出位号值历史数据
+     *
+     * @param pointValueExportDto PointValueExportDto
+     * @param response            HttpServletResponse
+     * @throws IOException IOException
+     */
+    @PostMapping("/export")
+    public void export(@RequestBody PointValueExportDto pointValueExportDto, HttpServletResponse response) throws IOException {
+        // errors before the first byte is written are still reported as R by the exception advice
+        pointValueExportService.check(pointValueExportDto);
+
+        boolean csv = PointValueExportDto.FORMAT_CSV.equalsIgnoreCase(pointValueExportDto.getFormat());
+        boolean gzip = Boolean.TRUE.equals(pointValueExportDto.getGzip());
+        String fileName = "pointValue-" + System.currentTimeMillis() + (csv ? ".csv" : ".ndjson") + (gzip ? ".gz" : "");
+        response.setContentType(gzip ? "application/gzip" : (csv ? "text/csv;charset=UTF-8" : "application/x-ndjson;charset=UTF-8"));
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fileName);
+
+        OutputStream outputStream = response.getOutputStream();
+        if (gzip) {
+            outputStream = new GZIPOutputStream(outputStream, 8192, true);
+        }
+        try {
+            pointValueExportService.export(pointValueExportDto, outputStream);
+        } catch (Exception e) {
+            // the response is already committed, the client sees a truncated file
+            log.error("Export point value error: {}", e.getMessage(), e);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+}
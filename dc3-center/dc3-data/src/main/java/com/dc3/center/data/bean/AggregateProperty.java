@@ -0,0 +1,45 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dc3.center.data.bean;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 数据中心配置文件 data.aggregate 字段内容
+ *
+ * @author pnoker
+ */
+@Setter
+@Getter
+@ConfigurationProperties(prefix = "data.aggregate")
+public class AggregateProperty {
+    /**
+     * 未指定 points 时默认返回的点数
+     */
+    private Integer defaultPoints = 500;
+
+    /**
+     * 单次查询允许返回的最大点数
+     */
+    private Integer maxPoints = 5000;
+
+    /**
+     * 降采样时 MongoDB 游标每批拉取的条数
+     */
+    private Integer batchSize = 1000;
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.bean;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 数据中心配置文件 data.archive 字段内容
+ *
+ * @author pnoker
+ */
+@Setter
+@Getter
+@ConfigurationProperties(prefix = "data.archive")
+public class ArchiveProperty {
+    /**
+     * 是否开启旋转门压缩存档，只对配置了压缩偏差 (Point.deviation) 的数值位号生效
+     */
+    private Boolean enable = false;
+
+    /**
+     * 开启压缩存档后是否继续保存原始位号值，关闭后已存档位号的原始值不再写入 MongoDB
+     */
+    private Boolean storeRaw = true;
+
+    /**
+     * 两个存档点之间的最大时间间隔，单位毫秒，超过后强制存档，同时限制只保存在内存中的未存档数据的时长
+     */
+    private Long maxInterval = 600000L;
+
+    /**
+     * 插值查询单次允许返回的最大点数
+     */
+    private Integer maxPoints = 10000;
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.bean;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 数据中心配置文件 data.deadband 字段内容
+ *
+ * @author pnoker
+ */
+@Setter
+@Getter
+@ConfigurationProperties(prefix = "data.deadband")
+public class DeadbandProperty {
+    /**
+     * 是否在写入 MongoDB 前按位号死区配置过滤位号值，实时数据以及预聚合数据不受影响
+     * <p>
+     * 驱动端已经开启过滤时不需要再开启，重复的旋转门压缩会放大误差
+     */
+    private Boolean enable = false;
+
+    /**
+     * 位号未配置心跳时的默认心跳间隔，分钟
+     */
+    private Integer heartbeat = 10;
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.bean;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 数据中心配置文件 data.index 字段内容
+ *
+ * @author pnoker
+ */
+@Setter
+@Getter
+@ConfigurationProperties(prefix = "data.index")
+public class IndexProperty {
+    /**
+     * 启动时是否自动创建索引
+     */
+    private Boolean enable = true;
+
+    /**
+     * 启动时是否检查查询计划，查询没有可用索引时输出警告
+     */
+    private Boolean explain = true;
+
+    /**
+     * PointValue 保留时间，单位秒，大于 0 时创建 TTL 索引自动删除过期数据
+     */
+    private Long pointValueTtl = 0L;
+
+    /**
+     * DeviceEvent 保留时间，单位秒，大于 0 时创建 TTL 索引自动删除过期数据
+     */
+    private Long deviceEventTtl = 0L;
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.bean;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 数据中心配置文件 data.ingest 字段内容
+ * <p>
+ * 逐条消费以及批量消费的位号值都经过该缓冲区，写入成功后才确认消息
+ *
+ * @author pnoker
+ */
+@Setter
+@Getter
+@ConfigurationProperties(prefix = "data.ingest")
+public class IngestProperty {
+    /**
+     * 缓冲区容量，按消息计数，会向上取整为 2 的幂，缓冲区满时新到达的消息进入重试队列，应大于消费者数量 * prefetch
+     */
+    private Integer capacity = 65536;
+
+    /**
+     * 批量写入的最大条数，达到该条数立即写入
+     */
+    private Integer batchSize = 1000;
+
+    /**
+     * 批量写入的最大等待时间，单位毫秒，批次中第一条数据等待超过该时间立即写入
+     */
+    private Long interval = 1000L;
+}
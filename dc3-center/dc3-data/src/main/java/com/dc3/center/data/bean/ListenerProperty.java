@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.bean;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 数据中心配置文件 data.listener 字段内容
+ *
+ * @author pnoker
+ */
+@Setter
+@Getter
+@ConfigurationProperties(prefix = "data.listener")
+public class ListenerProperty {
+    /**
+     * 是否开启批量消费，关闭时逐条消费；两种模式都经 data.ingest 缓冲区合并写入，写入 Redis & MongoDB 成功后才确认消息
+     */
+    private Boolean batchEnable = true;
+
+    /**
+     * 每个消费者未确认消息的最大数量，批量消费时不小于 batchSize
+     */
+    private Integer prefetch = 1000;
+
+    /**
+     * 消费者数量
+     */
+    private Integer concurrency = 1;
+
+    /**
+     * 最大消费者数量
+     */
+    private Integer maxConcurrency = 4;
+
+    /**
+     * 批量消费每批最大条数
+     */
+    private Integer batchSize = 500;
+
+    /**
+     * 批量消费凑批等待时间，单位毫秒
+     */
+    private Long receiveTimeout = 1000L;
+
+    /**
+     * 写入失败后的最大重试次数，超过后消息转入死信队列
+     */
+    private Integer maxRetries = 5;
+
+    /**
+     * 写入失败的消息在重试队列中等待的时间，单位毫秒
+     */
+    private Long retryDelay = 10000L;
+
+    /**
+     * 已处理消息 messageId 的保留时间，单位毫秒，在该时间内重复投递的消息会被跳过，应大于 maxRetries * retryDelay
+     */
+    private Long dedupeTime = 3600000L;
+}
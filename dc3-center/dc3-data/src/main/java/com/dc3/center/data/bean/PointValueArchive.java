@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.bean;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.Accessors;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 位号值压缩存档段，每个设备位号每小时一个文档，保存旋转门压缩后的存档点，存档点之间线性插值
+ *
+ * @author pnoker
+ */
+@Data
+@NoArgsConstructor
+@Accessors(chain = true)
+@Document(PointValueArchive.COLLECTION)
+public class PointValueArchive implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final String COLLECTION = "pointValueArchive";
+
+    /**
+     * MongoDB Object Id
+     */
+    @MongoId
+    private ObjectId id;
+
+    private Long deviceId;
+    private Long pointId;
+
+    /**
+     * 存档段起始时间，按小时取整
+     */
+    private Long hour;
+
+    /**
+     * 段内最早、最晚的存档点时间
+     */
+    private Long startTime;
+    private Long endTime;
+
+    private List<Vertex> points;
+
+    /**
+     * 存档点
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Accessors(chain = true)
+    public static class Vertex implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private Long t;
+        private Double v;
+    }
+}
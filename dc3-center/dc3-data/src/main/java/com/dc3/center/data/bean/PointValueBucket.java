@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.bean;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.Accessors;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 位号值分桶文档，每个设备位号每小时一个或多个文档，单个文档的样本数量受 data.storage.bucket-max-samples 限制
+ *
+ * @author pnoker
+ */
+@Data
+@NoArgsConstructor
+@Accessors(chain = true)
+@Document(PointValueBucket.COLLECTION)
+public class PointValueBucket implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final String COLLECTION = "pointValueBucket";
+
+    /**
+     * 分桶时长，一小时
+     */
+    public static final long INTERVAL = 3600000L;
+
+    /**
+     * MongoDB Object Id
+     */
+    @MongoId
+    private ObjectId id;
+
+    private Long deviceId;
+    private Long pointId;
+
+    /**
+     * 分桶起始时间，originTime 按小时取整
+     */
+    private Long hour;
+
+    /**
+     * 桶内最早、最晚的 originTime
+     */
+    private Long startTime;
+    private Long endTime;
+
+    /**
+     * 桶内样本数量，达到 data.storage.bucket-max-samples 后不再写入
+     */
+    private Integer count;
+
+    private List<Sample> samples;
+
+    /**
+     * 桶内单条位号值，使用短字段名减少存储空间
+     */
+    @Data
+    @NoArgsConstructor
+    @Accessors(chain = true)
+    public static class Sample implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        public static final String ORIGIN_TIME = "t";
+        public static final String VALUE = "v";
+        public static final String RAW_VALUE = "r";
+        public static final String CALCULATE_VALUE = "c";
+        public static final String CREATE_TIME = "ct";
+
+        @Field(ORIGIN_TIME)
+        private Long originTime;
+
+        @Field(VALUE)
+        private String value;
+
+        @Field(RAW_VALUE)
+        private String rawValue;
+
+        @Field(CALCULATE_VALUE)
+        private Object calculateValue;
+
+        @Field(CREATE_TIME)
+        private Long createTime;
+    }
+
+    public static long hour(long time) {
+        return time - Math.floorMod(time, INTERVAL);
+    }
+}
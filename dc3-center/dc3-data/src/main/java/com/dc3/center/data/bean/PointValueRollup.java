@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dc3.center.data.bean;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.experimental.Accessors;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 位号值预聚合文档，每个设备位号每个时间窗口一个文档，按窗口大小保存在不同的集合中
+ *
+ * @author pnoker
+ */
+@Data
+@NoArgsConstructor
+@Accessors(chain = true)
+public class PointValueRollup implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * MongoDB Object Id
+     */
+    @MongoId
+    private ObjectId id;
+
+    private Long deviceId;
+    private Long pointId;
+
+    /**
+     * 窗口起始时间，originTime 按窗口大小取整 (UTC)
+     */
+    private Long time;
+
+    private Long count;
+    private Double sum;
+    private Double min;
+    private Double max;
+
+    /**
+     * 窗口内最早、最晚的位号值，{t, v} 内嵌文档按字段顺序比较，可以直接使用 $min/$max 更新
+     */
+    private Point first;
+    private Point last;
+
+    /**
+     * 分钟窗口已统计的 originTime，用于重复投递时去重，小时、天窗口没有该字段
+     */
+    private List<Long> times;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Accessors(chain = true)
+    public static class Point implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private Long t;
+        private Double v;
+    }
+
+    /**
+     * 预聚合窗口
+     */
+    @Getter
+    @AllArgsConstructor
+    public enum Resolution {
+        MINUTE("pointValueRollupMinute", 60000L),
+        HOUR("pointValueRollupHour", 3600000L),
+        DAY("pointValueRollupDay", 86400000L);
+
+        private final String collection;
+        private final long interval;
+
+        public long time(long time) {
+            return time - Math.floorMod(time, interval);
+        }
+    }
+}
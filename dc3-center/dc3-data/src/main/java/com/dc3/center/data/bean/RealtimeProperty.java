@@ -0,0 +1,48 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.bean;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 数据中心配置文件 data.realtime 字段内容
+ *
+ * @author pnoker
+ */
+@Setter
+@Getter
+@ConfigurationProperties(prefix = "data.realtime")
+public class RealtimeProperty {
+    /**
+     * 是否开启进程内实时数据缓存
+     */
+    private Boolean cacheEnable = true;
+
+    /**
+     * 进程内缓存的最大设备数量
+     */
+    private Long cacheSize = 10000L;
+
+    /**
+     * 设备缓存从 Redis 加载后的最长保留时间，单位毫秒，0 表示只受位号值失效时间限制
+     * <p>
+     * 部署多个数据中心实例时，每个实例只能收到部分位号值，需要定期从 Redis 重新加载，该时间即其他实例写入的实时数据在本实例中的最大延迟
+     */
+    private Long cacheMaxAge = 3000L;
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.bean;
+
+import com.dc3.center.data.bean.PointValueRollup.Resolution;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 数据中心配置文件 data.retention 字段内容
+ *
+ * @author pnoker
+ */
+@Setter
+@Getter
+@ConfigurationProperties(prefix = "data.retention")
+public class RetentionProperty {
+    /**
+     * 是否开启数据保留策略，开启后定时压缩、删除过期数据，需要同时开启 data.rollup.enable
+     */
+    private Boolean enable = false;
+
+    /**
+     * 压缩任务执行时间，默认每天凌晨两点
+     */
+    private String cron = "0 0 2 * * ?";
+
+    /**
+     * 每批删除的原始位号值、预聚合文档数量
+     */
+    private Integer batchSize = 1000;
+
+    /**
+     * 分桶存储时每批删除的桶数量
+     */
+    private Integer bucketBatchSize = 10;
+
+    /**
+     * 两批之间的暂停时间，用于限制对 MongoDB 的压力
+     */
+    private Duration batchPause = Duration.ofMillis(200);
+
+    /**
+     * 单次压缩任务的最长执行时间，超时后剩余数据留到下一次处理
+     */
+    private Duration maxDuration = Duration.ofHours(2);
+
+    /**
+     * 默认保留策略
+     */
+    private Policy policy = new Policy();
+
+    /**
+     * 模板保留策略，key 为 Profile Id
+     */
+    private Map<Long, Policy> profiles = new HashMap<>();
+
+    /**
+     * 设备保留策略，key 为 Device Id，优先级高于模板
+     */
+    private Map<Long, Policy> devices = new HashMap<>();
+
+    /**
+     * 保留策略，为空时永久保留，例如 raw: 7d, minute: 90d
+     */
+    @Setter
+    @Getter
+    public static class Policy {
+        private Duration raw;
+        private Duration minute;
+        private Duration hour;
+        private Duration day;
+
+        public Duration get(Resolution resolution) {
+            switch (resolution) {
+                case MINUTE:
+                    return minute;
+                case HOUR:
+                    return hour;
+                case DAY:
+                    return day;
+                default:
+                    return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.bean;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 数据中心配置文件 data.storage 字段内容
+ *
+ * @author pnoker
+ */
+@Setter
+@Getter
+@ConfigurationProperties(prefix = "data.storage")
+public class StorageProperty {
+    /**
+     * 是否开启分桶存储，开启后每个设备位号每小时的数据保存在桶文档中
+     */
+    private Boolean bucketEnable = false;
+
+    /**
+     * 每个桶文档最多保存的样本数量，写满后同一小时的数据写入新的桶文档，避免文档超过 16MB 的大小限制以及整文档重写的开销
+     */
+    private Integer bucketMaxSamples = 1000;
+
+    /**
+     * 迁移历史数据时每批处理的条数
+     */
+    private Integer migrateBatchSize = 1000;
+}
@@ -16,28 +16,48 @@
 
 package com.dc3.center.data.config;
 
+import com.dc3.center.data.bean.ListenerProperty;
 import com.dc3.common.constant.Common;
+import com.dc3.common.converter.PointValueMessageConverter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.*;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.rabbit.listener.RabbitListenerContainerFactory;
-import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import javax.annotation.Resource;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * @author pnoker
  */
 @Slf4j
 @Configuration
+@EnableConfigurationProperties({ListenerProperty.class})
 public class TopicRabbitConfig {
 
+    @Resource
+    private ListenerProperty listenerProperty;
+
+    /**
+     * 同时支持 JSON 以及二进制格式的单条、批量位号值消息
+     *
+     * @return PointValueMessageConverter
+     */
+    @Bean
+    PointValueMessageConverter pointValueMessageConverter() {
+        return new PointValueMessageConverter();
+    }
+
     @Bean
     RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
         RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
-        rabbitTemplate.setMessageConverter(new Jackson2JsonMessageConverter());
+        rabbitTemplate.setMessageConverter(pointValueMessageConverter());
         rabbitTemplate.setMandatory(true);
         rabbitTemplate.setReturnCallback((message, replyCode, replyText, exchange, routingKey) -> {
             log.error("Send message({}) to exchange({}), routingKey({}) failed: {}", message, exchange, routingKey, replyText);
@@ -54,8 +74,33 @@ public class TopicRabbitConfig {
     public RabbitListenerContainerFactory<?> rabbitListenerContainerFactory(ConnectionFactory connectionFactory) {
         SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
         factory.setConnectionFactory(connectionFactory);
-        factory.setMessageConverter(new Jackson2JsonMessageConverter());
+        factory.setMessageConverter(pointValueMessageConverter());
         factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setPrefetchCount(listenerProperty.getPrefetch());
+        factory.setConcurrentConsumers(listenerProperty.getConcurrency());
+        factory.setMaxConcurrentConsumers(Math.max(listenerProperty.getConcurrency(), listenerProperty.getMaxConcurrency()));
+        return factory;
+    }
+
+    /**
+     * 批量消费，每次回调最多 batchSize 条消息，由监听者在整批处理完成后统一确认
+     *
+     * @param connectionFactory ConnectionFactory
+     * @return RabbitListenerContainerFactory
+     */
+    @Bean
+    public RabbitListenerContainerFactory<?> batchRabbitListenerContainerFactory(ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(pointValueMessageConverter());
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setPrefetchCount(Math.max(listenerProperty.getPrefetch(), listenerProperty.getBatchSize()));
+        factory.setConcurrentConsumers(listenerProperty.getConcurrency());
+        factory.setMaxConcurrentConsumers(Math.max(listenerProperty.getConcurrency(), listenerProperty.getMaxConcurrency()));
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(listenerProperty.getBatchSize());
+        factory.setReceiveTimeout(listenerProperty.getReceiveTimeout());
         return factory;
     }
 
@@ -69,6 +114,16 @@ public class TopicRabbitConfig {
         return new Queue(Common.Rabbit.QUEUE_DEVICE_EVENT, true, false, false);
     }
 
+    @Bean
+    Queue deviceEventRetryQueue() {
+        return new Queue(Common.Rabbit.QUEUE_DEVICE_EVENT_RETRY, true, false, false, retryArguments(Common.Rabbit.QUEUE_DEVICE_EVENT));
+    }
+
+    @Bean
+    Queue deviceEventDeadQueue() {
+        return new Queue(Common.Rabbit.QUEUE_DEVICE_EVENT_DEAD, true, false, false);
+    }
+
     @Bean
     Binding deviceStatusBinding() {
         return BindingBuilder
@@ -87,6 +142,16 @@ public class TopicRabbitConfig {
         return new Queue(Common.Rabbit.QUEUE_POINT_VALUE, true, false, false);
     }
 
+    @Bean
+    Queue pointValueRetryQueue() {
+        return new Queue(Common.Rabbit.QUEUE_POINT_VALUE_RETRY, true, false, false, retryArguments(Common.Rabbit.QUEUE_POINT_VALUE));
+    }
+
+    @Bean
+    Queue pointValueDeadQueue() {
+        return new Queue(Common.Rabbit.QUEUE_POINT_VALUE_DEAD, true, false, false);
+    }
+
     @Bean
     Binding pointValueBinding() {
         return BindingBuilder
@@ -95,4 +160,20 @@ public class TopicRabbitConfig {
                 .with(Common.Rabbit.ROUTING_POINT_VALUE_PREFIX + "*");
     }
 
+    /**
+     * 重试队列没有消费者，消费失败的消息由监听者转发进来，等待 retryDelay 后过期，再通过默认交换机投递回原消费队列，x-death 记录重试次数
+     * <p>
+     * 消费队列保持原有的声明参数，已有部署无需删除重建队列
+     *
+     * @param queue Queue Name
+     * @return Queue Arguments
+     */
+    private Map<String, Object> retryArguments(String queue) {
+        Map<String, Object> arguments = new HashMap<>(4);
+        arguments.put("x-message-ttl", listenerProperty.getRetryDelay());
+        arguments.put("x-dead-letter-exchange", "");
+        arguments.put("x-dead-letter-routing-key", queue);
+        return arguments;
+    }
+
 }
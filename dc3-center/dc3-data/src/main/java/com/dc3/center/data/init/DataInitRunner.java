@@ -16,6 +16,7 @@
 
 package com.dc3.center.data.init;
 
+import com.dc3.center.data.service.IndexService;
 import com.dc3.center.data.service.ScheduleService;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
@@ -37,11 +38,16 @@ import javax.annotation.Resource;
 })
 public class DataInitRunner implements ApplicationRunner {
 
+    @Resource
+    private IndexService indexService;
     @Resource
     private ScheduleService scheduleService;
 
     @Override
     public void run(ApplicationArguments args) throws Exception {
+        // Initialize and verify MongoDB index
+        indexService.initial();
+
         scheduleService.initial();
     }
 }
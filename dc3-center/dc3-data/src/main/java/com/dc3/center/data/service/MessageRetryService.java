@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.service;
+
+import com.rabbitmq.client.Channel;
+import org.springframework.amqp.core.Message;
+
+import java.util.List;
+
+/**
+ * 批量消费的确认、有限次重试以及按 messageId 去重
+ * <p>
+ * 写入失败的消息转发到重试队列，延迟后投递回原队列，超过最大重试次数转入死信队列；
+ * 写入成功的消息记录 messageId，重复投递时直接确认；位号值按 originTime 幂等写入，部分写入失败后重试也不会产生重复数据
+ *
+ * @author pnoker
+ */
+public interface MessageRetryService {
+
+    /**
+     * 判断消息是否已经处理过，没有 messageId 的消息视为未处理
+     *
+     * @param messages Message Array
+     * @return 与 messages 顺序一致
+     */
+    boolean[] processed(List<Message> messages);
+
+    /**
+     * 整批处理成功，记录 messageId 并确认消息
+     *
+     * @param channel  Channel
+     * @param messages Message Array
+     */
+    void ack(Channel channel, List<Message> messages);
+
+    /**
+     * 整批处理失败，未超过最大重试次数的消息进入重试队列，其余消息转入死信队列
+     *
+     * @param channel    Channel
+     * @param messages   Message Array
+     * @param retryQueue 重试队列
+     * @param deadQueue  死信队列
+     */
+    void nack(Channel channel, List<Message> messages, String retryQueue, String deadQueue);
+
+    /**
+     * 无法处理的消息直接转入死信队列
+     *
+     * @param channel   Channel
+     * @param message   Message
+     * @param deadQueue 死信队列
+     */
+    void dead(Channel channel, Message message, String deadQueue);
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.service;
+
+import com.dc3.common.model.Point;
+
+/**
+ * 位号配置缓存，死区过滤以及压缩存档需要读取位号配置
+ *
+ * @author pnoker
+ */
+public interface PointCacheService {
+
+    /**
+     * 获取位号配置，查询失败时返回 null
+     *
+     * @param pointId Point Id
+     * @return Point
+     */
+    Point get(Long pointId);
+
+}
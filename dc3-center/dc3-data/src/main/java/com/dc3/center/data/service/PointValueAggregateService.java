@@ -0,0 +1,47 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dc3.center.data.service;
+
+import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.bean.driver.PointValueAggregate;
+import com.dc3.common.bean.driver.PointValueAggregateDto;
+
+import java.util.List;
+
+/**
+ * 位号值服务端聚合、降采样
+ *
+ * @author pnoker
+ */
+public interface PointValueAggregateService {
+
+    /**
+     * 按时间窗口聚合，返回每个窗口的 min/max/avg/first/last/count
+     *
+     * @param pointValueAggregateDto PointValueAggregateDto
+     * @return PointValueAggregate Array
+     */
+    List<PointValueAggregate> aggregate(PointValueAggregateDto pointValueAggregateDto);
+
+    /**
+     * 使用 LTTB (Largest-Triangle-Three-Buckets) 降采样，返回不超过 points 个原始位号值
+     *
+     * @param pointValueAggregateDto PointValueAggregateDto
+     * @return PointValue Array
+     */
+    List<PointValue> downsample(PointValueAggregateDto pointValueAggregateDto);
+
+}
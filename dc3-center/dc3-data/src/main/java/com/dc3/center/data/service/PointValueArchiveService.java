@@ -0,0 +1,48 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.service;
+
+import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.bean.driver.PointValueAggregateDto;
+
+import java.util.List;
+
+/**
+ * 位号值旋转门压缩存档
+ *
+ * @author pnoker
+ */
+public interface PointValueArchiveService {
+
+    /**
+     * 压缩位号值，门打开时产生的存档点批量追加到对应的存档段
+     *
+     * @param pointValues PointValue Array
+     * @return 未被存档的位号值，包括多值位号、未配置压缩偏差的位号、无法转换为数值的位号值以及不晚于最新点的乱序位号值
+     */
+    List<PointValue> addPointValues(List<PointValue> pointValues);
+
+    /**
+     * 从存档点线性插值，时间点为 startTime 开始每隔 interval 一个直到 endTime，未指定 interval 时按 points 均分，
+     * startTime 等于 endTime 时查询单个时间点，没有覆盖到的时间点不返回
+     *
+     * @param pointValueAggregateDto PointValueAggregateDto
+     * @return PointValue Array
+     */
+    List<PointValue> interpolate(PointValueAggregateDto pointValueAggregateDto);
+
+}
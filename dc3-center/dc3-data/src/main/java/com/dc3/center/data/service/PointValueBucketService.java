@@ -0,0 +1,86 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.service;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.dc3.common.bean.CursorPage;
+import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.bean.driver.PointValueDto;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.List;
+
+/**
+ * 位号值分桶存储，每个设备位号每小时一个或多个文档
+ *
+ * @author pnoker
+ */
+public interface PointValueBucketService {
+
+    /**
+     * 批量新增 PointValue，按设备、位号、小时分组后通过 $push upsert 追加到对应的桶中
+     *
+     * @param pointValues PointValue Array
+     */
+    void addPointValues(List<PointValue> pointValues);
+
+    /**
+     * 获取最新的一个位号数据
+     *
+     * @param deviceId Device Id
+     * @param pointId  Point Id
+     * @return PointValue
+     */
+    PointValue latest(Long deviceId, Long pointId);
+
+    /**
+     * 获取带分页、排序，桶内数据展开为单个位号值
+     *
+     * @param pointValueDto PointValueDto
+     * @return Page<PointValue>
+     */
+    Page<PointValue> list(PointValueDto pointValueDto);
+
+    /**
+     * 游标分页查询历史数据，桶内数据展开为单个位号值
+     *
+     * @param pointValueDto PointValueDto
+     * @return CursorPage<PointValue>
+     */
+    CursorPage<PointValue> history(PointValueDto pointValueDto);
+
+    /**
+     * 通过聚合游标流式读取一个设备的位号值，桶按小时正序，桶内数据展开为单个位号值
+     *
+     * @param deviceId  Device Id，为空时读取所有设备
+     * @param pointIds  Point Id Array，为空时读取所有位号
+     * @param startTime 开始时间，可为空
+     * @param endTime   结束时间，可为空
+     * @param batchSize 游标每批拉取的桶数量
+     * @return CloseableIterator<PointValue>，使用完毕后需要关闭
+     */
+    CloseableIterator<PointValue> stream(Long deviceId, List<Long> pointIds, Long startTime, Long endTime, int batchSize);
+
+    /**
+     * 将原始 PointValue 文档迁移到分桶存储，重复迁移不会产生重复数据
+     *
+     * @param pointValueDto PointValueDto，按设备、位号以及时间范围筛选
+     * @return 迁移的位号值数量
+     */
+    long migrate(PointValueDto pointValueDto);
+
+}
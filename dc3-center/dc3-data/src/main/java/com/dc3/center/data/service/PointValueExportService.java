@@ -0,0 +1,48 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dc3.center.data.service;
+
+import com.dc3.common.bean.driver.PointValueExportDto;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 位号值流式导出
+ *
+ * @author pnoker
+ */
+public interface PointValueExportService {
+
+    /**
+     * 校验导出条件，需要在写出响应之前调用
+     *
+     * @param pointValueExportDto PointValueExportDto
+     */
+    void check(PointValueExportDto pointValueExportDto);
+
+    /**
+     * 按设备逐个通过 MongoDB 游标读取位号值，按 originTime 正序以 NDJSON 或 CSV 格式分块写出，
+     * 多值位号会展开为多行
+     *
+     * @param pointValueExportDto PointValueExportDto
+     * @param outputStream        OutputStream
+     * @return 导出的行数
+     * @throws IOException IOException
+     */
+    long export(PointValueExportDto pointValueExportDto, OutputStream outputStream) throws IOException;
+
+}
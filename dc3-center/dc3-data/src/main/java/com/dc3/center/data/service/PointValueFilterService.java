@@ -0,0 +1,38 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.service;
+
+import com.dc3.common.bean.driver.PointValue;
+
+import java.util.List;
+
+/**
+ * 位号值死区过滤
+ *
+ * @author pnoker
+ */
+public interface PointValueFilterService {
+
+    /**
+     * 按位号死区配置过滤位号值，多值位号以及未配置死区的位号不过滤
+     *
+     * @param pointValues PointValue Array
+     * @return 需要存储的位号值
+     */
+    List<PointValue> filter(List<PointValue> pointValues);
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.service;
+
+import com.dc3.common.bean.driver.PointValue;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 位号值接入缓冲服务
+ * <p>
+ * 逐条消费以及批量消费收到的位号值都先写入有界缓冲区，再由单独的线程合并多条消息按条数和时间阈值批量写入 Redis & MongoDB，
+ * 写入完成后回调，由消费者确认或拒绝消息；回调按写入缓冲区的顺序执行，同一个 Channel 的消息可以按序批量确认
+ *
+ * @author pnoker
+ */
+public interface PointValueIngestService {
+
+    /**
+     * 写入一条或一批消息的位号值到缓冲区
+     *
+     * @param pointValues PointValue Array，可以为空，为空时只按顺序回调
+     * @param callback    写入 Redis & MongoDB 成功时回调 true，失败时回调 false，在写入线程中执行
+     * @return 缓冲区已满时返回 false，不会回调
+     */
+    boolean offer(List<PointValue> pointValues, Consumer<Boolean> callback);
+
+    /**
+     * 当前缓冲区中等待写入的消息数量
+     *
+     * @return int
+     */
+    int depth();
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dc3.center.data.service;
+
+import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.bean.driver.PointValueAggregate;
+import com.dc3.common.bean.driver.PointValueAggregateDto;
+import com.dc3.common.bean.driver.PointValueDto;
+
+import java.util.List;
+
+/**
+ * 位号值 1m/1h/1d 预聚合
+ *
+ * @author pnoker
+ */
+public interface PointValueRollupService {
+
+    /**
+     * 将一批位号值合并到预聚合集合，分钟窗口通过 $inc/$min/$max upsert 增量更新，小时、天窗口由下一级窗口重新汇总，
+     * 只统计可以转换为数值的位号值，分钟窗口中已有相同 originTime 的位号值视为已统计并跳过
+     *
+     * @param pointValues PointValue Array
+     */
+    void addPointValues(List<PointValue> pointValues);
+
+    /**
+     * 删除原始数据前将其合并到预聚合集合，分钟窗口中已统计的位号值会被跳过，
+     * 记录已统计时间之前写入的分钟窗口视为已经包含这些位号值
+     *
+     * @param pointValues PointValue Array
+     * @return 参与合并的位号值数量
+     */
+    long cover(List<PointValue> pointValues);
+
+    /**
+     * 从预聚合集合读取聚合结果，interval 不是任何预聚合窗口的整数倍时返回 null
+     *
+     * @param pointValueAggregateDto PointValueAggregateDto
+     * @param interval               聚合时间窗口，毫秒
+     * @return PointValueAggregate Array
+     */
+    List<PointValueAggregate> aggregate(PointValueAggregateDto pointValueAggregateDto, long interval);
+
+    /**
+     * 从原始数据重建预聚合数据，时间范围会按天对齐并且只包含当天之前的数据，范围内已有的预聚合数据会先被删除
+     *
+     * @param pointValueDto PointValueDto，按设备、位号以及时间范围筛选
+     * @return 处理的位号值数量
+     */
+    long backfill(PointValueDto pointValueDto);
+
+}
@@ -17,7 +17,10 @@
 package com.dc3.center.data.service;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.dc3.common.bean.CursorPage;
 import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.bean.driver.PointValueAggregate;
+import com.dc3.common.bean.driver.PointValueAggregateDto;
 import com.dc3.common.bean.driver.PointValueDto;
 
 import java.util.List;
@@ -83,4 +86,52 @@ public interface PointValueService {
      */
     Page<PointValue> list(PointValueDto pointValueDto);
 
+    /**
+     * 游标分页查询历史数据，按 originTime 倒序，不使用 skip
+     *
+     * @param pointValueDto PointValueDto，cursor 为上一页返回的游标，count 为是否统计总数
+     * @return CursorPage<PointValue>
+     */
+    CursorPage<PointValue> history(PointValueDto pointValueDto);
+
+    /**
+     * 按时间窗口聚合查询，返回每个窗口的 min/max/avg/first/last/count
+     *
+     * @param pointValueAggregateDto PointValueAggregateDto
+     * @return PointValueAggregate Array
+     */
+    List<PointValueAggregate> aggregate(PointValueAggregateDto pointValueAggregateDto);
+
+    /**
+     * LTTB 降采样查询，返回不超过指定点数的位号值
+     *
+     * @param pointValueAggregateDto PointValueAggregateDto
+     * @return PointValue Array
+     */
+    List<PointValue> downsample(PointValueAggregateDto pointValueAggregateDto);
+
+    /**
+     * 从旋转门压缩存档线性插值
+     *
+     * @param pointValueAggregateDto PointValueAggregateDto
+     * @return PointValue Array
+     */
+    List<PointValue> interpolate(PointValueAggregateDto pointValueAggregateDto);
+
+    /**
+     * 从原始数据重建 1m/1h/1d 预聚合数据
+     *
+     * @param pointValueDto PointValueDto
+     * @return 处理的位号值数量
+     */
+    Long backfill(PointValueDto pointValueDto);
+
+    /**
+     * 迁移原始 PointValue 文档到分桶存储
+     *
+     * @param pointValueDto PointValueDto
+     * @return 迁移的位号值数量
+     */
+    Long migrate(PointValueDto pointValueDto);
+
 }
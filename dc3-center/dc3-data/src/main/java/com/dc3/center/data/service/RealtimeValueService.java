@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.service;
+
+import com.dc3.common.bean.driver.PointValue;
+
+import java.util.List;
+
+/**
+ * 实时数据存储
+ * <p>
+ * 每个设备对应一个 Redis Hash，Field 为位号ID，Value 为紧凑编码的位号值
+ *
+ * @author pnoker
+ */
+public interface RealtimeValueService {
+
+    /**
+     * 批量保存实时数据，整批通过一次 Pipeline 写入
+     *
+     * @param pointValues PointValue Array
+     */
+    void save(List<PointValue> pointValues);
+
+    /**
+     * 获取设备下单个位号的实时数据
+     *
+     * @param deviceId Device Id
+     * @param pointId  Point Id
+     * @return PointValue，不存在或已过期时返回 null
+     */
+    PointValue get(Long deviceId, Long pointId);
+
+    /**
+     * 获取设备下全部位号的实时数据
+     *
+     * @param deviceId Device Id
+     * @return PointValue Array
+     */
+    List<PointValue> list(Long deviceId);
+
+}
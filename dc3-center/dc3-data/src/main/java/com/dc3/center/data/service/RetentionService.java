@@ -0,0 +1,31 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.service;
+
+/**
+ * 位号值分级保留
+ *
+ * @author pnoker
+ */
+public interface RetentionService {
+
+    /**
+     * 按设备、模板的保留策略分批压缩过期数据：过期的原始数据合并到预聚合集合后删除，过期的预聚合数据直接删除，需要开启 data.rollup.enable
+     */
+    void compact();
+
+}
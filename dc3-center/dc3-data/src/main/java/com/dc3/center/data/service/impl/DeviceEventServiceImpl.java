@@ -17,6 +17,7 @@
 package com.dc3.center.data.service.impl;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.dc3.center.data.bean.IndexProperty;
 import com.dc3.center.data.service.DeviceEventService;
 import com.dc3.common.bean.Pages;
 import com.dc3.common.bean.driver.DeviceEvent;
@@ -24,6 +25,7 @@ import com.dc3.common.bean.driver.DeviceEventDto;
 import com.dc3.common.constant.Common;
 import com.dc3.common.utils.RedisUtil;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
@@ -31,6 +33,7 @@ import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -38,12 +41,15 @@ import java.util.List;
  */
 @Slf4j
 @Service
+@EnableConfigurationProperties({IndexProperty.class})
 public class DeviceEventServiceImpl implements DeviceEventService {
 
     @Resource
     private RedisUtil redisUtil;
     @Resource
     private MongoTemplate mongoTemplate;
+    @Resource
+    private IndexProperty indexProperty;
 
     @Override
     public String deviceStatus(Long deviceId) {
@@ -55,6 +61,9 @@ public class DeviceEventServiceImpl implements DeviceEventService {
     @Override
     public void addDeviceEvent(DeviceEvent deviceEvent) {
         if (null != deviceEvent) {
+            if (indexProperty.getDeviceEventTtl() > 0) {
+                deviceEvent.setCreateDate(new Date());
+            }
             mongoTemplate.insert(deviceEvent);
         }
     }
@@ -63,6 +72,10 @@ public class DeviceEventServiceImpl implements DeviceEventService {
     public void addDeviceEvents(List<DeviceEvent> deviceEvents) {
         if (null != deviceEvents) {
             if (deviceEvents.size() > 0) {
+                if (indexProperty.getDeviceEventTtl() > 0) {
+                    Date createDate = new Date();
+                    deviceEvents.forEach(deviceEvent -> deviceEvent.setCreateDate(createDate));
+                }
                 mongoTemplate.insert(deviceEvents, DeviceEvent.class);
             }
         }
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.service.impl;
+
+import com.dc3.center.data.bean.ArchiveProperty;
+import com.dc3.center.data.bean.IndexProperty;
+import com.dc3.center.data.bean.PointValueArchive;
+import com.dc3.center.data.bean.PointValueBucket;
+import com.dc3.center.data.bean.PointValueRollup.Resolution;
+import com.dc3.center.data.bean.RollupProperty;
+import com.dc3.center.data.bean.StorageProperty;
+import com.dc3.center.data.service.IndexService;
+import com.dc3.common.bean.driver.DeviceEvent;
+import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.exception.ServiceException;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @author pnoker
+ */
+@Slf4j
+@Service
+@EnableConfigurationProperties({IndexProperty.class, StorageProperty.class, RollupProperty.class, ArchiveProperty.class})
+public class IndexServiceImpl implements IndexService {
+
+    private static final String TTL_INDEX = "ttl_createDate";
+    private static final String BUCKET_INDEX = "deviceId_pointId_hour";
+    private static final List<String> ROLLUP_INDEX_KEYS = Arrays.asList("deviceId", "pointId", "time");
+
+    @Resource
+    private MongoTemplate mongoTemplate;
+    @Resource
+    private IndexProperty indexProperty;
+    @Resource
+    private StorageProperty storageProperty;
+    @Resource
+    private RollupProperty rollupProperty;
+    @Resource
+    private ArchiveProperty archiveProperty;
+
+    @Override
+    public void initial() {
+        if (storageProperty.getBucketEnable()) {
+            dropUniqueBucketIndex();
+        }
+        if (rollupProperty.getEnable()) {
+            ensureRollupIndexes();
+        }
+        if (indexProperty.getEnable()) {
+            ensureIndexes();
+        }
+        if (indexProperty.getExplain()) {
+            explainQueries();
+        }
+    }
+
+    /**
+     * 创建 PointValue、DeviceEvent 以及分桶集合的复合索引，与 Service 中的查询条件以及 originTime 倒序排序对应，
+     * PointValue 索引末尾的 _id 用于游标分页 (originTime, _id) 排序
+     */
+    private void ensureIndexes() {
+        IndexOperations pointValueIndexOps = mongoTemplate.indexOps(PointValue.class);
+        ensureIndex(pointValueIndexOps, new Index().on("deviceId", Sort.Direction.ASC).on("originTime", Sort.Direction.DESC).on("_id", Sort.Direction.DESC).named("deviceId_originTime_id"));
+        ensureIndex(pointValueIndexOps, new Index().on("deviceId", Sort.Direction.ASC).on("pointId", Sort.Direction.ASC).on("originTime", Sort.Direction.DESC).on("_id", Sort.Direction.DESC).named("deviceId_pointId_originTime_id"));
+        ensureIndex(pointValueIndexOps, new Index().on("deviceId", Sort.Direction.ASC).on("children.pointId", Sort.Direction.ASC).on("originTime", Sort.Direction.DESC).on("_id", Sort.Direction.DESC).named("deviceId_children.pointId_originTime_id"));
+        ensureIndex(pointValueIndexOps, new Index().on("pointId", Sort.Direction.ASC).on("originTime", Sort.Direction.DESC).on("_id", Sort.Direction.DESC).named("pointId_originTime_id"));
+        ensureIndex(pointValueIndexOps, new Index().on("children.pointId", Sort.Direction.ASC).on("originTime", Sort.Direction.DESC).on("_id", Sort.Direction.DESC).named("children.pointId_originTime_id"));
+        ensureIndex(pointValueIndexOps, new Index().on("originTime", Sort.Direction.DESC).on("_id", Sort.Direction.DESC).named("originTime_id"));
+        ensureTtlIndex(PointValue.class, pointValueIndexOps, indexProperty.getPointValueTtl());
+
+        IndexOperations deviceEventIndexOps = mongoTemplate.indexOps(DeviceEvent.class);
+        ensureIndex(deviceEventIndexOps, new Index().on("deviceId", Sort.Direction.ASC).on("originTime", Sort.Direction.DESC).named("deviceId_originTime"));
+        ensureIndex(deviceEventIndexOps, new Index().on("deviceId", Sort.Direction.ASC).on("pointId", Sort.Direction.ASC).on("originTime", Sort.Direction.DESC).named("deviceId_pointId_originTime"));
+        ensureIndex(deviceEventIndexOps, new Index().on("pointId", Sort.Direction.ASC).on("originTime", Sort.Direction.DESC).named("pointId_originTime"));
+        ensureIndex(deviceEventIndexOps, new Index().on("originTime", Sort.Direction.DESC).named("originTime"));
+        ensureTtlIndex(DeviceEvent.class, deviceEventIndexOps, indexProperty.getDeviceEventTtl());
+
+        if (storageProperty.getBucketEnable()) {
+            IndexOperations bucketIndexOps = mongoTemplate.indexOps(PointValueBucket.class);
+            ensureIndex(bucketIndexOps, new Index().on("deviceId", Sort.Direction.ASC).on("pointId", Sort.Direction.ASC).on("hour", Sort.Direction.ASC).named(BUCKET_INDEX));
+            ensureIndex(bucketIndexOps, new Index().on("deviceId", Sort.Direction.ASC).on("endTime", Sort.Direction.DESC).named("deviceId_endTime"));
+            ensureIndex(bucketIndexOps, new Index().on("pointId", Sort.Direction.ASC).on("hour", Sort.Direction.DESC).named("pointId_hour"));
+            // cursor history walks the buckets hour by hour
+            ensureIndex(bucketIndexOps, new Index().on("deviceId", Sort.Direction.ASC).on("hour", Sort.Direction.DESC).named("deviceId_hour"));
+            ensureIndex(bucketIndexOps, new Index().on("hour", Sort.Direction.DESC).named("hour"));
+        }
+
+        if (archiveProperty.getEnable()) {
+            IndexOperations archiveIndexOps = mongoTemplate.indexOps(PointValueArchive.class);
+            ensureIndex(archiveIndexOps, new Index().on("deviceId", Sort.Direction.ASC).on("pointId", Sort.Direction.ASC).on("hour", Sort.Direction.ASC).unique().named("deviceId_pointId_hour"));
+        }
+    }
+
+    /**
+     * 桶文档写满后同一小时会有多个桶文档，删除之前版本创建的 deviceId_pointId_hour 唯一索引，否则无法插入新的桶文档
+     */
+    private void dropUniqueBucketIndex() {
+        IndexOperations bucketIndexOps = mongoTemplate.indexOps(PointValueBucket.class);
+        if (bucketIndexOps.getIndexInfo().stream().anyMatch(indexInfo -> BUCKET_INDEX.equals(indexInfo.getName()) && indexInfo.isUnique())) {
+            bucketIndexOps.dropIndex(BUCKET_INDEX);
+            log.info("Drop unique index {} of {}", BUCKET_INDEX, PointValueBucket.COLLECTION);
+        }
+    }
+
+    /**
+     * 预聚合的 upsert 依赖 deviceId_pointId_time 唯一索引保证每个窗口只有一个文档，不受 data.index.enable 影响，
+     * 无法创建或者校验不通过时启动失败，避免重复的窗口文档导致重复统计
+     */
+    private void ensureRollupIndexes() {
+        for (Resolution resolution : Resolution.values()) {
+            IndexOperations rollupIndexOps = mongoTemplate.indexOps(resolution.getCollection());
+            try {
+                rollupIndexOps.ensureIndex(new Index().on("deviceId", Sort.Direction.ASC).on("pointId", Sort.Direction.ASC).on("time", Sort.Direction.ASC).unique().named("deviceId_pointId_time"));
+            } catch (Exception e) {
+                throw new ServiceException("Ensure unique index of " + resolution.getCollection() + " failed: " + e.getMessage());
+            }
+            boolean unique = rollupIndexOps.getIndexInfo().stream().anyMatch(indexInfo -> indexInfo.isUnique()
+                    && ROLLUP_INDEX_KEYS.equals(indexInfo.getIndexFields().stream().map(IndexField::getKey).collect(Collectors.toList())));
+            if (!unique) {
+                throw new ServiceException("Unique index (deviceId, pointId, time) of " + resolution.getCollection() + " is missing");
+            }
+        }
+    }
+
+    private void ensureIndex(IndexOperations indexOps, Index index) {
+        try {
+            String name = indexOps.ensureIndex(index);
+            log.debug("Ensure index: {}", name);
+        } catch (Exception e) {
+            log.warn("Ensure index({}) failed: {}", index.getIndexKeys(), e.getMessage());
+        }
+    }
+
+    /**
+     * TTL 索引，保留时间小于等于 0 时删除已存在的 TTL 索引，已存在时通过 collMod 更新保留时间
+     *
+     * @param entityClass Entity Class
+     * @param indexOps    IndexOperations
+     * @param ttl         Seconds
+     */
+    private void ensureTtlIndex(Class<?> entityClass, IndexOperations indexOps, long ttl) {
+        try {
+            boolean exist = indexOps.getIndexInfo().stream().anyMatch(indexInfo -> TTL_INDEX.equals(indexInfo.getName()));
+            if (ttl <= 0) {
+                if (exist) {
+                    indexOps.dropIndex(TTL_INDEX);
+                    log.info("Drop ttl index of {}", mongoTemplate.getCollectionName(entityClass));
+                }
+                return;
+            }
+
+            if (exist) {
+                mongoTemplate.executeCommand(new Document("collMod", mongoTemplate.getCollectionName(entityClass))
+                        .append("index", new Document("name", TTL_INDEX).append("expireAfterSeconds", ttl)));
+            } else {
+                indexOps.ensureIndex(new Index().on("createDate", Sort.Direction.ASC).expire(ttl).named(TTL_INDEX));
+            }
+            log.info("Ensure ttl index of {}, expire after {}s", mongoTemplate.getCollectionName(entityClass), ttl);
+        } catch (Exception e) {
+            log.warn("Ensure ttl index of {} failed: {}", mongoTemplate.getCollectionName(entityClass), e.getMessage());
+        }
+    }
+
+    /**
+     * 对 Service 中使用的查询进行 explain，查询计划中出现全表扫描或内存排序时输出警告
+     */
+    private void explainQueries() {
+        String pointValue = mongoTemplate.getCollectionName(PointValue.class);
+        String deviceEvent = mongoTemplate.getCollectionName(DeviceEvent.class);
+        Document originTimeDesc = new Document("originTime", -1);
+        Document cursorDesc = new Document("originTime", -1).append("_id", -1);
+
+        explain(pointValue, new Document("deviceId", 0L).append("multi", true), originTimeDesc);
+        explain(pointValue, new Document("deviceId", 0L).append("pointId", 0L), originTimeDesc);
+        explain(pointValue, new Document("deviceId", 0L).append("multi", true).append("children", new Document("$elemMatch", new Document("pointId", 0L))), originTimeDesc);
+        explain(pointValue, new Document("$or", Arrays.asList(new Document("pointId", 0L), new Document("children", new Document("$elemMatch", new Document("pointId", 0L))))), originTimeDesc);
+        explain(pointValue, new Document("deviceId", 0L).append("originTime", new Document("$gte", 0L).append("$lte", 0L)), originTimeDesc);
+        explain(pointValue, new Document("deviceId", 0L).append("pointId", 0L).append("$or", Arrays.asList(
+                new Document("originTime", new Document("$lt", 0L)),
+                new Document("originTime", 0L).append("_id", new Document("$lt", new ObjectId())))), cursorDesc);
+
+        explain(deviceEvent, new Document("deviceId", 0L), originTimeDesc);
+        explain(deviceEvent, new Document("deviceId", 0L).append("pointId", 0L).append("originTime", new Document("$gte", 0L).append("$lte", 0L)), originTimeDesc);
+        explain(deviceEvent, new Document("pointId", 0L), originTimeDesc);
+
+        if (storageProperty.getBucketEnable()) {
+            explain(PointValueBucket.COLLECTION, new Document("deviceId", 0L).append("pointId", 0L).append("hour", 0L), new Document());
+            explain(PointValueBucket.COLLECTION, new Document("deviceId", 0L), new Document("endTime", -1));
+            explain(PointValueBucket.COLLECTION, new Document("deviceId", 0L).append("hour", new Document("$lte", 0L)), new Document("hour", -1));
+        }
+    }
+
+    private void explain(String collection, Document filter, Document sort) {
+        try {
+            Document command = new Document("explain", new Document("find", collection).append("filter", filter).append("sort", sort).append("limit", 1))
+                    .append("verbosity", "queryPlanner");
+            Document result = mongoTemplate.executeCommand(command);
+            Document queryPlanner = (Document) result.get("queryPlanner");
+            Object winningPlan = null != queryPlanner ? queryPlanner.get("winningPlan") : null;
+            if (hasStage(winningPlan, "COLLSCAN")) {
+                log.warn("Query on {} has no supporting index, filter: {}, sort: {}", collection, filter.toJson(), sort.toJson());
+            } else if (hasStage(winningPlan, "SORT")) {
+                log.warn("Query on {} sorts in memory, filter: {}, sort: {}", collection, filter.toJson(), sort.toJson());
+            }
+        } catch (Exception e) {
+            log.warn("Explain query on {} failed: {}", collection, e.getMessage());
+        }
+    }
+
+    /**
+     * 递归查找查询计划中是否包含指定的阶段
+     *
+     * @param plan  Plan
+     * @param stage Stage
+     * @return boolean
+     */
+    private boolean hasStage(Object plan, String stage) {
+        if (plan instanceof Document) {
+            Document document = (Document) plan;
+            if (stage.equals(document.get("stage"))) {
+                return true;
+            }
+            for (Object value : document.values()) {
+                if (hasStage(value, stage)) {
+                    return true;
+                }
+            }
+        } else if (plan instanceof List) {
+            for (Object value : (List<?>) plan) {
+                if (hasStage(value, stage)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.service.impl;
+
+import com.dc3.center.data.bean.ListenerProperty;
+import com.dc3.center.data.service.MessageRetryService;
+import com.dc3.common.constant.Common;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * @author pnoker
+ */
+@Slf4j
+@Service
+@EnableConfigurationProperties({ListenerProperty.class})
+public class MessageRetryServiceImpl implements MessageRetryService {
+
+    private static final String PROCESSED = "1";
+
+    @Resource
+    private ListenerProperty listenerProperty;
+    @Resource
+    private RabbitTemplate rabbitTemplate;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private Counter duplicateCounter, retryCounter, deadCounter;
+
+    @PostConstruct
+    public void initial() {
+        duplicateCounter = Counter.builder("dc3.data.listener.duplicate")
+                .description("Redelivered messages skipped because they were already processed")
+                .register(meterRegistry);
+        retryCounter = Counter.builder("dc3.data.listener.retry")
+                .description("Messages sent to the retry queue after a failed write")
+                .register(meterRegistry);
+        deadCounter = Counter.builder("dc3.data.listener.dead")
+                .description("Messages moved to the dead letter queue")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public boolean[] processed(List<Message> messages) {
+        boolean[] processed = new boolean[messages.size()];
+        RedisSerializer<String> serializer = stringRedisTemplate.getStringSerializer();
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Message message : messages) {
+                String messageId = message.getMessageProperties().getMessageId();
+                if (null != messageId) {
+                    connection.exists(Objects.requireNonNull(serializer.serialize(key(messageId))));
+                }
+            }
+            return null;
+        });
+
+        int index = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            if (null != messages.get(i).getMessageProperties().getMessageId()) {
+                processed[i] = Boolean.TRUE.equals(results.get(index++));
+                if (processed[i]) {
+                    duplicateCounter.increment();
+                }
+            }
+        }
+        return processed;
+    }
+
+    @Override
+    public void ack(Channel channel, List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        try {
+            RedisSerializer<String> serializer = stringRedisTemplate.getStringSerializer();
+            byte[] value = Objects.requireNonNull(serializer.serialize(PROCESSED));
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Message message : messages) {
+                    String messageId = message.getMessageProperties().getMessageId();
+                    if (null != messageId) {
+                        connection.pSetEx(Objects.requireNonNull(serializer.serialize(key(messageId))), listenerProperty.getDedupeTime(), value);
+                    }
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            // the writes succeeded, a redelivery is still better than losing the ack
+            log.error("Record processed messages({}) failed: {}", messages.size(), e.getMessage());
+        }
+
+        try {
+            channel.basicAck(messages.get(messages.size() - 1).getMessageProperties().getDeliveryTag(), true);
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void nack(Channel channel, List<Message> messages, String retryQueue, String deadQueue) {
+        for (Message message : messages) {
+            long retries = retries(message, retryQueue);
+            if (retries >= listenerProperty.getMaxRetries()) {
+                log.warn("Message({}) failed after {} retries, move to {}", message.getMessageProperties().getMessageId(), retries, deadQueue);
+                dead(channel, message, deadQueue);
+                continue;
+            }
+            long deliveryTag = message.getMessageProperties().getDeliveryTag();
+            try {
+                // republished instead of dead-lettered, the consuming queues keep the arguments they were declared with
+                rabbitTemplate.send("", retryQueue, message);
+                channel.basicAck(deliveryTag, false);
+                retryCounter.increment();
+            } catch (Exception e) {
+                log.error("Move message to {} failed: {}", retryQueue, e.getMessage());
+                requeue(channel, deliveryTag);
+            }
+        }
+    }
+
+    @Override
+    public void dead(Channel channel, Message message, String deadQueue) {
+        long deliveryTag = message.getMessageProperties().getDeliveryTag();
+        try {
+            rabbitTemplate.send("", deadQueue, message);
+            channel.basicAck(deliveryTag, false);
+            deadCounter.increment();
+        } catch (Exception e) {
+            log.error("Move message to {} failed: {}", deadQueue, e.getMessage());
+            requeue(channel, deliveryTag);
+        }
+    }
+
+    /**
+     * 消费队列没有死信交换机，转移失败的消息放回原队列，避免被丢弃
+     *
+     * @param channel     Channel
+     * @param deliveryTag Delivery Tag
+     */
+    private void requeue(Channel channel, long deliveryTag) {
+        try {
+            channel.basicNack(deliveryTag, false, true);
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 消息在重试队列中过期的次数，取自 x-death
+     *
+     * @param message    Message
+     * @param retryQueue 重试队列
+     * @return long
+     */
+    private long retries(Message message, String retryQueue) {
+        List<Map<String, ?>> xDeath = message.getMessageProperties().getXDeathHeader();
+        if (null != xDeath) {
+            for (Map<String, ?> death : xDeath) {
+                if (retryQueue.equals(String.valueOf(death.get("queue"))) && "expired".equals(String.valueOf(death.get("reason")))) {
+                    Object count = death.get("count");
+                    return count instanceof Number ? ((Number) count).longValue() : 0L;
+                }
+            }
+        }
+        return 0L;
+    }
+
+    private String key(String messageId) {
+        return Common.Cache.MESSAGE_PROCESSED_KEY_PREFIX + messageId;
+    }
+
+}
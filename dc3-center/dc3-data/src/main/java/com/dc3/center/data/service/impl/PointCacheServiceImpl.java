@@ -0,0 +1,74 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.service.impl;
+
+import com.dc3.api.center.manager.feign.PointClient;
+import com.dc3.center.data.bean.PointProperty;
+import com.dc3.center.data.service.PointCacheService;
+import com.dc3.common.bean.R;
+import com.dc3.common.model.Point;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author pnoker
+ */
+@Slf4j
+@Service
+@EnableConfigurationProperties({PointProperty.class})
+public class PointCacheServiceImpl implements PointCacheService {
+
+    @Resource
+    private PointProperty pointProperty;
+    @Resource
+    private PointClient pointClient;
+
+    private LoadingCache<Long, Optional<Point>> pointCache;
+
+    @PostConstruct
+    public void initial() {
+        pointCache = Caffeine.newBuilder()
+                .expireAfterWrite(pointProperty.getCacheAge(), TimeUnit.MILLISECONDS)
+                .build(this::selectPoint);
+    }
+
+    @Override
+    public Point get(Long pointId) {
+        return pointCache.get(pointId).orElse(null);
+    }
+
+    private Optional<Point> selectPoint(Long pointId) {
+        try {
+            R<Point> r = pointClient.selectById(pointId);
+            if (r.isOk()) {
+                return Optional.ofNullable(r.getData());
+            }
+        } catch (Exception e) {
+            log.warn("Select point({}) failed: {}", pointId, e.getMessage());
+        }
+        return Optional.empty();
+    }
+
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dc3.center.data.service.impl;
+
+import com.dc3.center.data.bean.AggregateProperty;
+import com.dc3.center.data.bean.PointValueBucket;
+import com.dc3.center.data.bean.PointValueBucket.Sample;
+import com.dc3.center.data.bean.RollupProperty;
+import com.dc3.center.data.bean.StorageProperty;
+import com.dc3.center.data.service.PointValueAggregateService;
+import com.dc3.center.data.service.PointValueRollupService;
+import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.bean.driver.PointValueAggregate;
+import com.dc3.common.bean.driver.PointValueAggregateDto;
+import com.dc3.common.exception.ServiceException;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.*;
+
+/**
+ * @author pnoker
+ */
+@Slf4j
+@Service
+@EnableConfigurationProperties({AggregateProperty.class, RollupProperty.class})
+public class PointValueAggregateServiceImpl implements PointValueAggregateService {
+
+    @Resource
+    private MongoTemplate mongoTemplate;
+    @Resource
+    private AggregateProperty aggregateProperty;
+    @Resource
+    private StorageProperty storageProperty;
+    @Resource
+    private RollupProperty rollupProperty;
+    @Resource
+    private PointValueRollupService pointValueRollupService;
+
+    @Override
+    public List<PointValueAggregate> aggregate(PointValueAggregateDto pointValueAggregateDto) {
+        check(pointValueAggregateDto);
+        long startTime = pointValueAggregateDto.getStartTime(), endTime = pointValueAggregateDto.getEndTime();
+        long interval = interval(pointValueAggregateDto);
+        if (rollupProperty.getEnable()) {
+            List<PointValueAggregate> pointValueAggregates = pointValueRollupService.aggregate(pointValueAggregateDto, interval);
+            if (null != pointValueAggregates) {
+                return pointValueAggregates;
+            }
+        }
+
+        // windows are aligned to the epoch, so the same interval always yields the same window boundaries
+        List<AggregationOperation> operations = source(pointValueAggregateDto, endTime);
+        operations.add(stage("$group", new Document("_id", new Document("$subtract", Arrays.asList("$t", new Document("$mod", Arrays.asList("$t", interval)))))
+                .append("count", new Document("$sum", 1))
+                .append("min", new Document("$min", "$v"))
+                .append("max", new Document("$max", "$v"))
+                .append("avg", new Document("$avg", "$v"))
+                .append("first", new Document("$first", "$v"))
+                .append("last", new Document("$last", "$v"))));
+        operations.add(Aggregation.sort(Sort.Direction.ASC, "_id"));
+
+        List<PointValueAggregate> pointValueAggregates = new ArrayList<>();
+        for (Document document : mongoTemplate.aggregate(aggregation(operations), collection(), Document.class)) {
+            pointValueAggregates.add(new PointValueAggregate()
+                    .setDeviceId(pointValueAggregateDto.getDeviceId())
+                    .setPointId(pointValueAggregateDto.getPointId())
+                    .setTime(((Number) document.get("_id")).longValue())
+                    .setCount(((Number) document.get("count")).longValue())
+                    .setMin(document.getDouble("min"))
+                    .setMax(document.getDouble("max"))
+                    .setAvg(document.getDouble("avg"))
+                    .setFirst(document.getDouble("first"))
+                    .setLast(document.getDouble("last")));
+        }
+        log.debug("Aggregate point value, device: {}, point: {}, range: {}~{}, interval: {}, windows: {}",
+                pointValueAggregateDto.getDeviceId(), pointValueAggregateDto.getPointId(), startTime, endTime, interval, pointValueAggregates.size());
+        return pointValueAggregates;
+    }
+
+    @Override
+    public List<PointValue> downsample(PointValueAggregateDto pointValueAggregateDto) {
+        check(pointValueAggregateDto);
+        long startTime = pointValueAggregateDto.getStartTime(), endTime = pointValueAggregateDto.getEndTime();
+        int points = Math.max(3, points(pointValueAggregateDto));
+
+        // the first and the last point are always kept, the rest of the range is split into points - 2 buckets
+        long width = Math.max(1L, (endTime - startTime + 1 + points - 3) / (points - 2));
+
+        // first pass: average time and value of every bucket, computed by MongoDB
+        List<AggregationOperation> operations = source(pointValueAggregateDto, endTime);
+        operations.add(stage("$group", new Document("_id", new Document("$subtract", Arrays.asList("$t", new Document("$mod", Arrays.asList(new Document("$subtract", Arrays.asList("$t", startTime)), width)))))
+                .append("count", new Document("$sum", 1))
+                .append("t", new Document("$avg", "$t"))
+                .append("v", new Document("$avg", "$v"))
+                .append("maxT", new Document("$max", "$t"))));
+        TreeMap<Long, double[]> averages = new TreeMap<>();
+        long total = 0, maxTime = startTime;
+        for (Document document : mongoTemplate.aggregate(aggregation(operations), collection(), Document.class)) {
+            averages.put(((Number) document.get("_id")).longValue(), new double[]{document.getDouble("t"), document.getDouble("v")});
+            total += ((Number) document.get("count")).longValue();
+            maxTime = Math.max(maxTime, ((Number) document.get("maxT")).longValue());
+        }
+
+        // second pass: stream the raw points in time order, keep the point forming the largest triangle in each bucket;
+        // clamped to the first pass, points arriving in between would fall into buckets without an average
+        List<PointValue> pointValues = new ArrayList<>(Math.min(points, (int) total));
+        operations = source(pointValueAggregateDto, maxTime);
+        try (CloseableIterator<Document> iterator = mongoTemplate.aggregateStream(aggregation(operations), collection(), Document.class)) {
+            Document selected = null, best = null, last = null;
+            Long bucket = null;
+            double[] next = null;
+            double bestArea = -1;
+            while (iterator.hasNext()) {
+                Document document = iterator.next();
+                last = document;
+                if (total <= points || null == selected) {
+                    selected = document;
+                    pointValues.add(convert(pointValueAggregateDto, document));
+                    continue;
+                }
+
+                long t = ((Number) document.get("t")).longValue();
+                long key = t - (t - startTime) % width;
+                if (null == bucket || key != bucket) {
+                    if (null != best) {
+                        selected = best;
+                        pointValues.add(convert(pointValueAggregateDto, best));
+                    }
+                    bucket = key;
+                    best = null;
+                    bestArea = -1;
+                    Map.Entry<Long, double[]> entry = averages.higherEntry(key);
+                    next = null != entry ? entry.getValue() : averages.get(key);
+                }
+                if (null == next) {
+                    // late data in a bucket the first pass never saw, fall back to the last selected point
+                    next = new double[]{((Number) selected.get("t")).doubleValue(), selected.getDouble("v")};
+                }
+
+                double at = ((Number) selected.get("t")).doubleValue(), av = selected.getDouble("v");
+                double area = Math.abs((at - next[0]) * (document.getDouble("v") - av) - (at - t) * (next[1] - av));
+                if (area > bestArea) {
+                    best = document;
+                    bestArea = area;
+                }
+            }
+            if (total > points && null != best && best != last) {
+                pointValues.add(convert(pointValueAggregateDto, best));
+            }
+            if (total > points && null != last && last != selected) {
+                pointValues.add(convert(pointValueAggregateDto, last));
+            }
+        }
+        log.debug("Downsample point value, device: {}, point: {}, range: {}~{}, total: {}, points: {}",
+                pointValueAggregateDto.getDeviceId(), pointValueAggregateDto.getPointId(), startTime, endTime, total, pointValues.size());
+        return pointValues;
+    }
+
+    private void check(PointValueAggregateDto pointValueAggregateDto) {
+        if (null == pointValueAggregateDto || null == pointValueAggregateDto.getDeviceId() || null == pointValueAggregateDto.getPointId()) {
+            throw new ServiceException("Device id and point id can't be empty");
+        }
+        if (null == pointValueAggregateDto.getStartTime() || null == pointValueAggregateDto.getEndTime() || pointValueAggregateDto.getStartTime() > pointValueAggregateDto.getEndTime()) {
+            throw new ServiceException("Invalid time range");
+        }
+    }
+
+    private int points(PointValueAggregateDto pointValueAggregateDto) {
+        Integer points = pointValueAggregateDto.getPoints();
+        if (null == points || points < 1) {
+            points = aggregateProperty.getDefaultPoints();
+        }
+        return Math.min(points, aggregateProperty.getMaxPoints());
+    }
+
+    /**
+     * 计算聚合时间窗口，指定的窗口过小导致窗口数量超过 maxPoints 时会被放大
+     *
+     * @param pointValueAggregateDto PointValueAggregateDto
+     * @return interval
+     */
+    private long interval(PointValueAggregateDto pointValueAggregateDto) {
+        long range = pointValueAggregateDto.getEndTime() - pointValueAggregateDto.getStartTime() + 1;
+        long minInterval = Math.max(1L, (range + aggregateProperty.getMaxPoints() - 1) / aggregateProperty.getMaxPoints());
+        Long interval = pointValueAggregateDto.getInterval();
+        if (null == interval || interval < 1) {
+            int points = points(pointValueAggregateDto);
+            interval = (range + points - 1) / points;
+        }
+        return Math.max(interval, minInterval);
+    }
+
+    /**
+     * 读取指定设备位号在时间范围内的数值，输出按时间正序的 {t: originTime, v: double, s: value}，无法转换为数值的位号值会被过滤
+     *
+     * @param pointValueAggregateDto PointValueAggregateDto
+     * @param endTime                End Time
+     * @return AggregationOperation Array
+     */
+    private List<AggregationOperation> source(PointValueAggregateDto pointValueAggregateDto, long endTime) {
+        Long pointId = pointValueAggregateDto.getPointId();
+        long startTime = pointValueAggregateDto.getStartTime();
+
+        List<AggregationOperation> operations = new ArrayList<>();
+        if (storageProperty.getBucketEnable()) {
+            String samples = "samples";
+            operations.add(Aggregation.match(Criteria.where("deviceId").is(pointValueAggregateDto.getDeviceId())
+                    .and("pointId").is(pointId)
+                    .and("hour").gte(PointValueBucket.hour(startTime)).lte(endTime)));
+            operations.add(Aggregation.unwind(samples));
+            operations.add(Aggregation.match(Criteria.where(samples + "." + Sample.ORIGIN_TIME).gte(startTime).lte(endTime)));
+            // late values are appended to the end of a bucket and an hour may span several buckets
+            operations.add(Aggregation.sort(Sort.Direction.ASC, samples + "." + Sample.ORIGIN_TIME));
+            operations.add(stage("$project", new Document("_id", 0)
+                    .append("t", "$" + samples + "." + Sample.ORIGIN_TIME)
+                    .append("s", "$" + samples + "." + Sample.VALUE)));
+        } else {
+            operations.add(Aggregation.match(Criteria.where("deviceId").is(pointValueAggregateDto.getDeviceId())
+                    .orOperator(
+                            (new Criteria()).and("pointId").is(pointId),
+                            (new Criteria()).and("children.pointId").is(pointId)
+                    )
+                    .and("originTime").gte(startTime).lte(endTime)));
+            operations.add(Aggregation.sort(Sort.Direction.ASC, "originTime"));
+
+            // multi value point values keep the value inside children
+            Document child = new Document("$filter", new Document("input", new Document("$ifNull", Arrays.asList("$children", Collections.emptyList())))
+                    .append("as", "child")
+                    .append("cond", new Document("$eq", Arrays.asList("$$child.pointId", pointId))));
+            operations.add(stage("$project", new Document("_id", 0)
+                    .append("t", "$originTime")
+                    .append("s", new Document("$cond", Arrays.asList(
+                            new Document("$eq", Arrays.asList("$pointId", pointId)),
+                            "$value",
+                            new Document("$arrayElemAt", Arrays.asList(new Document("$map", new Document("input", child).append("as", "child").append("in", "$$child.value")), 0))
+                    )))));
+        }
+        operations.add(stage("$addFields", new Document("v", new Document("$convert", new Document("input", "$s").append("to", "double").append("onError", null).append("onNull", null)))));
+        operations.add(Aggregation.match(Criteria.where("v").ne(null)));
+        return operations;
+    }
+
+    private Aggregation aggregation(List<AggregationOperation> operations) {
+        return Aggregation.newAggregation(operations).withOptions(AggregationOptions.builder().allowDiskUse(true).cursorBatchSize(aggregateProperty.getBatchSize()).build());
+    }
+
+    private String collection() {
+        return storageProperty.getBucketEnable() ? PointValueBucket.COLLECTION : mongoTemplate.getCollectionName(PointValue.class);
+    }
+
+    private AggregationOperation stage(String operator, Document document) {
+        return context -> new Document(operator, document);
+    }
+
+    private PointValue convert(PointValueAggregateDto pointValueAggregateDto, Document document) {
+        String value = document.getString("s");
+        return new PointValue(pointValueAggregateDto.getDeviceId(), pointValueAggregateDto.getPointId(), value, value)
+                .setOriginTime(((Number) document.get("t")).longValue());
+    }
+
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.service.impl;
+
+import com.dc3.center.data.bean.ArchiveProperty;
+import com.dc3.center.data.bean.PointValueArchive;
+import com.dc3.center.data.bean.PointValueArchive.Vertex;
+import com.dc3.center.data.bean.PointValueBucket;
+import com.dc3.center.data.service.PointCacheService;
+import com.dc3.center.data.service.PointValueArchiveService;
+import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.bean.driver.PointValueAggregateDto;
+import com.dc3.common.bean.driver.SwingingDoor;
+import com.dc3.common.exception.ServiceException;
+import com.dc3.common.model.Point;
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author pnoker
+ */
+@Slf4j
+@Service
+@EnableConfigurationProperties({ArchiveProperty.class})
+public class PointValueArchiveServiceImpl implements PointValueArchiveService {
+
+    private static final int DUPLICATE_KEY = 11000;
+    private static final int MAX_ATTEMPTS = 3;
+
+    @Resource
+    private MongoTemplate mongoTemplate;
+    @Resource
+    private ArchiveProperty archiveProperty;
+    @Resource
+    private PointCacheService pointCacheService;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    /**
+     * deviceId(pointId,door)
+     */
+    private final Map<Long, Map<Long, Door>> doorMap = new ConcurrentHashMap<>(16);
+    private Counter receivedCounter, archivedCounter;
+
+    @PostConstruct
+    public void initial() {
+        receivedCounter = Counter.builder("dc3.data.archive.received")
+                .description("Point values offered to the swinging door compression")
+                .register(meterRegistry);
+        archivedCounter = Counter.builder("dc3.data.archive.archived")
+                .description("Archive points written after swinging door compression")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 退出前将内存中尚未存档的最新点写入存档
+     */
+    @PreDestroy
+    public void destroy() {
+        Map<List<Long>, Map<Long, Document>> segmentMap = new LinkedHashMap<>(16);
+        doorMap.forEach((deviceId, pointMap) -> pointMap.forEach((pointId, door) -> {
+            synchronized (door) {
+                if (null != door.swingingDoor.pending()) {
+                    vertex(segmentMap, deviceId, pointId, door.swingingDoor.getHeldTime(), door.swingingDoor.getHeldValue());
+                    door.swingingDoor.reset(door.swingingDoor.getHeldTime(), door.swingingDoor.getHeldValue());
+                }
+            }
+        }));
+        upsert(segmentMap);
+    }
+
+    @Override
+    public List<PointValue> addPointValues(List<PointValue> pointValues) {
+        List<PointValue> unarchived = new ArrayList<>();
+        Map<List<Long>, Map<Long, Document>> segmentMap = new LinkedHashMap<>(16);
+        for (PointValue pointValue : pointValues) {
+            Long time = null != pointValue.getOriginTime() ? pointValue.getOriginTime() : pointValue.getCreateTime();
+            Double value = number(pointValue.getValue());
+            Point point = null == pointValue.getChildren() && null != pointValue.getPointId() ? pointCacheService.get(pointValue.getPointId()) : null;
+            if (null == pointValue.getDeviceId() || null == time || null == value || null == point || null == point.getDeviation() || point.getDeviation() <= 0) {
+                unarchived.add(pointValue);
+                continue;
+            }
+
+            // point configuration changes restart the compression, the point held by the old door is archived first
+            Door[] replaced = new Door[1];
+            Door door = doorMap.computeIfAbsent(pointValue.getDeviceId(), k -> new ConcurrentHashMap<>(16))
+                    .compute(pointValue.getPointId(), (k, v) -> {
+                        if (null != v && v.deviation == point.getDeviation()) {
+                            return v;
+                        }
+                        replaced[0] = v;
+                        return new Door(point.getDeviation());
+                    });
+            if (null != replaced[0]) {
+                synchronized (replaced[0]) {
+                    if (null != replaced[0].swingingDoor.pending()) {
+                        vertex(segmentMap, pointValue.getDeviceId(), pointValue.getPointId(), replaced[0].swingingDoor.getHeldTime(), replaced[0].swingingDoor.getHeldValue());
+                    }
+                }
+            }
+            synchronized (door) {
+                SwingingDoor<Boolean> swingingDoor = door.swingingDoor;
+                // the compression only moves forward, late values are stored raw instead of being dropped
+                if (!swingingDoor.accepts(time)) {
+                    unarchived.add(pointValue);
+                    continue;
+                }
+                if (swingingDoor.isStarted() && null != swingingDoor.pending() && time - swingingDoor.getArchivedTime() >= archiveProperty.getMaxInterval()) {
+                    vertex(segmentMap, pointValue.getDeviceId(), pointValue.getPointId(), swingingDoor.getHeldTime(), swingingDoor.getHeldValue());
+                    swingingDoor.reset(swingingDoor.getHeldTime(), swingingDoor.getHeldValue());
+                }
+                if (null != swingingDoor.offer(time, value, Boolean.TRUE)) {
+                    vertex(segmentMap, pointValue.getDeviceId(), pointValue.getPointId(), swingingDoor.getArchivedTime(), swingingDoor.getArchivedValue());
+                }
+            }
+            receivedCounter.increment();
+        }
+        upsert(segmentMap);
+        return unarchived;
+    }
+
+    @Override
+    public List<PointValue> interpolate(PointValueAggregateDto pointValueAggregateDto) {
+        if (null == pointValueAggregateDto || null == pointValueAggregateDto.getDeviceId() || null == pointValueAggregateDto.getPointId()) {
+            throw new ServiceException("Device id and point id can't be empty");
+        }
+        if (null == pointValueAggregateDto.getStartTime() || null == pointValueAggregateDto.getEndTime() || pointValueAggregateDto.getStartTime() > pointValueAggregateDto.getEndTime()) {
+            throw new ServiceException("Invalid time range");
+        }
+        Long deviceId = pointValueAggregateDto.getDeviceId(), pointId = pointValueAggregateDto.getPointId();
+        long startTime = pointValueAggregateDto.getStartTime(), endTime = pointValueAggregateDto.getEndTime();
+        long interval = interval(pointValueAggregateDto);
+
+        // segments covering the range plus the segments holding the archive points right before and after it
+        Criteria criteria = Criteria.where("deviceId").is(deviceId).and("pointId").is(pointId);
+        Query beforeQuery = new Query(Criteria.where("deviceId").is(deviceId).and("pointId").is(pointId).and("startTime").lte(startTime)).with(Sort.by(Sort.Direction.DESC, "hour"));
+        Query afterQuery = new Query(Criteria.where("deviceId").is(deviceId).and("pointId").is(pointId).and("endTime").gte(endTime)).with(Sort.by(Sort.Direction.ASC, "hour"));
+        beforeQuery.fields().include("hour");
+        afterQuery.fields().include("hour");
+        PointValueArchive before = mongoTemplate.findOne(beforeQuery, PointValueArchive.class);
+        PointValueArchive after = mongoTemplate.findOne(afterQuery, PointValueArchive.class);
+        criteria.and("hour").gte(null != before ? before.getHour() : PointValueBucket.hour(startTime)).lte(null != after ? after.getHour() : endTime);
+        List<PointValueArchive> segments = mongoTemplate.find(new Query(criteria).with(Sort.by(Sort.Direction.ASC, "hour")), PointValueArchive.class);
+
+        List<Vertex> vertices = new ArrayList<>();
+        for (PointValueArchive segment : segments) {
+            if (null != segment.getPoints()) {
+                List<Vertex> points = new ArrayList<>(segment.getPoints());
+                points.sort(Comparator.comparing(Vertex::getT));
+                vertices.addAll(points);
+            }
+        }
+
+        // the latest point is only kept in memory until the doors open
+        Door door = doorMap.getOrDefault(deviceId, Collections.emptyMap()).get(pointId);
+        if (null != door) {
+            synchronized (door) {
+                if (null != door.swingingDoor.pending() && (vertices.isEmpty() || door.swingingDoor.getHeldTime() > vertices.get(vertices.size() - 1).getT())) {
+                    vertices.add(new Vertex(door.swingingDoor.getHeldTime(), door.swingingDoor.getHeldValue()));
+                }
+            }
+        }
+
+        Point point = pointCacheService.get(pointId);
+        String format = null != point ? point.getFormat() : null;
+        List<PointValue> pointValues = new ArrayList<>();
+        int index = 0;
+        for (long time = startTime; time <= endTime; time += interval) {
+            while (index < vertices.size() - 1 && vertices.get(index + 1).getT() <= time) {
+                index++;
+            }
+            if (vertices.isEmpty() || time < vertices.get(index).getT()) {
+                continue;
+            }
+            Vertex left = vertices.get(index);
+            double value;
+            if (time == left.getT()) {
+                value = left.getV();
+            } else if (index < vertices.size() - 1) {
+                Vertex right = vertices.get(index + 1);
+                value = left.getV() + (right.getV() - left.getV()) * (time - left.getT()) / (right.getT() - left.getT());
+            } else {
+                continue;
+            }
+            String text = format(format, value);
+            pointValues.add(new PointValue(deviceId, pointId, text, text).setOriginTime(time));
+        }
+        return pointValues;
+    }
+
+    private long interval(PointValueAggregateDto pointValueAggregateDto) {
+        long range = pointValueAggregateDto.getEndTime() - pointValueAggregateDto.getStartTime();
+        long minInterval = Math.max(1L, (range + archiveProperty.getMaxPoints() - 1) / archiveProperty.getMaxPoints());
+        Long interval = pointValueAggregateDto.getInterval();
+        if (null == interval || interval < 1) {
+            Integer points = pointValueAggregateDto.getPoints();
+            interval = null != points && points > 1 ? range / (points - 1) : range;
+        }
+        return Math.max(interval, minInterval);
+    }
+
+    private void vertex(Map<List<Long>, Map<Long, Document>> segmentMap, Long deviceId, Long pointId, long time, double value) {
+        segmentMap.computeIfAbsent(Arrays.asList(deviceId, pointId, PointValueBucket.hour(time)), k -> new LinkedHashMap<>())
+                .putIfAbsent(time, new Document("t", time).append("v", value));
+    }
+
+    /**
+     * 存档点按时间去重，只有存档段中不存在这些时间的存档点时才写入；部分已存在时唯一索引冲突，读取已有的时间后只写入其余存档点
+     *
+     * @param segmentMap Map<[deviceId, pointId, hour], Map<t, Vertex>>
+     */
+    private void upsert(Map<List<Long>, Map<Long, Document>> segmentMap) {
+        long count = 0;
+        Map<List<Long>, Map<Long, Document>> pending = segmentMap;
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            List<List<Long>> keys = new ArrayList<>(pending.size());
+            BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PointValueArchive.COLLECTION);
+            for (Map.Entry<List<Long>, Map<Long, Document>> entry : pending.entrySet()) {
+                Set<Long> times = entry.getValue().keySet();
+                Query query = new Query(criteria(entry.getKey()).and("points.t").nin(times));
+                Update update = new Update();
+                update.push("points").each(entry.getValue().values().toArray());
+                update.min("startTime", Collections.min(times)).max("endTime", Collections.max(times));
+                bulkOperations.upsert(query, update);
+                keys.add(entry.getKey());
+            }
+
+            Map<List<Long>, Map<Long, Document>> conflicts = new LinkedHashMap<>(16);
+            try {
+                bulkOperations.execute();
+            } catch (BulkOperationException e) {
+                for (BulkWriteError error : e.getErrors()) {
+                    if (error.getCode() != DUPLICATE_KEY || attempt >= MAX_ATTEMPTS) {
+                        throw e;
+                    }
+                    List<Long> key = keys.get(error.getIndex());
+                    conflicts.put(key, pending.get(key));
+                }
+            }
+            for (Map.Entry<List<Long>, Map<Long, Document>> entry : pending.entrySet()) {
+                if (!conflicts.containsKey(entry.getKey())) {
+                    count += entry.getValue().size();
+                }
+            }
+
+            // drop the archive points the segments already hold and push the rest
+            for (Map.Entry<List<Long>, Map<Long, Document>> entry : conflicts.entrySet()) {
+                Query query = new Query(criteria(entry.getKey()));
+                query.fields().include("points.t");
+                PointValueArchive segment = mongoTemplate.findOne(query, PointValueArchive.class);
+                if (null != segment && null != segment.getPoints()) {
+                    segment.getPoints().forEach(point -> entry.getValue().remove(point.getT()));
+                }
+            }
+            conflicts.values().removeIf(Map::isEmpty);
+            pending = conflicts;
+        }
+        archivedCounter.increment(count);
+    }
+
+    private Criteria criteria(List<Long> key) {
+        return Criteria.where("deviceId").is(key.get(0)).and("pointId").is(key.get(1)).and("hour").is(key.get(2));
+    }
+
+    private String format(String format, double value) {
+        if (null != format && !format.isEmpty()) {
+            try {
+                return String.format(format, value);
+            } catch (Exception ignored) {
+                // fall through to the plain representation
+            }
+        }
+        return String.valueOf(value);
+    }
+
+    private Double number(String value) {
+        if (null == value) {
+            return null;
+        }
+        try {
+            double number = Double.parseDouble(value.trim());
+            return Double.isNaN(number) || Double.isInfinite(number) ? null : number;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 单个位号的压缩状态，偏差变化时重新创建
+     */
+    private static class Door {
+        private final float deviation;
+        private final SwingingDoor<Boolean> swingingDoor;
+
+        private Door(float deviation) {
+            this.deviation = deviation;
+            this.swingingDoor = new SwingingDoor<>(deviation);
+        }
+    }
+
+}
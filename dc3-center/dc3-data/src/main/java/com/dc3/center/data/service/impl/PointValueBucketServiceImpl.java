@@ -0,0 +1,460 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.service.impl;
+
+import cn.hutool.core.lang.Pair;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.dc3.center.data.bean.PointValueBucket;
+import com.dc3.center.data.bean.PointValueBucket.Sample;
+import com.dc3.center.data.bean.StorageProperty;
+import com.dc3.center.data.service.PointValueBucketService;
+import com.dc3.center.data.utils.CursorUtil;
+import com.dc3.common.bean.CursorPage;
+import com.dc3.common.bean.Pages;
+import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.bean.driver.PointValueDto;
+import com.dc3.common.exception.ServiceException;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.*;
+
+/**
+ * @author pnoker
+ */
+@Slf4j
+@Service
+@EnableConfigurationProperties({StorageProperty.class})
+public class PointValueBucketServiceImpl implements PointValueBucketService {
+
+    private static final String SAMPLES = "samples";
+    private static final String SAMPLE_INDEX = "sampleIndex";
+    private static final String COUNT = "count";
+    private static final String CURSOR_SEPARATOR = "_";
+
+    @Resource
+    private MongoTemplate mongoTemplate;
+    @Resource
+    private StorageProperty storageProperty;
+
+    @Override
+    public void addPointValues(List<PointValue> pointValues) {
+        upsert(pointValues);
+    }
+
+    @Override
+    public PointValue latest(Long deviceId, Long pointId) {
+        Criteria criteria = Criteria.where("deviceId").is(deviceId);
+        if (null != pointId) {
+            criteria.and("pointId").is(pointId);
+        }
+        Query query = new Query(criteria);
+        query.with(Sort.by(Sort.Direction.DESC, "endTime"));
+        PointValueBucket bucket = mongoTemplate.findOne(query, PointValueBucket.class);
+        if (null == bucket || null == bucket.getSamples() || bucket.getSamples().isEmpty()) {
+            return null;
+        }
+
+        Sample latest = bucket.getSamples().get(0);
+        for (Sample sample : bucket.getSamples()) {
+            if (sample.getOriginTime() >= latest.getOriginTime()) {
+                latest = sample;
+            }
+        }
+        return new PointValue(bucket.getDeviceId(), bucket.getPointId(), latest.getRawValue(), latest.getValue())
+                .setCalculateValue(latest.getCalculateValue())
+                .setOriginTime(latest.getOriginTime())
+                .setCreateTime(latest.getCreateTime());
+    }
+
+    @Override
+    public Page<PointValue> list(PointValueDto pointValueDto) {
+        if (null == pointValueDto) {
+            pointValueDto = new PointValueDto();
+        }
+        Pages pages = null == pointValueDto.getPage() ? new Pages() : pointValueDto.getPage();
+
+        Criteria bucketCriteria = new Criteria();
+        Criteria sampleCriteria = new Criteria();
+        if (null != pointValueDto.getDeviceId()) {
+            bucketCriteria.and("deviceId").is(pointValueDto.getDeviceId());
+        }
+        if (null != pointValueDto.getPointId()) {
+            bucketCriteria.and("pointId").is(pointValueDto.getPointId());
+        }
+        if (pages.getStartTime() > 0 && pages.getEndTime() > 0 && pages.getStartTime() <= pages.getEndTime()) {
+            bucketCriteria.and("hour").gte(PointValueBucket.hour(pages.getStartTime())).lte(pages.getEndTime());
+            sampleCriteria.and(SAMPLES + "." + Sample.ORIGIN_TIME).gte(pages.getStartTime()).lte(pages.getEndTime());
+        }
+
+        List<AggregationOperation> operations = new ArrayList<>();
+        operations.add(Aggregation.match(bucketCriteria));
+        operations.add(Aggregation.unwind(SAMPLES));
+        operations.add(Aggregation.match(sampleCriteria));
+
+        List<AggregationOperation> countOperations = new ArrayList<>(operations);
+        countOperations.add(Aggregation.count().as("total"));
+        Document total = mongoTemplate.aggregate(Aggregation.newAggregation(countOperations), PointValueBucket.COLLECTION, Document.class).getUniqueMappedResult();
+        long count = null != total ? ((Number) total.get("total")).longValue() : 0L;
+
+        int size = (int) pages.getSize();
+        long page = pages.getCurrent();
+        operations.add(Aggregation.sort(Sort.Direction.DESC, SAMPLES + "." + Sample.ORIGIN_TIME));
+        operations.add(Aggregation.skip(size * (page - 1)));
+        operations.add(Aggregation.limit(size));
+        Aggregation aggregation = Aggregation.newAggregation(operations)
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+
+        List<PointValue> pointValues = new ArrayList<>(size);
+        long id = 0L;
+        for (Document document : mongoTemplate.aggregate(aggregation, PointValueBucket.COLLECTION, Document.class)) {
+            PointValue pointValue = unpack(document, (Document) document.get(SAMPLES));
+            pointValue.setId(id++);
+            pointValues.add(pointValue);
+        }
+        return (new Page<PointValue>()).setCurrent(pages.getCurrent()).setSize(pages.getSize()).setTotal(count).setRecords(pointValues);
+    }
+
+    @Override
+    public CursorPage<PointValue> history(PointValueDto pointValueDto) {
+        if (null == pointValueDto) {
+            pointValueDto = new PointValueDto();
+        }
+        Pages pages = null == pointValueDto.getPage() ? new Pages() : pointValueDto.getPage();
+
+        Criteria bucketCriteria = new Criteria();
+        Criteria sampleCriteria = new Criteria();
+        if (null != pointValueDto.getDeviceId()) {
+            bucketCriteria.and("deviceId").is(pointValueDto.getDeviceId());
+        }
+        if (null != pointValueDto.getPointId()) {
+            bucketCriteria.and("pointId").is(pointValueDto.getPointId());
+        }
+        if (pages.getStartTime() > 0 && pages.getEndTime() > 0 && pages.getStartTime() <= pages.getEndTime()) {
+            bucketCriteria.and("hour").gte(PointValueBucket.hour(pages.getStartTime())).lte(pages.getEndTime());
+            sampleCriteria.and(SAMPLES + "." + Sample.ORIGIN_TIME).gte(pages.getStartTime()).lte(pages.getEndTime());
+        }
+
+        Long count = null;
+        if (Boolean.TRUE.equals(pointValueDto.getCount())) {
+            Aggregation countAggregation = Aggregation.newAggregation(
+                    Aggregation.match(bucketCriteria),
+                    Aggregation.unwind(SAMPLES),
+                    Aggregation.match(sampleCriteria),
+                    Aggregation.count().as("total")
+            );
+            Document total = mongoTemplate.aggregate(countAggregation, PointValueBucket.COLLECTION, Document.class).getUniqueMappedResult();
+            count = null != total ? ((Number) total.get("total")).longValue() : 0L;
+        }
+
+        // (originTime, bucket _id, sample index) < cursor, a unique key even across devices
+        long upper = pages.getEndTime() > 0 ? pages.getEndTime() : Long.MAX_VALUE;
+        if (null != pointValueDto.getCursor()) {
+            Pair<Long, String> cursor = CursorUtil.decode(pointValueDto.getCursor());
+            int index = cursor.getValue().lastIndexOf(CURSOR_SEPARATOR);
+            ObjectId bucketId;
+            int sampleIndex;
+            try {
+                bucketId = new ObjectId(cursor.getValue().substring(0, index));
+                sampleIndex = Integer.parseInt(cursor.getValue().substring(index + 1));
+            } catch (Exception e) {
+                throw new ServiceException("Invalid cursor: " + pointValueDto.getCursor());
+            }
+            upper = Math.min(upper, cursor.getKey());
+            String originTime = SAMPLES + "." + Sample.ORIGIN_TIME;
+            sampleCriteria = new Criteria().andOperator(sampleCriteria, new Criteria().orOperator(
+                    Criteria.where(originTime).lt(cursor.getKey()),
+                    Criteria.where(originTime).is(cursor.getKey()).and("_id").lt(bucketId),
+                    Criteria.where(originTime).is(cursor.getKey()).and("_id").is(bucketId).and(SAMPLE_INDEX).lt(sampleIndex)
+            ));
+        }
+
+        // samples of a bucket all fall inside its hour, so walking the hours newest first and unwinding one hour
+        // at a time keeps each page bounded by the buckets it actually returns, however deep the cursor is
+        int size = (int) pages.getSize();
+        List<Document> documents = new ArrayList<>(size + 1);
+        while (documents.size() <= size) {
+            Query hourQuery = new Query(new Criteria().andOperator(bucketCriteria, Criteria.where("hour").lte(upper)));
+            hourQuery.with(Sort.by(Sort.Direction.DESC, "hour")).limit(1).fields().include("hour");
+            Document latest = mongoTemplate.findOne(hourQuery, Document.class, PointValueBucket.COLLECTION);
+            if (null == latest) {
+                break;
+            }
+            long hour = latest.getLong("hour");
+
+            Aggregation aggregation = Aggregation.newAggregation(
+                    Aggregation.match(new Criteria().andOperator(bucketCriteria, Criteria.where("hour").is(hour))),
+                    Aggregation.unwind(SAMPLES, SAMPLE_INDEX),
+                    Aggregation.match(sampleCriteria),
+                    Aggregation.sort(Sort.Direction.DESC, SAMPLES + "." + Sample.ORIGIN_TIME, "_id", SAMPLE_INDEX),
+                    Aggregation.limit(size + 1 - documents.size())
+            ).withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+            documents.addAll(mongoTemplate.aggregate(aggregation, PointValueBucket.COLLECTION, Document.class).getMappedResults());
+            upper = hour - 1;
+        }
+
+        List<PointValue> pointValues = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            pointValues.add(unpack(document, (Document) document.get(SAMPLES)));
+        }
+
+        String next = null;
+        if (pointValues.size() > size) {
+            pointValues = pointValues.subList(0, size);
+            Document last = documents.get(size - 1);
+            next = CursorUtil.encode(pointValues.get(size - 1).getOriginTime(),
+                    last.getObjectId("_id").toHexString() + CURSOR_SEPARATOR + ((Number) last.get(SAMPLE_INDEX)).intValue());
+        }
+        long id = 0L;
+        for (PointValue pointValue : pointValues) {
+            pointValue.setId(id++);
+        }
+        return (new CursorPage<PointValue>()).setSize(size).setCursor(next).setTotal(count).setRecords(pointValues);
+    }
+
+    @Override
+    public CloseableIterator<PointValue> stream(Long deviceId, List<Long> pointIds, Long startTime, Long endTime, int batchSize) {
+        Criteria bucketCriteria = new Criteria();
+        Criteria sampleCriteria = new Criteria();
+        if (null != deviceId) {
+            bucketCriteria.and("deviceId").is(deviceId);
+        }
+        if (null != pointIds && !pointIds.isEmpty()) {
+            bucketCriteria.and("pointId").in(pointIds);
+        }
+        if (null != startTime || null != endTime) {
+            Criteria hourCriteria = bucketCriteria.and("hour");
+            Criteria timeCriteria = sampleCriteria.and(SAMPLES + "." + Sample.ORIGIN_TIME);
+            if (null != startTime) {
+                hourCriteria.gte(PointValueBucket.hour(startTime));
+                timeCriteria.gte(startTime);
+            }
+            if (null != endTime) {
+                hourCriteria.lte(endTime);
+                timeCriteria.lte(endTime);
+            }
+        }
+
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(bucketCriteria),
+                Aggregation.sort(Sort.Direction.ASC, "hour", "pointId"),
+                Aggregation.unwind(SAMPLES),
+                Aggregation.match(sampleCriteria)
+        ).withOptions(AggregationOptions.builder().allowDiskUse(true).cursorBatchSize(batchSize).build());
+
+        CloseableIterator<Document> iterator = mongoTemplate.aggregateStream(aggregation, PointValueBucket.COLLECTION, Document.class);
+        return new CloseableIterator<PointValue>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public PointValue next() {
+                Document document = iterator.next();
+                return unpack(document, (Document) document.get(SAMPLES));
+            }
+
+            @Override
+            public void close() {
+                iterator.close();
+            }
+        };
+    }
+
+    @Override
+    public long migrate(PointValueDto pointValueDto) {
+        Criteria criteria = new Criteria();
+        Pages pages = new Pages();
+        if (null != pointValueDto) {
+            if (null != pointValueDto.getDeviceId()) {
+                criteria.and("deviceId").is(pointValueDto.getDeviceId());
+            }
+            if (null != pointValueDto.getPointId()) {
+                criteria.orOperator(
+                        (new Criteria()).and("pointId").is(pointValueDto.getPointId()),
+                        (new Criteria()).and("children").elemMatch((new Criteria()).and("pointId").is(pointValueDto.getPointId()))
+                );
+            }
+            if (null != pointValueDto.getPage()) {
+                pages = pointValueDto.getPage();
+            }
+        }
+        if (pages.getStartTime() > 0 && pages.getEndTime() > 0 && pages.getStartTime() <= pages.getEndTime()) {
+            criteria.and("originTime").gte(pages.getStartTime()).lte(pages.getEndTime());
+        }
+
+        long count = 0;
+        int batchSize = storageProperty.getMigrateBatchSize();
+        List<PointValue> batch = new ArrayList<>(batchSize);
+        try (CloseableIterator<PointValue> iterator = mongoTemplate.stream(new Query(criteria), PointValue.class)) {
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() >= batchSize) {
+                    count += upsert(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        }
+        count += upsert(batch);
+        log.info("Migrate point value to bucket, criteria: {}, count: {}", criteria.getCriteriaObject(), count);
+        return count;
+    }
+
+    /**
+     * 按设备、位号、小时分组后批量 upsert 到对应的桶中
+     * <p>
+     * 只写入剩余空间足够的桶文档，没有时插入新的桶文档，单个桶文档的样本数量不超过 bucketMaxSamples；
+     * 以 originTime 去重，写入前跳过时间范围与本批重叠的桶中已有的样本，失败重试或重复迁移不会产生重复数据
+     *
+     * @param pointValues PointValue Array
+     * @return 写入的位号值数量
+     */
+    private long upsert(List<PointValue> pointValues) {
+        if (null == pointValues || pointValues.isEmpty()) {
+            return 0;
+        }
+
+        Map<List<Long>, Map<Long, Document>> bucketMap = new LinkedHashMap<>(16);
+        for (PointValue pointValue : pointValues) {
+            Long originTime = null != pointValue.getOriginTime() ? pointValue.getOriginTime() : pointValue.getCreateTime();
+            if (null == originTime) {
+                continue;
+            }
+            if (null != pointValue.getChildren()) {
+                for (PointValue child : pointValue.getChildren()) {
+                    if (null != child.getPointId()) {
+                        bucketMap.computeIfAbsent(Arrays.asList(pointValue.getDeviceId(), child.getPointId(), PointValueBucket.hour(originTime)), k -> new LinkedHashMap<>())
+                                .putIfAbsent(originTime, pack(child, originTime, pointValue.getCreateTime()));
+                    }
+                }
+            } else if (null != pointValue.getPointId()) {
+                bucketMap.computeIfAbsent(Arrays.asList(pointValue.getDeviceId(), pointValue.getPointId(), PointValueBucket.hour(originTime)), k -> new LinkedHashMap<>())
+                        .putIfAbsent(originTime, pack(pointValue, originTime, pointValue.getCreateTime()));
+            }
+        }
+        existing(bucketMap).forEach((key, times) -> bucketMap.get(key).keySet().removeAll(times));
+        bucketMap.values().removeIf(Map::isEmpty);
+        if (bucketMap.isEmpty()) {
+            return 0;
+        }
+
+        long count = 0;
+        int maxSamples = storageProperty.getBucketMaxSamples();
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PointValueBucket.COLLECTION);
+        for (Map.Entry<List<Long>, Map<Long, Document>> entry : bucketMap.entrySet()) {
+            List<Document> samples = new ArrayList<>(entry.getValue().values());
+            for (int from = 0; from < samples.size(); from += maxSamples) {
+                List<Document> chunk = samples.subList(from, Math.min(from + maxSamples, samples.size()));
+                long startTime = Long.MAX_VALUE, endTime = Long.MIN_VALUE;
+                for (Document sample : chunk) {
+                    long originTime = sample.getLong(Sample.ORIGIN_TIME);
+                    startTime = Math.min(startTime, originTime);
+                    endTime = Math.max(endTime, originTime);
+                }
+
+                // buckets without room, including the ones written before the count existed, are left alone
+                Query query = new Query(criteria(entry.getKey()).and(COUNT).lte(maxSamples - chunk.size()));
+                Update update = new Update();
+                update.push(SAMPLES).each(chunk.toArray());
+                update.inc(COUNT, chunk.size()).min("startTime", startTime).max("endTime", endTime);
+                bulkOperations.upsert(query, update);
+                count += chunk.size();
+            }
+        }
+        bulkOperations.execute();
+        return count;
+    }
+
+    /**
+     * 读取时间范围与待写入样本重叠的桶中已经存在的样本时间，按时间顺序写入的数据不会与任何桶重叠
+     *
+     * @param buckets Map<[deviceId, pointId, hour], Map<originTime, Sample>>
+     * @return Map<[deviceId, pointId, hour], originTime Set>
+     */
+    private Map<List<Long>, Set<Long>> existing(Map<List<Long>, Map<Long, Document>> buckets) {
+        Map<List<Long>, Set<Long>> existing = new HashMap<>(buckets.size() * 2);
+        if (buckets.isEmpty()) {
+            return existing;
+        }
+        Set<Long> times = new HashSet<>();
+        List<Criteria> criteria = new ArrayList<>(buckets.size());
+        buckets.forEach((key, samples) -> {
+            times.addAll(samples.keySet());
+            criteria.add(criteria(key).and("startTime").lte(Collections.max(samples.keySet())).and("endTime").gte(Collections.min(samples.keySet())));
+        });
+
+        List<AggregationOperation> operations = new ArrayList<>();
+        operations.add(Aggregation.match(new Criteria().orOperator(criteria.toArray(new Criteria[0]))));
+        operations.add(context -> new Document("$project", new Document("deviceId", 1).append("pointId", 1).append("hour", 1)
+                .append(Sample.ORIGIN_TIME, new Document("$filter", new Document("input", "$" + SAMPLES + "." + Sample.ORIGIN_TIME)
+                        .append("as", Sample.ORIGIN_TIME)
+                        .append("cond", new Document("$in", Arrays.asList("$$" + Sample.ORIGIN_TIME, new ArrayList<>(times))))))));
+        for (Document document : mongoTemplate.aggregate(Aggregation.newAggregation(operations), PointValueBucket.COLLECTION, Document.class)) {
+            List<Long> key = Arrays.asList(document.getLong("deviceId"), document.getLong("pointId"), document.getLong("hour"));
+            List<?> values = document.get(Sample.ORIGIN_TIME, List.class);
+            if (null != values && !values.isEmpty()) {
+                Set<Long> set = existing.computeIfAbsent(key, k -> new HashSet<>());
+                values.forEach(value -> set.add(((Number) value).longValue()));
+            }
+        }
+        return existing;
+    }
+
+    private Criteria criteria(List<Long> key) {
+        return Criteria.where("deviceId").is(key.get(0)).and("pointId").is(key.get(1)).and("hour").is(key.get(2));
+    }
+
+    private Document pack(PointValue pointValue, Long originTime, Long createTime) {
+        Document sample = new Document(Sample.ORIGIN_TIME, originTime);
+        if (null != pointValue.getValue()) {
+            sample.append(Sample.VALUE, pointValue.getValue());
+        }
+        if (null != pointValue.getRawValue()) {
+            sample.append(Sample.RAW_VALUE, pointValue.getRawValue());
+        }
+        if (null != pointValue.getCalculateValue()) {
+            sample.append(Sample.CALCULATE_VALUE, pointValue.getCalculateValue());
+        }
+        if (null != createTime) {
+            sample.append(Sample.CREATE_TIME, createTime);
+        }
+        return sample;
+    }
+
+    private PointValue unpack(Document bucket, Document sample) {
+        return new PointValue(bucket.getLong("deviceId"), bucket.getLong("pointId"), sample.getString(Sample.RAW_VALUE), sample.getString(Sample.VALUE))
+                .setCalculateValue(sample.get(Sample.CALCULATE_VALUE))
+                .setOriginTime(sample.getLong(Sample.ORIGIN_TIME))
+                .setCreateTime(sample.getLong(Sample.CREATE_TIME));
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dc3.center.data.service.impl;
+
+import com.alibaba.fastjson.JSONObject;
+import com.dc3.center.data.bean.ExportProperty;
+import com.dc3.center.data.bean.StorageProperty;
+import com.dc3.center.data.service.PointValueBucketService;
+import com.dc3.center.data.service.PointValueExportService;
+import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.bean.driver.PointValueExportDto;
+import com.dc3.common.exception.ServiceException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * @author pnoker
+ */
+@Slf4j
+@Service
+@EnableConfigurationProperties({ExportProperty.class})
+public class PointValueExportServiceImpl implements PointValueExportService {
+
+    private static final String[] COLUMNS = {"deviceId", "pointId", "value", "rawValue", "calculateValue", "originTime", "createTime"};
+
+    @Resource
+    private MongoTemplate mongoTemplate;
+    @Resource
+    private ExportProperty exportProperty;
+    @Resource
+    private StorageProperty storageProperty;
+    @Resource
+    private PointValueBucketService pointValueBucketService;
+
+    @Override
+    public void check(PointValueExportDto pointValueExportDto) {
+        if (null == pointValueExportDto || null == pointValueExportDto.getDeviceIds() || pointValueExportDto.getDeviceIds().isEmpty()) {
+            throw new ServiceException("Export device ids can't be empty");
+        }
+        if (pointValueExportDto.getDeviceIds().size() > exportProperty.getMaxDevices()) {
+            throw new ServiceException("Export device count can't be greater than " + exportProperty.getMaxDevices());
+        }
+        if (null != pointValueExportDto.getStartTime() && null != pointValueExportDto.getEndTime() && pointValueExportDto.getStartTime() > pointValueExportDto.getEndTime()) {
+            throw new ServiceException("Export start time can't be greater than end time");
+        }
+        String format = pointValueExportDto.getFormat();
+        if (null != format && !PointValueExportDto.FORMAT_NDJSON.equalsIgnoreCase(format) && !PointValueExportDto.FORMAT_CSV.equalsIgnoreCase(format)) {
+            throw new ServiceException("Unsupported export format: " + format);
+        }
+    }
+
+    @Override
+    public long export(PointValueExportDto pointValueExportDto, OutputStream outputStream) throws IOException {
+        check(pointValueExportDto);
+        boolean csv = PointValueExportDto.FORMAT_CSV.equalsIgnoreCase(pointValueExportDto.getFormat());
+        int batchSize = exportProperty.getBatchSize();
+
+        long count = 0;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        if (csv) {
+            writer.write(String.join(",", COLUMNS));
+            writer.write('\n');
+        }
+        for (Long deviceId : pointValueExportDto.getDeviceIds()) {
+            try (CloseableIterator<PointValue> iterator = stream(deviceId, pointValueExportDto, batchSize)) {
+                while (iterator.hasNext()) {
+                    PointValue pointValue = iterator.next();
+                    if (null != pointValue.getChildren()) {
+                        for (PointValue child : pointValue.getChildren()) {
+                            if (null == pointValueExportDto.getPointIds() || pointValueExportDto.getPointIds().isEmpty() || pointValueExportDto.getPointIds().contains(child.getPointId())) {
+                                write(writer, csv, pointValue.getDeviceId(), child, pointValue);
+                                count++;
+                            }
+                        }
+                    } else {
+                        write(writer, csv, pointValue.getDeviceId(), pointValue, pointValue);
+                        count++;
+                    }
+
+                    // push each chunk to the client instead of buffering the whole export
+                    if (count % batchSize == 0) {
+                        writer.flush();
+                    }
+                }
+            }
+        }
+        writer.flush();
+        log.info("Export point value, devices: {}, count: {}", pointValueExportDto.getDeviceIds(), count);
+        return count;
+    }
+
+    /**
+     * 按 originTime 正序读取一个设备的位号值，一个设备一个游标，查询可以命中 deviceId + originTime 索引，不需要在内存中排序
+     *
+     * @param deviceId            Device Id
+     * @param pointValueExportDto PointValueExportDto
+     * @param batchSize           游标每批拉取的条数
+     * @return CloseableIterator<PointValue>
+     */
+    private CloseableIterator<PointValue> stream(Long deviceId, PointValueExportDto pointValueExportDto, int batchSize) {
+        List<Long> pointIds = pointValueExportDto.getPointIds();
+        if (storageProperty.getBucketEnable()) {
+            return pointValueBucketService.stream(deviceId, pointIds, pointValueExportDto.getStartTime(), pointValueExportDto.getEndTime(), batchSize);
+        }
+
+        Criteria criteria = Criteria.where("deviceId").is(deviceId);
+        if (null != pointIds && !pointIds.isEmpty()) {
+            criteria.orOperator(
+                    (new Criteria()).and("pointId").in(pointIds),
+                    (new Criteria()).and("children.pointId").in(pointIds)
+            );
+        }
+        if (null != pointValueExportDto.getStartTime() || null != pointValueExportDto.getEndTime()) {
+            Criteria timeCriteria = criteria.and("originTime");
+            if (null != pointValueExportDto.getStartTime()) {
+                timeCriteria.gte(pointValueExportDto.getStartTime());
+            }
+            if (null != pointValueExportDto.getEndTime()) {
+                timeCriteria.lte(pointValueExportDto.getEndTime());
+            }
+        }
+
+        Query query = new Query(criteria);
+        query.with(Sort.by(Sort.Direction.ASC, "originTime"));
+        query.cursorBatchSize(batchSize);
+        return mongoTemplate.stream(query, PointValue.class);
+    }
+
+    /**
+     * 写出一行
+     *
+     * @param writer     Writer
+     * @param csv        是否为 CSV 格式
+     * @param deviceId   Device Id
+     * @param pointValue 位号值，多值位号时为子位号值
+     * @param parent     时间取自该位号值
+     * @throws IOException IOException
+     */
+    private void write(Writer writer, boolean csv, Long deviceId, PointValue pointValue, PointValue parent) throws IOException {
+        Object[] values = {deviceId, pointValue.getPointId(), pointValue.getValue(), pointValue.getRawValue(), pointValue.getCalculateValue(), parent.getOriginTime(), parent.getCreateTime()};
+        if (csv) {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(escape(values[i]));
+            }
+        } else {
+            JSONObject row = new JSONObject(true);
+            for (int i = 0; i < values.length; i++) {
+                if (null != values[i]) {
+                    row.put(COLUMNS[i], values[i]);
+                }
+            }
+            writer.write(row.toJSONString());
+        }
+        writer.write('\n');
+    }
+
+    private String escape(Object value) {
+        if (null == value) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.service.impl;
+
+import com.dc3.center.data.bean.DeadbandProperty;
+import com.dc3.center.data.service.PointCacheService;
+import com.dc3.center.data.service.PointValueFilterService;
+import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.bean.driver.PointValueFilter;
+import com.dc3.common.model.Point;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author pnoker
+ */
+@Slf4j
+@Service
+@EnableConfigurationProperties({DeadbandProperty.class})
+public class PointValueFilterServiceImpl implements PointValueFilterService {
+
+    @Resource
+    private DeadbandProperty deadbandProperty;
+    @Resource
+    private PointCacheService pointCacheService;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    /**
+     * deviceId(pointId,filter)
+     */
+    private final Map<Long, Map<Long, PointValueFilter>> pointValueFilterMap = new ConcurrentHashMap<>(16);
+    private Counter droppedCounter;
+
+    @PostConstruct
+    public void initial() {
+        droppedCounter = Counter.builder("dc3.data.deadband.dropped")
+                .description("Point values not persisted because they are inside the deadband")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<PointValue> filter(List<PointValue> pointValues) {
+        List<PointValue> filtered = new ArrayList<>(pointValues.size());
+        for (PointValue pointValue : pointValues) {
+            if (null != pointValue.getChildren() || null == pointValue.getDeviceId() || null == pointValue.getPointId()) {
+                filtered.add(pointValue);
+                continue;
+            }
+
+            Point point = pointCacheService.get(pointValue.getPointId());
+            Map<Long, PointValueFilter> filterMap = pointValueFilterMap.computeIfAbsent(pointValue.getDeviceId(), k -> new ConcurrentHashMap<>(16));
+            if (!PointValueFilter.enable(point)) {
+                filterMap.remove(pointValue.getPointId());
+                filtered.add(pointValue);
+                continue;
+            }
+
+            // point configuration changes recreate the filter
+            int heartbeat = deadbandProperty.getHeartbeat();
+            PointValueFilter filter = filterMap.compute(pointValue.getPointId(), (k, v) -> null != v && v.match(point, heartbeat) ? v : new PointValueFilter(point, heartbeat));
+            List<PointValue> values = filter.filter(pointValue);
+            if (values.isEmpty()) {
+                droppedCounter.increment();
+            }
+            filtered.addAll(values);
+        }
+        return filtered;
+    }
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.service.impl;
+
+import com.dc3.center.data.bean.IngestProperty;
+import com.dc3.center.data.service.PointValueIngestService;
+import com.dc3.center.data.service.PointValueService;
+import com.dc3.center.data.utils.MpscRingBuffer;
+import com.dc3.common.bean.driver.PointValue;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * @author pnoker
+ */
+@Slf4j
+@Service
+@EnableConfigurationProperties({IngestProperty.class})
+public class PointValueIngestServiceImpl implements PointValueIngestService {
+
+    /**
+     * 缓冲区为空时消费线程的休眠时间
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Resource
+    private IngestProperty ingestProperty;
+    @Resource
+    private PointValueService pointValueService;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private MpscRingBuffer<Entry> ringBuffer;
+    private Counter receivedCounter, rejectedCounter, failedCounter;
+    private Timer flushTimer;
+
+    private volatile boolean running;
+    private Thread consumerThread;
+
+    @PostConstruct
+    public void initial() {
+        ringBuffer = new MpscRingBuffer<>(ingestProperty.getCapacity());
+
+        Gauge.builder("dc3.data.ingest.depth", ringBuffer, MpscRingBuffer::size)
+                .description("Messages waiting in the ingest buffer")
+                .register(meterRegistry);
+        Gauge.builder("dc3.data.ingest.capacity", ringBuffer, MpscRingBuffer::capacity)
+                .description("Point value ingest buffer capacity")
+                .register(meterRegistry);
+        receivedCounter = Counter.builder("dc3.data.ingest.received")
+                .description("Point values accepted by the ingest buffer")
+                .register(meterRegistry);
+        rejectedCounter = Counter.builder("dc3.data.ingest.rejected")
+                .description("Point values rejected for retry because the ingest buffer was full")
+                .register(meterRegistry);
+        failedCounter = Counter.builder("dc3.data.ingest.failed")
+                .description("Point values whose batch write failed")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("dc3.data.ingest.flush")
+                .description("Point value batch write latency")
+                .register(meterRegistry);
+
+        running = true;
+        consumerThread = new Thread(this::consume, "[PointValueIngest]");
+        consumerThread.setDaemon(true);
+        consumerThread.start();
+        log.info("Point value ingest started, capacity: {}, batch size: {}, interval: {}ms",
+                ringBuffer.capacity(), ingestProperty.getBatchSize(), ingestProperty.getInterval());
+    }
+
+    /**
+     * 监听容器先于本服务停止，等待缓冲区中的消息全部写入并回调后再退出
+     */
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        running = false;
+        if (null != consumerThread) {
+            LockSupport.unpark(consumerThread);
+            consumerThread.join();
+        }
+    }
+
+    @Override
+    public boolean offer(List<PointValue> pointValues, Consumer<Boolean> callback) {
+        if (running && ringBuffer.offer(new Entry(pointValues, callback))) {
+            receivedCounter.increment(pointValues.size());
+            return true;
+        }
+        rejectedCounter.increment(pointValues.size());
+        log.debug("Point value ingest buffer is full, rejected: {}", pointValues.size());
+        return false;
+    }
+
+    @Override
+    public int depth() {
+        return ringBuffer.size();
+    }
+
+    /**
+     * 消费线程，按位号值条数或时间阈值合并多条消息批量写入
+     */
+    private void consume() {
+        int batchSize = ingestProperty.getBatchSize();
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(ingestProperty.getInterval());
+
+        List<Entry> batch = new ArrayList<>();
+        int size = 0;
+        long deadline = 0;
+        while (running || ringBuffer.size() > 0 || !batch.isEmpty()) {
+            int drained = 0;
+            Entry entry;
+            while (size < batchSize && null != (entry = ringBuffer.poll())) {
+                batch.add(entry);
+                size += entry.pointValues.size();
+                drained++;
+            }
+            long now = System.nanoTime();
+            if (drained > 0 && deadline == 0) {
+                deadline = now + intervalNanos;
+            }
+
+            if (size >= batchSize || (!batch.isEmpty() && (now - deadline >= 0 || !running))) {
+                flush(batch, size);
+                batch = new ArrayList<>();
+                size = 0;
+                deadline = 0;
+            } else if (drained == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * 写入位号值到 Redis & MongoDB，然后按写入缓冲区的顺序回调
+     *
+     * @param batch Entry Array
+     * @param size  位号值数量
+     */
+    private void flush(List<Entry> batch, int size) {
+        List<PointValue> pointValues = new ArrayList<>(size);
+        for (Entry entry : batch) {
+            pointValues.addAll(entry.pointValues);
+        }
+
+        boolean success = true;
+        if (!pointValues.isEmpty()) {
+            try {
+                flushTimer.record(() -> pointValueService.addPointValues(pointValues));
+                log.debug("Flush point value batch, messages: {}, size: {}", batch.size(), pointValues.size());
+            } catch (Exception e) {
+                success = false;
+                failedCounter.increment(pointValues.size());
+                log.error("Flush point value batch({}) failed: {}", pointValues.size(), e.getMessage(), e);
+            }
+        }
+
+        for (Entry entry : batch) {
+            try {
+                entry.callback.accept(success);
+            } catch (Exception e) {
+                log.error("Point value ingest callback failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 缓冲区中的一条或一批消息
+     */
+    private static class Entry {
+        private final List<PointValue> pointValues;
+        private final Consumer<Boolean> callback;
+
+        private Entry(List<PointValue> pointValues, Consumer<Boolean> callback) {
+            this.pointValues = pointValues;
+            this.callback = callback;
+        }
+    }
+
+}
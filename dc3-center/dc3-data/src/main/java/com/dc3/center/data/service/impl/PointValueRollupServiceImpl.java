@@ -0,0 +1,469 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.service.impl;
+
+import com.dc3.center.data.bean.PointValueRollup.Resolution;
+import com.dc3.center.data.bean.RollupProperty;
+import com.dc3.center.data.bean.StorageProperty;
+import com.dc3.center.data.service.PointValueBucketService;
+import com.dc3.center.data.service.PointValueRollupService;
+import com.dc3.common.bean.Pages;
+import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.bean.driver.PointValueAggregate;
+import com.dc3.common.bean.driver.PointValueAggregateDto;
+import com.dc3.common.bean.driver.PointValueDto;
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * @author pnoker
+ */
+@Slf4j
+@Service
+@EnableConfigurationProperties({RollupProperty.class})
+public class PointValueRollupServiceImpl implements PointValueRollupService {
+
+    private static final int DUPLICATE_KEY = 11000;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final String TIMES = "times";
+
+    @Resource
+    private MongoTemplate mongoTemplate;
+    @Resource
+    private RollupProperty rollupProperty;
+    @Resource
+    private StorageProperty storageProperty;
+    @Resource
+    private PointValueBucketService pointValueBucketService;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private Timer updateTimer;
+    private Counter skippedCounter;
+
+    @PostConstruct
+    public void initial() {
+        updateTimer = Timer.builder("dc3.data.rollup.update")
+                .description("Point value rollup update latency per ingest batch")
+                .register(meterRegistry);
+        skippedCounter = Counter.builder("dc3.data.rollup.skipped")
+                .description("Point values already counted by the rollup minute windows")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void addPointValues(List<PointValue> pointValues) {
+        if (null == pointValues || pointValues.isEmpty()) {
+            return;
+        }
+        updateTimer.record(() -> upsert(pointValues, null));
+    }
+
+    @Override
+    public List<PointValueAggregate> aggregate(PointValueAggregateDto pointValueAggregateDto, long interval) {
+        long startTime = pointValueAggregateDto.getStartTime(), endTime = pointValueAggregateDto.getEndTime();
+
+        // only windows fully inside the range can be used, otherwise the edges would count values outside of it
+        Resolution resolution = null;
+        for (int i = Resolution.values().length - 1; i >= 0; i--) {
+            Resolution r = Resolution.values()[i];
+            if (interval % r.getInterval() == 0 && r.time(startTime) == startTime && r.time(endTime + 1) == endTime + 1) {
+                resolution = r;
+                break;
+            }
+        }
+        if (null == resolution) {
+            return null;
+        }
+
+        List<AggregationOperation> operations = new ArrayList<>();
+        operations.add(Aggregation.match(Criteria.where("deviceId").is(pointValueAggregateDto.getDeviceId())
+                .and("pointId").is(pointValueAggregateDto.getPointId())
+                .and("time").gte(startTime).lte(endTime)));
+        operations.add(context -> new Document("$group", new Document("_id", new Document("$subtract", Arrays.asList("$time", new Document("$mod", Arrays.asList("$time", interval)))))
+                .append("count", new Document("$sum", "$count"))
+                .append("sum", new Document("$sum", "$sum"))
+                .append("min", new Document("$min", "$min"))
+                .append("max", new Document("$max", "$max"))
+                .append("first", new Document("$min", "$first"))
+                .append("last", new Document("$max", "$last"))));
+        operations.add(Aggregation.sort(Sort.Direction.ASC, "_id"));
+
+        List<PointValueAggregate> pointValueAggregates = new ArrayList<>();
+        for (Document document : mongoTemplate.aggregate(Aggregation.newAggregation(operations), resolution.getCollection(), Document.class)) {
+            long count = ((Number) document.get("count")).longValue();
+            pointValueAggregates.add(new PointValueAggregate()
+                    .setDeviceId(pointValueAggregateDto.getDeviceId())
+                    .setPointId(pointValueAggregateDto.getPointId())
+                    .setTime(((Number) document.get("_id")).longValue())
+                    .setCount(count)
+                    .setMin(document.getDouble("min"))
+                    .setMax(document.getDouble("max"))
+                    .setAvg(count > 0 ? document.getDouble("sum") / count : null)
+                    .setFirst(((Document) document.get("first")).getDouble("v"))
+                    .setLast(((Document) document.get("last")).getDouble("v")));
+        }
+        log.debug("Aggregate point value from {}, device: {}, point: {}, windows: {}",
+                resolution.getCollection(), pointValueAggregateDto.getDeviceId(), pointValueAggregateDto.getPointId(), pointValueAggregates.size());
+        return pointValueAggregates;
+    }
+
+    @Override
+    public long backfill(PointValueDto pointValueDto) {
+        Long deviceId = null, pointId = null, startTime = null, endTime = null;
+        if (null != pointValueDto) {
+            deviceId = pointValueDto.getDeviceId();
+            pointId = pointValueDto.getPointId();
+            Pages pages = pointValueDto.getPage();
+            if (null != pages && pages.getStartTime() > 0 && pages.getEndTime() > 0 && pages.getStartTime() <= pages.getEndTime()) {
+                // align to whole days so that every affected window of every resolution is rebuilt completely
+                startTime = Resolution.DAY.time(pages.getStartTime());
+                endTime = Resolution.DAY.time(pages.getEndTime()) + Resolution.DAY.getInterval() - 1;
+            }
+        }
+
+        // windows of the current day are still updated by ingest, only completed days are rebuilt
+        long fence = Resolution.DAY.time(System.currentTimeMillis()) - 1;
+        startTime = null != startTime ? startTime : 0L;
+        endTime = null != endTime ? Math.min(endTime, fence) : fence;
+        if (startTime > endTime) {
+            log.info("Backfill point value rollup skipped, only days before {} can be rebuilt", fence + 1);
+            return 0;
+        }
+
+        Criteria rollupCriteria = new Criteria();
+        if (null != deviceId) {
+            rollupCriteria.and("deviceId").is(deviceId);
+        }
+        if (null != pointId) {
+            rollupCriteria.and("pointId").is(pointId);
+        }
+        rollupCriteria.and("time").gte(startTime).lte(endTime);
+        for (Resolution resolution : Resolution.values()) {
+            mongoTemplate.remove(new Query(rollupCriteria), resolution.getCollection());
+        }
+
+        long count = 0;
+        int batchSize = rollupProperty.getBackfillBatchSize();
+        List<PointValue> batch = new ArrayList<>(batchSize);
+        try (CloseableIterator<PointValue> iterator = stream(deviceId, pointId, startTime, endTime, batchSize)) {
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() >= batchSize) {
+                    count += upsert(batch, pointId);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        }
+        count += upsert(batch, pointId);
+        log.info("Backfill point value rollup, criteria: {}, count: {}", rollupCriteria.getCriteriaObject(), count);
+        return count;
+    }
+
+    private CloseableIterator<PointValue> stream(Long deviceId, Long pointId, Long startTime, Long endTime, int batchSize) {
+        if (storageProperty.getBucketEnable()) {
+            return pointValueBucketService.stream(deviceId, null != pointId ? Collections.singletonList(pointId) : null, startTime, endTime, batchSize);
+        }
+
+        Criteria criteria = new Criteria();
+        if (null != deviceId) {
+            criteria.and("deviceId").is(deviceId);
+        }
+        if (null != pointId) {
+            criteria.orOperator(
+                    (new Criteria()).and("pointId").is(pointId),
+                    (new Criteria()).and("children.pointId").is(pointId)
+            );
+        }
+        if (null != startTime) {
+            criteria.and("originTime").gte(startTime).lte(endTime);
+        }
+        Query query = new Query(criteria);
+        query.cursorBatchSize(batchSize);
+        return mongoTemplate.stream(query, PointValue.class);
+    }
+
+    @Override
+    public long cover(List<PointValue> pointValues) {
+        Map<List<Long>, Window> windows = windows(pointValues, null);
+        if (windows.isEmpty()) {
+            return 0;
+        }
+
+        // windows written before the counted times were recorded can't tell which values they already hold
+        Query query = new Query(new Criteria().orOperator(windows.keySet().stream().map(this::criteria).toArray(Criteria[]::new)).and(TIMES).exists(false));
+        query.fields().include("deviceId").include("pointId").include("time");
+        for (Document document : mongoTemplate.find(query, Document.class, Resolution.MINUTE.getCollection())) {
+            windows.remove(Arrays.asList(((Number) document.get("deviceId")).longValue(), ((Number) document.get("pointId")).longValue(), ((Number) document.get("time")).longValue()));
+        }
+        return merge(windows);
+    }
+
+    /**
+     * 在内存中按分钟窗口合并后，每个分钟窗口只产生一次 upsert，小时、天窗口由下一级窗口重新汇总
+     * <p>
+     * 分钟窗口记录已统计的 originTime，只合并窗口中不存在的时间，重复投递或部分写入失败后重试的位号值不会被重复统计，
+     * 乱序到达的位号值正常统计；小时、天窗口整体覆盖，与写入顺序以及是否重试无关
+     *
+     * @param pointValues PointValue Array
+     * @param pointId     只统计指定位号，为空时统计所有位号
+     * @return 统计的位号值数量
+     */
+    private long upsert(List<PointValue> pointValues, Long pointId) {
+        return merge(windows(pointValues, pointId));
+    }
+
+    /**
+     * 按分钟窗口分组可以转换为数值的位号值
+     *
+     * @param pointValues PointValue Array
+     * @param pointId     只统计指定位号，为空时统计所有位号
+     * @return Map<[deviceId, pointId, time], Window>
+     */
+    private Map<List<Long>, Window> windows(List<PointValue> pointValues, Long pointId) {
+        Map<List<Long>, Window> windows = new HashMap<>(64);
+        for (PointValue pointValue : pointValues) {
+            Long originTime = null != pointValue.getOriginTime() ? pointValue.getOriginTime() : pointValue.getCreateTime();
+            if (null == originTime) {
+                continue;
+            }
+            if (null != pointValue.getChildren()) {
+                for (PointValue child : pointValue.getChildren()) {
+                    if (null == pointId || pointId.equals(child.getPointId())) {
+                        accumulate(windows, pointValue.getDeviceId(), child.getPointId(), originTime, child.getValue());
+                    }
+                }
+            } else if (null == pointId || pointId.equals(pointValue.getPointId())) {
+                accumulate(windows, pointValue.getDeviceId(), pointValue.getPointId(), originTime, pointValue.getValue());
+            }
+        }
+        return windows;
+    }
+
+    private long merge(Map<List<Long>, Window> windows) {
+        if (windows.isEmpty()) {
+            return 0;
+        }
+        apply(windows);
+        Set<List<Long>> keys = windows.keySet();
+        for (int i = 1; i < Resolution.values().length; i++) {
+            keys = rollup(Resolution.values()[i - 1], Resolution.values()[i], keys);
+        }
+        return windows.values().stream().mapToLong(window -> window.values.size()).sum();
+    }
+
+    /**
+     * 合并分钟窗口，窗口中已有本批部分时间时 upsert 会触发唯一索引冲突，冲突的窗口去掉已统计的时间后重试
+     *
+     * @param windows Map<[deviceId, pointId, time], Window>
+     */
+    private void apply(Map<List<Long>, Window> windows) {
+        String collection = Resolution.MINUTE.getCollection();
+        Map<List<Long>, Window> pending = windows;
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            List<List<Long>> keys = new ArrayList<>(pending.size());
+            BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, collection);
+            for (Map.Entry<List<Long>, Window> entry : pending.entrySet()) {
+                bulkOperations.upsert(new Query(criteria(entry.getKey()).and(TIMES).nin(entry.getValue().values.keySet())), entry.getValue().update());
+                keys.add(entry.getKey());
+            }
+
+            Map<List<Long>, Window> conflicts = new HashMap<>(16);
+            try {
+                bulkOperations.execute();
+            } catch (BulkOperationException e) {
+                for (BulkWriteError error : e.getErrors()) {
+                    if (error.getCode() != DUPLICATE_KEY || attempt >= MAX_ATTEMPTS) {
+                        throw e;
+                    }
+                    List<Long> key = keys.get(error.getIndex());
+                    conflicts.put(key, pending.get(key));
+                }
+                log.debug("Point value rollup duplicate values: {}, attempt: {}", conflicts.size(), attempt);
+            }
+
+            // drop the values the windows already counted and merge the rest
+            pending = new HashMap<>(conflicts.size() * 2);
+            Map<List<Long>, Set<Long>> counted = counted(collection, conflicts.keySet());
+            for (Map.Entry<List<Long>, Window> entry : conflicts.entrySet()) {
+                Window window = entry.getValue().without(counted.getOrDefault(entry.getKey(), Collections.emptySet()));
+                skippedCounter.increment(entry.getValue().values.size() - window.values.size());
+                if (!window.values.isEmpty()) {
+                    pending.put(entry.getKey(), window);
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取分钟窗口已经统计的时间
+     *
+     * @param collection Collection
+     * @param keys       [deviceId, pointId, time] Array
+     * @return Map<[deviceId, pointId, time], originTime Set>
+     */
+    private Map<List<Long>, Set<Long>> counted(String collection, Collection<List<Long>> keys) {
+        Map<List<Long>, Set<Long>> counted = new HashMap<>(keys.size() * 2);
+        if (keys.isEmpty()) {
+            return counted;
+        }
+        Query query = new Query(new Criteria().orOperator(keys.stream().map(this::criteria).toArray(Criteria[]::new)));
+        query.fields().include("deviceId").include("pointId").include("time").include(TIMES);
+        for (Document document : mongoTemplate.find(query, Document.class, collection)) {
+            List<?> times = document.get(TIMES, List.class);
+            if (null != times) {
+                counted.put(Arrays.asList(((Number) document.get("deviceId")).longValue(), ((Number) document.get("pointId")).longValue(), ((Number) document.get("time")).longValue()),
+                        times.stream().map(time -> ((Number) time).longValue()).collect(Collectors.toSet()));
+            }
+        }
+        return counted;
+    }
+
+    /**
+     * 由下一级窗口重新汇总受影响的窗口并整体覆盖
+     * <p>
+     * 窗口的 count 只增不减，只覆盖 count 不大于汇总结果的文档，并发汇总时较旧的结果不会覆盖较新的结果
+     *
+     * @param source 下一级窗口
+     * @param target 汇总的窗口
+     * @param keys   发生变化的下一级窗口 [deviceId, pointId, time] Array
+     * @return 发生变化的窗口 [deviceId, pointId, time] Array
+     */
+    private Set<List<Long>> rollup(Resolution source, Resolution target, Set<List<Long>> keys) {
+        Set<List<Long>> targetKeys = keys.stream().map(key -> Arrays.asList(key.get(0), key.get(1), target.time(key.get(2)))).collect(Collectors.toSet());
+        Criteria[] criteria = targetKeys.stream().map(key -> Criteria.where("deviceId").is(key.get(0)).and("pointId").is(key.get(1))
+                .and("time").gte(key.get(2)).lt(key.get(2) + target.getInterval())).toArray(Criteria[]::new);
+
+        List<AggregationOperation> operations = new ArrayList<>();
+        operations.add(Aggregation.match(new Criteria().orOperator(criteria)));
+        operations.add(context -> new Document("$group", new Document("_id", new Document("deviceId", "$deviceId").append("pointId", "$pointId")
+                .append("time", new Document("$subtract", Arrays.asList("$time", new Document("$mod", Arrays.asList("$time", target.getInterval()))))))
+                .append("count", new Document("$sum", "$count"))
+                .append("sum", new Document("$sum", "$sum"))
+                .append("min", new Document("$min", "$min"))
+                .append("max", new Document("$max", "$max"))
+                .append("first", new Document("$min", "$first"))
+                .append("last", new Document("$max", "$last"))));
+
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, target.getCollection());
+        for (Document document : mongoTemplate.aggregate(Aggregation.newAggregation(operations), source.getCollection(), Document.class)) {
+            Document id = (Document) document.get("_id");
+            long count = ((Number) document.get("count")).longValue();
+            Query query = new Query(Criteria.where("deviceId").is(id.get("deviceId")).and("pointId").is(id.get("pointId")).and("time").is(id.get("time")).and("count").lte(count));
+            bulkOperations.upsert(query, new Update()
+                    .set("count", count)
+                    .set("sum", document.get("sum"))
+                    .set("min", document.get("min"))
+                    .set("max", document.get("max"))
+                    .set("first", document.get("first"))
+                    .set("last", document.get("last")));
+        }
+        try {
+            bulkOperations.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) {
+                    throw e;
+                }
+            }
+            // a concurrent rollup already wrote a window with a larger count
+            log.debug("Point value rollup {} windows already newer: {}", target.name().toLowerCase(), e.getErrors().size());
+        }
+        return targetKeys;
+    }
+
+    private Criteria criteria(List<Long> key) {
+        return Criteria.where("deviceId").is(key.get(0)).and("pointId").is(key.get(1)).and("time").is(key.get(2));
+    }
+
+    private void accumulate(Map<List<Long>, Window> windows, Long deviceId, Long pointId, long originTime, String value) {
+        if (null == deviceId || null == pointId || null == value) {
+            return;
+        }
+        double number;
+        try {
+            number = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (Double.isNaN(number) || Double.isInfinite(number)) {
+            return;
+        }
+        windows.computeIfAbsent(Arrays.asList(deviceId, pointId, Resolution.MINUTE.time(originTime)), k -> new Window())
+                .values.putIfAbsent(originTime, number);
+    }
+
+    /**
+     * 分钟窗口内待合并的位号值，同一时间只保留一个
+     */
+    private static class Window {
+        private final Map<Long, Double> values = new HashMap<>(16);
+
+        private Window without(Set<Long> times) {
+            Window window = new Window();
+            values.forEach((time, value) -> {
+                if (!times.contains(time)) {
+                    window.values.put(time, value);
+                }
+            });
+            return window;
+        }
+
+        private Update update() {
+            double sum = 0, min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            long firstTime = Long.MAX_VALUE, lastTime = Long.MIN_VALUE;
+            for (Map.Entry<Long, Double> entry : values.entrySet()) {
+                sum += entry.getValue();
+                min = Math.min(min, entry.getValue());
+                max = Math.max(max, entry.getValue());
+                firstTime = Math.min(firstTime, entry.getKey());
+                lastTime = Math.max(lastTime, entry.getKey());
+            }
+            Update update = new Update()
+                    .inc("count", (long) values.size())
+                    .inc("sum", sum)
+                    .min("min", min)
+                    .max("max", max)
+                    .min("first", new Document("t", firstTime).append("v", values.get(firstTime)))
+                    .max("last", new Document("t", lastTime).append("v", values.get(lastTime)));
+            update.push(TIMES).each(values.keySet().toArray());
+            return update;
+        }
+    }
+
+}
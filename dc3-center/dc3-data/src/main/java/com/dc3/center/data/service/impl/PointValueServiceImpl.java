@@ -16,17 +16,32 @@
 
 package com.dc3.center.data.service.impl;
 
+import cn.hutool.core.lang.Pair;
 import com.alibaba.fastjson.JSON;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.dc3.api.center.manager.feign.DeviceClient;
 import com.dc3.api.center.manager.feign.DriverClient;
 import com.dc3.api.center.manager.feign.ProfileClient;
+import com.dc3.center.data.bean.ArchiveProperty;
+import com.dc3.center.data.bean.DeadbandProperty;
+import com.dc3.center.data.bean.IndexProperty;
+import com.dc3.center.data.bean.RollupProperty;
+import com.dc3.center.data.bean.StorageProperty;
+import com.dc3.center.data.service.PointValueAggregateService;
+import com.dc3.center.data.service.PointValueArchiveService;
+import com.dc3.center.data.service.PointValueBucketService;
+import com.dc3.center.data.service.PointValueFilterService;
+import com.dc3.center.data.service.PointValueRollupService;
 import com.dc3.center.data.service.PointValueService;
+import com.dc3.center.data.service.RealtimeValueService;
+import com.dc3.center.data.utils.CursorUtil;
+import com.dc3.common.bean.CursorPage;
 import com.dc3.common.bean.Pages;
 import com.dc3.common.bean.R;
 import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.bean.driver.PointValueAggregate;
+import com.dc3.common.bean.driver.PointValueAggregateDto;
 import com.dc3.common.bean.driver.PointValueDto;
-import com.dc3.common.constant.Common;
 import com.dc3.common.dto.DeviceDto;
 import com.dc3.common.dto.ProfileDto;
 import com.dc3.common.exception.ServiceException;
@@ -35,10 +50,13 @@ import com.dc3.common.model.Driver;
 import com.dc3.common.model.Profile;
 import com.dc3.common.utils.ArithmeticUtil;
 import com.dc3.common.utils.Dc3Util;
-import com.dc3.common.utils.RedisUtil;
 import com.mongodb.client.result.UpdateResult;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
@@ -47,10 +65,7 @@ import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import java.math.BigDecimal;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.ThreadPoolExecutor;
 
 /**
@@ -58,14 +73,35 @@ import java.util.concurrent.ThreadPoolExecutor;
  */
 @Slf4j
 @Service
+@EnableConfigurationProperties({StorageProperty.class, IndexProperty.class, RollupProperty.class, DeadbandProperty.class, ArchiveProperty.class})
 public class PointValueServiceImpl implements PointValueService {
 
-    @Resource
-    private RedisUtil redisUtil;
     @Resource
     private MongoTemplate mongoTemplate;
     @Resource
     private ThreadPoolExecutor threadPoolExecutor;
+    @Resource
+    private RealtimeValueService realtimeValueService;
+    @Resource
+    private StorageProperty storageProperty;
+    @Resource
+    private IndexProperty indexProperty;
+    @Resource
+    private RollupProperty rollupProperty;
+    @Resource
+    private DeadbandProperty deadbandProperty;
+    @Resource
+    private ArchiveProperty archiveProperty;
+    @Resource
+    private PointValueBucketService pointValueBucketService;
+    @Resource
+    private PointValueAggregateService pointValueAggregateService;
+    @Resource
+    private PointValueRollupService pointValueRollupService;
+    @Resource
+    private PointValueFilterService pointValueFilterService;
+    @Resource
+    private PointValueArchiveService pointValueArchiveService;
 
     @Resource
     private DeviceClient deviceClient;
@@ -181,9 +217,8 @@ public class PointValueServiceImpl implements PointValueService {
 
     @Override
     public List<PointValue> realtime(Long deviceId) {
-        String key = Common.Cache.REAL_TIME_VALUES_KEY_PREFIX + deviceId;
-        List<PointValue> pointValues = redisUtil.getKey(key, List.class);
-        if (null == pointValues) {
+        List<PointValue> pointValues = realtimeValueService.list(deviceId);
+        if (pointValues.isEmpty()) {
             throw new ServiceException("No realtime value, Please use '/latest' to get the final data");
         }
         return pointValues;
@@ -191,8 +226,7 @@ public class PointValueServiceImpl implements PointValueService {
 
     @Override
     public PointValue realtime(Long deviceId, Long pointId) {
-        String key = Common.Cache.REAL_TIME_VALUE_KEY_PREFIX + deviceId + "_" + pointId;
-        PointValue pointValue = redisUtil.getKey(key, PointValue.class);
+        PointValue pointValue = realtimeValueService.get(deviceId, pointId);
         if (null == pointValue) {
             throw new ServiceException("No realtime value, Please use '/latest' to get the final data");
         }
@@ -201,6 +235,10 @@ public class PointValueServiceImpl implements PointValueService {
 
     @Override
     public PointValue latest(Long deviceId, Long pointId) {
+        if (storageProperty.getBucketEnable()) {
+            return pointValueBucketService.latest(deviceId, pointId);
+        }
+
         R<Device> r = deviceClient.selectById(deviceId);
         if (!r.isOk()) {
             return null;
@@ -228,7 +266,10 @@ public class PointValueServiceImpl implements PointValueService {
     public void addPointValue(PointValue pointValue) {
         if (null != pointValue) {
             savePointValueToRedis(pointValue.setCreateTime(System.currentTimeMillis()));
-            mongoTemplate.insert(pointValue);
+            if (indexProperty.getPointValueTtl() > 0) {
+                pointValue.setCreateDate(new Date(pointValue.getCreateTime()));
+            }
+            savePointValuesToMongo(Collections.singletonList(pointValue));
         }
     }
 
@@ -236,19 +277,123 @@ public class PointValueServiceImpl implements PointValueService {
     public void addPointValues(List<PointValue> pointValues) {
         if (null != pointValues) {
             if (pointValues.size() > 0) {
-                pointValues.forEach(pointValue -> pointValue.setCreateTime(System.currentTimeMillis()));
+                long createTime = System.currentTimeMillis();
+                boolean ttl = indexProperty.getPointValueTtl() > 0;
+                pointValues.forEach(pointValue -> {
+                    pointValue.setCreateTime(createTime);
+                    if (ttl) {
+                        pointValue.setCreateDate(new Date(createTime));
+                    }
+                });
                 savePointValuesToRedis(pointValues);
-                mongoTemplate.insert(pointValues, PointValue.class);
+                savePointValuesToMongo(pointValues);
             }
         }
     }
 
     @Override
     public Page<PointValue> list(PointValueDto pointValueDto) {
-        Criteria criteria = new Criteria();
+        if (storageProperty.getBucketEnable()) {
+            return pointValueBucketService.list(pointValueDto);
+        }
+
         if (null == pointValueDto) {
             pointValueDto = new PointValueDto();
         }
+        Pages pages = null == pointValueDto.getPage() ? new Pages() : pointValueDto.getPage();
+        Query query = new Query(listCriteria(pointValueDto, pages));
+        long count = mongoTemplate.count(query, PointValue.class);
+
+        query.with(Sort.by(Sort.Direction.DESC, "originTime"));
+        int size = (int) pages.getSize();
+        long page = pages.getCurrent();
+        query.limit(size).skip(size * (page - 1));
+
+        List<PointValue> pointValues = mongoTemplate.find(query, PointValue.class);
+        numbering(pointValues);
+        return (new Page<PointValue>()).setCurrent(pages.getCurrent()).setSize(pages.getSize()).setTotal(count).setRecords(pointValues);
+    }
+
+    @Override
+    public CursorPage<PointValue> history(PointValueDto pointValueDto) {
+        if (null == pointValueDto) {
+            pointValueDto = new PointValueDto();
+        }
+        Pages pages = null == pointValueDto.getPage() ? new Pages() : pointValueDto.getPage();
+        if (pages.getSize() < 1) {
+            throw new ServiceException("Invalid page size: " + pages.getSize());
+        }
+        if (storageProperty.getBucketEnable()) {
+            return pointValueBucketService.history(pointValueDto);
+        }
+
+        Criteria criteria = listCriteria(pointValueDto, pages);
+
+        Long count = null;
+        if (Boolean.TRUE.equals(pointValueDto.getCount())) {
+            count = mongoTemplate.count(new Query(criteria), PointValue.class);
+        }
+
+        // (originTime, _id) < cursor
+        if (null != pointValueDto.getCursor()) {
+            Pair<Long, String> cursor = CursorUtil.decode(pointValueDto.getCursor());
+            ObjectId objectId = new ObjectId(cursor.getValue());
+            criteria = new Criteria().andOperator(criteria, new Criteria().orOperator(
+                    Criteria.where("originTime").lt(cursor.getKey()),
+                    Criteria.where("originTime").is(cursor.getKey()).and("_id").lt(objectId)
+            ));
+        }
+
+        int size = (int) pages.getSize();
+        Query query = new Query(criteria);
+        query.with(Sort.by(Sort.Direction.DESC, "originTime", "_id"));
+        query.limit(size + 1);
+
+        List<PointValue> pointValues = mongoTemplate.find(query, PointValue.class);
+        String next = null;
+        if (pointValues.size() > size) {
+            pointValues = pointValues.subList(0, size);
+            PointValue last = pointValues.get(size - 1);
+            next = CursorUtil.encode(last.getOriginTime(), last.getObjectId().toHexString());
+        }
+        numbering(pointValues);
+        return (new CursorPage<PointValue>()).setSize(size).setCursor(next).setTotal(count).setRecords(pointValues);
+    }
+
+    @Override
+    public List<PointValueAggregate> aggregate(PointValueAggregateDto pointValueAggregateDto) {
+        return pointValueAggregateService.aggregate(pointValueAggregateDto);
+    }
+
+    @Override
+    public List<PointValue> downsample(PointValueAggregateDto pointValueAggregateDto) {
+        return pointValueAggregateService.downsample(pointValueAggregateDto);
+    }
+
+    @Override
+    public List<PointValue> interpolate(PointValueAggregateDto pointValueAggregateDto) {
+        return pointValueArchiveService.interpolate(pointValueAggregateDto);
+    }
+
+    @Override
+    public Long backfill(PointValueDto pointValueDto) {
+        return pointValueRollupService.backfill(pointValueDto);
+    }
+
+    @Override
+    public Long migrate(PointValueDto pointValueDto) {
+        return pointValueBucketService.migrate(pointValueDto);
+    }
+
+    /**
+     * 分页查询条件
+     *
+     * @param pointValueDto PointValueDto
+     * @param pages         Pages
+     * @return Criteria
+     */
+    private Criteria listCriteria(PointValueDto pointValueDto, Pages pages) {
+        Criteria criteria = new Criteria();
         if (null != pointValueDto.getDeviceId()) {
             criteria.and("deviceId").is(pointValueDto.getDeviceId());
             R<Device> r = deviceClient.selectById(pointValueDto.getDeviceId());
@@ -271,21 +416,18 @@ public class PointValueServiceImpl implements PointValueService {
             );
         }
 
-        Pages pages = null == pointValueDto.getPage() ? new Pages() : pointValueDto.getPage();
         if (pages.getStartTime() > 0 && pages.getEndTime() > 0 && pages.getStartTime() <= pages.getEndTime()) {
             criteria.and("originTime").gte(pages.getStartTime()).lte(pages.getEndTime());
         }
+        return criteria;
+    }
 
-        Query query = new Query(criteria);
-        long count = mongoTemplate.count(query, PointValue.class);
-
-        query.with(Sort.by(Sort.Direction.DESC, "originTime"));
-        int size = (int) pages.getSize();
-        long page = pages.getCurrent();
-        query.limit(size).skip(size * (page - 1));
-
-        List<PointValue> pointValues = mongoTemplate.find(query, PointValue.class);
-
+    /**
+     * 为返回的位号值及其子位号值设置顺序编号
+     *
+     * @param pointValues PointValue Array
+     */
+    private void numbering(List<PointValue> pointValues) {
         long id = 0L;
         for (PointValue pointValue1 : pointValues) {
             pointValue1.setId(id);
@@ -297,7 +439,6 @@ public class PointValueServiceImpl implements PointValueService {
                 }
             }
         }
-        return (new Page<PointValue>()).setCurrent(pages.getCurrent()).setSize(pages.getSize()).setTotal(count).setRecords(pointValues);
     }
 
     /**
@@ -306,34 +447,69 @@ public class PointValueServiceImpl implements PointValueService {
      * @param pointValue Point Value
      */
     private void savePointValueToRedis(final PointValue pointValue) {
-        threadPoolExecutor.execute(() -> {
-            String pointIdKey = pointValue.getPointId() != null ? String.valueOf(pointValue.getPointId()) : Common.Cache.ASTERISK;
-            // Save point value to Redis
-            redisUtil.setKey(
-                    Common.Cache.REAL_TIME_VALUE_KEY_PREFIX + pointValue.getDeviceId() + Common.Cache.DOT + pointIdKey,
-                    pointValue,
-                    pointValue.getTimeOut(),
-                    pointValue.getTimeUnit()
-            );
-        });
+        threadPoolExecutor.execute(() -> realtimeValueService.save(Collections.singletonList(pointValue)));
     }
 
     /**
      * Save point value array to redis
+     * <p>
+     * 同步写入，调用方为批量消费线程，返回即表示整批已写入 Redis
      *
      * @param pointValues Point Value Array
      */
     private void savePointValuesToRedis(final List<PointValue> pointValues) {
-        threadPoolExecutor.execute(() -> pointValues.forEach(pointValue -> {
-            String pointIdKey = pointValue.getPointId() != null ? String.valueOf(pointValue.getPointId()) : Common.Cache.ASTERISK;
-            // Save point value to Redis
-            redisUtil.setKey(
-                    Common.Cache.REAL_TIME_VALUE_KEY_PREFIX + pointValue.getDeviceId() + Common.Cache.DOT + pointIdKey,
-                    pointValue,
-                    pointValue.getTimeOut(),
-                    pointValue.getTimeUnit()
-            );
-        }));
+        realtimeValueService.save(pointValues);
+    }
+
+    /**
+     * 保存到 MongoDB，开启死区过滤时只保存变化超过死区的位号值，预聚合数据使用全部位号值
+     *
+     * @param pointValues PointValue Array
+     */
+    private void savePointValuesToMongo(List<PointValue> pointValues) {
+        List<PointValue> storePointValues = pointValues;
+        if (archiveProperty.getEnable()) {
+            List<PointValue> unarchived = pointValueArchiveService.addPointValues(pointValues);
+            if (!archiveProperty.getStoreRaw()) {
+                storePointValues = unarchived;
+            }
+        }
+        if (deadbandProperty.getEnable()) {
+            storePointValues = pointValueFilterService.filter(storePointValues);
+        }
+        if (storePointValues.size() > 0) {
+            if (storageProperty.getBucketEnable()) {
+                pointValueBucketService.addPointValues(storePointValues);
+            } else {
+                insert(storePointValues);
+            }
+        }
+        if (rollupProperty.getEnable()) {
+            pointValueRollupService.addPointValues(pointValues);
+        }
+    }
+
+    /**
+     * 按 deviceId、pointId、originTime upsert，已存在时不做修改，部分写入失败后重试不会产生重复数据
+     *
+     * @param pointValues PointValue Array
+     */
+    private void insert(List<PointValue> pointValues) {
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PointValue.class);
+        for (PointValue pointValue : pointValues) {
+            if (null == pointValue.getOriginTime()) {
+                bulkOperations.insert(pointValue);
+                continue;
+            }
+            Document document = new Document();
+            mongoTemplate.getConverter().write(pointValue, document);
+            document.remove("_id");
+            Update update = new Update();
+            document.forEach(update::setOnInsert);
+            Query query = new Query(Criteria.where("deviceId").is(pointValue.getDeviceId()).and("pointId").is(pointValue.getPointId()).and("originTime").is(pointValue.getOriginTime()));
+            bulkOperations.upsert(query, update);
+        }
+        bulkOperations.execute();
     }
 
 }
@@ -0,0 +1,417 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.dc3.center.data.bean.RealtimeProperty;
+import com.dc3.center.data.service.RealtimeValueService;
+import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.constant.Common;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 实时数据存储，Redis 之前增加一层进程内缓存
+ * <p>
+ * 进程内缓存以设备为单位，只在读取未命中时通过 HGETALL 整体加载，
+ * 之后由数据写入直接更新，保证缓存中的设备数据是完整的
+ *
+ * @author pnoker
+ */
+@Slf4j
+@Service
+@EnableConfigurationProperties({RealtimeProperty.class})
+public class RealtimeValueServiceImpl implements RealtimeValueService {
+
+    /**
+     * 只延长设备 Hash 的失效时间，不会被失效时间较短的批次缩短
+     */
+    private static final byte[] EXTEND_EXPIRE_SCRIPT = ("local pttl = redis.call('PTTL', KEYS[1]) "
+            + "if pttl < tonumber(ARGV[1]) then return redis.call('PEXPIRE', KEYS[1], ARGV[1]) end "
+            + "return 0").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 删除已过期的位号字段，字段值已被新数据覆盖时保留
+     */
+    private static final RedisScript<Long> REMOVE_EXPIRED_SCRIPT = new DefaultRedisScript<>("local removed = 0 "
+            + "for i = 1, #ARGV, 2 do "
+            + "if redis.call('HGET', KEYS[1], ARGV[i]) == ARGV[i + 1] then removed = removed + redis.call('HDEL', KEYS[1], ARGV[i]) end "
+            + "end "
+            + "return removed", Long.class);
+
+    @Resource
+    private RealtimeProperty realtimeProperty;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private Cache<Long, Map<Long, PointValue>> deviceCache;
+    private Counter hitCounter, missCounter;
+
+    @PostConstruct
+    public void initial() {
+        if (!realtimeProperty.getCacheEnable()) {
+            return;
+        }
+
+        deviceCache = Caffeine.newBuilder()
+                .maximumSize(realtimeProperty.getCacheSize())
+                .expireAfter(new Expiry<Long, Map<Long, PointValue>>() {
+                    @Override
+                    public long expireAfterCreate(Long deviceId, Map<Long, PointValue> pointValueMap, long currentTime) {
+                        long expire = expireNanos(pointValueMap);
+                        long maxAge = TimeUnit.MILLISECONDS.toNanos(realtimeProperty.getCacheMaxAge());
+                        return maxAge > 0 ? Math.min(expire, maxAge) : expire;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Long deviceId, Map<Long, PointValue> pointValueMap, long currentTime, long currentDuration) {
+                        long expire = expireNanos(pointValueMap);
+                        return realtimeProperty.getCacheMaxAge() > 0 ? Math.min(expire, currentDuration) : expire;
+                    }
+
+                    @Override
+                    public long expireAfterRead(Long deviceId, Map<Long, PointValue> pointValueMap, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+
+        Gauge.builder("dc3.data.realtime.cache.size", deviceCache, Cache::estimatedSize)
+                .description("Devices held in the realtime near cache")
+                .register(meterRegistry);
+        hitCounter = Counter.builder("dc3.data.realtime.cache.requests")
+                .tag("result", "hit")
+                .description("Realtime reads served by the near cache")
+                .register(meterRegistry);
+        missCounter = Counter.builder("dc3.data.realtime.cache.requests")
+                .tag("result", "miss")
+                .description("Realtime reads that fell back to Redis")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void save(List<PointValue> pointValues) {
+        if (null == pointValues || pointValues.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Map<Long, PointValue>> deviceMap = flatten(pointValues);
+        saveToRedis(deviceMap);
+        if (null != deviceCache) {
+            // Only refresh devices already loaded, a partial device must not be cached
+            deviceMap.forEach((deviceId, pointValueMap) -> deviceCache.asMap().computeIfPresent(deviceId, (k, cached) -> merge(cached, pointValueMap)));
+        }
+    }
+
+    @Override
+    public PointValue get(Long deviceId, Long pointId) {
+        long now = System.currentTimeMillis();
+        if (null == deviceCache) {
+            return getFromRedis(deviceId, pointId, now);
+        }
+
+        Map<Long, PointValue> pointValueMap = deviceCache.getIfPresent(deviceId);
+        if (null != pointValueMap) {
+            PointValue pointValue = pointValueMap.get(pointId);
+            if (null != pointValue && expireTime(pointValue, now) >= now) {
+                hitCounter.increment();
+                return pointValue;
+            }
+            missCounter.increment();
+            PointValue redisValue = getFromRedis(deviceId, pointId, now);
+            if (null != redisValue) {
+                deviceCache.asMap().computeIfPresent(deviceId, (k, cached) -> merge(cached, Collections.singletonMap(pointId, redisValue)));
+            }
+            return redisValue;
+        }
+
+        missCounter.increment();
+        return load(deviceId, now).get(pointId);
+    }
+
+    @Override
+    public List<PointValue> list(Long deviceId) {
+        long now = System.currentTimeMillis();
+        Map<Long, PointValue> pointValueMap;
+        if (null == deviceCache) {
+            pointValueMap = listFromRedis(deviceId, now);
+        } else {
+            pointValueMap = deviceCache.getIfPresent(deviceId);
+            if (null != pointValueMap) {
+                hitCounter.increment();
+            } else {
+                missCounter.increment();
+                pointValueMap = load(deviceId, now);
+            }
+        }
+
+        List<PointValue> pointValues = new ArrayList<>(pointValueMap.size());
+        pointValueMap.values().forEach(pointValue -> {
+            if (expireTime(pointValue, now) >= now) {
+                pointValues.add(pointValue);
+            }
+        });
+        return pointValues;
+    }
+
+    /**
+     * 从 Redis 加载设备全部位号值到进程内缓存
+     * <p>
+     * 加载期间其他线程可能已经写入了更新的数据，按位号合并，不会用加载的快照覆盖更新的位号值
+     *
+     * @param deviceId Device Id
+     * @param now      Current Time
+     * @return PointValue Map
+     */
+    private Map<Long, PointValue> load(Long deviceId, long now) {
+        Map<Long, PointValue> pointValueMap = listFromRedis(deviceId, now);
+        if (pointValueMap.isEmpty()) {
+            return pointValueMap;
+        }
+        return deviceCache.asMap().compute(deviceId, (k, cached) -> null == cached ? Collections.unmodifiableMap(pointValueMap) : merge(cached, pointValueMap));
+    }
+
+    /**
+     * 合并位号值，同一位号只保留 originTime 较新的值
+     *
+     * @param cached   Cached PointValue Map
+     * @param incoming Incoming PointValue Map
+     * @return PointValue Map
+     */
+    private Map<Long, PointValue> merge(Map<Long, PointValue> cached, Map<Long, PointValue> incoming) {
+        Map<Long, PointValue> merged = new HashMap<>(cached);
+        incoming.forEach((pointId, pointValue) -> merged.merge(pointId, pointValue, (older, newer) -> time(newer) >= time(older) ? newer : older));
+        return Collections.unmodifiableMap(merged);
+    }
+
+    /**
+     * 位号值的采集时间，没有采集时间时使用写入时间
+     *
+     * @param pointValue PointValue
+     * @return long
+     */
+    private long time(PointValue pointValue) {
+        if (null != pointValue.getOriginTime()) {
+            return pointValue.getOriginTime();
+        }
+        return null != pointValue.getCreateTime() ? pointValue.getCreateTime() : 0L;
+    }
+
+    /**
+     * 按设备拆分位号值，多位号数据的子位号使用父级位号值的设备、时间以及失效时间
+     *
+     * @param pointValues PointValue Array
+     * @return Device Id -> Point Id -> PointValue
+     */
+    private Map<Long, Map<Long, PointValue>> flatten(List<PointValue> pointValues) {
+        Map<Long, Map<Long, PointValue>> deviceMap = new HashMap<>(16);
+        for (PointValue pointValue : pointValues) {
+            Map<Long, PointValue> pointValueMap = deviceMap.computeIfAbsent(pointValue.getDeviceId(), k -> new HashMap<>(16));
+            if (null != pointValue.getChildren()) {
+                for (PointValue child : pointValue.getChildren()) {
+                    if (null != child.getPointId()) {
+                        PointValue flat = new PointValue(pointValue.getDeviceId(), child.getPointId(), child.getRawValue(), child.getValue(), pointValue.getTimeOut(), pointValue.getTimeUnit());
+                        flat.setCalculateValue(child.getCalculateValue())
+                                .setOriginTime(null != child.getOriginTime() ? child.getOriginTime() : pointValue.getOriginTime())
+                                .setCreateTime(null != child.getCreateTime() ? child.getCreateTime() : pointValue.getCreateTime());
+                        pointValueMap.put(flat.getPointId(), flat);
+                    }
+                }
+            } else if (null != pointValue.getPointId()) {
+                pointValueMap.put(pointValue.getPointId(), pointValue);
+            }
+        }
+        return deviceMap;
+    }
+
+    /**
+     * 通过一次 Pipeline 写入，每个设备执行 HMSET，并将设备失效时间延长到该批次中最长的位号失效时间，
+     * 已有的更长失效时间保持不变
+     *
+     * @param deviceMap Device Id -> Point Id -> PointValue
+     */
+    private void saveToRedis(Map<Long, Map<Long, PointValue>> deviceMap) {
+        long now = System.currentTimeMillis();
+        RedisSerializer<String> serializer = stringRedisTemplate.getStringSerializer();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            deviceMap.forEach((deviceId, pointValueMap) -> {
+                if (pointValueMap.isEmpty()) {
+                    return;
+                }
+                long timeOut = 0;
+                Map<byte[], byte[]> hashes = new HashMap<>(pointValueMap.size());
+                for (PointValue pointValue : pointValueMap.values()) {
+                    long expireTime = expireTime(pointValue, now);
+                    timeOut = Math.max(timeOut, expireTime - now);
+                    hashes.put(Objects.requireNonNull(serializer.serialize(String.valueOf(pointValue.getPointId()))), encode(pointValue, expireTime));
+                }
+                byte[] key = Objects.requireNonNull(serializer.serialize(key(deviceId)));
+                connection.hMSet(key, hashes);
+                byte[] expire = Objects.requireNonNull(serializer.serialize(String.valueOf(Math.max(timeOut, 1))));
+                connection.eval(EXTEND_EXPIRE_SCRIPT, ReturnType.INTEGER, 1, key, expire);
+            });
+            return null;
+        });
+    }
+
+    private PointValue getFromRedis(Long deviceId, Long pointId, long now) {
+        Object value = stringRedisTemplate.opsForHash().get(key(deviceId), String.valueOf(pointId));
+        if (null == value) {
+            return null;
+        }
+        return decode(deviceId, pointId, value.toString(), now);
+    }
+
+    /**
+     * 读取设备全部位号值，顺带删除已过期的位号字段，避免设备 Hash 在持续写入时无限增长
+     *
+     * @param deviceId Device Id
+     * @param now      Current Time
+     * @return PointValue Map
+     */
+    private Map<Long, PointValue> listFromRedis(Long deviceId, long now) {
+        String key = key(deviceId);
+        Map<Object, Object> fieldMap = stringRedisTemplate.opsForHash().entries(key);
+        Map<Long, PointValue> pointValueMap = new HashMap<>(fieldMap.size());
+        List<String> expired = new ArrayList<>();
+        fieldMap.forEach((pointId, value) -> {
+            PointValue pointValue = decode(deviceId, Long.valueOf(pointId.toString()), value.toString(), now);
+            if (null != pointValue) {
+                pointValueMap.put(pointValue.getPointId(), pointValue);
+            } else {
+                expired.add(pointId.toString());
+                expired.add(value.toString());
+            }
+        });
+        if (!expired.isEmpty()) {
+            try {
+                stringRedisTemplate.execute(REMOVE_EXPIRED_SCRIPT, Collections.singletonList(key), expired.toArray());
+            } catch (Exception e) {
+                log.warn("Remove expired realtime values of device({}) failed: {}", deviceId, e.getMessage());
+            }
+        }
+        return pointValueMap;
+    }
+
+    /**
+     * 设备实时数据 Hash Key
+     *
+     * @param deviceId Device Id
+     * @return String
+     */
+    private String key(Long deviceId) {
+        return Common.Cache.REAL_TIME_VALUES_KEY_PREFIX + deviceId;
+    }
+
+    /**
+     * 位号值失效时间，以写入时间为起点加上 PointValue.timeOut
+     *
+     * @param pointValue PointValue
+     * @param now        Current Time
+     * @return long
+     */
+    private long expireTime(PointValue pointValue, long now) {
+        long createTime = null != pointValue.getCreateTime() ? pointValue.getCreateTime() : now;
+        return createTime + pointValue.getTimeUnit().toMillis(pointValue.getTimeOut());
+    }
+
+    /**
+     * 设备缓存的失效时长，取所有位号值中最晚的失效时间
+     *
+     * @param pointValueMap PointValue Map
+     * @return long nanos
+     */
+    private long expireNanos(Map<Long, PointValue> pointValueMap) {
+        long now = System.currentTimeMillis();
+        long expireTime = now;
+        for (PointValue pointValue : pointValueMap.values()) {
+            expireTime = Math.max(expireTime, expireTime(pointValue, now));
+        }
+        return TimeUnit.MILLISECONDS.toNanos(expireTime - now);
+    }
+
+    /**
+     * 紧凑编码：[value, rawValue, calculateValue, originTime, createTime, expireTime]
+     *
+     * @param pointValue PointValue
+     * @param expireTime Expire Time
+     * @return byte[]
+     */
+    private byte[] encode(PointValue pointValue, long expireTime) {
+        Object[] values = new Object[]{
+                pointValue.getValue(),
+                pointValue.getRawValue(),
+                pointValue.getCalculateValue(),
+                pointValue.getOriginTime(),
+                pointValue.getCreateTime(),
+                expireTime
+        };
+        return JSON.toJSONString(values).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 解码紧凑编码的位号值，过期的位号值返回 null
+     *
+     * @param deviceId Device Id
+     * @param pointId  Point Id
+     * @param value    Compact Value
+     * @param now      Current Time
+     * @return PointValue
+     */
+    private PointValue decode(Long deviceId, Long pointId, String value, long now) {
+        try {
+            JSONArray values = JSON.parseArray(value);
+            long expireTime = values.getLongValue(5);
+            if (expireTime < now) {
+                return null;
+            }
+            Long createTime = values.getLong(4);
+            long base = null != createTime ? createTime : now;
+            PointValue pointValue = new PointValue(deviceId, pointId, values.getString(1), values.getString(0), (int) (expireTime - base), TimeUnit.MILLISECONDS);
+            pointValue.setCalculateValue(values.get(2));
+            pointValue.setOriginTime(values.getLong(3));
+            pointValue.setCreateTime(base);
+            return pointValue;
+        } catch (Exception e) {
+            log.error("Invalid realtime value, device({}) point({}): {}", deviceId, pointId, value);
+            return null;
+        }
+    }
+
+}
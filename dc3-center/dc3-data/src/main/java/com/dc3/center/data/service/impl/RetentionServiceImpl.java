@@ -0,0 +1,262 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.service.impl;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.dc3.api.center.manager.feign.DeviceClient;
+import com.dc3.center.data.bean.PointValueBucket;
+import com.dc3.center.data.bean.PointValueBucket.Sample;
+import com.dc3.center.data.bean.PointValueRollup.Resolution;
+import com.dc3.center.data.bean.RetentionProperty;
+import com.dc3.center.data.bean.RetentionProperty.Policy;
+import com.dc3.center.data.bean.RollupProperty;
+import com.dc3.center.data.bean.StorageProperty;
+import com.dc3.center.data.service.PointValueRollupService;
+import com.dc3.center.data.service.RetentionService;
+import com.dc3.common.bean.Pages;
+import com.dc3.common.bean.R;
+import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.dto.DeviceDto;
+import com.dc3.common.exception.ServiceException;
+import com.dc3.common.model.Device;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * @author pnoker
+ */
+@Slf4j
+@Service
+@EnableConfigurationProperties({RetentionProperty.class})
+public class RetentionServiceImpl implements RetentionService {
+
+    @Resource
+    private MongoTemplate mongoTemplate;
+    @Resource
+    private RetentionProperty retentionProperty;
+    @Resource
+    private StorageProperty storageProperty;
+    @Resource
+    private RollupProperty rollupProperty;
+    @Resource
+    private PointValueRollupService pointValueRollupService;
+    @Resource
+    private DeviceClient deviceClient;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 过期的原始数据删除前合并到预聚合集合，之后只保留在预聚合集合中，未开启预聚合时压缩会直接丢失数据
+     */
+    @PostConstruct
+    public void initial() {
+        if (retentionProperty.getEnable() && !rollupProperty.getEnable()) {
+            throw new ServiceException("Point value retention requires data.rollup.enable, otherwise expired raw data can't be aggregated");
+        }
+    }
+
+    @Override
+    public void compact() {
+        long now = System.currentTimeMillis();
+        long deadline = now + retentionProperty.getMaxDuration().toMillis();
+        String rawCollection = storageProperty.getBucketEnable() ? PointValueBucket.COLLECTION : mongoTemplate.getCollectionName(PointValue.class);
+
+        // devices are taken from the stored data, so data of deleted devices is compacted with the default policy
+        Set<Long> deviceIds = new TreeSet<>(mongoTemplate.findDistinct(new Query(), "deviceId", rawCollection, Long.class));
+        for (Resolution resolution : Resolution.values()) {
+            deviceIds.addAll(mongoTemplate.findDistinct(new Query(), "deviceId", resolution.getCollection(), Long.class));
+        }
+        Map<Long, Long> profileMap = profiles();
+
+        long count = 0;
+        for (Long deviceId : deviceIds) {
+            if (System.currentTimeMillis() > deadline) {
+                log.warn("Point value retention compact exceeded {}, the rest will be compacted next time", retentionProperty.getMaxDuration());
+                break;
+            }
+            Policy policy = policy(deviceId, profileMap.get(deviceId));
+            count += compactRaw(deviceId, policy.getRaw(), now, deadline);
+            for (Resolution resolution : Resolution.values()) {
+                count += compactRollup(deviceId, resolution, policy.get(resolution), now, deadline);
+            }
+        }
+        log.info("Point value retention compact finished, devices: {}, removed: {}, cost: {}ms", deviceIds.size(), count, System.currentTimeMillis() - now);
+    }
+
+    /**
+     * 设备策略优先，其次是模板策略，最后是默认策略
+     *
+     * @param deviceId  Device Id
+     * @param profileId Profile Id
+     * @return Policy
+     */
+    private Policy policy(Long deviceId, Long profileId) {
+        Policy policy = retentionProperty.getDevices().get(deviceId);
+        if (null == policy && null != profileId) {
+            policy = retentionProperty.getProfiles().get(profileId);
+        }
+        return null != policy ? policy : retentionProperty.getPolicy();
+    }
+
+    /**
+     * 只有配置了模板策略时才需要查询设备所属模板
+     *
+     * @return Map<Device Id, Profile Id>
+     */
+    private Map<Long, Long> profiles() {
+        if (retentionProperty.getProfiles().isEmpty()) {
+            return Collections.emptyMap();
+        }
+        DeviceDto deviceDto = new DeviceDto();
+        deviceDto.setPage(new Pages().setSize(-1L));
+        R<Page<Device>> r = deviceClient.list(deviceDto);
+        if (!r.isOk()) {
+            log.warn("Select device list failed, profile retention policies are skipped: {}", r.getMessage());
+            return Collections.emptyMap();
+        }
+        Map<Long, Long> profileMap = new HashMap<>(64);
+        for (Device device : r.getData().getRecords()) {
+            if (null != device.getProfileId()) {
+                profileMap.put(device.getId(), device.getProfileId());
+            }
+        }
+        return profileMap;
+    }
+
+    /**
+     * 分批删除过期的原始数据，每批删除前先合并到预聚合集合，开启预聚合之前写入或者未被统计的数据不会丢失；
+     * 合并失败时保留这一批数据，留到下一次处理
+     *
+     * @param deviceId  Device Id
+     * @param retention 保留时长
+     * @param now       当前时间
+     * @param deadline  截止时间
+     * @return 删除的文档数量
+     */
+    private long compactRaw(Long deviceId, Duration retention, long now, long deadline) {
+        if (null == retention || retention.isZero() || retention.isNegative()) {
+            return 0;
+        }
+        boolean bucket = storageProperty.getBucketEnable();
+        String collection = bucket ? PointValueBucket.COLLECTION : mongoTemplate.getCollectionName(PointValue.class);
+
+        // a bucket is only expired when its whole hour is before the cutoff
+        long cutoff = now - retention.toMillis();
+        Query query = bucket
+                ? new Query(Criteria.where("deviceId").is(deviceId).and("endTime").lt(PointValueBucket.hour(cutoff)))
+                : new Query(Criteria.where("deviceId").is(deviceId).and("originTime").lt(cutoff)).with(Sort.by(Sort.Direction.ASC, "originTime"));
+        query.limit(bucket ? retentionProperty.getBucketBatchSize() : retentionProperty.getBatchSize());
+
+        long count = 0;
+        while (System.currentTimeMillis() < deadline) {
+            List<Object> ids = new ArrayList<>();
+            List<PointValue> pointValues = new ArrayList<>();
+            if (bucket) {
+                for (PointValueBucket pointValueBucket : mongoTemplate.find(query, PointValueBucket.class)) {
+                    ids.add(pointValueBucket.getId());
+                    if (null != pointValueBucket.getSamples()) {
+                        for (Sample sample : pointValueBucket.getSamples()) {
+                            pointValues.add(new PointValue(deviceId, pointValueBucket.getPointId(), sample.getRawValue(), sample.getValue()).setOriginTime(sample.getOriginTime()));
+                        }
+                    }
+                }
+            } else {
+                for (PointValue pointValue : mongoTemplate.find(query, PointValue.class)) {
+                    ids.add(pointValue.getObjectId());
+                    pointValues.add(pointValue);
+                }
+            }
+            if (ids.isEmpty()) {
+                break;
+            }
+            try {
+                pointValueRollupService.cover(pointValues);
+            } catch (Exception e) {
+                log.warn("Merge expired point values of device({}) into rollups failed, raw data is kept: {}", deviceId, e.getMessage());
+                break;
+            }
+            count += remove(collection, ids);
+            if (!pause()) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 分批删除过期的预聚合数据
+     *
+     * @param deviceId   Device Id
+     * @param resolution Resolution
+     * @param retention  保留时长
+     * @param now        当前时间
+     * @param deadline   截止时间
+     * @return 删除的文档数量
+     */
+    private long compactRollup(Long deviceId, Resolution resolution, Duration retention, long now, long deadline) {
+        if (null == retention || retention.isZero() || retention.isNegative()) {
+            return 0;
+        }
+        Query query = new Query(Criteria.where("deviceId").is(deviceId).and("time").lt(now - retention.toMillis()));
+        query.fields().include("_id");
+        query.limit(retentionProperty.getBatchSize());
+
+        long count = 0;
+        while (System.currentTimeMillis() < deadline) {
+            List<Object> ids = mongoTemplate.find(query, Document.class, resolution.getCollection()).stream()
+                    .map(document -> document.get("_id")).collect(Collectors.toList());
+            if (ids.isEmpty()) {
+                break;
+            }
+            count += remove(resolution.getCollection(), ids);
+            if (!pause()) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    private long remove(String collection, List<Object> ids) {
+        long count = mongoTemplate.remove(new Query(Criteria.where("_id").in(ids)), collection).getDeletedCount();
+        meterRegistry.counter("dc3.data.retention.removed", "collection", collection).increment(count);
+        return count;
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(retentionProperty.getBatchPause().toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+}
@@ -1,10 +1,12 @@
 package com.dc3.center.data.service.impl;
 
+import com.dc3.center.data.bean.RetentionProperty;
 import com.dc3.center.data.service.ScheduleService;
-import com.dc3.center.data.service.job.PointValueScheduleJob;
+import com.dc3.center.data.service.job.RetentionScheduleJob;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.quartz.*;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
@@ -14,13 +16,18 @@ import javax.annotation.Resource;
  */
 @Slf4j
 @Service
+@EnableConfigurationProperties({RetentionProperty.class})
 public class ScheduleServiceImpl implements ScheduleService {
     @Resource
     private Scheduler scheduler;
+    @Resource
+    private RetentionProperty retentionProperty;
 
     @Override
     public void initial() {
-        createScheduleJob("ScheduleGroup", "PointValueScheduleJob", "0/1 * * * * ?", PointValueScheduleJob.class);
+        if (retentionProperty.getEnable()) {
+            createScheduleJob("ScheduleGroup", "RetentionScheduleJob", retentionProperty.getCron(), RetentionScheduleJob.class);
+        }
         try {
             if (!scheduler.isShutdown()) {
                 scheduler.start();
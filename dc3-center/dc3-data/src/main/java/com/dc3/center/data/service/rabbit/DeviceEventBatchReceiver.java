@@ -0,0 +1,123 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.service.rabbit;
+
+import com.dc3.center.data.service.DeviceEventService;
+import com.dc3.center.data.service.MessageRetryService;
+import com.dc3.common.bean.driver.DeviceEvent;
+import com.dc3.common.constant.Common;
+import com.dc3.common.converter.PointValueMessageConverter;
+import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitHandler;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量接收驱动发送过来的设备事件数据
+ * 其中包括：设备心跳事件、在线、离线、故障等其他事件
+ * <p>
+ * 整批事件处理完成后才确认消息，写入失败时经重试队列有限次重试，仍失败则转入死信队列
+ *
+ * @author pnoker
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "data.listener.batch-enable", havingValue = "true", matchIfMissing = true)
+public class DeviceEventBatchReceiver {
+
+    @Resource
+    private RedisTemplate<String, Object> redisTemplate;
+    @Resource
+    private DeviceEventService deviceEventService;
+    @Resource
+    private MessageRetryService messageRetryService;
+    @Resource
+    private PointValueMessageConverter pointValueMessageConverter;
+
+    @RabbitHandler
+    @RabbitListener(queues = "#{deviceEventQueue.name}", containerFactory = "batchRabbitListenerContainerFactory")
+    public void deviceEventReceive(Channel channel, List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        boolean[] processed;
+        try {
+            processed = messageRetryService.processed(messages);
+        } catch (Exception e) {
+            log.error("Check processed device event messages({}) failed: {}", messages.size(), e.getMessage());
+            messageRetryService.nack(channel, messages, Common.Rabbit.QUEUE_DEVICE_EVENT_RETRY, Common.Rabbit.QUEUE_DEVICE_EVENT_DEAD);
+            return;
+        }
+
+        List<Message> accepted = new ArrayList<>(messages.size());
+        List<DeviceEvent> heartbeats = new ArrayList<>(messages.size());
+        List<DeviceEvent> deviceEvents = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            accepted.add(message);
+            if (processed[i]) {
+                continue;
+            }
+
+            Object payload = null;
+            try {
+                payload = pointValueMessageConverter.fromMessage(message);
+            } catch (Exception e) {
+                log.error("Invalid device event message: {}", e.getMessage());
+            }
+            if (!(payload instanceof DeviceEvent) || null == ((DeviceEvent) payload).getDeviceId()) {
+                log.error("Invalid device event: {}", payload);
+                accepted.remove(accepted.size() - 1);
+                messageRetryService.dead(channel, message, Common.Rabbit.QUEUE_DEVICE_EVENT_DEAD);
+                continue;
+            }
+            DeviceEvent deviceEvent = (DeviceEvent) payload;
+            if (Common.Device.Event.HEARTBEAT.equals(deviceEvent.getType())) {
+                heartbeats.add(deviceEvent);
+            } else {
+                deviceEvents.add(deviceEvent);
+            }
+        }
+        log.debug("Device event batch, Received: {}, Saved: {}", messages.size(), deviceEvents.size());
+
+        try {
+            // Save device heartbeat to Redis, failures must reach the retry path
+            heartbeats.forEach(deviceEvent -> redisTemplate.opsForValue().set(
+                    Common.Cache.DEVICE_STATUS_KEY_PREFIX + deviceEvent.getDeviceId(),
+                    deviceEvent.getContent(),
+                    deviceEvent.getTimeOut(),
+                    deviceEvent.getTimeUnit()
+            ));
+            // Save device event array to MongoDB
+            deviceEventService.addDeviceEvents(deviceEvents);
+        } catch (Exception e) {
+            log.error("Save device event batch({}) failed: {}", heartbeats.size() + deviceEvents.size(), e.getMessage(), e);
+            messageRetryService.nack(channel, accepted, Common.Rabbit.QUEUE_DEVICE_EVENT_RETRY, Common.Rabbit.QUEUE_DEVICE_EVENT_DEAD);
+            return;
+        }
+        messageRetryService.ack(channel, accepted);
+    }
+}
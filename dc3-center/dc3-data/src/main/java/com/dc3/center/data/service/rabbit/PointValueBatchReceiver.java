@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.service.rabbit;
+
+import com.dc3.center.data.service.MessageRetryService;
+import com.dc3.center.data.service.PointValueIngestService;
+import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.constant.Common;
+import com.dc3.common.converter.PointValueMessageConverter;
+import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitHandler;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量接收驱动发送过来的数据
+ * <p>
+ * 整批数据经接入缓冲区写入 Redis & MongoDB 成功后才确认消息，缓冲区已满或者写入失败时经重试队列有限次重试，仍失败则转入死信队列；
+ * 已处理过的消息按 messageId 跳过，每条消息可以是单个位号值，也可以是驱动端合并的批量位号值
+ *
+ * @author pnoker
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "data.listener.batch-enable", havingValue = "true", matchIfMissing = true)
+public class PointValueBatchReceiver {
+
+    @Resource
+    private PointValueIngestService pointValueIngestService;
+    @Resource
+    private MessageRetryService messageRetryService;
+    @Resource
+    private PointValueMessageConverter pointValueMessageConverter;
+
+    @RabbitHandler
+    @RabbitListener(queues = "#{pointValueQueue.name}", containerFactory = "batchRabbitListenerContainerFactory")
+    public void pointValueReceive(Channel channel, List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        boolean[] processed;
+        try {
+            processed = messageRetryService.processed(messages);
+        } catch (Exception e) {
+            log.error("Check processed point value messages({}) failed: {}", messages.size(), e.getMessage());
+            messageRetryService.nack(channel, messages, Common.Rabbit.QUEUE_POINT_VALUE_RETRY, Common.Rabbit.QUEUE_POINT_VALUE_DEAD);
+            return;
+        }
+
+        List<Message> accepted = new ArrayList<>(messages.size());
+        List<PointValue> pointValues = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            if (processed[i]) {
+                accepted.add(message);
+                continue;
+            }
+
+            List<PointValue> received;
+            try {
+                received = pointValueMessageConverter.pointValues(message);
+            } catch (Exception e) {
+                log.error("Invalid point value message: {}", e.getMessage());
+                messageRetryService.dead(channel, message, Common.Rabbit.QUEUE_POINT_VALUE_DEAD);
+                continue;
+            }
+            accepted.add(message);
+            for (PointValue pointValue : received) {
+                if (null == pointValue || null == pointValue.getDeviceId()) {
+                    log.error("Invalid point data: {}", pointValue);
+                    continue;
+                }
+                pointValues.add(pointValue);
+            }
+        }
+        log.debug("Point value batch, Received: {}, Valid: {}", messages.size(), pointValues.size());
+
+        if (accepted.isEmpty()) {
+            return;
+        }
+
+        // Save point value array to ingest buffer, batch write to Redis & MongoDB, ack after the write
+        boolean offered = pointValueIngestService.offer(pointValues, success -> {
+            if (success) {
+                messageRetryService.ack(channel, accepted);
+            } else {
+                messageRetryService.nack(channel, accepted, Common.Rabbit.QUEUE_POINT_VALUE_RETRY, Common.Rabbit.QUEUE_POINT_VALUE_DEAD);
+            }
+        });
+        if (!offered) {
+            messageRetryService.nack(channel, accepted, Common.Rabbit.QUEUE_POINT_VALUE_RETRY, Common.Rabbit.QUEUE_POINT_VALUE_DEAD);
+        }
+    }
+}
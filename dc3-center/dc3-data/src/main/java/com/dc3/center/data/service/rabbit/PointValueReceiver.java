@@ -16,62 +16,90 @@
 
 package com.dc3.center.data.service.rabbit;
 
-import com.dc3.center.data.service.PointValueService;
-import com.dc3.center.data.service.job.PointValueScheduleJob;
+import com.dc3.center.data.service.MessageRetryService;
+import com.dc3.center.data.service.PointValueIngestService;
 import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.constant.Common;
+import com.dc3.common.converter.PointValueMessageConverter;
 import com.rabbitmq.client.Channel;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitHandler;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
-import java.io.IOException;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * 接收驱动发送过来的数据
  * <p>
+ * 位号值写入接入缓冲区，与其他消息合并批量写入 Redis & MongoDB 成功后才确认消息，
+ * 缓冲区已满或者写入失败时经重试队列有限次重试，已处理过的消息按 messageId 跳过
+ * <p>
  * 200万条SinglePointValue会产生：60M的索引数据以及400M的数据
  *
  * @author pnoker
  */
 @Slf4j
 @Component
+@ConditionalOnProperty(name = "data.listener.batch-enable", havingValue = "false")
 public class PointValueReceiver {
 
     @Resource
-    private PointValueService pointValueService;
+    private PointValueIngestService pointValueIngestService;
+    @Resource
+    private MessageRetryService messageRetryService;
     @Resource
-    private ThreadPoolExecutor threadPoolExecutor;
+    private PointValueMessageConverter pointValueMessageConverter;
 
     @RabbitHandler
     @RabbitListener(queues = "#{pointValueQueue.name}")
-    public void pointValueReceive(Channel channel, Message message, PointValue pointValue) {
+    public void pointValueReceive(Channel channel, Message message) {
+        List<Message> messages = Collections.singletonList(message);
+        boolean processed;
         try {
-            channel.basicAck(message.getMessageProperties().getDeliveryTag(), true);
-            if (null == pointValue || null == pointValue.getDeviceId()) {
-                log.error("Invalid point data: {}", pointValue);
+            processed = messageRetryService.processed(messages)[0];
+        } catch (Exception e) {
+            log.error("Check processed point value message failed: {}", e.getMessage());
+            messageRetryService.nack(channel, messages, Common.Rabbit.QUEUE_POINT_VALUE_RETRY, Common.Rabbit.QUEUE_POINT_VALUE_DEAD);
+            return;
+        }
+
+        List<PointValue> pointValues = new ArrayList<>();
+        if (!processed) {
+            List<PointValue> received;
+            try {
+                // a message carries a single point value or a batch envelope
+                received = pointValueMessageConverter.pointValues(message);
+            } catch (Exception e) {
+                log.error("Invalid point value message: {}", e.getMessage());
+                messageRetryService.dead(channel, message, Common.Rabbit.QUEUE_POINT_VALUE_DEAD);
                 return;
             }
-            PointValueScheduleJob.valueCount.getAndIncrement();
-            log.debug("Point value, From: {}, Received: {}", message.getMessageProperties().getReceivedRoutingKey(), pointValue);
+            for (PointValue pointValue : received) {
+                if (null == pointValue || null == pointValue.getDeviceId()) {
+                    log.error("Invalid point data: {}", pointValue);
+                    continue;
+                }
+                log.debug("Point value, From: {}, Received: {}", message.getMessageProperties().getReceivedRoutingKey(), pointValue);
+                pointValues.add(pointValue);
+            }
+        }
 
-            // Judge whether to process data in batch according to the data transmission speed
-            if (PointValueScheduleJob.valueSpeed.get() < 100) {
-                threadPoolExecutor.execute(() -> {
-                    // Save point value to Redis & MongoDB
-                    pointValueService.addPointValue(pointValue);
-                });
+        // Save point value to ingest buffer, batch write to Redis & MongoDB, ack after the write
+        boolean offered = pointValueIngestService.offer(pointValues, success -> {
+            if (success) {
+                messageRetryService.ack(channel, messages);
             } else {
-                // Save point value to schedule
-                PointValueScheduleJob.valueLock.writeLock().lock();
-                PointValueScheduleJob.pointValues.add(pointValue);
-                PointValueScheduleJob.valueLock.writeLock().unlock();
+                messageRetryService.nack(channel, messages, Common.Rabbit.QUEUE_POINT_VALUE_RETRY, Common.Rabbit.QUEUE_POINT_VALUE_DEAD);
             }
-        } catch (IOException e) {
-            log.error(e.getMessage(), e);
+        });
+        if (!offered) {
+            messageRetryService.nack(channel, messages, Common.Rabbit.QUEUE_POINT_VALUE_RETRY, Common.Rabbit.QUEUE_POINT_VALUE_DEAD);
         }
     }
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.utils;
+
+import cn.hutool.core.codec.Base64;
+import cn.hutool.core.lang.Pair;
+import com.dc3.common.exception.ServiceException;
+
+/**
+ * 游标分页工具，游标由 originTime 以及排序键组成，对调用方不透明
+ *
+ * @author pnoker
+ */
+public class CursorUtil {
+
+    private static final String SEPARATOR = "_";
+
+    /**
+     * 生成游标
+     *
+     * @param originTime Origin Time
+     * @param key        排序键，相同 originTime 时用于区分先后
+     * @return String
+     */
+    public static String encode(Long originTime, Object key) {
+        return Base64.encodeUrlSafe(originTime + SEPARATOR + key);
+    }
+
+    /**
+     * 解析游标
+     *
+     * @param cursor Cursor
+     * @return Pair<originTime, key>
+     */
+    public static Pair<Long, String> decode(String cursor) {
+        try {
+            String value = Base64.decodeStr(cursor);
+            int index = value.indexOf(SEPARATOR);
+            return new Pair<>(Long.parseLong(value.substring(0, index)), value.substring(index + 1));
+        } catch (Exception e) {
+            throw new ServiceException("Invalid cursor: " + cursor);
+        }
+    }
+
+}
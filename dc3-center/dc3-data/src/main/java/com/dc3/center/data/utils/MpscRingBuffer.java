@@ -0,0 +1,142 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * 有界无锁的多生产者单消费者环形缓冲区
+ * <p>
+ * 每个槽位维护一个序号，生产者通过 CAS 抢占写入位置，消费者只在序号就绪时读取，
+ * 缓冲区满时 offer 直接返回 false，由调用方决定丢弃或重试。
+ *
+ * @author pnoker
+ */
+public class MpscRingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequence;
+    private final AtomicLong producerIndex = new AtomicLong(0);
+
+    /**
+     * 只由消费者线程写入，volatile 仅用于 size() 读取
+     */
+    private volatile long consumerIndex = 0;
+
+    public MpscRingBuffer(int capacity) {
+        int size = 2;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.sequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequence.set(i, i);
+        }
+    }
+
+    /**
+     * 写入元素，可由多个线程并发调用
+     *
+     * @param element Element
+     * @return 缓冲区已满时返回 false
+     */
+    public boolean offer(E element) {
+        if (null == element) {
+            throw new NullPointerException();
+        }
+        long index;
+        int slot;
+        while (true) {
+            index = producerIndex.get();
+            slot = (int) (index & mask);
+            long diff = sequence.get(slot) - index;
+            if (diff == 0) {
+                if (producerIndex.compareAndSet(index, index + 1)) {
+                    break;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+        }
+        buffer.lazySet(slot, element);
+        sequence.set(slot, index + 1);
+        return true;
+    }
+
+    /**
+     * 读取一个元素，只能由单个消费者线程调用
+     *
+     * @return 缓冲区为空时返回 null
+     */
+    public E poll() {
+        long index = consumerIndex;
+        int slot = (int) (index & mask);
+        if (sequence.get(slot) != index + 1) {
+            return null;
+        }
+        E element = buffer.get(slot);
+        buffer.lazySet(slot, null);
+        sequence.set(slot, index + mask + 1);
+        consumerIndex = index + 1;
+        return element;
+    }
+
+    /**
+     * 批量读取元素，只能由单个消费者线程调用
+     *
+     * @param consumer Consumer
+     * @param limit    最大读取条数
+     * @return 实际读取条数
+     */
+    public int drain(Consumer<E> consumer, int limit) {
+        int count = 0;
+        E element;
+        while (count < limit && null != (element = poll())) {
+            consumer.accept(element);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 当前缓冲区中的元素数量，并发情况下为近似值
+     *
+     * @return int
+     */
+    public int size() {
+        long size = producerIndex.get() - consumerIndex;
+        if (size < 0) {
+            return 0;
+        }
+        return (int) Math.min(size, capacity());
+    }
+
+    /**
+     * 缓冲区容量
+     *
+     * @return int
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.benchmark;
+
+import com.dc3.center.data.bean.ArchiveProperty;
+import com.dc3.center.data.bean.IndexProperty;
+import com.dc3.center.data.bean.PointValueBucket;
+import com.dc3.center.data.bean.RollupProperty;
+import com.dc3.center.data.bean.StorageProperty;
+import com.dc3.center.data.service.impl.IndexServiceImpl;
+import com.dc3.center.data.service.impl.PointValueBucketServiceImpl;
+import com.dc3.center.data.service.impl.PointValueServiceImpl;
+import com.dc3.common.bean.driver.PointValue;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 原始集合与分桶集合的写入速率以及存储空间对比，需要可用的 MongoDB，默认不执行
+ * <p>
+ * mvn test -Dtest=BucketStorageBenchmarkTest -Ddc3.benchmark.mongo=mongodb://localhost:27017
+ * <p>
+ * 每个位号按 1 秒间隔写入 dc3.benchmark.values 个值，按 dc3.benchmark.batchSize 条一批写入，与监听者的批量写入一致
+ *
+ * @author pnoker
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "dc3.benchmark.mongo", matches = ".+")
+class BucketStorageBenchmarkTest {
+
+    private static final int POINTS = Integer.getInteger("dc3.benchmark.points", 100);
+    private static final int VALUES = Integer.getInteger("dc3.benchmark.values", 3600);
+    private static final int BATCH_SIZE = Integer.getInteger("dc3.benchmark.batchSize", 500);
+    private static final int MAX_SAMPLES = Integer.getInteger("dc3.benchmark.maxSamples", 1000);
+
+    @Test
+    void compareInsertRateAndStorage() {
+        String database = "dc3_benchmark_" + System.currentTimeMillis();
+        try (MongoClient mongoClient = MongoClients.create(System.getProperty("dc3.benchmark.mongo"))) {
+            MongoTemplate mongoTemplate = new MongoTemplate(mongoClient, database);
+            try {
+                StorageProperty storageProperty = new StorageProperty();
+                storageProperty.setBucketEnable(true);
+                storageProperty.setBucketMaxSamples(MAX_SAMPLES);
+                IndexProperty indexProperty = new IndexProperty();
+                indexProperty.setExplain(false);
+                IndexServiceImpl indexService = new IndexServiceImpl();
+                ReflectionTestUtils.setField(indexService, "mongoTemplate", mongoTemplate);
+                ReflectionTestUtils.setField(indexService, "indexProperty", indexProperty);
+                ReflectionTestUtils.setField(indexService, "storageProperty", storageProperty);
+                ReflectionTestUtils.setField(indexService, "rollupProperty", new RollupProperty());
+                ReflectionTestUtils.setField(indexService, "archiveProperty", new ArchiveProperty());
+                indexService.initial();
+
+                PointValueServiceImpl pointValueService = new PointValueServiceImpl();
+                ReflectionTestUtils.setField(pointValueService, "mongoTemplate", mongoTemplate);
+                PointValueBucketServiceImpl bucketService = new PointValueBucketServiceImpl();
+                ReflectionTestUtils.setField(bucketService, "mongoTemplate", mongoTemplate);
+                ReflectionTestUtils.setField(bucketService, "storageProperty", storageProperty);
+
+                double rawRate = write(batch -> ReflectionTestUtils.invokeMethod(pointValueService, "insert", batch));
+                double bucketRate = write(bucketService::addPointValues);
+
+                Document raw = mongoTemplate.executeCommand(new Document("collStats", mongoTemplate.getCollectionName(PointValue.class)));
+                Document bucket = mongoTemplate.executeCommand(new Document("collStats", PointValueBucket.COLLECTION));
+                log.info("Raw collection, insert: {} values/s, documents: {}, size: {}, storage: {}, index: {}",
+                        String.format("%.0f", rawRate), raw.get("count"), raw.get("size"), raw.get("storageSize"), raw.get("totalIndexSize"));
+                log.info("Bucket collection, insert: {} values/s, documents: {}, size: {}, storage: {}, index: {}",
+                        String.format("%.0f", bucketRate), bucket.get("count"), bucket.get("size"), bucket.get("storageSize"), bucket.get("totalIndexSize"));
+
+                assertEquals((long) POINTS * VALUES, ((Number) raw.get("count")).longValue());
+                // one bucket per point per full MAX_SAMPLES, plus the hour boundaries the run crosses
+                assertTrue(((Number) bucket.get("count")).longValue() >= (long) POINTS * VALUES / MAX_SAMPLES);
+            } finally {
+                mongoTemplate.getDb().drop();
+            }
+        }
+    }
+
+    /**
+     * 按时间顺序生成所有位号值并分批写入，返回每秒写入的位号值数量
+     *
+     * @param writer 批量写入
+     * @return values/s
+     */
+    private double write(Consumer<List<PointValue>> writer) {
+        long base = PointValueBucket.hour(System.currentTimeMillis());
+        long start = System.nanoTime();
+        List<PointValue> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < VALUES; i++) {
+            long originTime = base + i * 1000L;
+            for (int point = 0; point < POINTS; point++) {
+                String value = String.valueOf(20 + Math.sin(i / 60.0 + point));
+                long now = System.currentTimeMillis();
+                batch.add(new PointValue(1L, (long) point, value, value).setOriginTime(originTime).setCreateTime(now).setCreateDate(new Date(now)));
+                if (batch.size() >= BATCH_SIZE) {
+                    writer.accept(batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            writer.accept(batch);
+        }
+        return (double) POINTS * VALUES / ((System.nanoTime() - start) / 1e9);
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.center.data.benchmark;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 逐条确认与批量确认两种消费方式的吞吐量对比，需要可用的 RabbitMQ，默认不执行
+ * <p>
+ * mvn test -Dtest=ListenerThroughputBenchmarkTest -Ddc3.benchmark.rabbit=localhost
+ * <p>
+ * 每次写入按 dc3.benchmark.writeMicros 模拟一次 Redis & MongoDB 往返，逐条消费每条消息写入一次并单独确认，
+ * 批量消费每 batchSize 条写入一次并以 multiple=true 确认
+ *
+ * @author pnoker
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "dc3.benchmark.rabbit", matches = ".+")
+class ListenerThroughputBenchmarkTest {
+
+    private static final int MESSAGES = Integer.getInteger("dc3.benchmark.messages", 100000);
+    private static final long WRITE_MICROS = Long.getLong("dc3.benchmark.writeMicros", 1000L);
+    private static final int PREFETCH = Integer.getInteger("dc3.benchmark.prefetch", 1000);
+    private static final int BATCH_SIZE = Integer.getInteger("dc3.benchmark.batchSize", 500);
+
+    @Test
+    void compareThroughput() throws Exception {
+        ConnectionFactory connectionFactory = new ConnectionFactory();
+        connectionFactory.setHost(System.getProperty("dc3.benchmark.rabbit"));
+        connectionFactory.setPort(Integer.getInteger("dc3.benchmark.rabbitPort", 5672));
+        connectionFactory.setUsername(System.getProperty("dc3.benchmark.rabbitUsername", "guest"));
+        connectionFactory.setPassword(System.getProperty("dc3.benchmark.rabbitPassword", "guest"));
+
+        try (Connection connection = connectionFactory.newConnection()) {
+            // same defaults as the listener containers: 250 is the Spring AMQP default prefetch
+            double perMessage = run(connection, 250, 1);
+            double batch = run(connection, PREFETCH, BATCH_SIZE);
+            log.info("Listener throughput, messages: {}, write: {}us, per message: {} msg/s, batch({}): {} msg/s, speedup: {}",
+                    MESSAGES, WRITE_MICROS, String.format("%.0f", perMessage), BATCH_SIZE, String.format("%.0f", batch), String.format("%.1f", batch / perMessage));
+            assertTrue(perMessage > 0 && batch > 0);
+        }
+    }
+
+    /**
+     * 向临时队列发送 MESSAGES 条消息后开始消费，返回每秒处理的消息数量
+     *
+     * @param connection Connection
+     * @param prefetch   Prefetch
+     * @param batchSize  每次写入、确认的消息数量，1 表示逐条消费
+     * @return msg/s
+     */
+    private double run(Connection connection, int prefetch, int batchSize) throws Exception {
+        String queue = "dc3.benchmark." + UUID.randomUUID();
+        Channel producer = connection.createChannel();
+        Channel consumer = connection.createChannel();
+        try {
+            producer.queueDeclare(queue, false, false, true, null);
+            byte[] body = new byte[128];
+            for (int i = 0; i < MESSAGES; i++) {
+                producer.basicPublish("", queue, null, body);
+            }
+
+            CountDownLatch latch = new CountDownLatch(1);
+            int[] counter = new int[2];
+            consumer.basicQos(prefetch);
+            long start = System.nanoTime();
+            consumer.basicConsume(queue, false, (consumerTag, delivery) -> {
+                counter[0]++;
+                counter[1]++;
+                if (counter[1] >= batchSize || counter[0] >= MESSAGES) {
+                    write();
+                    consumer.basicAck(delivery.getEnvelope().getDeliveryTag(), batchSize > 1);
+                    counter[1] = 0;
+                }
+                if (counter[0] >= MESSAGES) {
+                    latch.countDown();
+                }
+            }, consumerTag -> {
+            });
+            assertTrue(latch.await(10, TimeUnit.MINUTES));
+            return MESSAGES / ((System.nanoTime() - start) / 1e9);
+        } finally {
+            producer.queueDelete(queue);
+            producer.close();
+            consumer.close();
+        }
+    }
+
+    private void write() {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(WRITE_MICROS));
+    }
+
+}
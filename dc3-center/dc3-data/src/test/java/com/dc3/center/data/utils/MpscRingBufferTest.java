@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dc3.center.data.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author pnoker
+ */
+class MpscRingBufferTest {
+
+    @Test
+    void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(2, new MpscRingBuffer<Integer>(1).capacity());
+        assertEquals(8, new MpscRingBuffer<Integer>(5).capacity());
+        assertEquals(1024, new MpscRingBuffer<Integer>(1024).capacity());
+    }
+
+    @Test
+    void offerFailsWhenFullAndRecoversAfterPoll() {
+        MpscRingBuffer<Integer> ringBuffer = new MpscRingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ringBuffer.offer(i));
+        }
+        assertFalse(ringBuffer.offer(4));
+        assertEquals(4, ringBuffer.size());
+
+        assertEquals(0, (int) ringBuffer.poll());
+        assertTrue(ringBuffer.offer(4));
+        assertFalse(ringBuffer.offer(5));
+    }
+
+    @Test
+    void pollKeepsOfferOrderAcrossWrapAround() {
+        MpscRingBuffer<Integer> ringBuffer = new MpscRingBuffer<>(4);
+        List<Integer> polled = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(ringBuffer.offer(i));
+            if (i % 2 == 1) {
+                ringBuffer.drain(polled::add, 2);
+            }
+        }
+        assertNull(ringBuffer.poll());
+        assertEquals(0, ringBuffer.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, (int) polled.get(i));
+        }
+    }
+
+    @Test
+    void drainStopsAtLimit() {
+        MpscRingBuffer<Integer> ringBuffer = new MpscRingBuffer<>(8);
+        for (int i = 0; i < 6; i++) {
+            ringBuffer.offer(i);
+        }
+        List<Integer> polled = new ArrayList<>();
+        assertEquals(4, ringBuffer.drain(polled::add, 4));
+        assertEquals(2, ringBuffer.size());
+        assertEquals(2, ringBuffer.drain(polled::add, 4));
+        assertEquals(6, polled.size());
+    }
+
+    @Test
+    void offerRejectsNull() {
+        assertThrows(NullPointerException.class, () -> new MpscRingBuffer<Integer>(4).offer(null));
+    }
+
+    @Test
+    void concurrentProducersLoseNothing() throws InterruptedException {
+        int producers = 4, perProducer = 100000;
+        MpscRingBuffer<Long> ringBuffer = new MpscRingBuffer<>(1024);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            long base = (long) p * perProducer;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (long i = 0; i < perProducer; i++) {
+                    while (!ringBuffer.offer(base + i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        // every producer's values must come out in its own order, and all of them exactly once
+        long[] next = new long[producers];
+        int received = 0;
+        start.countDown();
+        while (received < producers * perProducer) {
+            Long value = ringBuffer.poll();
+            if (null == value) {
+                Thread.yield();
+                continue;
+            }
+            int producer = (int) (value / perProducer);
+            assertEquals(next[producer], value % perProducer);
+            next[producer]++;
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(ringBuffer.poll());
+    }
+
+}
@@ -16,6 +16,7 @@
 
 package com.dc3.common.bean.driver;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -27,6 +28,7 @@ import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.MongoId;
 
 import java.io.Serializable;
+import java.util.Date;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -88,6 +90,12 @@ public class PointValue implements Serializable {
     private Long originTime;
     private Long createTime;
 
+    /**
+     * 写入 MongoDB 的时间，仅用于 TTL 索引自动过期
+     */
+    @JsonIgnore
+    private Date createDate;
+
     public PointValue(Long pointId, String rawValue, String value) {
         this.pointId = pointId;
         this.rawValue = rawValue;
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dc3.common.bean.driver;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+
+/**
+ * 位号值聚合、降采样查询条件
+ *
+ * @author pnoker
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Accessors(chain = true)
+public class PointValueAggregateDto implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private Long deviceId;
+    private Long pointId;
+
+    /**
+     * 时间范围，originTime，毫秒
+     */
+    private Long startTime;
+    private Long endTime;
+
+    /**
+     * 聚合时间窗口，毫秒，为空时根据 points 计算
+     */
+    private Long interval;
+
+    /**
+     * 返回的最大点数
+     */
+    private Integer points;
+}
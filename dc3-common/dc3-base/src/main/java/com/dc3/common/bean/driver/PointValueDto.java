@@ -44,6 +44,18 @@ public class PointValueDto implements Serializable {
     @JsonInclude(JsonInclude.Include.NON_NULL)
     private Pages page;
 
+    /**
+     * 游标分页使用，上一页返回的游标，为空时从最新的数据开始
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String cursor;
+
+    /**
+     * 游标分页使用，是否统计总数
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean count;
+
     public void convertToDo(PointValue pointValue) {
         BeanUtils.copyProperties(this, pointValue);
     }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dc3.common.bean.driver;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 位号值导出条件
+ *
+ * @author pnoker
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Accessors(chain = true)
+public class PointValueExportDto implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final String FORMAT_NDJSON = "ndjson";
+    public static final String FORMAT_CSV = "csv";
+
+    /**
+     * 设备ID集合，按顺序逐个设备导出
+     */
+    private List<Long> deviceIds;
+
+    /**
+     * 位号ID集合，为空时导出设备下所有位号
+     */
+    private List<Long> pointIds;
+
+    /**
+     * 时间范围，originTime，毫秒
+     */
+    private Long startTime;
+    private Long endTime;
+
+    /**
+     * 导出格式，ndjson 或 csv，默认 ndjson
+     */
+    private String format = FORMAT_NDJSON;
+
+    /**
+     * 是否进行 gzip 压缩
+     */
+    private Boolean gzip = false;
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.bean.driver;
+
+import com.dc3.common.constant.Common;
+import com.dc3.common.model.Point;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 单个位号的死区过滤器，有状态，每个设备位号一个实例
+ * <p>
+ * absolute：与上次存储值的差值超过死区值时存储
+ * percent：与上次存储值的差值超过量程 (maximum - minimum) 的百分比时存储，未配置量程时使用上次存储值
+ * swinging_door：旋转门压缩，当前点无法被上次存储点在死区范围内线性表示时，存储前一个点
+ * <p>
+ * 距离上次存储超过心跳间隔时无论是否变化都会存储，无法转换为数值的位号值只在变化时存储
+ *
+ * @author pnoker
+ */
+public class PointValueFilter {
+
+    private final String type;
+    private final float deadband;
+    private final Float minimum, maximum;
+    private final long heartbeat;
+
+    private final SwingingDoor<PointValue> door;
+
+    private PointValue stored;
+    private Double storedValue;
+    private long storedTime;
+
+    /**
+     * @param point     Point
+     * @param heartbeat 位号未配置心跳时使用的默认心跳间隔，分钟
+     */
+    public PointValueFilter(Point point, int heartbeat) {
+        this.type = point.getDeadbandType();
+        this.deadband = null != point.getDeadband() ? Math.abs(point.getDeadband()) : 0;
+        this.minimum = point.getMinimum();
+        this.maximum = point.getMaximum();
+        this.heartbeat = (null != point.getHeartbeat() ? point.getHeartbeat() : heartbeat) * 60000L;
+        this.door = Common.Deadband.SWINGING_DOOR.equals(type) ? new SwingingDoor<>(deadband) : null;
+    }
+
+    /**
+     * 位号是否配置了死区
+     *
+     * @param point Point
+     * @return boolean
+     */
+    public static boolean enable(Point point) {
+        return null != point && null != point.getDeadbandType() && !Common.Deadband.NONE.equals(point.getDeadbandType());
+    }
+
+    /**
+     * 位号配置是否与当前过滤器一致，不一致时需要重新创建过滤器
+     *
+     * @param point     Point
+     * @param heartbeat 默认心跳间隔，分钟
+     * @return boolean
+     */
+    public boolean match(Point point, int heartbeat) {
+        return Objects.equals(type, point.getDeadbandType())
+                && deadband == (null != point.getDeadband() ? Math.abs(point.getDeadband()) : 0)
+                && Objects.equals(minimum, point.getMinimum())
+                && Objects.equals(maximum, point.getMaximum())
+                && this.heartbeat == (null != point.getHeartbeat() ? point.getHeartbeat() : heartbeat) * 60000L;
+    }
+
+    /**
+     * 过滤位号值
+     *
+     * @param pointValue PointValue
+     * @return 需要存储的位号值，旋转门压缩时可能是之前的位号值
+     */
+    public synchronized List<PointValue> filter(PointValue pointValue) {
+        long time = null != pointValue.getOriginTime() ? pointValue.getOriginTime() : System.currentTimeMillis();
+        Double value = number(pointValue.getValue());
+
+        // first value and out of order values are always kept
+        if (null == stored) {
+            archive(pointValue, value, time);
+            return Collections.singletonList(pointValue);
+        }
+        if (time <= storedTime) {
+            return Collections.singletonList(pointValue);
+        }
+
+        boolean beat = heartbeat > 0 && time - storedTime >= heartbeat;
+        if (null == value || null == storedValue) {
+            if (beat || !Objects.equals(pointValue.getValue(), stored.getValue())) {
+                return flush(pointValue, value, time);
+            }
+            return Collections.emptyList();
+        }
+
+        boolean significant;
+        switch (type) {
+            case Common.Deadband.ABSOLUTE:
+                significant = Math.abs(value - storedValue) > deadband;
+                break;
+            case Common.Deadband.PERCENT:
+                double span = null != minimum && null != maximum && maximum > minimum ? maximum - minimum : Math.abs(storedValue);
+                significant = Math.abs(value - storedValue) > span * deadband / 100;
+                break;
+            case Common.Deadband.SWINGING_DOOR:
+                return beat || deadband <= 0 ? flush(pointValue, value, time) : swingingDoor(pointValue, value, time);
+            default:
+                significant = true;
+                break;
+        }
+        return significant || beat ? flush(pointValue, value, time) : Collections.emptyList();
+    }
+
+    /**
+     * 旋转门：门打开时存储前一个点，旋转门以其为新的起点继续压缩
+     */
+    private List<PointValue> swingingDoor(PointValue pointValue, double value, long time) {
+        PointValue archived = door.offer(time, value, pointValue);
+        if (null == archived) {
+            return Collections.emptyList();
+        }
+        stored = archived;
+        storedValue = door.getArchivedValue();
+        storedTime = door.getArchivedTime();
+        return Collections.singletonList(archived);
+    }
+
+    /**
+     * 存储当前点，旋转门压缩时先存储尚未存储的前一个点
+     */
+    private List<PointValue> flush(PointValue pointValue, Double value, long time) {
+        List<PointValue> pointValues = new ArrayList<>(2);
+        if (null != door && null != door.pending() && door.getHeldTime() > storedTime) {
+            pointValues.add(door.pending());
+        }
+        pointValues.add(pointValue);
+        archive(pointValue, value, time);
+        return pointValues;
+    }
+
+    private void archive(PointValue pointValue, Double value, long time) {
+        stored = pointValue;
+        storedValue = value;
+        storedTime = time;
+        if (null != door && null != value) {
+            door.reset(time, value);
+        }
+    }
+
+    private Double number(String value) {
+        if (null == value) {
+            return null;
+        }
+        try {
+            double number = Double.parseDouble(value.trim());
+            return Double.isNaN(number) || Double.isInfinite(number) ? null : number;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.bean.driver;
+
+/**
+ * 旋转门压缩 (Swinging Door Trending)，有状态，每个位号一个实例
+ * <p>
+ * 以上一个存档点为轴，上门斜率取经过 (value - deviation) 的最大值，下门斜率取经过 (value + deviation) 的最小值，
+ * 新点与轴连线的斜率不在此前各点形成的两扇门之间时两扇门打开，前一个点存档并作为新的轴，
+ * 因此存档点之间的连线经过其间每个点的 ±deviation 范围，线性插值的误差不超过 deviation
+ *
+ * @param <T> 随点保存的数据
+ * @author pnoker
+ */
+public class SwingingDoor<T> {
+
+    private final double deviation;
+
+    private boolean started = false;
+    private long archivedTime;
+    private double archivedValue;
+
+    private T held;
+    private long heldTime;
+    private double heldValue;
+
+    private double upper, lower;
+
+    /**
+     * @param deviation 压缩偏差
+     */
+    public SwingingDoor(double deviation) {
+        this.deviation = Math.abs(deviation);
+    }
+
+    /**
+     * 以指定点为存档点重新开始压缩，尚未存档的点被丢弃
+     *
+     * @param time  Time
+     * @param value Value
+     */
+    public void reset(long time, double value) {
+        started = true;
+        archivedTime = time;
+        archivedValue = value;
+        held = null;
+        upper = Double.NEGATIVE_INFINITY;
+        lower = Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * 压缩一个点，时间需要递增，不晚于前一个点的点会被忽略
+     *
+     * @param time    Time
+     * @param value   Value
+     * @param payload 随点保存的数据
+     * @return 门打开时返回被存档的前一个点的数据，第一个点直接存档并返回当前点的数据，否则返回 null
+     */
+    public T offer(long time, double value, T payload) {
+        if (!started) {
+            reset(time, value);
+            return payload;
+        }
+        if (!accepts(time)) {
+            return null;
+        }
+
+        T archived = null;
+        double slope = (value - archivedValue) / (time - archivedTime);
+        if (null != held && (slope < upper || slope > lower)) {
+            archived = held;
+            reset(heldTime, heldValue);
+        }
+        upper = Math.max(upper, (value - archivedValue - deviation) / (time - archivedTime));
+        lower = Math.min(lower, (value - archivedValue + deviation) / (time - archivedTime));
+        held = payload;
+        heldTime = time;
+        heldValue = value;
+        return archived;
+    }
+
+    /**
+     * 是否可以压缩指定时间的点，只接受晚于最新点的点
+     *
+     * @param time Time
+     * @return boolean
+     */
+    public boolean accepts(long time) {
+        return !started || time > (null != held ? heldTime : archivedTime);
+    }
+
+    /**
+     * 尚未存档的最新点，存档前一直保存在内存中
+     *
+     * @return 最新点的数据，没有时返回 null
+     */
+    public T pending() {
+        return held;
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    public long getArchivedTime() {
+        return archivedTime;
+    }
+
+    public double getArchivedValue() {
+        return archivedValue;
+    }
+
+    public long getHeldTime() {
+        return heldTime;
+    }
+
+    public double getHeldValue() {
+        return heldValue;
+    }
+}
@@ -73,6 +73,8 @@ public interface Common {
         String QUEUE_DRIVER_EVENT = "dc3.queue.event.driver";
         String ROUTING_DEVICE_EVENT_PREFIX = "dc3.routing.event.device.";
         String QUEUE_DEVICE_EVENT = "dc3.queue.event.device";
+        String QUEUE_DEVICE_EVENT_RETRY = "dc3.queue.event.device.retry";
+        String QUEUE_DEVICE_EVENT_DEAD = "dc3.queue.event.device.dead";
 
         // Configuration
         String TOPIC_EXCHANGE_CONFIGURATION = "dc3.exchange.configuration";
@@ -83,6 +85,12 @@ public interface Common {
         String TOPIC_EXCHANGE_VALUE = "dc3.exchange.value";
         String ROUTING_POINT_VALUE_PREFIX = "dc3.routing.value.point.";
         String QUEUE_POINT_VALUE = "dc3.queue.value.point";
+        String QUEUE_POINT_VALUE_RETRY = "dc3.queue.value.point.retry";
+        String QUEUE_POINT_VALUE_DEAD = "dc3.queue.value.point.dead";
+
+        // Content Type
+        String CONTENT_TYPE_POINT_VALUE = "application/x-dc3-point-value";
+        String CONTENT_TYPE_POINT_VALUE_BATCH = "application/x-dc3-point-value-batch";
     }
 
     /**
@@ -206,6 +214,24 @@ public interface Common {
         String STRING = "string";
     }
 
+    /**
+     * 位号值消息格式
+     */
+    interface MessageFormat {
+        String JSON = "json";
+        String BINARY = "binary";
+    }
+
+    /**
+     * 死区类型
+     */
+    interface Deadband {
+        String NONE = "none";
+        String ABSOLUTE = "absolute";
+        String PERCENT = "percent";
+        String SWINGING_DOOR = "swinging_door";
+    }
+
     /**
      * 服务名称 & 服务基地址
      */
@@ -308,6 +334,7 @@ public interface Common {
         String DRIVER_INFO_ID = "_driver_info_id";
         String POINT_INFO_ID = "_point_info_id";
         String GROUP_NAME = "_group_name";
+        String PROCESSED = "_processed";
 
         String DRIVER = "driver";
         String DRIVER_ATTRIBUTE = "driver_attribute";
@@ -323,11 +350,13 @@ public interface Common {
         String LABEL = "label";
         String LABEL_BIND = "label_bind";
         String BLACK_IP = "black_ip";
+        String MESSAGE = "message";
 
         String REAL_TIME_VALUE_KEY_PREFIX = Common.Cache.POINT + Common.Cache.VALUE + Common.Cache.SEPARATOR;
         String REAL_TIME_VALUES_KEY_PREFIX = Common.Cache.POINT + Common.Cache.VALUES + Common.Cache.SEPARATOR;
         String DRIVER_STATUS_KEY_PREFIX = Common.Cache.DRIVER + Common.Cache.STATUS + Common.Cache.SEPARATOR;
         String DEVICE_STATUS_KEY_PREFIX = Common.Cache.DEVICE + Common.Cache.STATUS + Common.Cache.SEPARATOR;
+        String MESSAGE_PROCESSED_KEY_PREFIX = Common.Cache.MESSAGE + Common.Cache.PROCESSED + Common.Cache.SEPARATOR;
     }
 
 }
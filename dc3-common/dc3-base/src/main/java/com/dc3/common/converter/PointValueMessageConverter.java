@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.converter;
+
+import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.bean.driver.PointValueBatch;
+import com.dc3.common.constant.Common;
+import com.dc3.common.utils.PointValueCodecUtil;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 位号值消息转换器，按消息 content-type 协商格式
+ * <p>
+ * 接收时 content-type 为 {@link Common.Rabbit#CONTENT_TYPE_POINT_VALUE} 以及 {@link Common.Rabbit#CONTENT_TYPE_POINT_VALUE_BATCH}
+ * 的消息使用紧凑二进制解码，其余消息交给 JSON 转换器；
+ * 发送时只有开启二进制格式且 PointValue 可以二进制编码时才使用二进制，因此可以先升级接收方，再逐个切换发送方
+ *
+ * @author pnoker
+ */
+public class PointValueMessageConverter implements MessageConverter {
+
+    private final MessageConverter delegate;
+    private final boolean binary;
+
+    public PointValueMessageConverter() {
+        this(false);
+    }
+
+    public PointValueMessageConverter(boolean binary) {
+        this(new Jackson2JsonMessageConverter(), binary);
+    }
+
+    public PointValueMessageConverter(MessageConverter delegate, boolean binary) {
+        this.delegate = delegate;
+        this.binary = binary;
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) throws MessageConversionException {
+        if (binary && object instanceof PointValue && PointValueCodecUtil.supports((PointValue) object)) {
+            byte[] bytes = PointValueCodecUtil.encode((PointValue) object);
+            messageProperties.setContentType(Common.Rabbit.CONTENT_TYPE_POINT_VALUE);
+            messageProperties.setContentLength(bytes.length);
+            return new Message(bytes, messageProperties);
+        }
+        if (binary && object instanceof PointValueBatch && supports((PointValueBatch) object)) {
+            byte[] bytes = PointValueCodecUtil.encode((PointValueBatch) object);
+            messageProperties.setContentType(Common.Rabbit.CONTENT_TYPE_POINT_VALUE_BATCH);
+            messageProperties.setContentLength(bytes.length);
+            return new Message(bytes, messageProperties);
+        }
+        return delegate.toMessage(object, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws MessageConversionException {
+        String contentType = null != message.getMessageProperties() ? message.getMessageProperties().getContentType() : null;
+        try {
+            if (Common.Rabbit.CONTENT_TYPE_POINT_VALUE.equals(contentType)) {
+                return PointValueCodecUtil.decode(message.getBody());
+            }
+            if (Common.Rabbit.CONTENT_TYPE_POINT_VALUE_BATCH.equals(contentType)) {
+                return PointValueCodecUtil.decodeBatch(message.getBody());
+            }
+        } catch (IllegalArgumentException e) {
+            throw new MessageConversionException("Failed to decode point value", e);
+        }
+        return delegate.fromMessage(message);
+    }
+
+    /**
+     * 将单条或批量位号值消息转换为位号值列表
+     *
+     * @param message Message
+     * @return PointValue Array
+     */
+    public List<PointValue> pointValues(Message message) {
+        Object object = fromMessage(message);
+        if (object instanceof PointValueBatch) {
+            List<PointValue> pointValues = ((PointValueBatch) object).getPointValues();
+            return null != pointValues ? pointValues : Collections.emptyList();
+        }
+        if (object instanceof PointValue) {
+            return Collections.singletonList((PointValue) object);
+        }
+        throw new MessageConversionException("Unexpected point value message payload: " + (null != object ? object.getClass().getName() : null));
+    }
+
+    private boolean supports(PointValueBatch pointValueBatch) {
+        if (null == pointValueBatch.getPointValues()) {
+            return false;
+        }
+        for (PointValue pointValue : pointValueBatch.getPointValues()) {
+            if (!PointValueCodecUtil.supports(pointValue)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
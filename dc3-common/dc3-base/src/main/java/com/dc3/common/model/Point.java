@@ -60,6 +60,14 @@ public class Point extends Description {
     private String format;
     private String unit;
 
+    private String deadbandType;
+    @TableField(updateStrategy = FieldStrategy.IGNORED)
+    private Float deadband;
+    @TableField(updateStrategy = FieldStrategy.IGNORED)
+    private Integer heartbeat;
+    @TableField(updateStrategy = FieldStrategy.IGNORED)
+    private Float deviation;
+
     @NotNull(message = "profile id can't be empty", groups = {Insert.class, Update.class})
     private Long profileId;
 }
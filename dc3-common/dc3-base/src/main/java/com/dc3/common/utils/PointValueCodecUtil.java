@@ -0,0 +1,409 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.utils;
+
+import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.bean.driver.PointValueBatch;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PointValue 紧凑二进制编码工具类
+ * <p>
+ * 格式：版本号(1 byte) + 位号值，位号值 = 字段标记(varint) + 按标记顺序出现的字段，
+ * 整数使用 zigzag varint，字符串使用 varint 长度 + UTF-8，createTime 保存与 originTime 的差值，
+ * timeOut/timeUnit 只在不是默认值时写入，子位号值递归编码；批量消息 = 版本号 + 数量(varint) + 位号值
+ *
+ * @author pnoker
+ */
+public class PointValueCodecUtil {
+
+    public static final byte VERSION = 1;
+
+    private static final int DEVICE_ID = 1;
+    private static final int POINT_ID = 1 << 1;
+    private static final int VALUE = 1 << 2;
+    private static final int RAW_VALUE = 1 << 3;
+    private static final int CALCULATE_VALUE = 1 << 4;
+    private static final int CHILDREN = 1 << 5;
+    private static final int MULTI = 1 << 6;
+    private static final int MULTI_TRUE = 1 << 7;
+    private static final int ORIGIN_TIME = 1 << 8;
+    private static final int CREATE_TIME = 1 << 9;
+    private static final int TIME_OUT = 1 << 10;
+    private static final int RAW_VALUE_SAME = 1 << 11;
+
+    private static final int CALCULATE_STRING = 0;
+    private static final int CALCULATE_LONG = 1;
+    private static final int CALCULATE_DOUBLE = 2;
+    private static final int CALCULATE_BOOLEAN = 3;
+
+    private static final TimeUnit[] TIME_UNITS = TimeUnit.values();
+
+    /**
+     * 判断位号值是否可以使用二进制编码，计算值只支持字符串、整数、浮点数以及布尔值
+     *
+     * @param pointValue PointValue
+     * @return boolean
+     */
+    public static boolean supports(PointValue pointValue) {
+        if (null == pointValue || null == pointValue.getTimeUnit()) {
+            return false;
+        }
+        Object calculateValue = pointValue.getCalculateValue();
+        if (null != calculateValue && !(calculateValue instanceof String) && !(calculateValue instanceof Boolean)
+                && !(calculateValue instanceof Long) && !(calculateValue instanceof Integer) && !(calculateValue instanceof Short) && !(calculateValue instanceof Byte)
+                && !(calculateValue instanceof Double) && !(calculateValue instanceof Float)) {
+            return false;
+        }
+        if (null != pointValue.getChildren()) {
+            for (PointValue child : pointValue.getChildren()) {
+                if (!supports(child)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 编码
+     *
+     * @param pointValue PointValue
+     * @return byte[]
+     */
+    public static byte[] encode(PointValue pointValue) {
+        if (!supports(pointValue)) {
+            throw new IllegalArgumentException("Unsupported point value for binary encoding");
+        }
+        Writer writer = new Writer(64);
+        writer.writeByte(VERSION);
+        write(writer, pointValue);
+        return writer.toByteArray();
+    }
+
+    /**
+     * 批量编码
+     *
+     * @param pointValueBatch PointValueBatch
+     * @return byte[]
+     */
+    public static byte[] encode(PointValueBatch pointValueBatch) {
+        List<PointValue> pointValues = pointValueBatch.getPointValues();
+        Writer writer = new Writer(32 * pointValues.size() + 8);
+        writer.writeByte(VERSION);
+        writer.writeVarLong(pointValues.size());
+        for (PointValue pointValue : pointValues) {
+            if (!supports(pointValue)) {
+                throw new IllegalArgumentException("Unsupported point value for binary encoding");
+            }
+            write(writer, pointValue);
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * 批量解码
+     *
+     * @param bytes byte[]
+     * @return PointValueBatch
+     */
+    public static PointValueBatch decodeBatch(byte[] bytes) {
+        Reader reader = new Reader(bytes);
+        byte version = reader.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported point value encoding version: " + version);
+        }
+        int size = (int) reader.readVarLong();
+        if (size < 0 || size > reader.remaining()) {
+            throw new IllegalArgumentException("Invalid batch size: " + size);
+        }
+        List<PointValue> pointValues = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            pointValues.add(read(reader));
+        }
+        if (reader.position != bytes.length) {
+            throw new IllegalArgumentException("Trailing bytes after point value batch");
+        }
+        return new PointValueBatch(pointValues);
+    }
+
+    /**
+     * 解码
+     *
+     * @param bytes byte[]
+     * @return PointValue
+     */
+    public static PointValue decode(byte[] bytes) {
+        Reader reader = new Reader(bytes);
+        byte version = reader.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported point value encoding version: " + version);
+        }
+        PointValue pointValue = read(reader);
+        if (reader.position != bytes.length) {
+            throw new IllegalArgumentException("Trailing bytes after point value");
+        }
+        return pointValue;
+    }
+
+    private static void write(Writer writer, PointValue pointValue) {
+        boolean timeOut = pointValue.getTimeOut() != 15 || pointValue.getTimeUnit() != TimeUnit.MINUTES;
+        // raw value is usually the same as value and only takes a flag then
+        boolean rawValueSame = null != pointValue.getRawValue() && pointValue.getRawValue().equals(pointValue.getValue());
+        int flags = (null != pointValue.getDeviceId() ? DEVICE_ID : 0)
+                | (null != pointValue.getPointId() ? POINT_ID : 0)
+                | (null != pointValue.getValue() ? VALUE : 0)
+                | (rawValueSame ? RAW_VALUE_SAME : null != pointValue.getRawValue() ? RAW_VALUE : 0)
+                | (null != pointValue.getCalculateValue() ? CALCULATE_VALUE : 0)
+                | (null != pointValue.getChildren() ? CHILDREN : 0)
+                | (null != pointValue.getMulti() ? MULTI : 0)
+                | (Boolean.TRUE.equals(pointValue.getMulti()) ? MULTI_TRUE : 0)
+                | (null != pointValue.getOriginTime() ? ORIGIN_TIME : 0)
+                | (null != pointValue.getCreateTime() ? CREATE_TIME : 0)
+                | (timeOut ? TIME_OUT : 0);
+        writer.writeVarLong(flags);
+
+        if (null != pointValue.getDeviceId()) {
+            writer.writeZigZag(pointValue.getDeviceId());
+        }
+        if (null != pointValue.getPointId()) {
+            writer.writeZigZag(pointValue.getPointId());
+        }
+        if (null != pointValue.getValue()) {
+            writer.writeString(pointValue.getValue());
+        }
+        if (!rawValueSame && null != pointValue.getRawValue()) {
+            writer.writeString(pointValue.getRawValue());
+        }
+        if (null != pointValue.getCalculateValue()) {
+            writeCalculateValue(writer, pointValue.getCalculateValue());
+        }
+        if (null != pointValue.getOriginTime()) {
+            writer.writeZigZag(pointValue.getOriginTime());
+        }
+        if (null != pointValue.getCreateTime()) {
+            long base = null != pointValue.getOriginTime() ? pointValue.getOriginTime() : 0L;
+            writer.writeZigZag(pointValue.getCreateTime() - base);
+        }
+        if (timeOut) {
+            writer.writeZigZag(pointValue.getTimeOut());
+            writer.writeByte((byte) pointValue.getTimeUnit().ordinal());
+        }
+        if (null != pointValue.getChildren()) {
+            writer.writeVarLong(pointValue.getChildren().size());
+            for (PointValue child : pointValue.getChildren()) {
+                write(writer, child);
+            }
+        }
+    }
+
+    private static PointValue read(Reader reader) {
+        int flags = (int) reader.readVarLong();
+        PointValue pointValue = new PointValue();
+        if ((flags & DEVICE_ID) != 0) {
+            pointValue.setDeviceId(reader.readZigZag());
+        }
+        if ((flags & POINT_ID) != 0) {
+            pointValue.setPointId(reader.readZigZag());
+        }
+        if ((flags & VALUE) != 0) {
+            pointValue.setValue(reader.readString());
+        }
+        if ((flags & RAW_VALUE) != 0) {
+            pointValue.setRawValue(reader.readString());
+        } else if ((flags & RAW_VALUE_SAME) != 0) {
+            pointValue.setRawValue(pointValue.getValue());
+        }
+        if ((flags & CALCULATE_VALUE) != 0) {
+            pointValue.setCalculateValue(readCalculateValue(reader));
+        }
+        if ((flags & MULTI) != 0) {
+            pointValue.setMulti((flags & MULTI_TRUE) != 0);
+        }
+        if ((flags & ORIGIN_TIME) != 0) {
+            pointValue.setOriginTime(reader.readZigZag());
+        }
+        if ((flags & CREATE_TIME) != 0) {
+            long base = null != pointValue.getOriginTime() ? pointValue.getOriginTime() : 0L;
+            pointValue.setCreateTime(base + reader.readZigZag());
+        }
+        if ((flags & TIME_OUT) != 0) {
+            pointValue.setTimeOut((int) reader.readZigZag());
+            int ordinal = reader.readByte();
+            if (ordinal < 0 || ordinal >= TIME_UNITS.length) {
+                throw new IllegalArgumentException("Invalid time unit: " + ordinal);
+            }
+            pointValue.setTimeUnit(TIME_UNITS[ordinal]);
+        }
+        if ((flags & CHILDREN) != 0) {
+            int size = (int) reader.readVarLong();
+            if (size < 0 || size > reader.remaining()) {
+                throw new IllegalArgumentException("Invalid children size: " + size);
+            }
+            List<PointValue> children = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                children.add(read(reader));
+            }
+            pointValue.setChildren(children);
+        }
+        return pointValue;
+    }
+
+    private static void writeCalculateValue(Writer writer, Object calculateValue) {
+        if (calculateValue instanceof String) {
+            writer.writeByte((byte) CALCULATE_STRING);
+            writer.writeString((String) calculateValue);
+        } else if (calculateValue instanceof Boolean) {
+            writer.writeByte((byte) CALCULATE_BOOLEAN);
+            writer.writeByte((byte) ((Boolean) calculateValue ? 1 : 0));
+        } else if (calculateValue instanceof Double || calculateValue instanceof Float) {
+            writer.writeByte((byte) CALCULATE_DOUBLE);
+            writer.writeLong(Double.doubleToLongBits(((Number) calculateValue).doubleValue()));
+        } else {
+            writer.writeByte((byte) CALCULATE_LONG);
+            writer.writeZigZag(((Number) calculateValue).longValue());
+        }
+    }
+
+    private static Object readCalculateValue(Reader reader) {
+        int type = reader.readByte();
+        switch (type) {
+            case CALCULATE_STRING:
+                return reader.readString();
+            case CALCULATE_BOOLEAN:
+                return reader.readByte() != 0;
+            case CALCULATE_DOUBLE:
+                return Double.longBitsToDouble(reader.readLong());
+            case CALCULATE_LONG:
+                return reader.readZigZag();
+            default:
+                throw new IllegalArgumentException("Invalid calculate value type: " + type);
+        }
+    }
+
+    private static class Writer {
+        private byte[] buffer;
+        private int position = 0;
+
+        private Writer(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        private void ensure(int length) {
+            if (position + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, position + length));
+            }
+        }
+
+        private void writeByte(byte value) {
+            ensure(1);
+            buffer[position++] = value;
+        }
+
+        private void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        private void writeZigZag(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        private void writeLong(long value) {
+            ensure(8);
+            for (int i = 7; i >= 0; i--) {
+                buffer[position++] = (byte) (value >>> (i << 3));
+            }
+        }
+
+        private void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+    }
+
+    private static class Reader {
+        private final byte[] buffer;
+        private int position = 0;
+
+        private Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        private int remaining() {
+            return buffer.length - position;
+        }
+
+        private byte readByte() {
+            if (position >= buffer.length) {
+                throw new IllegalArgumentException("Unexpected end of point value");
+            }
+            return buffer[position++];
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        private long readZigZag() {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (readByte() & 0xFF);
+            }
+            return value;
+        }
+
+        private String readString() {
+            int length = (int) readVarLong();
+            if (length < 0 || length > remaining()) {
+                throw new IllegalArgumentException("Invalid string length: " + length);
+            }
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
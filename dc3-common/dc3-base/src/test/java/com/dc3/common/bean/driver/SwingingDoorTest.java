@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.bean.driver;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author pnoker
+ */
+@Slf4j
+class SwingingDoorTest {
+
+    private static final double DEVIATION = 0.5;
+
+    @Test
+    void firstPointIsArchivedImmediately() {
+        SwingingDoor<Integer> swingingDoor = new SwingingDoor<>(DEVIATION);
+        assertFalse(swingingDoor.isStarted());
+        assertEquals(1, (int) swingingDoor.offer(1000L, 1.0, 1));
+        assertTrue(swingingDoor.isStarted());
+        assertEquals(1000L, swingingDoor.getArchivedTime());
+        assertNull(swingingDoor.pending());
+    }
+
+    @Test
+    void pointsOnALineKeepTheDoorsClosed() {
+        SwingingDoor<Integer> swingingDoor = new SwingingDoor<>(DEVIATION);
+        swingingDoor.offer(0L, 0.0, 0);
+        for (int i = 1; i <= 100; i++) {
+            assertNull(swingingDoor.offer(i * 1000L, i * 2.0, i));
+        }
+        assertEquals(100, (int) swingingDoor.pending());
+        assertEquals(0L, swingingDoor.getArchivedTime());
+    }
+
+    @Test
+    void slopeChangeArchivesTheHeldPoint() {
+        SwingingDoor<Integer> swingingDoor = new SwingingDoor<>(DEVIATION);
+        swingingDoor.offer(0L, 0.0, 0);
+        swingingDoor.offer(1000L, 1.0, 1);
+        swingingDoor.offer(2000L, 2.0, 2);
+        assertEquals(2, (int) swingingDoor.offer(3000L, 0.0, 3));
+        assertEquals(2000L, swingingDoor.getArchivedTime());
+        assertEquals(2.0, swingingDoor.getArchivedValue());
+        assertEquals(3, (int) swingingDoor.pending());
+    }
+
+    @Test
+    void outOfOrderPointsAreNotAccepted() {
+        SwingingDoor<Integer> swingingDoor = new SwingingDoor<>(DEVIATION);
+        assertTrue(swingingDoor.accepts(5000L));
+        swingingDoor.offer(5000L, 1.0, 0);
+        assertFalse(swingingDoor.accepts(5000L));
+        assertFalse(swingingDoor.accepts(4000L));
+        assertTrue(swingingDoor.accepts(6000L));
+
+        swingingDoor.offer(7000L, 1.0, 1);
+        assertFalse(swingingDoor.accepts(6000L));
+        assertNull(swingingDoor.offer(6000L, 100.0, 2));
+        assertEquals(1, (int) swingingDoor.pending());
+        assertEquals(7000L, swingingDoor.getHeldTime());
+    }
+
+    @Test
+    void resetDiscardsTheHeldPoint() {
+        SwingingDoor<Integer> swingingDoor = new SwingingDoor<>(DEVIATION);
+        swingingDoor.offer(0L, 0.0, 0);
+        swingingDoor.offer(1000L, 1.0, 1);
+        swingingDoor.reset(1000L, 1.0);
+        assertNull(swingingDoor.pending());
+        assertEquals(1000L, swingingDoor.getArchivedTime());
+        assertFalse(swingingDoor.accepts(1000L));
+    }
+
+    /**
+     * 合成信号上的压缩率以及插值误差，误差不能超过压缩偏差
+     */
+    @Test
+    void interpolationErrorStaysWithinDeviation() {
+        int size = 100000;
+        Random random = new Random(7);
+        double[] sine = new double[size], walk = new double[size], step = new double[size];
+        for (int i = 0; i < size; i++) {
+            sine[i] = 20 + 5 * Math.sin(i / 300.0) + random.nextGaussian() * 0.1;
+            walk[i] = (i > 0 ? walk[i - 1] : 0) + random.nextGaussian() * 0.2;
+            step[i] = (i / 1000) % 2 == 0 ? 0 : 10;
+        }
+        compress("sine", sine);
+        compress("random walk", walk);
+        compress("step", step);
+    }
+
+    private void compress(String name, double[] values) {
+        SwingingDoor<Integer> swingingDoor = new SwingingDoor<>(DEVIATION);
+        List<Integer> archived = new ArrayList<>();
+        for (int i = 0; i < values.length; i++) {
+            Integer index = swingingDoor.offer(i * 1000L, values[i], i);
+            if (null != index) {
+                archived.add(index);
+            }
+        }
+        archived.add(swingingDoor.pending());
+
+        double maxError = 0;
+        for (int k = 0; k + 1 < archived.size(); k++) {
+            int left = archived.get(k), right = archived.get(k + 1);
+            for (int i = left; i <= right; i++) {
+                double interpolated = values[left] + (values[right] - values[left]) * (i - left) / (right - left);
+                maxError = Math.max(maxError, Math.abs(interpolated - values[i]));
+            }
+        }
+        log.info("Swinging door on {}: points: {}, archived: {}, ratio: {}, max error: {}",
+                name, values.length, archived.size(), String.format("%.1f", (double) values.length / archived.size()), String.format("%.4f", maxError));
+        assertTrue(maxError <= DEVIATION + 1e-9, name + " max error " + maxError);
+        assertTrue(archived.size() < values.length, name + " is not compressed");
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dc3.common.utils;
+
+import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.bean.driver.PointValueBatch;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 位号值二进制编码与 JSON（Jackson，即 PointValueMessageConverter 的回退路径）编解码性能对比的 JMH 基准，默认不执行
+ * <p>
+ * mvn test -Dtest=PointValueCodecBenchmarkTest -Ddc3.benchmark.codec=true
+ * <p>
+ * batchSize 为 1 时对比单条消息，其余对比批量消息，编码后的字节数见 encodedBytes 的输出
+ *
+ * @author pnoker
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@EnabledIfSystemProperty(named = "dc3.benchmark.codec", matches = ".+")
+public class PointValueCodecBenchmarkTest {
+
+    @Param({"1", "500"})
+    public int batchSize;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private PointValueBatch pointValueBatch;
+    private byte[] binary;
+    private byte[] json;
+
+    @Setup
+    public void setup() throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long now = System.currentTimeMillis();
+        List<PointValue> pointValues = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            String value = String.format("%.2f", random.nextDouble(0, 100));
+            pointValues.add(new PointValue(random.nextLong(1, 100), random.nextLong(1, 10000), value, value)
+                    .setCalculateValue(random.nextDouble())
+                    .setOriginTime(now + i)
+                    .setCreateTime(now + i + random.nextInt(50)));
+        }
+        pointValueBatch = new PointValueBatch(pointValues);
+        binary = PointValueCodecUtil.encode(pointValueBatch);
+        json = objectMapper.writeValueAsBytes(pointValueBatch);
+        System.out.printf("encodedBytes, batchSize: %d, binary: %d, json: %d%n", batchSize, binary.length, json.length);
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() {
+        return PointValueCodecUtil.encode(pointValueBatch);
+    }
+
+    @Benchmark
+    public PointValueBatch binaryDecode() {
+        return PointValueCodecUtil.decodeBatch(binary);
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() throws Exception {
+        return objectMapper.writeValueAsBytes(pointValueBatch);
+    }
+
+    @Benchmark
+    public PointValueBatch jsonDecode() throws Exception {
+        return objectMapper.readValue(json, PointValueBatch.class);
+    }
+
+    @Test
+    void run() throws Exception {
+        Options options = new OptionsBuilder()
+                .include(PointValueCodecBenchmarkTest.class.getName() + "\\.")
+                .build();
+        new Runner(options).run();
+    }
+}
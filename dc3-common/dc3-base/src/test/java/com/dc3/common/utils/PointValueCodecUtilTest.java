@@ -0,0 +1,184 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dc3.common.utils;
+
+import com.alibaba.fastjson.JSON;
+import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.bean.driver.PointValueBatch;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author pnoker
+ */
+class PointValueCodecUtilTest {
+
+    private static PointValue pointValue(long pointId, String value) {
+        return new PointValue(1L, pointId, value, value)
+                .setOriginTime(1600000000000L + pointId)
+                .setCreateTime(1600000000120L + pointId);
+    }
+
+    private static PointValue roundTrip(PointValue pointValue) {
+        return PointValueCodecUtil.decode(PointValueCodecUtil.encode(pointValue));
+    }
+
+    @Test
+    void simpleValueRoundTrip() {
+        PointValue pointValue = pointValue(10L, "23.5");
+        assertEquals(pointValue, roundTrip(pointValue));
+    }
+
+    @Test
+    void rawValueDifferentFromValue() {
+        PointValue pointValue = pointValue(10L, "23.5").setRawValue("235");
+        PointValue decoded = roundTrip(pointValue);
+        assertEquals("235", decoded.getRawValue());
+        assertEquals("23.5", decoded.getValue());
+        assertEquals(pointValue, decoded);
+    }
+
+    @Test
+    void nullFieldsStayNull() {
+        PointValue pointValue = new PointValue();
+        PointValue decoded = roundTrip(pointValue);
+        assertNull(decoded.getDeviceId());
+        assertNull(decoded.getValue());
+        assertNull(decoded.getRawValue());
+        assertNull(decoded.getChildren());
+        assertNull(decoded.getMulti());
+        assertNull(decoded.getOriginTime());
+        assertNull(decoded.getCreateTime());
+        assertEquals(pointValue, decoded);
+    }
+
+    @Test
+    void calculateValueTypes() {
+        assertEquals("on", roundTrip(pointValue(1L, "1").setCalculateValue("on")).getCalculateValue());
+        assertEquals(Boolean.TRUE, roundTrip(pointValue(1L, "1").setCalculateValue(true)).getCalculateValue());
+        assertEquals(-42L, roundTrip(pointValue(1L, "1").setCalculateValue(-42L)).getCalculateValue());
+        assertEquals(3.25d, roundTrip(pointValue(1L, "1").setCalculateValue(3.25d)).getCalculateValue());
+
+        // narrower numbers are widened to Long and Double
+        assertEquals(7L, roundTrip(pointValue(1L, "1").setCalculateValue(7)).getCalculateValue());
+        assertEquals(7L, roundTrip(pointValue(1L, "1").setCalculateValue((short) 7)).getCalculateValue());
+        assertEquals(7L, roundTrip(pointValue(1L, "1").setCalculateValue((byte) 7)).getCalculateValue());
+        assertEquals(1.5d, roundTrip(pointValue(1L, "1").setCalculateValue(1.5f)).getCalculateValue());
+    }
+
+    @Test
+    void unsupportedCalculateValueIsRejected() {
+        PointValue pointValue = pointValue(1L, "1").setCalculateValue(new ArrayList<>());
+        assertFalse(PointValueCodecUtil.supports(pointValue));
+        assertThrows(IllegalArgumentException.class, () -> PointValueCodecUtil.encode(pointValue));
+        assertThrows(IllegalArgumentException.class,
+                () -> PointValueCodecUtil.encode(new PointValueBatch(Collections.singletonList(pointValue))));
+    }
+
+    @Test
+    void multiValueWithChildren() {
+        List<PointValue> children = Arrays.asList(pointValue(1L, "1"), pointValue(2L, "2").setRawValue("20"), pointValue(3L, "abc"));
+        PointValue pointValue = new PointValue(1L, children).setMulti(true).setOriginTime(1600000000000L);
+        PointValue decoded = roundTrip(pointValue);
+        assertEquals(Boolean.TRUE, decoded.getMulti());
+        assertEquals(3, decoded.getChildren().size());
+        assertEquals(pointValue, decoded);
+
+        assertEquals(Boolean.FALSE, roundTrip(pointValue(1L, "1").setMulti(false)).getMulti());
+    }
+
+    @Test
+    void nonDefaultTimeOut() {
+        PointValue pointValue = new PointValue(1L, 2L, "1", "1", 30, TimeUnit.SECONDS);
+        PointValue decoded = roundTrip(pointValue);
+        assertEquals(30, decoded.getTimeOut());
+        assertEquals(TimeUnit.SECONDS, decoded.getTimeUnit());
+        assertEquals(pointValue, decoded);
+    }
+
+    @Test
+    void unicodeNegativeAndExtremeValues() {
+        PointValue pointValue = new PointValue(-1L, Long.MAX_VALUE, "温度 ℃ 😀", "-273.15")
+                .setOriginTime(0L)
+                .setCreateTime(-1000L)
+                .setCalculateValue(Long.MIN_VALUE);
+        assertEquals(pointValue, roundTrip(pointValue));
+
+        // create time far before origin time still fits the delta encoding
+        PointValue skewed = pointValue(1L, "").setOriginTime(Long.MAX_VALUE).setCreateTime(Long.MIN_VALUE);
+        assertEquals(skewed, roundTrip(skewed));
+    }
+
+    @Test
+    void batchRoundTrip() {
+        List<PointValue> pointValues = new ArrayList<>();
+        for (long i = 0; i < 500; i++) {
+            pointValues.add(pointValue(i, String.valueOf(i * 0.5)).setCalculateValue(i));
+        }
+        PointValueBatch decoded = PointValueCodecUtil.decodeBatch(PointValueCodecUtil.encode(new PointValueBatch(pointValues)));
+        assertEquals(pointValues, decoded.getPointValues());
+
+        PointValueBatch empty = PointValueCodecUtil.decodeBatch(PointValueCodecUtil.encode(new PointValueBatch(new ArrayList<>())));
+        assertTrue(empty.getPointValues().isEmpty());
+    }
+
+    @Test
+    void smallerThanJson() {
+        PointValue pointValue = pointValue(1234567L, "23.5");
+        int json = JSON.toJSONString(pointValue).getBytes(StandardCharsets.UTF_8).length;
+        assertTrue(PointValueCodecUtil.encode(pointValue).length * 3 < json);
+    }
+
+    @Test
+    void wrongVersionIsRejected() {
+        byte[] bytes = PointValueCodecUtil.encode(pointValue(1L, "1"));
+        bytes[0] = (byte) (PointValueCodecUtil.VERSION + 1);
+        assertThrows(IllegalArgumentException.class, () -> PointValueCodecUtil.decode(bytes));
+        assertThrows(IllegalArgumentException.class, () -> PointValueCodecUtil.decodeBatch(bytes));
+    }
+
+    @Test
+    void trailingBytesAreRejected() {
+        byte[] bytes = PointValueCodecUtil.encode(pointValue(1L, "1"));
+        byte[] trailing = Arrays.copyOf(bytes, bytes.length + 1);
+        assertThrows(IllegalArgumentException.class, () -> PointValueCodecUtil.decode(trailing));
+    }
+
+    @Test
+    void truncatedBytesAreRejected() {
+        byte[] bytes = PointValueCodecUtil.encode(pointValue(1L, "value").setCalculateValue(1.5d));
+        for (int length = 0; length < bytes.length; length++) {
+            byte[] truncated = Arrays.copyOf(bytes, length);
+            assertThrows(IllegalArgumentException.class, () -> PointValueCodecUtil.decode(truncated));
+        }
+
+        byte[] batch = PointValueCodecUtil.encode(new PointValueBatch(Arrays.asList(pointValue(1L, "1"), pointValue(2L, "2"))));
+        for (int length = 0; length < batch.length; length++) {
+            byte[] truncated = Arrays.copyOf(batch, length);
+            assertThrows(IllegalArgumentException.class, () -> PointValueCodecUtil.decodeBatch(truncated));
+        }
+    }
+}
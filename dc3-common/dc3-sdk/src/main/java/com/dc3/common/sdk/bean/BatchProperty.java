@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.sdk.bean;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 驱动配置文件 driver.batch 字段内容
+ *
+ * @author pnoker
+ */
+@Setter
+@Getter
+public class BatchProperty {
+    /**
+     * 是否合并发送位号值，开启后位号值先在驱动端缓存，按条数、时间以及大小阈值合并为一条消息发送
+     */
+    private Boolean enable = false;
+
+    /**
+     * 每批最大条数
+     */
+    private Integer size = 500;
+
+    /**
+     * 位号值在驱动端缓存的最长时间，单位毫秒
+     */
+    private Long maxAge = 1000L;
+
+    /**
+     * 每批估算的最大字节数
+     */
+    private Long maxBytes = 262144L;
+
+    /**
+     * 等待 RabbitMQ 确认的最大批数，达到后发送线程等待确认
+     */
+    private Integer maxInFlight = 16;
+
+    /**
+     * 未确认批数达到 maxInFlight 时发送线程的最长等待时间，单位毫秒，超时后批次写入本地缓冲或者延迟重发
+     */
+    private Long maxInFlightWait = 1000L;
+
+    /**
+     * 未被确认的批次重发次数
+     */
+    private Integer retry = 3;
+}
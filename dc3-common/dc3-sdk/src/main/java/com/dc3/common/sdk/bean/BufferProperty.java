@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.sdk.bean;
+
+import com.dc3.common.constant.Common;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 驱动配置文件 driver.buffer 字段内容
+ *
+ * @author pnoker
+ */
+@Setter
+@Getter
+public class BufferProperty {
+    /**
+     * 是否开启本地缓冲，开启后消息组件不可用时位号值以及设备事件写入本地磁盘，恢复后按顺序补发
+     */
+    private Boolean enable = false;
+
+    /**
+     * 缓冲文件目录，实际目录为 path/服务名称
+     */
+    private String path = Common.TEMP_FILE_PATH + "buffer";
+
+    /**
+     * 段文件大小，字节
+     */
+    private Integer segmentSize = 16777216;
+
+    /**
+     * 最大磁盘占用，字节，超过后丢弃最旧的段
+     */
+    private Long maxSize = 1073741824L;
+
+    /**
+     * 补发速率，每秒最大消息条数
+     */
+    private Integer replayRate = 1000;
+
+    /**
+     * 补发检查间隔，单位毫秒
+     */
+    private Long replayInterval = 1000L;
+
+    /**
+     * 补发时等待 RabbitMQ 确认的超时时间，单位毫秒
+     */
+    private Long confirmTimeout = 5000L;
+}
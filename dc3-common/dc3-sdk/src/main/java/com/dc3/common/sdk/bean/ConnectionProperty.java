@@ -0,0 +1,49 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.sdk.bean;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 驱动配置文件 driver.connection 字段内容
+ *
+ * @author pnoker
+ */
+@Setter
+@Getter
+public class ConnectionProperty {
+    /**
+     * 连接空闲超过该时间后关闭，毫秒，0 表示不按空闲时间关闭
+     */
+    private Long idleTimeout = 30 * 60 * 1000L;
+
+    /**
+     * 空闲检查与健康检查的周期，毫秒
+     */
+    private Long checkInterval = 30 * 1000L;
+
+    /**
+     * 建立连接失败后的首次重试等待时间，毫秒，之后每次失败翻倍
+     */
+    private Long initialBackoff = 1000L;
+
+    /**
+     * 建立连接失败后的最大重试等待时间，毫秒
+     */
+    private Long maxBackoff = 60 * 1000L;
+}
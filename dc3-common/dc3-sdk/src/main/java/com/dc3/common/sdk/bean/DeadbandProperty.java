@@ -0,0 +1,39 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.sdk.bean;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 驱动配置文件 driver.deadband 字段内容
+ *
+ * @author pnoker
+ */
+@Setter
+@Getter
+public class DeadbandProperty {
+    /**
+     * 是否在驱动端按位号死区配置过滤位号值，开启后未变化的位号值不会发送到数据中心
+     */
+    private Boolean enable = false;
+
+    /**
+     * 位号未配置心跳时的默认心跳间隔，分钟
+     */
+    private Integer heartbeat = 10;
+}
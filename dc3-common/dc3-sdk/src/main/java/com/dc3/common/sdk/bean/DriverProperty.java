@@ -47,6 +47,13 @@ public class DriverProperty {
     private String name;
     private String description;
     private ScheduleProperty schedule;
+    private DeadbandProperty deadband = new DeadbandProperty();
+    private MessageProperty message = new MessageProperty();
+    private BatchProperty batch = new BatchProperty();
+    private BufferProperty buffer = new BufferProperty();
+    private ReadProperty read = new ReadProperty();
+    private ScanProperty scan = new ScanProperty();
+    private ConnectionProperty connection = new ConnectionProperty();
     private List<DriverAttribute> driverAttribute;
     private List<PointAttribute> pointAttribute;
 }
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.sdk.bean;
+
+import com.dc3.common.constant.Common;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 驱动配置文件 driver.message 字段内容
+ *
+ * @author pnoker
+ */
+@Setter
+@Getter
+public class MessageProperty {
+    /**
+     * 位号值消息格式，json 或 binary，binary 需要数据中心支持 application/x-dc3-point-value 格式
+     */
+    private String format = Common.MessageFormat.JSON;
+}
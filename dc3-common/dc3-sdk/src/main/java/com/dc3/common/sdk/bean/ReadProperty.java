@@ -0,0 +1,44 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.sdk.bean;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 驱动配置文件 driver.read 字段内容
+ *
+ * @author pnoker
+ */
+@Setter
+@Getter
+public class ReadProperty {
+    /**
+     * 全局同时执行的最大读取数量
+     */
+    private Integer maxConcurrency = 32;
+
+    /**
+     * 单个设备同时执行的最大读取数量，默认 1，同一设备的读取串行执行，避免争用同一个连接
+     */
+    private Integer deviceConcurrency = 1;
+
+    /**
+     * 单次读取任务中同一设备的最大位号数量，驱动可通过批量读接口一次读取，设置为 1 时逐个位号读取
+     */
+    private Integer batchSize = 100;
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.sdk.bean;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 驱动配置文件 driver.scan 字段内容
+ *
+ * @author pnoker
+ */
+@Setter
+@Getter
+public class ScanProperty {
+    /**
+     * 是否按位号扫描周期读取，开启后不再使用 driver.schedule.read 的 corn 定时读取
+     */
+    private Boolean enable = false;
+
+    /**
+     * 指定扫描类别的位号属性名称，属性值为扫描类别名称或者扫描周期毫秒数
+     */
+    private String attribute = "scanClass";
+
+    /**
+     * 扫描类别，名称与扫描周期，单位毫秒
+     */
+    private Map<String, Long> classes = new HashMap<>(16);
+
+    /**
+     * 未配置扫描类别的位号的扫描周期，单位毫秒
+     */
+    private Long defaultInterval = 30000L;
+
+    /**
+     * 时间轮 tick 时长，单位毫秒，也是扫描周期的最小精度
+     */
+    private Long tickDuration = 10L;
+
+    /**
+     * 时间轮每圈格子数
+     */
+    private Integer ticksPerWheel = 512;
+
+    /**
+     * 同步设备位号扫描配置的间隔，单位毫秒
+     */
+    private Long refreshInterval = 5000L;
+}
@@ -17,31 +17,48 @@
 package com.dc3.common.sdk.config;
 
 import com.dc3.common.constant.Common;
+import com.dc3.common.converter.PointValueMessageConverter;
+import com.dc3.common.sdk.bean.DriverProperty;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.*;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.rabbit.listener.RabbitListenerContainerFactory;
-import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import javax.annotation.Resource;
+import java.util.UUID;
+
 /**
  * @author pnoker
  */
 @Slf4j
 @Configuration
+@EnableConfigurationProperties({DriverProperty.class})
 public class TopicRabbitConfig {
     @Value("${spring.application.name}")
     private String serviceName;
 
+    @Resource
+    private DriverProperty driverProperty;
+
     @Bean
     RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
         RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
-        rabbitTemplate.setMessageConverter(new Jackson2JsonMessageConverter());
+        boolean binary = Common.MessageFormat.BINARY.equals(driverProperty.getMessage().getFormat());
+        rabbitTemplate.setMessageConverter(new PointValueMessageConverter(binary));
         rabbitTemplate.setMandatory(true);
+        // the data center skips redelivered messages by messageId
+        rabbitTemplate.setBeforePublishPostProcessors(message -> {
+            if (null == message.getMessageProperties().getMessageId()) {
+                message.getMessageProperties().setMessageId(UUID.randomUUID().toString());
+            }
+            return message;
+        });
         rabbitTemplate.setReturnCallback((message, replyCode, replyText, exchange, routingKey) -> {
             log.error("Send message({}) to exchange({}), routingKey({}) failed: {}", message, exchange, routingKey, replyText);
         });
@@ -57,7 +74,7 @@ public class TopicRabbitConfig {
     public RabbitListenerContainerFactory<?> rabbitListenerContainerFactory(ConnectionFactory connectionFactory) {
         SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
         factory.setConnectionFactory(connectionFactory);
-        factory.setMessageConverter(new Jackson2JsonMessageConverter());
+        factory.setMessageConverter(new PointValueMessageConverter());
         factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
         return factory;
     }
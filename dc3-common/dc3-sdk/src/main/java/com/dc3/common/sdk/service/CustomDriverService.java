@@ -20,6 +20,7 @@ import com.dc3.common.model.Device;
 import com.dc3.common.model.Point;
 import com.dc3.common.sdk.bean.AttributeInfo;
 
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -27,9 +28,10 @@ import java.util.Map;
  *
  * <ol>
  * <li>{@link CustomDriverService#initial} 初始化操作，需要根据不同的驱动实现该功能</li>
- * <li>{@link CustomDriverService#read} 读操作，需要根据不同的驱动实现该功能</li>
+ * <li>{@link CustomDriverService#read} 读操作，需要根据不同的驱动实现该功能，支持批量读取的驱动可重写批量读接口</li>
  * <li>{@link CustomDriverService#write} 写操作，需要根据不同的驱动实现该功能</li>
  * <li>{@link CustomDriverService#schedule} 调度操作，需要根据不同的驱动实现该功能</li>
+ * <li>{@link CustomDriverService#poll} 是否轮询位号，主动推送位号值的驱动可重写该方法</li>
  * </ol>
  *
  * @author pnoker
@@ -52,6 +54,35 @@ public interface CustomDriverService {
      */
     String read(Map<String, AttributeInfo> driverInfo, Map<String, AttributeInfo> pointInfo, Device device, Point point) throws Exception;
 
+    /**
+     * Batch Read Operation
+     * <p>
+     * 默认逐个调用单点读接口，支持一次请求读取多个位号的驱动可以重写该方法；
+     * 读取失败的位号不包含在返回结果中，全部失败时抛出最后一个异常
+     *
+     * @param driverInfo   Driver Attribute Info
+     * @param pointInfoMap Point Attribute Info Map, pointId,info
+     * @param device       Device
+     * @param pointMap     Point Map, pointId,point
+     * @return pointId,String Value
+     * @throws Exception Exception
+     */
+    default Map<Long, String> read(Map<String, AttributeInfo> driverInfo, Map<Long, Map<String, AttributeInfo>> pointInfoMap, Device device, Map<Long, Point> pointMap) throws Exception {
+        Map<Long, String> values = new HashMap<>(pointMap.size() * 4 / 3 + 1);
+        Exception exception = null;
+        for (Map.Entry<Long, Point> entry : pointMap.entrySet()) {
+            try {
+                values.put(entry.getKey(), read(driverInfo, pointInfoMap.get(entry.getKey()), device, entry.getValue()));
+            } catch (Exception e) {
+                exception = e;
+            }
+        }
+        if (values.isEmpty() && null != exception) {
+            throw exception;
+        }
+        return values;
+    }
+
     /**
      * Write Operation
      *
@@ -68,4 +99,15 @@ public interface CustomDriverService {
      * Schedule Operation
      */
     void schedule();
+
+    /**
+     * 位号是否需要由读取调度轮询，位号值由驱动主动推送（例如订阅）的位号返回 false
+     *
+     * @param deviceId Device Id
+     * @param pointId  Point Id
+     * @return boolean
+     */
+    default boolean poll(Long deviceId, Long pointId) {
+        return true;
+    }
 }
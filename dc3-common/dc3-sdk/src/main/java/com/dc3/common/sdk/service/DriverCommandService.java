@@ -18,6 +18,9 @@ package com.dc3.common.sdk.service;
 
 import com.dc3.common.bean.driver.PointValue;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * @author pnoker
  */
@@ -32,6 +35,15 @@ public interface DriverCommandService {
      */
     PointValue read(Long deviceId, Long pointId);
 
+    /**
+     * 批量读操作，同一设备的多个位号交由驱动一次读取
+     *
+     * @param deviceId Device Id
+     * @param pointIds Point Id Collection
+     * @return 读取成功的 PointValue 集合
+     */
+    List<PointValue> read(Long deviceId, Collection<Long> pointIds);
+
     /**
      * 写操作
      *
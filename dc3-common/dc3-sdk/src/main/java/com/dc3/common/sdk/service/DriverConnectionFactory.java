@@ -0,0 +1,60 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.sdk.service;
+
+import com.dc3.common.sdk.bean.AttributeInfo;
+
+import java.util.Map;
+
+/**
+ * 驱动连接工厂，由各协议驱动实现，交给 {@link DriverConnectionService} 管理连接的生命周期
+ *
+ * @param <T> Connection Type
+ * @author pnoker
+ */
+public interface DriverConnectionFactory<T> {
+
+    /**
+     * 建立连接
+     *
+     * @param deviceId   Device Id
+     * @param driverInfo Driver Attribute Info
+     * @return Connection
+     * @throws Exception Exception
+     */
+    T create(Long deviceId, Map<String, AttributeInfo> driverInfo) throws Exception;
+
+    /**
+     * 健康检查，返回 false 时连接被关闭，下次获取时重新建立；
+     * 自带重连机制的连接可以不重写该方法
+     *
+     * @param connection Connection
+     * @return 是否健康
+     * @throws Exception Exception
+     */
+    default boolean check(T connection) throws Exception {
+        return true;
+    }
+
+    /**
+     * 关闭连接
+     *
+     * @param connection Connection
+     * @throws Exception Exception
+     */
+    void close(T connection) throws Exception;
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.sdk.service;
+
+import com.dc3.common.sdk.bean.AttributeInfo;
+
+import java.util.Map;
+
+/**
+ * 驱动连接管理服务
+ * <p>
+ * 每个设备维护一个连接，连接属性变化后重建；同一设备的建立和关闭串行执行；
+ * 定期关闭空闲和健康检查失败的连接，建立失败后按指数退避重试
+ *
+ * @author pnoker
+ */
+public interface DriverConnectionService {
+
+    /**
+     * 获取设备连接，不存在或者连接属性已变化时通过 factory 建立
+     *
+     * @param deviceId   Device Id
+     * @param driverInfo Driver Attribute Info
+     * @param factory    DriverConnectionFactory
+     * @param <T>        Connection Type
+     * @return Connection
+     * @throws Exception 建立连接失败，或者处于重试等待中
+     */
+    <T> T getConnection(Long deviceId, Map<String, AttributeInfo> driverInfo, DriverConnectionFactory<T> factory) throws Exception;
+
+    /**
+     * 关闭并移除设备连接，设备删除时调用；连接属性变化由 getConnection 检测后重建，无需调用
+     *
+     * @param deviceId Device Id
+     */
+    void invalidate(Long deviceId);
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.sdk.service;
+
+import java.util.Collection;
+
+/**
+ * 驱动读取调度服务
+ * <p>
+ * 按设备分组排队读取位号，限制全局以及单个设备的并发数；上个周期还未读取的位号不重复入队，记为错过的周期
+ *
+ * @author pnoker
+ */
+public interface DriverReadScheduleService {
+
+    /**
+     * 将当前所有设备位号加入读取队列
+     */
+    void schedule();
+
+    /**
+     * 将指定设备的位号加入读取队列
+     *
+     * @param deviceId Device Id
+     * @param pointIds Point Id Array
+     */
+    void schedule(Long deviceId, Collection<Long> pointIds);
+
+    /**
+     * 等待读取的位号数量
+     *
+     * @return long
+     */
+    long pending();
+
+}
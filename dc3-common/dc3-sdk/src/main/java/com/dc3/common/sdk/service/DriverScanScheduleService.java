@@ -0,0 +1,38 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.sdk.service;
+
+/**
+ * 位号扫描调度服务
+ * <p>
+ * 位号按扫描类别的周期放入时间轮，到期后交给读取调度服务排队读取，首次读取时间按位号散列分布在整个周期内
+ *
+ * @author pnoker
+ */
+public interface DriverScanScheduleService {
+
+    /**
+     * 启动时间轮
+     */
+    void initial();
+
+    /**
+     * 按当前设备位号以及扫描类别同步时间轮中的任务
+     */
+    void refresh();
+
+}
@@ -19,17 +19,22 @@ package com.dc3.common.sdk.service;
 import cn.hutool.core.convert.Convert;
 import com.dc3.common.bean.driver.DeviceEvent;
 import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.bean.driver.PointValueFilter;
 import com.dc3.common.constant.Common;
 import com.dc3.common.exception.ServiceException;
 import com.dc3.common.model.Point;
+import com.dc3.common.sdk.bean.DeadbandProperty;
 import com.dc3.common.sdk.bean.DriverContext;
+import com.dc3.common.sdk.bean.DriverProperty;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author pnoker
@@ -44,7 +49,16 @@ public class DriverService {
     @Resource
     private DriverContext driverContext;
     @Resource
-    private RabbitTemplate rabbitTemplate;
+    private DriverProperty driverProperty;
+    @Resource
+    private PointValuePublisher pointValuePublisher;
+    @Resource
+    private MessageBufferService messageBufferService;
+
+    /**
+     * deviceId(pointId,filter)
+     */
+    private final Map<Long, Map<Long, PointValueFilter>> pointValueFilterMap = new ConcurrentHashMap<>(16);
 
     /**
      * 将位号原始值进行处理和转换
@@ -107,7 +121,7 @@ public class DriverService {
      * @param deviceEvent Device Event
      */
     public void deviceEventSender(DeviceEvent deviceEvent) {
-        rabbitTemplate.convertAndSend(Common.Rabbit.TOPIC_EXCHANGE_EVENT, Common.Rabbit.ROUTING_DEVICE_EVENT_PREFIX + serviceName, deviceEvent);
+        messageBufferService.send(Common.Rabbit.TOPIC_EXCHANGE_EVENT, Common.Rabbit.ROUTING_DEVICE_EVENT_PREFIX + serviceName, deviceEvent);
     }
 
     /**
@@ -134,14 +148,21 @@ public class DriverService {
     }
 
     /**
-     * 发送位号值到消息组件
+     * 发送位号值到消息组件，开启 driver.batch 后合并发送
      *
      * @param pointValue PointValue
      */
     public void pointValueSender(PointValue pointValue) {
         if (null != pointValue) {
-            log.debug("Send single point data: {}", pointValue);
-            rabbitTemplate.convertAndSend(Common.Rabbit.TOPIC_EXCHANGE_VALUE, Common.Rabbit.ROUTING_POINT_VALUE_PREFIX + serviceName, pointValue);
+            boolean batch = driverProperty.getBatch().getEnable();
+            for (PointValue value : filter(pointValue)) {
+                if (batch) {
+                    pointValuePublisher.publish(value);
+                    continue;
+                }
+                log.debug("Send single point data: {}", value);
+                messageBufferService.send(Common.Rabbit.TOPIC_EXCHANGE_VALUE, Common.Rabbit.ROUTING_POINT_VALUE_PREFIX + serviceName, value);
+            }
         }
     }
 
@@ -154,4 +175,33 @@ public class DriverService {
         pointValues.forEach(this::pointValueSender);
     }
 
+    /**
+     * 按位号死区配置过滤位号值，多值位号不过滤
+     *
+     * @param pointValue PointValue
+     * @return 需要发送的位号值
+     */
+    private List<PointValue> filter(PointValue pointValue) {
+        DeadbandProperty deadband = driverProperty.getDeadband();
+        if (null == deadband || !deadband.getEnable() || null != pointValue.getChildren() || null == pointValue.getDeviceId() || null == pointValue.getPointId()) {
+            return Collections.singletonList(pointValue);
+        }
+
+        Point point;
+        try {
+            point = driverContext.getDevicePoint(pointValue.getDeviceId(), pointValue.getPointId());
+        } catch (Exception e) {
+            return Collections.singletonList(pointValue);
+        }
+        Map<Long, PointValueFilter> filterMap = pointValueFilterMap.computeIfAbsent(pointValue.getDeviceId(), k -> new ConcurrentHashMap<>(16));
+        if (!PointValueFilter.enable(point)) {
+            filterMap.remove(pointValue.getPointId());
+            return Collections.singletonList(pointValue);
+        }
+
+        // point configuration changes recreate the filter
+        PointValueFilter filter = filterMap.compute(pointValue.getPointId(), (k, v) -> null != v && v.match(point, deadband.getHeartbeat()) ? v : new PointValueFilter(point, deadband.getHeartbeat()));
+        return filter.filter(pointValue);
+    }
+
 }
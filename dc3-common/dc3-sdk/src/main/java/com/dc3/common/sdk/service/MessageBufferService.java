@@ -0,0 +1,55 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.sdk.service;
+
+/**
+ * 消息本地缓冲服务
+ * <p>
+ * 消息组件不可用时将消息写入本地分段日志，恢复后按写入顺序限速补发
+ *
+ * @author pnoker
+ */
+public interface MessageBufferService {
+
+    /**
+     * 发送消息到消息组件，开启本地缓冲后，消息组件不可用或者还有未补发的消息时写入本地缓冲，
+     * 无法写入本地缓冲的消息直接发送
+     *
+     * @param exchange   Exchange
+     * @param routingKey Routing Key
+     * @param object     Message Object
+     */
+    void send(String exchange, String routingKey, Object object);
+
+    /**
+     * 新消息是否需要写入本地缓冲，以保证补发顺序
+     *
+     * @return boolean
+     */
+    boolean buffering();
+
+    /**
+     * 写入本地缓冲
+     *
+     * @param exchange   Exchange
+     * @param routingKey Routing Key
+     * @param object     Message Object
+     * @return 未开启本地缓冲或者写入失败时返回 false
+     */
+    boolean buffer(String exchange, String routingKey, Object object);
+
+}
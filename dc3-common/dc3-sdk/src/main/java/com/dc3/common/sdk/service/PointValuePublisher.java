@@ -0,0 +1,243 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.sdk.service;
+
+import com.dc3.common.bean.driver.PointValue;
+import com.dc3.common.bean.driver.PointValueBatch;
+import com.dc3.common.constant.Common;
+import com.dc3.common.sdk.bean.BatchProperty;
+import com.dc3.common.sdk.bean.DriverProperty;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 位号值批量发送
+ * <p>
+ * 位号值先写入缓冲区，条数、估算字节数或者最早一条的等待时间达到阈值后合并为一条 PointValueBatch 消息发送，
+ * 通过 RabbitMQ 异步确认，未确认的批次数量受 maxInFlight 限制，等待超过 maxInFlightWait 以及被拒绝的批次按 retry 次数重发，
+ * 开启本地缓冲时，消息组件不可用以及未被确认的批次写入本地缓冲
+ *
+ * @author pnoker
+ */
+@Slf4j
+@Service
+public class PointValuePublisher {
+
+    @Value("${spring.application.name}")
+    private String serviceName;
+
+    @Resource
+    private RabbitTemplate rabbitTemplate;
+    @Resource
+    private DriverProperty driverProperty;
+    @Resource
+    private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
+    @Resource
+    private MeterRegistry meterRegistry;
+    @Resource
+    private MessageBufferService messageBufferService;
+
+    private final Object lock = new Object();
+    private List<PointValue> buffer = new ArrayList<>();
+    private long bufferBytes = 0;
+    private long bufferTime = 0;
+
+    private Semaphore inFlight;
+    private Counter batchCounter, valueCounter, nackCounter, droppedCounter;
+
+    @PostConstruct
+    public void initial() {
+        BatchProperty batch = driverProperty.getBatch();
+        inFlight = new Semaphore(Math.max(1, batch.getMaxInFlight()));
+        batchCounter = Counter.builder("dc3.driver.publish.batches").description("Point value batches confirmed by RabbitMQ").register(meterRegistry);
+        valueCounter = Counter.builder("dc3.driver.publish.values").description("Point values confirmed by RabbitMQ").register(meterRegistry);
+        nackCounter = Counter.builder("dc3.driver.publish.nacks").description("Point value batches not confirmed by RabbitMQ").register(meterRegistry);
+        droppedCounter = Counter.builder("dc3.driver.publish.dropped").description("Point values dropped after all retries").register(meterRegistry);
+        Gauge.builder("dc3.driver.publish.in.flight", () -> Math.max(1, batch.getMaxInFlight()) - inFlight.availablePermits())
+                .description("Point value batches waiting for RabbitMQ confirms").register(meterRegistry);
+
+        if (batch.getEnable()) {
+            long period = Math.max(10L, batch.getMaxAge() / 2);
+            scheduledThreadPoolExecutor.scheduleAtFixedRate(() -> {
+                try {
+                    flushExpired();
+                } catch (Exception e) {
+                    log.error("Flush point value batch failed: {}", e.getMessage(), e);
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flush();
+    }
+
+    /**
+     * 写入位号值到发送缓冲区
+     *
+     * @param pointValue PointValue
+     */
+    public void publish(PointValue pointValue) {
+        BatchProperty batch = driverProperty.getBatch();
+        List<PointValue> pointValues = null;
+        synchronized (lock) {
+            if (buffer.isEmpty()) {
+                bufferTime = System.currentTimeMillis();
+            }
+            buffer.add(pointValue);
+            bufferBytes += estimate(pointValue);
+            if (buffer.size() >= batch.getSize() || bufferBytes >= batch.getMaxBytes()) {
+                pointValues = drain();
+            }
+        }
+        if (null != pointValues) {
+            send(pointValues, 0);
+        }
+    }
+
+    /**
+     * 立即发送缓冲区中的位号值
+     */
+    public void flush() {
+        List<PointValue> pointValues;
+        synchronized (lock) {
+            pointValues = drain();
+        }
+        if (!pointValues.isEmpty()) {
+            send(pointValues, 0);
+        }
+    }
+
+    private void flushExpired() {
+        List<PointValue> pointValues = null;
+        synchronized (lock) {
+            if (!buffer.isEmpty() && System.currentTimeMillis() - bufferTime >= driverProperty.getBatch().getMaxAge()) {
+                pointValues = drain();
+            }
+        }
+        if (null != pointValues) {
+            send(pointValues, 0);
+        }
+    }
+
+    private List<PointValue> drain() {
+        List<PointValue> pointValues = buffer;
+        buffer = new ArrayList<>(Math.max(16, pointValues.size()));
+        bufferBytes = 0;
+        return pointValues;
+    }
+
+    private void send(List<PointValue> pointValues, int attempt) {
+        // keep the order of values buffered while RabbitMQ was unavailable
+        if (messageBufferService.buffering() && buffer(pointValues)) {
+            return;
+        }
+        try {
+            // never block the shared scheduler indefinitely, flushExpired and retries run on it
+            if (!inFlight.tryAcquire(driverProperty.getBatch().getMaxInFlightWait(), TimeUnit.MILLISECONDS)) {
+                log.warn("Point value batch({}) timed out waiting for confirms, {} batches in flight", pointValues.size(), driverProperty.getBatch().getMaxInFlight());
+                retry(pointValues, attempt);
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while waiting for point value batch confirms, dropped {} values", pointValues.size());
+            droppedCounter.increment(pointValues.size());
+            return;
+        }
+
+        CorrelationData correlationData = new CorrelationData();
+        correlationData.getFuture().addCallback(confirm -> {
+            inFlight.release();
+            if (null != confirm && confirm.isAck()) {
+                batchCounter.increment();
+                valueCounter.increment(pointValues.size());
+            } else {
+                log.warn("Point value batch({}) nack: {}", pointValues.size(), null != confirm ? confirm.getReason() : null);
+                nackCounter.increment();
+                retry(pointValues, attempt);
+            }
+        }, throwable -> {
+            inFlight.release();
+            log.warn("Point value batch({}) confirm failed: {}", pointValues.size(), throwable.getMessage());
+            nackCounter.increment();
+            retry(pointValues, attempt);
+        });
+
+        try {
+            log.debug("Send point value batch: {}", pointValues.size());
+            rabbitTemplate.convertAndSend(Common.Rabbit.TOPIC_EXCHANGE_VALUE, Common.Rabbit.ROUTING_POINT_VALUE_PREFIX + serviceName, new PointValueBatch(pointValues), correlationData);
+        } catch (Exception e) {
+            log.error("Send point value batch({}) failed: {}", pointValues.size(), e.getMessage());
+            // no confirm will arrive for a message that was never published
+            correlationData.getFuture().set(new CorrelationData.Confirm(false, e.getMessage()));
+        }
+    }
+
+    private void retry(List<PointValue> pointValues, int attempt) {
+        if (buffer(pointValues)) {
+            return;
+        }
+        if (attempt >= driverProperty.getBatch().getRetry()) {
+            log.error("Point value batch({}) dropped after {} retries", pointValues.size(), attempt);
+            droppedCounter.increment(pointValues.size());
+            return;
+        }
+        long delay = Math.min(30000L, 500L << attempt);
+        scheduledThreadPoolExecutor.schedule(() -> send(pointValues, attempt + 1), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean buffer(List<PointValue> pointValues) {
+        return messageBufferService.buffer(Common.Rabbit.TOPIC_EXCHANGE_VALUE, Common.Rabbit.ROUTING_POINT_VALUE_PREFIX + serviceName, new PointValueBatch(pointValues));
+    }
+
+    /**
+     * 估算位号值消息大小，只用于控制批次大小
+     */
+    private long estimate(PointValue pointValue) {
+        long bytes = 96;
+        if (null != pointValue.getValue()) {
+            bytes += pointValue.getValue().length();
+        }
+        if (null != pointValue.getRawValue()) {
+            bytes += pointValue.getRawValue().length();
+        }
+        if (null != pointValue.getChildren()) {
+            for (PointValue child : pointValue.getChildren()) {
+                bytes += estimate(child);
+            }
+        }
+        return bytes;
+    }
+
+}
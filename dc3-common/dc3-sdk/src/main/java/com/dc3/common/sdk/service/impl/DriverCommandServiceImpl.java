@@ -19,6 +19,7 @@ package com.dc3.common.sdk.service.impl;
 import com.dc3.common.bean.driver.PointValue;
 import com.dc3.common.exception.ServiceException;
 import com.dc3.common.model.Device;
+import com.dc3.common.model.Point;
 import com.dc3.common.sdk.bean.AttributeInfo;
 import com.dc3.common.sdk.bean.DriverContext;
 import com.dc3.common.sdk.service.CustomDriverService;
@@ -28,6 +29,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.util.*;
 
 /**
  * @author pnoker
@@ -63,6 +65,38 @@ public class DriverCommandServiceImpl implements DriverCommandService {
         }
     }
 
+    @Override
+    public List<PointValue> read(Long deviceId, Collection<Long> pointIds) {
+        Device device = driverContext.getDevice(deviceId);
+        Map<Long, Map<String, AttributeInfo>> pointInfoMap = new HashMap<>(pointIds.size() * 4 / 3 + 1);
+        Map<Long, Point> pointMap = new LinkedHashMap<>(pointIds.size() * 4 / 3 + 1);
+        for (Long pointId : pointIds) {
+            pointInfoMap.put(pointId, driverContext.getDevicePointInfo(deviceId, pointId));
+            pointMap.put(pointId, driverContext.getDevicePoint(deviceId, pointId));
+        }
+
+        Map<Long, String> rawValues;
+        try {
+            rawValues = customDriverService.read(driverContext.getProfileDriverInfo(device.getProfileId()), pointInfoMap, device, pointMap);
+        } catch (Exception e) {
+            log.error("DriverCommandServiceImpl.read{}", e.getMessage(), e);
+            throw new ServiceException(e.getMessage());
+        }
+
+        List<PointValue> pointValues = new ArrayList<>(rawValues.size());
+        rawValues.forEach((pointId, rawValue) -> {
+            try {
+                pointValues.add(new PointValue(deviceId, pointId, rawValue, driverService.convertValue(deviceId, pointId, rawValue)));
+            } catch (Exception e) {
+                log.error("DriverCommandServiceImpl.read{}", e.getMessage(), e);
+            }
+        });
+        if (pointValues.size() > 0) {
+            driverService.pointValueSender(pointValues);
+        }
+        return pointValues;
+    }
+
     @Override
     public Boolean write(Long deviceId, Long pointId, String value) {
         Device device = driverContext.getDevice(deviceId);
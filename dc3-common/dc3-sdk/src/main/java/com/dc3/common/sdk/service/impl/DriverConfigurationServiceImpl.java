@@ -28,6 +28,7 @@ import com.dc3.common.sdk.bean.AttributeInfo;
 import com.dc3.common.sdk.bean.DriverContext;
 import com.dc3.common.sdk.bean.DriverProperty;
 import com.dc3.common.sdk.service.DriverConfigurationService;
+import com.dc3.common.sdk.service.DriverConnectionService;
 import com.dc3.common.utils.Dc3Util;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -65,6 +66,8 @@ public class DriverConfigurationServiceImpl implements DriverConfigurationServic
     private DriverProperty driverProperty;
     @Resource
     private ApplicationContext applicationContext;
+    @Resource
+    private DriverConnectionService driverConnectionService;
 
     @Resource
     private PointClient pointClient;
@@ -132,6 +135,7 @@ public class DriverConfigurationServiceImpl implements DriverConfigurationServic
             // Add the device point info to context
             driverContext.getDevicePointInfoMap().put(device.getId(), devicePointInfoMap);
         }
+        // a changed profile or driver info is picked up by getConnection through the connection key, the connection is kept otherwise
 
         log.info("Upsert device {}, devicePointInfo {}", device, devicePointInfoMap);
     }
@@ -143,6 +147,7 @@ public class DriverConfigurationServiceImpl implements DriverConfigurationServic
         driverContext.getDeviceMap().entrySet().removeIf(next -> next.getKey().equals(id));
         driverContext.getDeviceNameMap().entrySet().removeIf(next -> next.getValue().equals(id));
         driverContext.getDevicePointInfoMap().entrySet().removeIf(next -> next.getKey().equals(id));
+        driverConnectionService.invalidate(id);
     }
 
     @Override
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.sdk.service.impl;
+
+import com.dc3.common.exception.ServiceException;
+import com.dc3.common.sdk.bean.AttributeInfo;
+import com.dc3.common.sdk.bean.ConnectionProperty;
+import com.dc3.common.sdk.bean.DriverProperty;
+import com.dc3.common.sdk.service.DriverConnectionFactory;
+import com.dc3.common.sdk.service.DriverConnectionService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author pnoker
+ */
+@Slf4j
+@Service
+@EnableConfigurationProperties({DriverProperty.class})
+public class DriverConnectionServiceImpl implements DriverConnectionService {
+
+    private static final String REASON_CHANGED = "changed";
+    private static final String REASON_IDLE = "idle";
+    private static final String REASON_UNHEALTHY = "unhealthy";
+    private static final String REASON_INVALIDATED = "invalidated";
+    private static final String REASON_SHUTDOWN = "shutdown";
+
+    @Resource
+    private DriverProperty driverProperty;
+    @Resource
+    private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    /**
+     * deviceId,holder
+     */
+    private final Map<Long, ConnectionHolder> holderMap = new ConcurrentHashMap<>(64);
+
+    private Counter createdCounter, failedCounter;
+    private final Map<String, Counter> closedCounterMap = new ConcurrentHashMap<>(8);
+
+    @PostConstruct
+    public void initial() {
+        createdCounter = Counter.builder("dc3.driver.connection.created").description("Device connections established").register(meterRegistry);
+        failedCounter = Counter.builder("dc3.driver.connection.failed").description("Device connections that failed to establish").register(meterRegistry);
+        Gauge.builder("dc3.driver.connection.active", this, DriverConnectionServiceImpl::active).description("Open device connections").register(meterRegistry);
+        Gauge.builder("dc3.driver.connection.backoff", this, DriverConnectionServiceImpl::backoff).description("Devices waiting to retry a failed connection").register(meterRegistry);
+
+        long checkInterval = Math.max(1000L, driverProperty.getConnection().getCheckInterval());
+        scheduledThreadPoolExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                check();
+            } catch (Exception e) {
+                log.error("Check device connections failed: {}", e.getMessage(), e);
+            }
+        }, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        holderMap.values().forEach(holder -> {
+            synchronized (holder) {
+                holder.removed = true;
+                close(holder, REASON_SHUTDOWN);
+            }
+        });
+        holderMap.clear();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getConnection(Long deviceId, Map<String, AttributeInfo> driverInfo, DriverConnectionFactory<T> factory) throws Exception {
+        String key = key(driverInfo);
+        while (true) {
+            ConnectionHolder holder = holderMap.computeIfAbsent(deviceId, ConnectionHolder::new);
+            // connections of one device are established and closed one at a time
+            synchronized (holder) {
+                if (holder.removed) {
+                    continue;
+                }
+                long now = System.currentTimeMillis();
+                holder.lastUsed = now;
+                if (null != holder.connection) {
+                    if (key.equals(holder.key)) {
+                        return (T) holder.connection;
+                    }
+                    log.info("Connection attributes of device({}) changed, reconnect", deviceId);
+                    close(holder, REASON_CHANGED);
+                    holder.failures = 0;
+                    holder.retryTime = 0;
+                }
+                if (now < holder.retryTime) {
+                    throw new ServiceException(String.format("Connection of device(%s) failed %s times, retry in %s ms", deviceId, holder.failures, holder.retryTime - now));
+                }
+
+                try {
+                    T connection = factory.create(deviceId, driverInfo);
+                    holder.connection = connection;
+                    holder.factory = (DriverConnectionFactory<Object>) factory;
+                    holder.key = key;
+                    holder.failures = 0;
+                    holder.retryTime = 0;
+                    createdCounter.increment();
+                    log.debug("Connection of device({}) established", deviceId);
+                    return connection;
+                } catch (Exception e) {
+                    ConnectionProperty property = driverProperty.getConnection();
+                    holder.failures++;
+                    long backoff = Math.min(property.getMaxBackoff(), property.getInitialBackoff() << Math.min(holder.failures - 1, 20));
+                    holder.retryTime = now + backoff;
+                    failedCounter.increment();
+                    log.warn("Connection of device({}) failed {} times, retry in {} ms: {}", deviceId, holder.failures, backoff, e.getMessage());
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void invalidate(Long deviceId) {
+        ConnectionHolder holder = holderMap.remove(deviceId);
+        if (null != holder) {
+            synchronized (holder) {
+                holder.removed = true;
+                close(holder, REASON_INVALIDATED);
+            }
+        }
+    }
+
+    /**
+     * 关闭空闲连接，对其余连接做健康检查
+     */
+    private void check() {
+        long idleTimeout = driverProperty.getConnection().getIdleTimeout();
+        for (ConnectionHolder holder : holderMap.values()) {
+            Object connection;
+            DriverConnectionFactory<Object> factory;
+            synchronized (holder) {
+                if (null == holder.connection) {
+                    continue;
+                }
+                if (idleTimeout > 0 && System.currentTimeMillis() - holder.lastUsed > idleTimeout) {
+                    log.debug("Connection of device({}) is idle, close", holder.deviceId);
+                    close(holder, REASON_IDLE);
+                    continue;
+                }
+                connection = holder.connection;
+                factory = holder.factory;
+            }
+
+            // the check may block on the network, so it runs outside the device lock
+            boolean healthy;
+            try {
+                healthy = factory.check(connection);
+            } catch (Exception e) {
+                log.debug("Connection of device({}) check failed: {}", holder.deviceId, e.getMessage());
+                healthy = false;
+            }
+            if (!healthy) {
+                synchronized (holder) {
+                    if (holder.connection == connection) {
+                        log.warn("Connection of device({}) is unhealthy, close", holder.deviceId);
+                        close(holder, REASON_UNHEALTHY);
+                    }
+                }
+            }
+        }
+    }
+
+    private void close(ConnectionHolder holder, String reason) {
+        if (null == holder.connection) {
+            return;
+        }
+        try {
+            holder.factory.close(holder.connection);
+        } catch (Exception e) {
+            log.warn("Close connection of device({}) failed: {}", holder.deviceId, e.getMessage());
+        }
+        holder.connection = null;
+        holder.factory = null;
+        holder.key = null;
+        closedCounterMap.computeIfAbsent(reason, r -> Counter.builder("dc3.driver.connection.closed").tag("reason", r)
+                .description("Device connections closed").register(meterRegistry)).increment();
+    }
+
+    private long active() {
+        return holderMap.values().stream().filter(holder -> null != holder.connection).count();
+    }
+
+    private long backoff() {
+        long now = System.currentTimeMillis();
+        return holderMap.values().stream().filter(holder -> holder.retryTime > now).count();
+    }
+
+    /**
+     * 连接属性标识，按属性名排序拼接属性值
+     *
+     * @param driverInfo Driver Attribute Info
+     * @return String
+     */
+    private String key(Map<String, AttributeInfo> driverInfo) {
+        StringBuilder key = new StringBuilder();
+        if (null != driverInfo) {
+            new TreeMap<>(driverInfo).forEach((name, info) -> key.append(name).append('=').append(null == info ? null : info.getValue()).append(';'));
+        }
+        return key.toString();
+    }
+
+    /**
+     * 单个设备的连接，同时作为该设备的连接锁
+     */
+    private static class ConnectionHolder {
+        private final Long deviceId;
+        private Object connection;
+        private DriverConnectionFactory<Object> factory;
+        private String key;
+        private volatile long lastUsed;
+        private int failures = 0;
+        private volatile long retryTime = 0;
+        private boolean removed = false;
+
+        private ConnectionHolder(Long deviceId) {
+            this.deviceId = deviceId;
+        }
+    }
+
+}
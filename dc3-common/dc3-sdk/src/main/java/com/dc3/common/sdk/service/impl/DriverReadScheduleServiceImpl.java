@@ -0,0 +1,253 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.sdk.service.impl;
+
+import com.dc3.common.sdk.bean.AttributeInfo;
+import com.dc3.common.sdk.bean.DriverContext;
+import com.dc3.common.sdk.bean.DriverProperty;
+import com.dc3.common.sdk.bean.ReadProperty;
+import com.dc3.common.sdk.service.CustomDriverService;
+import com.dc3.common.sdk.service.DriverCommandService;
+import com.dc3.common.sdk.service.DriverReadScheduleService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author pnoker
+ */
+@Slf4j
+@Service
+@EnableConfigurationProperties({DriverProperty.class})
+public class DriverReadScheduleServiceImpl implements DriverReadScheduleService {
+
+    @Resource
+    private DriverContext driverContext;
+    @Resource
+    private DriverProperty driverProperty;
+    @Resource
+    private DriverCommandService driverCommandService;
+    @Resource
+    private CustomDriverService customDriverService;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private final AtomicInteger threadAtomic = new AtomicInteger(1);
+
+    /**
+     * deviceId,queue
+     */
+    private final Map<Long, DeviceQueue> deviceQueueMap = new HashMap<>(16);
+
+    /**
+     * 有等待读取的位号并且未达到设备并发上限的设备，轮询调度
+     */
+    private final Deque<DeviceQueue> readyQueue = new ArrayDeque<>();
+
+    private int running = 0;
+    private long pending = 0;
+
+    private ThreadPoolExecutor readExecutor;
+    private Counter missedCounter, failedCounter;
+    private Timer lagTimer, readTimer;
+
+    @PostConstruct
+    public void initial() {
+        int maxConcurrency = Math.max(1, driverProperty.getRead().getMaxConcurrency());
+        // tasks are only submitted when a permit is free, so the queue never holds more than maxConcurrency tasks
+        readExecutor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                (r) -> new Thread(r, "[ReadScheduler]" + threadAtomic.getAndIncrement()));
+        readExecutor.allowCoreThreadTimeOut(true);
+
+        missedCounter = Counter.builder("dc3.driver.read.missed").description("Point reads skipped because the previous cycle was still pending").register(meterRegistry);
+        failedCounter = Counter.builder("dc3.driver.read.failed").description("Point reads that failed").register(meterRegistry);
+        lagTimer = Timer.builder("dc3.driver.read.lag").description("Time from scheduling a point read to its start").register(meterRegistry);
+        readTimer = Timer.builder("dc3.driver.read.duration").description("Read task duration, one task reads a batch of points of a device").register(meterRegistry);
+        Gauge.builder("dc3.driver.read.pending", this, DriverReadScheduleServiceImpl::pending).description("Point reads waiting for execution").register(meterRegistry);
+        Gauge.builder("dc3.driver.read.running", this, DriverReadScheduleServiceImpl::running).description("Read tasks in progress").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        readExecutor.shutdownNow();
+    }
+
+    @Override
+    public void schedule() {
+        long now = System.currentTimeMillis();
+        Map<Long, Map<Long, Map<String, AttributeInfo>>> pointInfoMap = driverContext.getDevicePointInfoMap();
+        synchronized (this) {
+            // drop queued reads of removed devices
+            Iterator<Map.Entry<Long, DeviceQueue>> iterator = deviceQueueMap.entrySet().iterator();
+            while (iterator.hasNext()) {
+                DeviceQueue deviceQueue = iterator.next().getValue();
+                if (!pointInfoMap.containsKey(deviceQueue.deviceId)) {
+                    pending -= deviceQueue.points.size();
+                    deviceQueue.points.clear();
+                    if (deviceQueue.running == 0) {
+                        iterator.remove();
+                    }
+                }
+            }
+
+            long missed = 0;
+            for (Map.Entry<Long, Map<Long, Map<String, AttributeInfo>>> entry : pointInfoMap.entrySet()) {
+                missed += enqueue(entry.getKey(), entry.getValue().keySet(), now);
+            }
+            if (missed > 0) {
+                log.warn("Read schedule is behind, {} point reads of the previous cycle are still pending", missed);
+            }
+            dispatch();
+        }
+    }
+
+    @Override
+    public synchronized void schedule(Long deviceId, Collection<Long> pointIds) {
+        enqueue(deviceId, pointIds, System.currentTimeMillis());
+        dispatch();
+    }
+
+    @Override
+    public synchronized long pending() {
+        return pending;
+    }
+
+    private synchronized int running() {
+        return running;
+    }
+
+    /**
+     * 位号加入设备读取队列，已在队列中的位号不重复加入，驱动主动推送的位号不加入
+     *
+     * @return 错过的周期数
+     */
+    private long enqueue(Long deviceId, Collection<Long> pointIds, long now) {
+        DeviceQueue deviceQueue = deviceQueueMap.computeIfAbsent(deviceId, DeviceQueue::new);
+        long missed = 0;
+        for (Long pointId : pointIds) {
+            if (!customDriverService.poll(deviceId, pointId)) {
+                continue;
+            }
+            if (null != deviceQueue.points.putIfAbsent(pointId, now)) {
+                missed++;
+            } else {
+                pending++;
+            }
+        }
+        if (missed > 0) {
+            missedCounter.increment(missed);
+        }
+        ready(deviceQueue);
+        return missed;
+    }
+
+    /**
+     * 在全局并发上限内，轮流从各个设备取出最早入队的一批位号执行读取
+     */
+    private void dispatch() {
+        int maxConcurrency = Math.max(1, driverProperty.getRead().getMaxConcurrency());
+        int batchSize = Math.max(1, driverProperty.getRead().getBatchSize());
+        while (running < maxConcurrency && !readyQueue.isEmpty()) {
+            DeviceQueue deviceQueue = readyQueue.poll();
+            deviceQueue.ready = false;
+            if (deviceQueue.points.isEmpty()) {
+                continue;
+            }
+
+            // pointId,scheduleTime
+            Map<Long, Long> points = new LinkedHashMap<>(Math.min(batchSize, deviceQueue.points.size()) * 4 / 3 + 1);
+            Iterator<Map.Entry<Long, Long>> iterator = deviceQueue.points.entrySet().iterator();
+            while (iterator.hasNext() && points.size() < batchSize) {
+                Map.Entry<Long, Long> point = iterator.next();
+                points.put(point.getKey(), point.getValue());
+                iterator.remove();
+            }
+            pending -= points.size();
+            deviceQueue.running++;
+            running++;
+            ready(deviceQueue);
+
+            readExecutor.execute(() -> read(deviceQueue, points));
+        }
+    }
+
+    private void read(DeviceQueue deviceQueue, Map<Long, Long> points) {
+        long start = System.currentTimeMillis();
+        points.values().forEach(scheduleTime -> lagTimer.record(start - scheduleTime, TimeUnit.MILLISECONDS));
+        try {
+            log.debug("Execute read schedule for device({}),points({})", deviceQueue.deviceId, points.keySet());
+            if (points.size() == 1) {
+                driverCommandService.read(deviceQueue.deviceId, points.keySet().iterator().next());
+            } else {
+                int failed = points.size() - driverCommandService.read(deviceQueue.deviceId, points.keySet()).size();
+                if (failed > 0) {
+                    failedCounter.increment(failed);
+                }
+            }
+        } catch (Exception e) {
+            failedCounter.increment(points.size());
+            log.debug("Read device({}) points({}) failed: {}", deviceQueue.deviceId, points.keySet(), e.getMessage());
+        } finally {
+            readTimer.record(System.currentTimeMillis() - start, TimeUnit.MILLISECONDS);
+            synchronized (this) {
+                deviceQueue.running--;
+                running--;
+                ready(deviceQueue);
+                dispatch();
+            }
+        }
+    }
+
+    private void ready(DeviceQueue deviceQueue) {
+        if (!deviceQueue.ready && !deviceQueue.points.isEmpty() && deviceQueue.running < Math.max(1, driverProperty.getRead().getDeviceConcurrency())) {
+            deviceQueue.ready = true;
+            readyQueue.add(deviceQueue);
+        }
+    }
+
+    /**
+     * 单个设备的读取队列
+     */
+    private static class DeviceQueue {
+        private final Long deviceId;
+
+        /**
+         * pointId,scheduleTime
+         */
+        private final LinkedHashMap<Long, Long> points = new LinkedHashMap<>(16);
+        private int running = 0;
+        private boolean ready = false;
+
+        private DeviceQueue(Long deviceId) {
+            this.deviceId = deviceId;
+        }
+    }
+
+}
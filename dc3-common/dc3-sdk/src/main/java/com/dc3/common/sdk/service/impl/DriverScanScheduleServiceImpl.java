@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.sdk.service.impl;
+
+import com.dc3.common.sdk.bean.AttributeInfo;
+import com.dc3.common.sdk.bean.DriverContext;
+import com.dc3.common.sdk.bean.DriverProperty;
+import com.dc3.common.sdk.bean.ScanProperty;
+import com.dc3.common.sdk.service.DriverReadScheduleService;
+import com.dc3.common.sdk.service.DriverScanScheduleService;
+import com.dc3.common.sdk.util.HashedWheelTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author pnoker
+ */
+@Slf4j
+@Service
+@EnableConfigurationProperties({DriverProperty.class})
+public class DriverScanScheduleServiceImpl implements DriverScanScheduleService {
+
+    @Resource
+    private DriverContext driverContext;
+    @Resource
+    private DriverProperty driverProperty;
+    @Resource
+    private DriverReadScheduleService driverReadScheduleService;
+    @Resource
+    private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    /**
+     * deviceId(pointId,scan)
+     */
+    private final Map<Long, Map<Long, HashedWheelTimer.Timeout<ScanPoint>>> scanMap = new ConcurrentHashMap<>(16);
+    private HashedWheelTimer<ScanPoint> timer;
+
+    @Override
+    public synchronized void initial() {
+        if (null != timer) {
+            return;
+        }
+        ScanProperty scan = driverProperty.getScan();
+        timer = new HashedWheelTimer<>("[ScanScheduler]", scan.getTickDuration(), scan.getTicksPerWheel(), this::expire);
+        timer.start();
+        Gauge.builder("dc3.driver.scan.points", scanMap, map -> map.values().stream().mapToInt(Map::size).sum())
+                .description("Points registered in the scan scheduler").register(meterRegistry);
+
+        refresh();
+        scheduledThreadPoolExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (Exception e) {
+                log.error("Refresh scan schedule failed: {}", e.getMessage(), e);
+            }
+        }, scan.getRefreshInterval(), scan.getRefreshInterval(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (null != timer) {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public synchronized void refresh() {
+        Map<Long, Map<Long, Map<String, AttributeInfo>>> pointInfoMap = driverContext.getDevicePointInfoMap();
+
+        // cancel scans of removed devices and points
+        scanMap.forEach((deviceId, pointMap) -> {
+            Map<Long, Map<String, AttributeInfo>> infoMap = pointInfoMap.get(deviceId);
+            pointMap.entrySet().removeIf(entry -> {
+                boolean removed = null == infoMap || !infoMap.containsKey(entry.getKey());
+                if (removed) {
+                    entry.getValue().cancel();
+                }
+                return removed;
+            });
+        });
+        scanMap.entrySet().removeIf(entry -> entry.getValue().isEmpty());
+
+        pointInfoMap.forEach((deviceId, infoMap) -> {
+            Map<Long, HashedWheelTimer.Timeout<ScanPoint>> pointMap = scanMap.computeIfAbsent(deviceId, k -> new ConcurrentHashMap<>(16));
+            infoMap.forEach((pointId, info) -> {
+                long interval = interval(deviceId, pointId, info);
+                HashedWheelTimer.Timeout<ScanPoint> timeout = pointMap.get(pointId);
+                if (null != timeout && timeout.getValue().interval == interval) {
+                    return;
+                }
+                if (null != timeout) {
+                    timeout.cancel();
+                }
+                pointMap.put(pointId, timer.schedule(new ScanPoint(deviceId, pointId, interval), phase(deviceId, pointId, interval), interval));
+            });
+        });
+    }
+
+    /**
+     * 到期的位号按设备合并后加入读取队列
+     */
+    private void expire(List<ScanPoint> scanPoints) {
+        Map<Long, List<Long>> devicePointMap = new HashMap<>(16);
+        for (ScanPoint scanPoint : scanPoints) {
+            devicePointMap.computeIfAbsent(scanPoint.deviceId, k -> new ArrayList<>()).add(scanPoint.pointId);
+        }
+        devicePointMap.forEach(driverReadScheduleService::schedule);
+    }
+
+    /**
+     * 位号扫描周期，位号属性值为扫描类别名称或者毫秒数，未配置时使用默认周期
+     */
+    private long interval(Long deviceId, Long pointId, Map<String, AttributeInfo> info) {
+        ScanProperty scan = driverProperty.getScan();
+        AttributeInfo attributeInfo = null != info ? info.get(scan.getAttribute()) : null;
+        String value = null != attributeInfo ? attributeInfo.getValue() : null;
+        if (null != value && !value.trim().isEmpty()) {
+            Long interval = scan.getClasses().get(value.trim());
+            if (null == interval) {
+                try {
+                    interval = Long.parseLong(value.trim());
+                } catch (NumberFormatException e) {
+                    log.warn("Unknown scan class({}) of device({}) point({}), use the default interval", value, deviceId, pointId);
+                }
+            }
+            if (null != interval && interval > 0) {
+                return Math.max(interval, scan.getTickDuration());
+            }
+        }
+        return Math.max(scan.getDefaultInterval(), scan.getTickDuration());
+    }
+
+    /**
+     * 首次延迟按位号散列分布在整个周期内，避免同一扫描类别的位号集中在同一个 tick 读取
+     */
+    private long phase(Long deviceId, Long pointId, long interval) {
+        long hash = (deviceId * 31 + pointId) * 0x9E3779B97F4A7C15L;
+        return Math.floorMod(hash ^ (hash >>> 32), interval);
+    }
+
+    /**
+     * 时间轮中的位号
+     */
+    private static class ScanPoint {
+        private final Long deviceId;
+        private final Long pointId;
+        private final long interval;
+
+        private ScanPoint(Long deviceId, Long pointId, long interval) {
+            this.deviceId = deviceId;
+            this.pointId = pointId;
+            this.interval = interval;
+        }
+    }
+
+}
@@ -17,6 +17,7 @@
 package com.dc3.common.sdk.service.impl;
 
 import com.dc3.common.sdk.bean.DriverProperty;
+import com.dc3.common.sdk.service.DriverScanScheduleService;
 import com.dc3.common.sdk.service.DriverScheduleService;
 import com.dc3.common.sdk.service.job.DriverCustomScheduleJob;
 import com.dc3.common.sdk.service.job.DriverReadScheduleJob;
@@ -41,12 +42,20 @@ public class DriverScheduleServiceImpl implements DriverScheduleService {
     private Scheduler scheduler;
     @Resource
     private DriverProperty driverProperty;
+    @Resource
+    private DriverScanScheduleService driverScanScheduleService;
 
     @Override
     public void initial() {
+        // driver scan, per point scan classes take over the read corn
+        boolean scan = driverProperty.getScan().getEnable();
+        if (scan) {
+            driverScanScheduleService.initial();
+        }
+
         Optional.ofNullable(driverProperty.getSchedule()).ifPresent(property -> {
             // driver read
-            if (property.getRead().getEnable()) {
+            if (!scan && property.getRead().getEnable()) {
                 createScheduleJob("DriverScheduleGroup", "ReadScheduleJob", property.getRead().getCorn(), DriverReadScheduleJob.class);
             }
 
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.sdk.service.impl;
+
+import com.dc3.common.sdk.bean.BufferProperty;
+import com.dc3.common.sdk.bean.DriverProperty;
+import com.dc3.common.sdk.service.MessageBufferService;
+import com.dc3.common.sdk.util.SegmentLog;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author pnoker
+ */
+@Slf4j
+@Service
+public class MessageBufferServiceImpl implements MessageBufferService {
+
+    @Value("${spring.application.name}")
+    private String serviceName;
+
+    @Resource
+    private RabbitTemplate rabbitTemplate;
+    @Resource
+    private DriverProperty driverProperty;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private SegmentLog segmentLog;
+    private ScheduledThreadPoolExecutor replayExecutor;
+    private volatile boolean available = true;
+    private Counter appendedCounter, replayedCounter, failedCounter;
+
+    @PostConstruct
+    public void initial() {
+        BufferProperty buffer = driverProperty.getBuffer();
+        if (!buffer.getEnable()) {
+            return;
+        }
+        try {
+            segmentLog = new SegmentLog(new File(buffer.getPath(), serviceName), buffer.getSegmentSize(), buffer.getMaxSize());
+        } catch (IOException e) {
+            log.error("Open message buffer failed, buffering is disabled: {}", e.getMessage(), e);
+            return;
+        }
+
+        appendedCounter = Counter.builder("dc3.driver.buffer.appended").description("Messages written to the local buffer").register(meterRegistry);
+        replayedCounter = Counter.builder("dc3.driver.buffer.replayed").description("Buffered messages replayed to RabbitMQ").register(meterRegistry);
+        failedCounter = Counter.builder("dc3.driver.buffer.failed").description("Messages that could not be written to the local buffer").register(meterRegistry);
+        FunctionCounter.builder("dc3.driver.buffer.dropped", segmentLog, SegmentLog::dropped).description("Buffered messages dropped by the disk quota").register(meterRegistry);
+        Gauge.builder("dc3.driver.buffer.pending", segmentLog, SegmentLog::pending).description("Buffered messages waiting for replay").register(meterRegistry);
+        Gauge.builder("dc3.driver.buffer.disk", segmentLog, SegmentLog::size).baseUnit("bytes").description("Disk space used by the local buffer").register(meterRegistry);
+
+        // replay waits for confirms, keep it off the shared scheduler
+        replayExecutor = new ScheduledThreadPoolExecutor(1, (r) -> new Thread(r, "[MessageBufferReplay]" + serviceName));
+        replayExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                replay();
+            } catch (Exception e) {
+                log.error("Replay buffered messages failed: {}", e.getMessage(), e);
+            }
+        }, buffer.getReplayInterval(), buffer.getReplayInterval(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (null != replayExecutor) {
+            replayExecutor.shutdown();
+            try {
+                replayExecutor.awaitTermination(driverProperty.getBuffer().getConfirmTimeout(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (null != segmentLog) {
+            try {
+                segmentLog.close();
+            } catch (IOException e) {
+                log.error("Close message buffer failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public void send(String exchange, String routingKey, Object object) {
+        if (null == segmentLog) {
+            rabbitTemplate.convertAndSend(exchange, routingKey, object);
+            return;
+        }
+        // a message that can't be buffered (larger than a segment, or the append failed) is sent directly
+        if (buffering()) {
+            if (!buffer(exchange, routingKey, object)) {
+                rabbitTemplate.convertAndSend(exchange, routingKey, object);
+            }
+            return;
+        }
+        try {
+            rabbitTemplate.convertAndSend(exchange, routingKey, object);
+        } catch (AmqpException e) {
+            available = false;
+            log.warn("RabbitMQ is unavailable, buffering messages locally: {}", e.getMessage());
+            if (!buffer(exchange, routingKey, object)) {
+                rabbitTemplate.convertAndSend(exchange, routingKey, object);
+            }
+        }
+    }
+
+    @Override
+    public boolean buffering() {
+        return null != segmentLog && (!available || !segmentLog.isEmpty());
+    }
+
+    @Override
+    public boolean buffer(String exchange, String routingKey, Object object) {
+        if (null == segmentLog) {
+            return false;
+        }
+        try {
+            // the id is kept in the record, so every replay of the message is deduplicated by the data center
+            MessageProperties messageProperties = new MessageProperties();
+            messageProperties.setMessageId(UUID.randomUUID().toString());
+            Message message = rabbitTemplate.getMessageConverter().toMessage(object, messageProperties);
+            if (segmentLog.append(encode(exchange, routingKey, message))) {
+                appendedCounter.increment();
+                return true;
+            }
+            log.error("Message is larger than the buffer segment: {}", object);
+        } catch (Exception e) {
+            log.error("Write message to buffer failed: {}", e.getMessage(), e);
+        }
+        failedCounter.increment();
+        return false;
+    }
+
+    /**
+     * 按写入顺序补发，每批等待 RabbitMQ 确认后再提交读取位置，补发失败时下个周期重试
+     */
+    private void replay() throws IOException {
+        segmentLog.force();
+        if (segmentLog.isEmpty()) {
+            available = true;
+            return;
+        }
+
+        BufferProperty buffer = driverProperty.getBuffer();
+        long budget = Math.max(1L, (long) buffer.getReplayRate() * buffer.getReplayInterval() / 1000);
+        while (budget > 0) {
+            List<byte[]> records = segmentLog.peek((int) Math.min(budget, 100));
+            if (records.isEmpty()) {
+                break;
+            }
+
+            List<CorrelationData> correlations = new ArrayList<>(records.size());
+            try {
+                for (byte[] record : records) {
+                    CorrelationData correlationData = new CorrelationData();
+                    resend(record, correlationData);
+                    correlations.add(correlationData);
+                }
+                long deadline = System.currentTimeMillis() + buffer.getConfirmTimeout();
+                for (CorrelationData correlationData : correlations) {
+                    CorrelationData.Confirm confirm = correlationData.getFuture().get(Math.max(1L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    if (!confirm.isAck()) {
+                        throw new AmqpException("Replay nack: " + confirm.getReason());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // records already sent in this batch are sent again next time
+                available = false;
+                log.warn("Replay buffered messages failed, retry later: {}", e.getMessage());
+                return;
+            }
+
+            segmentLog.commit();
+            replayedCounter.increment(records.size());
+            budget -= records.size();
+        }
+        log.debug("Buffered messages pending: {}", segmentLog.pending());
+    }
+
+    private void resend(byte[] record, CorrelationData correlationData) throws IOException {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(record))) {
+            String exchange = input.readUTF();
+            String routingKey = input.readUTF();
+            MessageProperties messageProperties = new MessageProperties();
+            String contentType = input.readUTF();
+            if (!contentType.isEmpty()) {
+                messageProperties.setContentType(contentType);
+            }
+            String messageId = input.readUTF();
+            if (!messageId.isEmpty()) {
+                messageProperties.setMessageId(messageId);
+            }
+            int headers = input.readInt();
+            for (int i = 0; i < headers; i++) {
+                messageProperties.setHeader(input.readUTF(), input.readUTF());
+            }
+            byte[] body = new byte[input.readInt()];
+            input.readFully(body);
+            messageProperties.setContentLength(body.length);
+            rabbitTemplate.send(exchange, routingKey, new Message(body, messageProperties), correlationData);
+        }
+    }
+
+    /**
+     * 记录格式：exchange、routingKey、contentType、messageId、字符串类型的消息头以及消息体
+     */
+    private byte[] encode(String exchange, String routingKey, Message message) throws IOException {
+        MessageProperties messageProperties = message.getMessageProperties();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(message.getBody().length + 128);
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeUTF(exchange);
+            output.writeUTF(routingKey);
+            output.writeUTF(null != messageProperties.getContentType() ? messageProperties.getContentType() : "");
+            output.writeUTF(null != messageProperties.getMessageId() ? messageProperties.getMessageId() : "");
+            List<Map.Entry<String, Object>> headers = new ArrayList<>();
+            for (Map.Entry<String, Object> header : messageProperties.getHeaders().entrySet()) {
+                if (header.getValue() instanceof String) {
+                    headers.add(header);
+                }
+            }
+            output.writeInt(headers.size());
+            for (Map.Entry<String, Object> header : headers) {
+                output.writeUTF(header.getKey());
+                output.writeUTF((String) header.getValue());
+            }
+            output.writeInt(message.getBody().length);
+            output.write(message.getBody());
+        }
+        return bytes.toByteArray();
+    }
+
+}
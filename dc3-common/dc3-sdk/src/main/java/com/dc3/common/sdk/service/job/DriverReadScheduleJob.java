@@ -16,9 +16,7 @@
 
 package com.dc3.common.sdk.service.job;
 
-import com.dc3.common.sdk.bean.AttributeInfo;
-import com.dc3.common.sdk.bean.DriverContext;
-import com.dc3.common.sdk.service.DriverCommandService;
+import com.dc3.common.sdk.service.DriverReadScheduleService;
 import lombok.extern.slf4j.Slf4j;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
@@ -26,8 +24,6 @@ import org.springframework.scheduling.quartz.QuartzJobBean;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
-import java.util.Map;
-import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * Read Schedule Job
@@ -39,24 +35,10 @@ import java.util.concurrent.ThreadPoolExecutor;
 public class DriverReadScheduleJob extends QuartzJobBean {
 
     @Resource
-    private DriverContext driverContext;
-    @Resource
-    private ThreadPoolExecutor threadPoolExecutor;
-    @Resource
-    private DriverCommandService driverCommandService;
+    private DriverReadScheduleService driverReadScheduleService;
 
     @Override
     protected void executeInternal(JobExecutionContext jobExecutionContext) throws JobExecutionException {
-        Map<Long, Map<Long, Map<String, AttributeInfo>>> pointInfoMap = driverContext.getDevicePointInfoMap();
-        pointInfoMap.forEach(
-                (deviceId, pointMap) -> pointMap.forEach(
-                        (pointId, point) -> threadPoolExecutor.execute(
-                                () -> {
-                                    log.debug("Execute read schedule for device({}),point({}),{}", deviceId, pointId, point);
-                                    driverCommandService.read(deviceId, pointId);
-                                }
-                        )
-                )
-        );
+        driverReadScheduleService.schedule();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.sdk.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 周期任务时间轮
+ * <p>
+ * 时间轮每个格子为一个 tick，任务按到期 tick 放入对应的格子，超过一圈的任务记录剩余圈数；
+ * 每个 tick 将到期的任务合并后交给处理函数，处理函数在时间轮线程中执行，需要尽快返回
+ *
+ * @param <T> 任务内容
+ * @author pnoker
+ */
+@Slf4j
+public class HashedWheelTimer<T> {
+
+    private final long tickDuration;
+    private final List<Timeout<T>>[] wheel;
+    private final int mask;
+    private final Consumer<List<T>> handler;
+    private final Queue<Timeout<T>> pendingTimeouts = new ConcurrentLinkedQueue<>();
+    private final Thread workerThread;
+
+    private volatile boolean running = false;
+    private long startTime;
+    private long tick = 0;
+
+    /**
+     * @param name          线程名称
+     * @param tickDuration  tick 时长，毫秒
+     * @param ticksPerWheel 每圈格子数，向上取整到 2 的幂
+     * @param handler       到期任务处理函数
+     */
+    @SuppressWarnings("unchecked")
+    public HashedWheelTimer(String name, long tickDuration, int ticksPerWheel, Consumer<List<T>> handler) {
+        int size = 1;
+        while (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.tickDuration = Math.max(1L, tickDuration);
+        this.wheel = new List[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new LinkedList<>();
+        }
+        this.mask = size - 1;
+        this.handler = handler;
+        this.workerThread = new Thread(this::work, name);
+        this.workerThread.setDaemon(true);
+    }
+
+    public synchronized void start() {
+        if (!running) {
+            running = true;
+            startTime = System.nanoTime();
+            workerThread.start();
+        }
+    }
+
+    public void stop() {
+        running = false;
+        workerThread.interrupt();
+    }
+
+    /**
+     * 添加周期任务
+     *
+     * @param value  任务内容
+     * @param delay  首次延迟，毫秒
+     * @param period 周期，毫秒
+     * @return Timeout，用于取消
+     */
+    public Timeout<T> schedule(T value, long delay, long period) {
+        Timeout<T> timeout = new Timeout<>(value, Math.max(1L, period / tickDuration), Math.max(0L, delay / tickDuration));
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    private void work() {
+        while (running) {
+            long deadline = startTime + TimeUnit.MILLISECONDS.toNanos((tick + 1) * tickDuration);
+            long sleep = deadline - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                }
+            }
+
+            transferPendingTimeouts();
+            List<T> expired = new ArrayList<>();
+            List<Timeout<T>> rescheduled = new ArrayList<>();
+            Iterator<Timeout<T>> iterator = wheel[(int) (tick & mask)].iterator();
+            while (iterator.hasNext()) {
+                Timeout<T> timeout = iterator.next();
+                if (timeout.cancelled) {
+                    iterator.remove();
+                } else if (timeout.rounds > 0) {
+                    timeout.rounds--;
+                } else {
+                    iterator.remove();
+                    expired.add(timeout.value);
+                    rescheduled.add(timeout);
+                }
+            }
+            for (Timeout<T> timeout : rescheduled) {
+                // the current bucket is already processed
+                place(timeout, tick + timeout.period, tick + 1);
+            }
+            if (!expired.isEmpty()) {
+                try {
+                    handler.accept(expired);
+                } catch (Exception e) {
+                    log.error("Hashed wheel timer handler failed: {}", e.getMessage(), e);
+                }
+            }
+            tick++;
+        }
+    }
+
+    private void transferPendingTimeouts() {
+        Timeout<T> timeout;
+        while (null != (timeout = pendingTimeouts.poll())) {
+            if (!timeout.cancelled) {
+                // the current tick is processed right after, so a zero delay fires now
+                place(timeout, tick + timeout.delay, tick);
+            }
+        }
+    }
+
+    /**
+     * 放入到期 tick 对应的格子
+     *
+     * @param timeout      Timeout
+     * @param deadlineTick 到期 tick
+     * @param nextTick     下一个被处理的 tick，当前格子处理前放入时为当前 tick，处理后放入时为下一个 tick
+     */
+    private void place(Timeout<T> timeout, long deadlineTick, long nextTick) {
+        // the bucket of the deadline is visited again every wheel.length ticks, starting from the first visit at or after nextTick
+        timeout.rounds = Math.max(0L, (deadlineTick - nextTick) / wheel.length);
+        wheel[(int) (deadlineTick & mask)].add(timeout);
+    }
+
+    /**
+     * 时间轮中的周期任务
+     *
+     * @param <T> 任务内容
+     */
+    public static class Timeout<T> {
+        private final T value;
+        private final long period;
+        private final long delay;
+        private long rounds;
+        private volatile boolean cancelled = false;
+
+        private Timeout(T value, long period, long delay) {
+            this.value = value;
+            this.period = period;
+            this.delay = delay;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.common.sdk.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 基于内存映射文件的分段追加日志
+ * <p>
+ * 日志由固定大小的段文件组成，文件名为段序号，记录格式为 长度(int) + CRC32(int) + 内容，长度为 0 表示段内数据结束；
+ * 读取位置保存在 checkpoint 文件中，已读取完的段文件会被删除，超过磁盘配额时丢弃最旧的段
+ *
+ * @author pnoker
+ */
+@Slf4j
+public class SegmentLog implements Closeable {
+
+    private static final String SUFFIX = ".log";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final int HEADER = 8;
+
+    private final File directory;
+    private final int segmentSize;
+    private final long maxSize;
+
+    private final List<Segment> segments = new ArrayList<>();
+    private int readSegment = 0;
+    private int readPosition = 0;
+    private int peekSegment = 0;
+    private int peekPosition = 0;
+    private int peekCount = 0;
+
+    private long pending = 0;
+    private long dropped = 0;
+
+    public SegmentLog(File directory, int segmentSize, long maxSize) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Failed to create buffer directory: " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSize = Math.max(maxSize, 2L * segmentSize);
+        recover();
+    }
+
+    /**
+     * 追加记录，超过磁盘配额时丢弃最旧的段
+     *
+     * @param record 记录内容
+     * @return 记录超过段大小时返回 false
+     * @throws IOException IOException
+     */
+    public synchronized boolean append(byte[] record) throws IOException {
+        if (record.length == 0 || record.length > segmentSize - HEADER * 2) {
+            return false;
+        }
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (null == segment || segment.writePosition + HEADER + record.length > segmentSize) {
+            segment = roll();
+        }
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(record, 0, record.length);
+        MappedByteBuffer buffer = segment.buffer;
+        buffer.putInt(segment.writePosition + 4, (int) crc32.getValue());
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(segment.writePosition + HEADER);
+        slice.put(record);
+        // the length goes last so a torn write never looks like a complete record
+        buffer.putInt(segment.writePosition, record.length);
+        segment.writePosition += HEADER + record.length;
+        segment.records++;
+        pending++;
+        return true;
+    }
+
+    /**
+     * 从上次提交的位置读取记录，不移动读取位置，需要调用 commit 提交
+     *
+     * @param max 最大条数
+     * @return 记录列表
+     */
+    public synchronized List<byte[]> peek(int max) {
+        List<byte[]> records = new ArrayList<>();
+        int index = readSegment, position = readPosition;
+        while (records.size() < max && index < segments.size()) {
+            Segment segment = segments.get(index);
+            if (position >= segment.writePosition) {
+                if (index == segments.size() - 1) {
+                    break;
+                }
+                index++;
+                position = 0;
+                continue;
+            }
+            int length = segment.buffer.getInt(position);
+            byte[] record = new byte[length];
+            ByteBuffer slice = segment.buffer.duplicate();
+            slice.position(position + HEADER);
+            slice.get(record);
+            records.add(record);
+            position += HEADER + length;
+        }
+        peekSegment = index;
+        peekPosition = position;
+        peekCount = records.size();
+        return records;
+    }
+
+    /**
+     * 提交上次 peek 读取的记录，删除已读取完的段
+     *
+     * @throws IOException IOException
+     */
+    public synchronized void commit() throws IOException {
+        if (peekCount == 0) {
+            return;
+        }
+        readSegment = peekSegment;
+        readPosition = peekPosition;
+        pending -= peekCount;
+        peekCount = 0;
+        while (readSegment > 0) {
+            delete(segments.remove(0));
+            readSegment--;
+        }
+        writeCheckpoint();
+    }
+
+    /**
+     * 将内存映射的修改刷新到磁盘
+     */
+    public synchronized void force() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return pending <= 0;
+    }
+
+    /**
+     * 未读取的记录条数
+     */
+    public synchronized long pending() {
+        return pending;
+    }
+
+    /**
+     * 因磁盘配额被丢弃的记录条数
+     */
+    public synchronized long dropped() {
+        return dropped;
+    }
+
+    /**
+     * 段文件占用的磁盘空间
+     */
+    public synchronized long size() {
+        return (long) segments.size() * segmentSize;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        writeCheckpoint();
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+    }
+
+    private Segment roll() throws IOException {
+        while (!segments.isEmpty() && (segments.size() + 1L) * segmentSize > maxSize) {
+            Segment oldest = segments.remove(0);
+            // records of the oldest segment that were not read yet are lost
+            long lost = oldest.records;
+            if (readSegment == 0) {
+                lost = count(oldest, readPosition);
+                readPosition = 0;
+            } else {
+                readSegment--;
+            }
+            pending -= lost;
+            dropped += lost;
+            peekCount = 0;
+            log.warn("Buffer disk quota exceeded, dropped segment {} with {} records", oldest.file.getName(), lost);
+            delete(oldest);
+        }
+        long sequence = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).sequence + 1;
+        Segment segment = new Segment(new File(directory, String.format("%020d%s", sequence, SUFFIX)), sequence, segmentSize);
+        segments.add(segment);
+        writeCheckpoint();
+        return segment;
+    }
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (null != files) {
+            Arrays.sort(files);
+            for (File file : files) {
+                long sequence;
+                try {
+                    sequence = Long.parseLong(file.getName().substring(0, file.getName().length() - SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                Segment segment = new Segment(file, sequence, segmentSize);
+                scan(segment);
+                segments.add(segment);
+            }
+        }
+
+        File checkpoint = new File(directory, CHECKPOINT);
+        if (checkpoint.exists() && !segments.isEmpty()) {
+            try (RandomAccessFile file = new RandomAccessFile(checkpoint, "r")) {
+                long sequence = file.readLong();
+                int position = file.readInt();
+                for (int i = 0; i < segments.size(); i++) {
+                    if (segments.get(i).sequence == sequence) {
+                        readSegment = i;
+                        readPosition = Math.min(position, segments.get(i).writePosition);
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Invalid buffer checkpoint, replay from the oldest segment: {}", e.getMessage());
+            }
+        }
+
+        pending = count(segments.isEmpty() ? null : segments.get(readSegment), readPosition);
+        for (int i = readSegment + 1; i < segments.size(); i++) {
+            pending += segments.get(i).records;
+        }
+        if (pending > 0) {
+            log.info("Recovered {} buffered records from {}", pending, directory);
+        }
+    }
+
+    /**
+     * 扫描段文件，找到最后一条完整记录之后的写入位置
+     */
+    private void scan(Segment segment) {
+        int position = 0;
+        CRC32 crc32 = new CRC32();
+        while (position + HEADER <= segmentSize) {
+            int length = segment.buffer.getInt(position);
+            if (length <= 0 || position + HEADER + length > segmentSize) {
+                break;
+            }
+            byte[] record = new byte[length];
+            ByteBuffer slice = segment.buffer.duplicate();
+            slice.position(position + HEADER);
+            slice.get(record);
+            crc32.reset();
+            crc32.update(record, 0, length);
+            if ((int) crc32.getValue() != segment.buffer.getInt(position + 4)) {
+                log.warn("Buffer segment {} is corrupted at {}, the rest is discarded", segment.file.getName(), position);
+                break;
+            }
+            position += HEADER + length;
+            segment.records++;
+        }
+        // clear a torn tail so later appends are not mixed with stale bytes
+        for (int i = position; i < Math.min(position + HEADER, segmentSize); i++) {
+            segment.buffer.put(i, (byte) 0);
+        }
+        segment.writePosition = position;
+    }
+
+    private long count(Segment segment, int from) {
+        if (null == segment) {
+            return 0;
+        }
+        long count = 0;
+        int position = 0;
+        while (position < segment.writePosition) {
+            if (position >= from) {
+                count++;
+            }
+            position += HEADER + segment.buffer.getInt(position);
+        }
+        return count;
+    }
+
+    private void writeCheckpoint() throws IOException {
+        if (segments.isEmpty()) {
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(new File(directory, CHECKPOINT), "rw")) {
+            file.writeLong(segments.get(readSegment).sequence);
+            file.writeInt(readPosition);
+        }
+    }
+
+    private void delete(Segment segment) {
+        segment.close();
+        if (!segment.file.delete()) {
+            log.warn("Failed to delete buffer segment {}", segment.file);
+        }
+    }
+
+    private static class Segment {
+        private final File file;
+        private final long sequence;
+        private MappedByteBuffer buffer;
+        private int writePosition = 0;
+        private long records = 0;
+
+        private Segment(File file, long sequence, int size) throws IOException {
+            this.file = file;
+            this.sequence = sequence;
+            // the mapping stays valid after the file is closed
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                randomAccessFile.setLength(size);
+                this.buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+
+        private void close() {
+            unmap(buffer);
+            buffer = null;
+        }
+
+        /**
+         * 释放内存映射，否则 Windows 下无法删除段文件
+         */
+        private static void unmap(MappedByteBuffer buffer) {
+            if (null == buffer) {
+                return;
+            }
+            try {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (null != cleaner) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (Exception ignored) {
+                // left to the garbage collector
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dc3.common.sdk.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 用每个 tick 都到期的 clock 任务给 tick 计数，按 tick 而不是墙钟时间校验到期时机，结果不受调度抖动影响
+ *
+ * @author pnoker
+ */
+class HashedWheelTimerTest {
+
+    private static final long TICK = 2L;
+    private static final String CLOCK = "clock";
+
+    private final Map<String, List<Long>> fired = new ConcurrentHashMap<>();
+    private final List<Integer> batchSizes = new ArrayList<>();
+    private HashedWheelTimer<String> timer;
+    private CountDownLatch latch;
+    private HashedWheelTimer.Timeout<String> cancelOnFire;
+    private long ticks = 0;
+
+    /**
+     * 创建 8 格的时间轮，运行 ticks 个 tick 后停止
+     */
+    private void run(long ticks, Runnable schedule) throws InterruptedException {
+        latch = new CountDownLatch(1);
+        timer = new HashedWheelTimer<>("[HashedWheelTimerTest]", TICK, 8, (values) -> {
+            long tick = this.ticks;
+            if (!values.contains(CLOCK)) {
+                fail("clock missed tick " + tick);
+            }
+            synchronized (batchSizes) {
+                batchSizes.add(values.size());
+            }
+            for (String value : values) {
+                fired.computeIfAbsent(value, (k) -> new ArrayList<>()).add(tick);
+            }
+            if (null != cancelOnFire && values.contains(cancelOnFire.getValue())) {
+                cancelOnFire.cancel();
+            }
+            if (++this.ticks >= ticks) {
+                latch.countDown();
+            }
+            if (values.contains("boom")) {
+                throw new IllegalStateException("boom");
+            }
+        });
+        timer.schedule(CLOCK, 0, TICK);
+        schedule.run();
+        timer.start();
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        timer.stop();
+    }
+
+    private static List<Long> ticks(long delay, long period, long until) {
+        List<Long> ticks = new ArrayList<>();
+        for (long tick = delay; tick < until; tick += period) {
+            ticks.add(tick);
+        }
+        return ticks;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (null != timer) {
+            timer.stop();
+        }
+    }
+
+    @Test
+    void firesAtDelayThenEveryPeriod() throws InterruptedException {
+        run(40, () -> {
+            timer.schedule("now", 0, 3 * TICK);
+            timer.schedule("later", 5 * TICK, 4 * TICK);
+        });
+        assertEquals(ticks(0, 3, 40), fired.get("now").subList(0, 14));
+        assertEquals(ticks(5, 4, 40), fired.get("later").subList(0, 9));
+    }
+
+    @Test
+    void periodsAndDelaysLongerThanTheWheel() throws InterruptedException {
+        run(80, () -> {
+            timer.schedule("long", 0, 20 * TICK);
+            timer.schedule("delayed", 11 * TICK, 8 * TICK);
+            timer.schedule("both", 17 * TICK, 9 * TICK);
+        });
+        assertEquals(ticks(0, 20, 80), fired.get("long").subList(0, 4));
+        assertEquals(ticks(11, 8, 80), fired.get("delayed").subList(0, 9));
+        assertEquals(ticks(17, 9, 80), fired.get("both").subList(0, 7));
+    }
+
+    @Test
+    void tasksDueInTheSameTickAreMerged() throws InterruptedException {
+        run(10, () -> {
+            for (int i = 0; i < 5; i++) {
+                timer.schedule("task" + i, 2 * TICK, 100 * TICK);
+            }
+        });
+        // clock plus the 5 tasks in tick 2
+        assertEquals(6, (int) batchSizes.get(2));
+        assertEquals(1, (int) batchSizes.get(1));
+        assertEquals(1, (int) batchSizes.get(3));
+    }
+
+    @Test
+    void cancelledTasksStopFiring() throws InterruptedException {
+        run(20, () -> {
+            timer.schedule("never", 3 * TICK, TICK).cancel();
+            cancelOnFire = timer.schedule("once", 2 * TICK, 3 * TICK);
+        });
+        assertNull(fired.get("never"));
+        assertEquals(ticks(2, 3, 3), fired.get("once"));
+    }
+
+    @Test
+    void handlerFailureDoesNotStopTheTimer() throws InterruptedException {
+        run(10, () -> timer.schedule("boom", 0, 2 * TICK));
+        assertEquals(ticks(0, 2, 10), fired.get("boom").subList(0, 5));
+        assertEquals(10, fired.get(CLOCK).size());
+    }
+
+    @Test
+    void tasksAddedWhileRunningAreScheduledFromTheNextTick() throws InterruptedException {
+        CountDownLatch added = new CountDownLatch(1);
+        run(30, () -> new Thread(() -> {
+            timer.schedule("added", 0, 5 * TICK);
+            added.countDown();
+        }).start());
+        assertTrue(added.await(1, TimeUnit.SECONDS));
+        List<Long> ticks = fired.get("added");
+        assertNotNull(ticks);
+        for (int i = 1; i < ticks.size(); i++) {
+            assertEquals(5L, ticks.get(i) - ticks.get(i - 1));
+        }
+    }
+}
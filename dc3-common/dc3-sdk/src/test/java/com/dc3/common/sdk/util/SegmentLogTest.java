@@ -0,0 +1,208 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dc3.common.sdk.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author pnoker
+ */
+class SegmentLogTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+
+    @TempDir
+    Path directory;
+
+    private static byte[] record(int i) {
+        return ("record-" + i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> strings(List<byte[]> records) {
+        List<String> strings = new ArrayList<>();
+        for (byte[] record : records) {
+            strings.add(new String(record, StandardCharsets.UTF_8));
+        }
+        return strings;
+    }
+
+    private SegmentLog open(long maxSize) throws IOException {
+        return new SegmentLog(directory.toFile(), SEGMENT_SIZE, maxSize);
+    }
+
+    private File[] segmentFiles() {
+        File[] files = directory.toFile().listFiles((dir, name) -> name.endsWith(".log"));
+        return null != files ? files : new File[0];
+    }
+
+    @Test
+    void peekAndCommitInAppendOrder() throws IOException {
+        try (SegmentLog segmentLog = open(1024 * 1024)) {
+            assertTrue(segmentLog.isEmpty());
+            for (int i = 0; i < 10; i++) {
+                assertTrue(segmentLog.append(record(i)));
+            }
+            assertEquals(10L, segmentLog.pending());
+
+            List<byte[]> records = segmentLog.peek(4);
+            assertEquals(4, records.size());
+            assertEquals("record-0", strings(records).get(0));
+            assertEquals("record-3", strings(records).get(3));
+
+            // without a commit the same records are read again
+            assertEquals(strings(records), strings(segmentLog.peek(4)));
+            assertEquals(10L, segmentLog.pending());
+
+            segmentLog.commit();
+            assertEquals(6L, segmentLog.pending());
+            assertEquals("record-4", strings(segmentLog.peek(1)).get(0));
+
+            segmentLog.peek(100);
+            segmentLog.commit();
+            assertTrue(segmentLog.isEmpty());
+            assertTrue(segmentLog.peek(100).isEmpty());
+        }
+    }
+
+    @Test
+    void rejectsEmptyAndOversizedRecords() throws IOException {
+        try (SegmentLog segmentLog = open(1024 * 1024)) {
+            assertFalse(segmentLog.append(new byte[0]));
+            assertFalse(segmentLog.append(new byte[SEGMENT_SIZE]));
+            assertTrue(segmentLog.isEmpty());
+        }
+    }
+
+    @Test
+    void rollsSegmentsAndDeletesReadOnes() throws IOException {
+        try (SegmentLog segmentLog = open(1024 * 1024)) {
+            byte[] record = new byte[200];
+            for (int i = 0; i < 20; i++) {
+                assertTrue(segmentLog.append(record));
+            }
+            // 4 records of 208 bytes fit in one segment
+            assertEquals(5, segmentFiles().length);
+            assertEquals(5L * SEGMENT_SIZE, segmentLog.size());
+
+            assertEquals(20, segmentLog.peek(100).size());
+            segmentLog.commit();
+            assertEquals(1, segmentFiles().length);
+            assertTrue(segmentLog.isEmpty());
+        }
+    }
+
+    @Test
+    void recoversPendingRecordsFromCheckpoint() throws IOException {
+        try (SegmentLog segmentLog = open(1024 * 1024)) {
+            for (int i = 0; i < 100; i++) {
+                segmentLog.append(record(i));
+            }
+            segmentLog.peek(30);
+            segmentLog.commit();
+            // peeked but not committed, replayed again after a restart
+            segmentLog.peek(10);
+        }
+
+        try (SegmentLog segmentLog = open(1024 * 1024)) {
+            assertEquals(70L, segmentLog.pending());
+            List<String> records = strings(segmentLog.peek(100));
+            assertEquals(70, records.size());
+            assertEquals("record-30", records.get(0));
+            assertEquals("record-99", records.get(69));
+
+            // appends continue after the recovered records
+            segmentLog.append(record(100));
+            assertEquals("record-100", strings(segmentLog.peek(100)).get(70));
+        }
+    }
+
+    @Test
+    void dropsOldestSegmentOverQuota() throws IOException {
+        try (SegmentLog segmentLog = open(3L * SEGMENT_SIZE)) {
+            byte[] record = new byte[200];
+            for (int i = 0; i < 16; i++) {
+                record[0] = (byte) i;
+                assertTrue(segmentLog.append(record));
+            }
+            // 4 segments of 4 records are needed, the first one is dropped to stay within 3 segments
+            assertEquals(3, segmentFiles().length);
+            assertEquals(4L, segmentLog.dropped());
+            assertEquals(12L, segmentLog.pending());
+            List<byte[]> records = segmentLog.peek(100);
+            assertEquals(12, records.size());
+            assertEquals(4, records.get(0)[0]);
+        }
+    }
+
+    @Test
+    void droppingPartiallyReadSegmentCountsOnlyUnread() throws IOException {
+        try (SegmentLog segmentLog = open(3L * SEGMENT_SIZE)) {
+            byte[] record = new byte[200];
+            for (int i = 0; i < 12; i++) {
+                segmentLog.append(record);
+            }
+            segmentLog.peek(1);
+            segmentLog.commit();
+            for (int i = 0; i < 4; i++) {
+                segmentLog.append(record);
+            }
+            assertEquals(3L, segmentLog.dropped());
+            assertEquals(12L, segmentLog.pending());
+            assertEquals(12, segmentLog.peek(100).size());
+        }
+    }
+
+    @Test
+    void discardsCorruptedTailOnRecovery() throws IOException {
+        try (SegmentLog segmentLog = open(1024 * 1024)) {
+            for (int i = 0; i < 3; i++) {
+                segmentLog.append(record(i));
+            }
+        }
+
+        // flip a byte inside the last record so its CRC no longer matches
+        File segment = segmentFiles()[0];
+        int position = 2 * (8 + record(0).length) + 8;
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(position);
+            int b = file.read();
+            file.seek(position);
+            file.write(b ^ 0xFF);
+        }
+
+        try (SegmentLog segmentLog = open(1024 * 1024)) {
+            assertEquals(2L, segmentLog.pending());
+            segmentLog.append(record(3));
+            List<String> records = strings(segmentLog.peek(100));
+            assertEquals(3, records.size());
+            assertEquals("record-1", records.get(1));
+            assertEquals("record-3", records.get(2));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.driver.bean;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 驱动配置文件 driver.modbus 字段内容
+ *
+ * @author pnoker
+ */
+@Setter
+@Getter
+@ConfigurationProperties(prefix = "driver.modbus")
+public class ModbusProperty {
+    /**
+     * 是否合并同一从站、同一功能码下相邻的位号为一次块读取
+     */
+    private Boolean blockRead = true;
+
+    /**
+     * 寄存器（功能码 3、4）合并时允许跨越的最大空闲寄存器数量
+     */
+    private Integer registerGap = 8;
+
+    /**
+     * 线圈/离散输入（功能码 1、2）合并时允许跨越的最大空闲位数量
+     */
+    private Integer bitGap = 64;
+
+    /**
+     * 单次读取的最大寄存器数量，协议上限 125
+     */
+    private Integer maxRegisters = 125;
+
+    /**
+     * 单次读取的最大位数量，协议上限 2000
+     */
+    private Integer maxBits = 2000;
+}
@@ -23,22 +23,32 @@ import com.dc3.common.model.Point;
 import com.dc3.common.sdk.bean.AttributeInfo;
 import com.dc3.common.sdk.bean.DriverContext;
 import com.dc3.common.sdk.service.CustomDriverService;
+import com.dc3.common.sdk.service.DriverConnectionFactory;
+import com.dc3.common.sdk.service.DriverConnectionService;
 import com.dc3.common.sdk.service.DriverService;
+import com.dc3.driver.bean.ModbusProperty;
+import com.dc3.driver.util.ModbusReadPlanner;
 import com.serotonin.modbus4j.ModbusFactory;
 import com.serotonin.modbus4j.ModbusMaster;
 import com.serotonin.modbus4j.code.DataType;
 import com.serotonin.modbus4j.exception.ErrorResponseException;
-import com.serotonin.modbus4j.exception.ModbusInitException;
 import com.serotonin.modbus4j.exception.ModbusTransportException;
 import com.serotonin.modbus4j.ip.IpParameters;
 import com.serotonin.modbus4j.locator.BaseLocator;
+import com.serotonin.modbus4j.msg.ModbusRequest;
+import com.serotonin.modbus4j.msg.ReadResponse;
 import com.serotonin.modbus4j.msg.WriteCoilRequest;
 import com.serotonin.modbus4j.msg.WriteCoilResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import static com.dc3.common.sdk.util.DriverUtils.attribute;
@@ -49,12 +59,21 @@ import static com.dc3.common.sdk.util.DriverUtils.value;
  */
 @Slf4j
 @Service
+@EnableConfigurationProperties({ModbusProperty.class})
 public class CustomDriverServiceImpl implements CustomDriverService {
 
     @Resource
     private DriverService driverService;
     @Resource
     private DriverContext driverContext;
+    @Resource
+    private ModbusProperty modbusProperty;
+    @Resource
+    private MeterRegistry meterRegistry;
+    @Resource
+    private DriverConnectionService driverConnectionService;
+
+    private Counter requestCounter, pointCounter;
 
     static ModbusFactory modbusFactory;
 
@@ -62,7 +81,34 @@ public class CustomDriverServiceImpl implements CustomDriverService {
         modbusFactory = new ModbusFactory();
     }
 
-    private volatile Map<Long, ModbusMaster> masterMap = new HashMap<>(64);
+    private final DriverConnectionFactory<ModbusMaster> masterFactory = new DriverConnectionFactory<ModbusMaster>() {
+        @Override
+        public ModbusMaster create(Long deviceId, Map<String, AttributeInfo> driverInfo) throws Exception {
+            log.debug("Modbus Tcp Connection Info {}", JSON.toJSONString(driverInfo));
+            IpParameters params = new IpParameters();
+            params.setHost(attribute(driverInfo, "host"));
+            params.setPort(attribute(driverInfo, "port"));
+            ModbusMaster modbusMaster = modbusFactory.createTcpMaster(params, true);
+            modbusMaster.init();
+            return modbusMaster;
+        }
+
+        @Override
+        public boolean check(ModbusMaster modbusMaster) {
+            return modbusMaster.isInitialized();
+        }
+
+        @Override
+        public void close(ModbusMaster modbusMaster) {
+            modbusMaster.destroy();
+        }
+    };
+
+    @PostConstruct
+    public void initialMetrics() {
+        requestCounter = Counter.builder("dc3.driver.modbus.request").description("Modbus block read requests sent").register(meterRegistry);
+        pointCounter = Counter.builder("dc3.driver.modbus.point").description("Points decoded from Modbus block read responses").register(meterRegistry);
+    }
 
     @Override
     public void initial() {
@@ -74,6 +120,49 @@ public class CustomDriverServiceImpl implements CustomDriverService {
         return readValue(modbusMaster, pointInfo, point.getType());
     }
 
+    @Override
+    public Map<Long, String> read(Map<String, AttributeInfo> driverInfo, Map<Long, Map<String, AttributeInfo>> pointInfoMap, Device device, Map<Long, Point> pointMap) throws Exception {
+        if (!modbusProperty.getBlockRead()) {
+            return CustomDriverService.super.read(driverInfo, pointInfoMap, device, pointMap);
+        }
+
+        ModbusMaster modbusMaster = getMaster(device.getId(), driverInfo);
+        Map<Long, BaseLocator<?>> locatorMap = new LinkedHashMap<>(pointMap.size() * 4 / 3 + 1);
+        pointMap.forEach((pointId, point) -> {
+            BaseLocator<?> locator = getLocator(pointInfoMap.get(pointId), point.getType());
+            if (null != locator) {
+                locatorMap.put(pointId, locator);
+            }
+        });
+
+        Map<Long, String> values = new HashMap<>(pointMap.size() * 4 / 3 + 1);
+        // unsupported function codes read as "0", same as readValue
+        pointMap.keySet().stream().filter(pointId -> !locatorMap.containsKey(pointId)).forEach(pointId -> values.put(pointId, "0"));
+        Exception exception = null;
+        for (ModbusReadPlanner.Block block : ModbusReadPlanner.plan(locatorMap, modbusProperty)) {
+            try {
+                readBlock(modbusMaster, block).forEach((pointId, value) -> values.put(pointId, String.valueOf(value)));
+            } catch (ErrorResponseException e) {
+                // the merged range may span unmapped addresses, fall back to reading its points one by one
+                log.debug("Modbus block read of slave({}) range({}) from {} length {} failed, read points separately: {}",
+                        block.getSlaveId(), block.getRange(), block.getStart(), block.getLength(), e.getMessage());
+                for (Map.Entry<Long, BaseLocator<?>> entry : block.getLocatorMap().entrySet()) {
+                    try {
+                        values.put(entry.getKey(), String.valueOf(modbusMaster.getValue(entry.getValue())));
+                    } catch (Exception ex) {
+                        exception = ex;
+                    }
+                }
+            } catch (Exception e) {
+                exception = e;
+            }
+        }
+        if (values.isEmpty() && null != exception) {
+            throw exception;
+        }
+        return values;
+    }
+
     @Override
     public Boolean write(Map<String, AttributeInfo> driverInfo, Map<String, AttributeInfo> pointInfo, Device device, AttributeInfo value) throws Exception {
         ModbusMaster modbusMaster = getMaster(device.getId(), driverInfo);
@@ -103,20 +192,10 @@ public class CustomDriverServiceImpl implements CustomDriverService {
      * @param deviceId   Device Id
      * @param driverInfo Driver Info
      * @return ModbusMaster
-     * @throws ModbusInitException ModbusInitException
+     * @throws Exception Exception
      */
-    public ModbusMaster getMaster(Long deviceId, Map<String, AttributeInfo> driverInfo) throws ModbusInitException {
-        log.debug("Modbus Tcp Connection Info {}", JSON.toJSONString(driverInfo));
-        ModbusMaster modbusMaster = masterMap.get(deviceId);
-        if (null == modbusMaster) {
-            IpParameters params = new IpParameters();
-            params.setHost(attribute(driverInfo, "host"));
-            params.setPort(attribute(driverInfo, "port"));
-            modbusMaster = modbusFactory.createTcpMaster(params, true);
-            modbusMaster.init();
-            masterMap.put(deviceId, modbusMaster);
-        }
-        return modbusMaster;
+    public ModbusMaster getMaster(Long deviceId, Map<String, AttributeInfo> driverInfo) throws Exception {
+        return driverConnectionService.getConnection(deviceId, driverInfo, masterFactory);
     }
 
     /**
@@ -129,28 +208,55 @@ public class CustomDriverServiceImpl implements CustomDriverService {
      * @throws ErrorResponseException   ErrorResponseException
      */
     public String readValue(ModbusMaster modbusMaster, Map<String, AttributeInfo> pointInfo, String type) throws ModbusTransportException, ErrorResponseException {
+        BaseLocator<?> locator = getLocator(pointInfo, type);
+        if (null == locator) {
+            return "0";
+        }
+        return String.valueOf(modbusMaster.getValue(locator));
+    }
+
+    /**
+     * 读取一个块，从共享的响应中解析块内各位号的值
+     *
+     * @param modbusMaster ModbusMaster
+     * @param block        ModbusReadPlanner.Block
+     * @return pointId,value
+     * @throws ModbusTransportException ModbusTransportException
+     * @throws ErrorResponseException   ErrorResponseException
+     */
+    public Map<Long, Object> readBlock(ModbusMaster modbusMaster, ModbusReadPlanner.Block block) throws ModbusTransportException, ErrorResponseException {
+        ModbusRequest request = block.request();
+        ReadResponse response = (ReadResponse) modbusMaster.send(request);
+        requestCounter.increment();
+        if (response.isException()) {
+            throw new ErrorResponseException(request, response);
+        }
+        pointCounter.increment(block.getLocatorMap().size());
+        return block.decode(response);
+    }
+
+    /**
+     * 获取位号对应的 Locator
+     *
+     * @param pointInfo Point Info
+     * @param type      Value Type
+     * @return BaseLocator，不支持的功能码返回 null
+     */
+    public BaseLocator<?> getLocator(Map<String, AttributeInfo> pointInfo, String type) {
         int slaveId = attribute(pointInfo, "slaveId");
         int functionCode = attribute(pointInfo, "functionCode");
         int offset = attribute(pointInfo, "offset");
         switch (functionCode) {
             case 1:
-                BaseLocator<Boolean> coilLocator = BaseLocator.coilStatus(slaveId, offset);
-                Boolean coilValue = modbusMaster.getValue(coilLocator);
-                return String.valueOf(coilValue);
+                return BaseLocator.coilStatus(slaveId, offset);
             case 2:
-                BaseLocator<Boolean> inputLocator = BaseLocator.inputStatus(slaveId, offset);
-                Boolean inputStatusValue = modbusMaster.getValue(inputLocator);
-                return String.valueOf(inputStatusValue);
+                return BaseLocator.inputStatus(slaveId, offset);
             case 3:
-                BaseLocator<Number> holdingLocator = BaseLocator.holdingRegister(slaveId, offset, getValueType(type));
-                Number holdingValue = modbusMaster.getValue(holdingLocator);
-                return String.valueOf(holdingValue);
+                return BaseLocator.holdingRegister(slaveId, offset, getValueType(type));
             case 4:
-                BaseLocator<Number> inputRegister = BaseLocator.inputRegister(slaveId, offset, getValueType(type));
-                Number inputRegisterValue = modbusMaster.getValue(inputRegister);
-                return String.valueOf(inputRegisterValue);
+                return BaseLocator.inputRegister(slaveId, offset, getValueType(type));
             default:
-                return "0";
+                return null;
         }
     }
 
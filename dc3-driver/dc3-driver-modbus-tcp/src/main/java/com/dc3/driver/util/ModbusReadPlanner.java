@@ -0,0 +1,159 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.driver.util;
+
+import com.dc3.driver.bean.ModbusProperty;
+import com.serotonin.modbus4j.code.RegisterRange;
+import com.serotonin.modbus4j.exception.ModbusTransportException;
+import com.serotonin.modbus4j.locator.BaseLocator;
+import com.serotonin.modbus4j.msg.*;
+import lombok.Getter;
+
+import java.util.*;
+
+/**
+ * Modbus 块读取规划
+ * <p>
+ * 按从站编号和功能码对位号分组，组内按偏移量排序，
+ * 将相邻或间隔不超过容忍值的位号合并为一次多寄存器读取，单次读取长度不超过协议上限，
+ * 各位号再从共享的响应数据中按自身偏移解析
+ *
+ * @author pnoker
+ */
+public class ModbusReadPlanner {
+
+    /**
+     * 协议规定的单次最大读取数量
+     */
+    public static final int MAX_READ_REGISTERS = 125;
+    public static final int MAX_READ_BITS = 2000;
+
+    private ModbusReadPlanner() {
+    }
+
+    /**
+     * 生成读取块
+     *
+     * @param locatorMap pointId,locator
+     * @param property   ModbusProperty
+     * @return Block Array
+     */
+    public static List<Block> plan(Map<Long, BaseLocator<?>> locatorMap, ModbusProperty property) {
+        // slaveId,range -> locators
+        Map<String, List<Map.Entry<Long, BaseLocator<?>>>> groupMap = new LinkedHashMap<>(16);
+        for (Map.Entry<Long, BaseLocator<?>> entry : locatorMap.entrySet()) {
+            BaseLocator<?> locator = entry.getValue();
+            groupMap.computeIfAbsent(locator.getSlaveId() + "_" + locator.getRange(), k -> new ArrayList<>()).add(entry);
+        }
+
+        List<Block> blocks = new ArrayList<>(groupMap.size());
+        for (List<Map.Entry<Long, BaseLocator<?>>> group : groupMap.values()) {
+            group.sort(Comparator.comparingInt(entry -> entry.getValue().getOffset()));
+
+            BaseLocator<?> first = group.get(0).getValue();
+            boolean bit = isBit(first.getRange());
+            int gap = Math.max(0, bit ? property.getBitGap() : property.getRegisterGap());
+            int max = bit ? limit(property.getMaxBits(), MAX_READ_BITS) : limit(property.getMaxRegisters(), MAX_READ_REGISTERS);
+
+            Block block = null;
+            for (Map.Entry<Long, BaseLocator<?>> entry : group) {
+                BaseLocator<?> locator = entry.getValue();
+                int end = locator.getOffset() + locator.getRegisterCount();
+                if (null == block || locator.getOffset() - block.end() > gap || end - block.start > max) {
+                    block = new Block(locator.getSlaveId(), locator.getRange(), locator.getOffset());
+                    blocks.add(block);
+                }
+                block.add(entry.getKey(), locator, end);
+            }
+        }
+        return blocks;
+    }
+
+    private static boolean isBit(int range) {
+        return range == RegisterRange.COIL_STATUS || range == RegisterRange.INPUT_STATUS;
+    }
+
+    private static int limit(Integer value, int max) {
+        return null == value || value < 1 || value > max ? max : value;
+    }
+
+    /**
+     * 一次读取请求覆盖的连续区间及其包含的位号
+     */
+    @Getter
+    public static class Block {
+        private final int slaveId;
+        private final int range;
+        private final int start;
+        private int length = 0;
+
+        /**
+         * pointId,locator
+         */
+        private final Map<Long, BaseLocator<?>> locatorMap = new LinkedHashMap<>(16);
+
+        private Block(int slaveId, int range, int start) {
+            this.slaveId = slaveId;
+            this.range = range;
+            this.start = start;
+        }
+
+        private int end() {
+            return start + length;
+        }
+
+        private void add(Long pointId, BaseLocator<?> locator, int end) {
+            locatorMap.put(pointId, locator);
+            length = Math.max(length, end - start);
+        }
+
+        /**
+         * 生成读取请求
+         *
+         * @return ModbusRequest
+         * @throws ModbusTransportException ModbusTransportException
+         */
+        public ModbusRequest request() throws ModbusTransportException {
+            switch (range) {
+                case RegisterRange.COIL_STATUS:
+                    return new ReadCoilsRequest(slaveId, start, length);
+                case RegisterRange.INPUT_STATUS:
+                    return new ReadDiscreteInputsRequest(slaveId, start, length);
+                case RegisterRange.HOLDING_REGISTER:
+                    return new ReadHoldingRegistersRequest(slaveId, start, length);
+                case RegisterRange.INPUT_REGISTER:
+                    return new ReadInputRegistersRequest(slaveId, start, length);
+                default:
+                    throw new IllegalArgumentException("Unsupported register range " + range);
+            }
+        }
+
+        /**
+         * 从共享的响应数据中解析各位号的值
+         *
+         * @param response ReadResponse
+         * @return pointId,value
+         */
+        public Map<Long, Object> decode(ReadResponse response) {
+            byte[] data = response.getData();
+            Map<Long, Object> values = new HashMap<>(locatorMap.size() * 4 / 3 + 1);
+            locatorMap.forEach((pointId, locator) -> values.put(pointId, locator.bytesToValue(data, start)));
+            return values;
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dc3.driver.benchmark;
+
+import com.dc3.driver.bean.ModbusProperty;
+import com.dc3.driver.util.ModbusReadPlanner;
+import com.serotonin.modbus4j.BasicProcessImage;
+import com.serotonin.modbus4j.ModbusFactory;
+import com.serotonin.modbus4j.ModbusMaster;
+import com.serotonin.modbus4j.code.DataType;
+import com.serotonin.modbus4j.code.RegisterRange;
+import com.serotonin.modbus4j.ip.IpParameters;
+import com.serotonin.modbus4j.ip.tcp.TcpSlave;
+import com.serotonin.modbus4j.locator.BaseLocator;
+import com.serotonin.modbus4j.msg.ReadResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 逐点读取与块读取的对比，使用进程内的 modbus4j TCP 从站模拟设备，默认不执行
+ * <p>
+ * mvn test -Dtest=ModbusBlockReadBenchmarkTest -Ddc3.benchmark.modbus=true
+ * <p>
+ * 从站按 dc3.benchmark.points 生成保持寄存器（整数、浮点数交替，每 10 个位号空出 2 个寄存器）和线圈位号，
+ * 两种方式读取 dc3.benchmark.rounds 轮，校验读到的值一致并输出请求数量和耗时
+ *
+ * @author pnoker
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "dc3.benchmark.modbus", matches = ".+")
+class ModbusBlockReadBenchmarkTest {
+
+    private static final int PORT = Integer.getInteger("dc3.benchmark.modbusPort", 5502);
+    private static final int POINTS = Integer.getInteger("dc3.benchmark.points", 200);
+    private static final int ROUNDS = Integer.getInteger("dc3.benchmark.rounds", 20);
+    private static final int SLAVE_ID = 1;
+
+    @Test
+    void compareBlockRead() throws Exception {
+        ModbusFactory modbusFactory = new ModbusFactory();
+        BasicProcessImage processImage = new BasicProcessImage(SLAVE_ID);
+        Map<Long, BaseLocator<?>> locatorMap = new LinkedHashMap<>(POINTS * 2);
+        Map<Long, Object> expected = new HashMap<>(POINTS * 2);
+
+        int offset = 0;
+        for (long pointId = 0; pointId < POINTS; pointId++) {
+            if (pointId % 10 == 0 && pointId > 0) {
+                offset += 2;
+            }
+            if (pointId % 2 == 0) {
+                processImage.setNumeric(RegisterRange.HOLDING_REGISTER, offset, DataType.TWO_BYTE_INT_SIGNED, (short) pointId);
+                locatorMap.put(pointId, BaseLocator.holdingRegister(SLAVE_ID, offset, DataType.TWO_BYTE_INT_SIGNED));
+                expected.put(pointId, (short) pointId);
+                offset += 1;
+            } else {
+                processImage.setNumeric(RegisterRange.HOLDING_REGISTER, offset, DataType.FOUR_BYTE_FLOAT, pointId + 0.5f);
+                locatorMap.put(pointId, BaseLocator.holdingRegister(SLAVE_ID, offset, DataType.FOUR_BYTE_FLOAT));
+                expected.put(pointId, pointId + 0.5f);
+                offset += 2;
+            }
+        }
+        for (long i = 0; i < POINTS; i++) {
+            long pointId = POINTS + i;
+            processImage.setCoil((int) i * 3, i % 3 == 0);
+            locatorMap.put(pointId, BaseLocator.coilStatus(SLAVE_ID, (int) i * 3));
+            expected.put(pointId, i % 3 == 0);
+        }
+
+        TcpSlave slave = new TcpSlave(PORT, false);
+        slave.addProcessImage(processImage);
+        Thread slaveThread = new Thread(() -> {
+            try {
+                slave.start();
+            } catch (Exception e) {
+                log.error("Modbus slave stopped: {}", e.getMessage(), e);
+            }
+        }, "[ModbusSlave]");
+        slaveThread.setDaemon(true);
+        slaveThread.start();
+
+        IpParameters params = new IpParameters();
+        params.setHost("127.0.0.1");
+        params.setPort(PORT);
+        ModbusMaster modbusMaster = modbusFactory.createTcpMaster(params, true);
+        modbusMaster.setTimeout(5000);
+        try {
+            initial(modbusMaster);
+            List<ModbusReadPlanner.Block> blocks = ModbusReadPlanner.plan(locatorMap, new ModbusProperty());
+
+            // warm up both paths, then check the values they read
+            Map<Long, Object> pointValues = readPoints(modbusMaster, locatorMap);
+            Map<Long, Object> blockValues = readBlocks(modbusMaster, blocks);
+            assertEquals(expected, pointValues);
+            assertEquals(expected, blockValues);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                readPoints(modbusMaster, locatorMap);
+            }
+            double perPoint = (System.nanoTime() - start) / 1e6 / ROUNDS;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                readBlocks(modbusMaster, blocks);
+            }
+            double block = (System.nanoTime() - start) / 1e6 / ROUNDS;
+
+            log.info("Modbus read, points: {}, per point: {} requests {}ms, block: {} requests {}ms, speedup: {}",
+                    locatorMap.size(), locatorMap.size(), String.format("%.2f", perPoint), blocks.size(), String.format("%.2f", block), String.format("%.1f", perPoint / block));
+            assertTrue(blocks.size() < locatorMap.size());
+        } finally {
+            modbusMaster.destroy();
+            slave.stop();
+        }
+    }
+
+    /**
+     * 从站线程启动需要时间，重试初始化直到连接成功
+     */
+    private void initial(ModbusMaster modbusMaster) throws Exception {
+        for (int i = 0; ; i++) {
+            try {
+                modbusMaster.init();
+                modbusMaster.getValue(BaseLocator.coilStatus(SLAVE_ID, 0));
+                return;
+            } catch (Exception e) {
+                if (i >= 50) {
+                    throw e;
+                }
+                modbusMaster.destroy();
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    private Map<Long, Object> readPoints(ModbusMaster modbusMaster, Map<Long, BaseLocator<?>> locatorMap) throws Exception {
+        Map<Long, Object> values = new HashMap<>(locatorMap.size() * 4 / 3 + 1);
+        for (Map.Entry<Long, BaseLocator<?>> entry : locatorMap.entrySet()) {
+            values.put(entry.getKey(), modbusMaster.getValue(entry.getValue()));
+        }
+        return values;
+    }
+
+    private Map<Long, Object> readBlocks(ModbusMaster modbusMaster, List<ModbusReadPlanner.Block> blocks) throws Exception {
+        Map<Long, Object> values = new HashMap<>(blocks.size() * 16);
+        for (ModbusReadPlanner.Block block : blocks) {
+            ReadResponse response = (ReadResponse) modbusMaster.send(block.request());
+            assertFalse(response.isException(), response.getExceptionMessage());
+            values.putAll(block.decode(response));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dc3.driver.util;
+
+import com.dc3.driver.bean.ModbusProperty;
+import com.serotonin.modbus4j.code.DataType;
+import com.serotonin.modbus4j.code.RegisterRange;
+import com.serotonin.modbus4j.locator.BaseLocator;
+import com.serotonin.modbus4j.msg.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author pnoker
+ */
+class ModbusReadPlannerTest {
+
+    private final ModbusProperty property = new ModbusProperty();
+    private final Map<Long, BaseLocator<?>> locatorMap = new LinkedHashMap<>();
+
+    private void holding(long pointId, int offset) {
+        locatorMap.put(pointId, BaseLocator.holdingRegister(1, offset, DataType.TWO_BYTE_INT_SIGNED));
+    }
+
+    private static List<Long> pointIds(ModbusReadPlanner.Block block) {
+        return new ArrayList<>(block.getLocatorMap().keySet());
+    }
+
+    @Test
+    void adjacentRegistersShareOneBlock() throws Exception {
+        holding(1L, 0);
+        holding(2L, 1);
+        locatorMap.put(3L, BaseLocator.holdingRegister(1, 2, DataType.FOUR_BYTE_FLOAT));
+        locatorMap.put(4L, BaseLocator.holdingRegister(1, 4, DataType.EIGHT_BYTE_FLOAT));
+
+        List<ModbusReadPlanner.Block> blocks = ModbusReadPlanner.plan(locatorMap, property);
+        assertEquals(1, blocks.size());
+        ModbusReadPlanner.Block block = blocks.get(0);
+        assertEquals(0, block.getStart());
+        // the last point spans 4 registers
+        assertEquals(8, block.getLength());
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L), pointIds(block));
+
+        ModbusRequest request = block.request();
+        assertTrue(request instanceof ReadHoldingRegistersRequest);
+        assertEquals(1, request.getSlaveId());
+    }
+
+    @Test
+    void pointsAreSortedByOffset() {
+        holding(1L, 30);
+        holding(2L, 10);
+        holding(3L, 20);
+        property.setRegisterGap(10);
+
+        List<ModbusReadPlanner.Block> blocks = ModbusReadPlanner.plan(locatorMap, property);
+        assertEquals(1, blocks.size());
+        assertEquals(10, blocks.get(0).getStart());
+        assertEquals(21, blocks.get(0).getLength());
+        assertEquals(Arrays.asList(2L, 3L, 1L), pointIds(blocks.get(0)));
+    }
+
+    @Test
+    void gapsWiderThanTheToleranceSplitBlocks() {
+        property.setRegisterGap(8);
+        holding(1L, 0);
+        // 8 idle registers between 0 and 9 are tolerated
+        holding(2L, 9);
+        // 9 idle registers between 9 and 19 are not
+        holding(3L, 19);
+
+        List<ModbusReadPlanner.Block> blocks = ModbusReadPlanner.plan(locatorMap, property);
+        assertEquals(2, blocks.size());
+        assertEquals(Arrays.asList(1L, 2L), pointIds(blocks.get(0)));
+        assertEquals(10, blocks.get(0).getLength());
+        assertEquals(19, blocks.get(1).getStart());
+        assertEquals(1, blocks.get(1).getLength());
+    }
+
+    @Test
+    void zeroGapOnlyMergesContiguousPoints() {
+        property.setRegisterGap(0);
+        holding(1L, 0);
+        holding(2L, 1);
+        holding(3L, 3);
+
+        List<ModbusReadPlanner.Block> blocks = ModbusReadPlanner.plan(locatorMap, property);
+        assertEquals(2, blocks.size());
+        assertEquals(2, blocks.get(0).getLength());
+        assertEquals(3, blocks.get(1).getStart());
+    }
+
+    @Test
+    void blocksNeverExceedTheLimit() {
+        for (int i = 0; i < 300; i++) {
+            holding(i, i);
+        }
+        List<ModbusReadPlanner.Block> blocks = ModbusReadPlanner.plan(locatorMap, property);
+        assertEquals(3, blocks.size());
+        assertEquals(ModbusReadPlanner.MAX_READ_REGISTERS, blocks.get(0).getLength());
+        assertEquals(125, blocks.get(1).getStart());
+        assertEquals(50, blocks.get(2).getLength());
+
+        property.setMaxRegisters(10);
+        blocks = ModbusReadPlanner.plan(locatorMap, property);
+        assertEquals(30, blocks.size());
+        for (ModbusReadPlanner.Block block : blocks) {
+            assertTrue(block.getLength() <= 10);
+        }
+    }
+
+    @Test
+    void multiRegisterPointIsNotSplitAcrossBlocks() {
+        property.setMaxRegisters(5);
+        holding(1L, 0);
+        holding(2L, 1);
+        holding(3L, 2);
+        // registers 3..6 would make the block 7 long
+        locatorMap.put(4L, BaseLocator.holdingRegister(1, 3, DataType.EIGHT_BYTE_FLOAT));
+
+        List<ModbusReadPlanner.Block> blocks = ModbusReadPlanner.plan(locatorMap, property);
+        assertEquals(2, blocks.size());
+        assertEquals(3, blocks.get(0).getLength());
+        assertEquals(3, blocks.get(1).getStart());
+        assertEquals(4, blocks.get(1).getLength());
+    }
+
+    @Test
+    void invalidLimitsFallBackToTheProtocolMaximum() {
+        for (int i = 0; i < 130; i++) {
+            holding(i, i);
+        }
+        for (Integer max : Arrays.asList(null, 0, -1, 1000)) {
+            property.setMaxRegisters(max);
+            List<ModbusReadPlanner.Block> blocks = ModbusReadPlanner.plan(locatorMap, property);
+            assertEquals(2, blocks.size());
+            assertEquals(ModbusReadPlanner.MAX_READ_REGISTERS, blocks.get(0).getLength());
+        }
+    }
+
+    @Test
+    void bitsUseTheBitGapAndLimit() throws Exception {
+        property.setBitGap(64);
+        property.setMaxBits(100);
+        locatorMap.put(1L, BaseLocator.coilStatus(1, 0));
+        locatorMap.put(2L, BaseLocator.coilStatus(1, 65));
+        locatorMap.put(3L, BaseLocator.coilStatus(1, 99));
+        locatorMap.put(4L, BaseLocator.coilStatus(1, 100));
+        locatorMap.put(5L, BaseLocator.coilStatus(1, 200));
+
+        List<ModbusReadPlanner.Block> blocks = ModbusReadPlanner.plan(locatorMap, property);
+        assertEquals(3, blocks.size());
+        assertEquals(Arrays.asList(1L, 2L, 3L), pointIds(blocks.get(0)));
+        assertEquals(100, blocks.get(0).getLength());
+        assertEquals(Arrays.asList(4L), pointIds(blocks.get(1)));
+        assertEquals(Arrays.asList(5L), pointIds(blocks.get(2)));
+        assertTrue(blocks.get(0).request() instanceof ReadCoilsRequest);
+    }
+
+    @Test
+    void slavesAndFunctionCodesAreNeverMerged() throws Exception {
+        locatorMap.put(1L, BaseLocator.coilStatus(1, 0));
+        locatorMap.put(2L, BaseLocator.inputStatus(1, 0));
+        locatorMap.put(3L, BaseLocator.holdingRegister(1, 0, DataType.TWO_BYTE_INT_SIGNED));
+        locatorMap.put(4L, BaseLocator.inputRegister(1, 0, DataType.TWO_BYTE_INT_SIGNED));
+        locatorMap.put(5L, BaseLocator.holdingRegister(2, 1, DataType.TWO_BYTE_INT_SIGNED));
+
+        List<ModbusReadPlanner.Block> blocks = ModbusReadPlanner.plan(locatorMap, property);
+        assertEquals(5, blocks.size());
+        assertEquals(RegisterRange.COIL_STATUS, blocks.get(0).getRange());
+        assertTrue(blocks.get(0).request() instanceof ReadCoilsRequest);
+        assertTrue(blocks.get(1).request() instanceof ReadDiscreteInputsRequest);
+        assertTrue(blocks.get(2).request() instanceof ReadHoldingRegistersRequest);
+        assertTrue(blocks.get(3).request() instanceof ReadInputRegistersRequest);
+        assertEquals(2, blocks.get(4).getSlaveId());
+        assertEquals(2, blocks.get(4).request().getSlaveId());
+    }
+
+    @Test
+    void emptyInputPlansNothing() {
+        assertTrue(ModbusReadPlanner.plan(locatorMap, property).isEmpty());
+    }
+}
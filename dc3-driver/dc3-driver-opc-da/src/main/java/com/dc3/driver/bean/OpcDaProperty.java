@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.driver.bean;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 驱动配置文件 driver.opc-da 字段内容
+ *
+ * @author pnoker
+ */
+@Setter
+@Getter
+@ConfigurationProperties(prefix = "driver.opc-da")
+public class OpcDaProperty {
+    /**
+     * 是否通过 DataCallback 订阅位号值，开启后可关闭 driver.schedule.read 轮询
+     */
+    private Boolean subscribe = true;
+
+    /**
+     * 订阅分组的刷新周期，毫秒
+     */
+    private Integer updateRate = 1000;
+
+    /**
+     * 连接断开后的重连间隔，毫秒
+     */
+    private Integer reconnectDelay = 5000;
+}
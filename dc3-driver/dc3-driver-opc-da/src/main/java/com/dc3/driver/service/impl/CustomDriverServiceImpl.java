@@ -17,27 +17,32 @@
 package com.dc3.driver.service.impl;
 
 import com.alibaba.fastjson.JSON;
+import com.dc3.common.bean.driver.PointValue;
 import com.dc3.common.constant.Common;
 import com.dc3.common.model.Device;
 import com.dc3.common.model.Point;
 import com.dc3.common.sdk.bean.AttributeInfo;
 import com.dc3.common.sdk.bean.DriverContext;
 import com.dc3.common.sdk.service.CustomDriverService;
+import com.dc3.common.sdk.service.DriverConnectionFactory;
+import com.dc3.common.sdk.service.DriverConnectionService;
 import com.dc3.common.sdk.service.DriverService;
+import com.dc3.driver.bean.OpcDaProperty;
+import com.dc3.driver.service.opc.OpcDaSession;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.jinterop.dcom.common.JIException;
 import org.jinterop.dcom.core.JIVariant;
-import org.openscada.opc.lib.common.AlreadyConnectedException;
 import org.openscada.opc.lib.common.ConnectionInformation;
-import org.openscada.opc.lib.common.NotConnectedException;
 import org.openscada.opc.lib.da.*;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
-import java.net.UnknownHostException;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static com.dc3.common.sdk.util.DriverUtils.attribute;
 import static com.dc3.common.sdk.util.DriverUtils.value;
@@ -47,17 +52,47 @@ import static com.dc3.common.sdk.util.DriverUtils.value;
  */
 @Slf4j
 @Service
+@EnableConfigurationProperties({OpcDaProperty.class})
 public class CustomDriverServiceImpl implements CustomDriverService {
 
+    /**
+     * Opc Da 数据质量 Good 掩码
+     */
+    private static final int QUALITY_GOOD = 0xC0;
+
     @Resource
     private DriverContext driverContext;
     @Resource
     private DriverService driverService;
+    @Resource
+    private OpcDaProperty opcDaProperty;
+    @Resource
+    private MeterRegistry meterRegistry;
+    @Resource
+    private DriverConnectionService driverConnectionService;
 
     /**
-     * Opc Da Server Map
+     * Opc Da Session Factory，断线重连由会话自身的 AutoReconnectController 负责
      */
-    private final Map<Long, Server> serverMap = new ConcurrentHashMap<>(64);
+    private final DriverConnectionFactory<OpcDaSession> sessionFactory = new DriverConnectionFactory<OpcDaSession>() {
+        @Override
+        public OpcDaSession create(Long deviceId, Map<String, AttributeInfo> driverInfo) throws Exception {
+            ConnectionInformation connectionInformation = new ConnectionInformation(attribute(driverInfo, "host"), attribute(driverInfo, "clsId"), attribute(driverInfo, "username"), attribute(driverInfo, "password"));
+            log.debug("Opc Da Server Connection Info {}", JSON.toJSONString(connectionInformation));
+            return new OpcDaSession(connectionInformation, opcDaProperty.getUpdateRate(), opcDaProperty.getReconnectDelay(), opcDaProperty.getSubscribe());
+        }
+
+        @Override
+        public void close(OpcDaSession session) {
+            session.close();
+        }
+    };
+
+    /**
+     * deviceId,timer
+     */
+    private final Map<Long, Timer> latencyTimerMap = new ConcurrentHashMap<>(64);
+    private final Map<Long, Timer> readTimerMap = new ConcurrentHashMap<>(64);
 
     @Override
     public void initial() {
@@ -66,90 +101,139 @@ public class CustomDriverServiceImpl implements CustomDriverService {
     @Override
     public String read(Map<String, AttributeInfo> driverInfo, Map<String, AttributeInfo> pointInfo, Device device, Point point) throws Exception {
         log.debug("Opc Da Read, device: {}, point: {}", JSON.toJSONString(device), JSON.toJSONString(point));
-        Server server = getServer(device.getId(), driverInfo);
+        OpcDaSession session = getSession(device.getId(), driverInfo);
+        long start = System.nanoTime();
         try {
-            Item item = getItem(server, pointInfo);
+            Item item = session.getItem(attribute(pointInfo, "group"), attribute(pointInfo, "tag"));
             return readItem(item);
         } finally {
-            server.dispose();
+            readTimer(device.getId()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
     }
 
     @Override
     public Boolean write(Map<String, AttributeInfo> driverInfo, Map<String, AttributeInfo> pointInfo, Device device, AttributeInfo value) throws Exception {
         log.debug("Opc Da Write, device: {}, value: {}", JSON.toJSONString(device), JSON.toJSONString(value));
-        Server server = getServer(device.getId(), driverInfo);
-        try {
-            Item item = getItem(server, pointInfo);
-            writeItem(item, value.getType(), value.getValue());
-            return true;
-        } finally {
-            server.dispose();
-        }
+        OpcDaSession session = getSession(device.getId(), driverInfo);
+        Item item = session.getItem(attribute(pointInfo, "group"), attribute(pointInfo, "tag"));
+        writeItem(item, value.getType(), value.getValue());
+        return true;
     }
 
     @Override
     public void schedule() {
+        Map<Long, Device> deviceMap = driverContext.getDeviceMap();
 
-        /*
-        TODO:设备状态
-        上传设备状态，可自行灵活拓展，不一定非要在schedule()接口中实现，也可以在read中实现设备状态的设置；
-        你可以通过某种判断机制确定设备的状态，然后通过driverService.deviceEventSender接口将设备状态交给SDK管理。
-
-        设备状态（DeviceStatus）如下：
-        ONLINE:在线
-        OFFLINE:离线
-        MAINTAIN:维护
-        FAULT:故障
-         */
-        driverContext.getDeviceMap().keySet().forEach(id -> driverService.deviceEventSender(id, Common.Device.Event.HEARTBEAT, Common.Device.Status.ONLINE));
+        // keep sessions and subscriptions in sync with the device points, report the session health as device status
+        for (Device device : deviceMap.values()) {
+            String status = Common.Device.Status.OFFLINE;
+            try {
+                OpcDaSession session = getSession(device.getId(), driverContext.getProfileDriverInfo(device.getProfileId()));
+                if (opcDaProperty.getSubscribe()) {
+                    subscribe(device.getId(), session);
+                }
+                if (session.check()) {
+                    status = Common.Device.Status.ONLINE;
+                }
+            } catch (Exception e) {
+                log.warn("Opc Da device({}) session check failed: {}", device.getId(), e.getMessage());
+            }
+            driverService.deviceEventSender(device.getId(), Common.Device.Event.HEARTBEAT, status);
+        }
     }
 
     /**
-     * 获取 Opc Da Server
+     * 获取 Opc Da Session
+     * 每个设备保持一个长连接会话，驱动属性变更或设备删除后由 DriverConnectionService 关闭
      *
-     * @param deviceId
-     * @param driverInfo
-     * @return
-     * @throws JIException
-     * @throws UnknownHostException
+     * @param deviceId   Device Id
+     * @param driverInfo Driver Info
+     * @return OpcDaSession
+     * @throws Exception Exception
      */
-    private Server getServer(Long deviceId, Map<String, AttributeInfo> driverInfo) throws JIException, UnknownHostException {
-        Server server = serverMap.get(deviceId);
-        if (null == server) {
-            ConnectionInformation connectionInformation = new ConnectionInformation(attribute(driverInfo, "host"), attribute(driverInfo, "clsId"), attribute(driverInfo, "username"), attribute(driverInfo, "password"));
-            log.debug("Opc Da Server Connection Info {}", JSON.toJSONString(connectionInformation));
-            server = new Server(connectionInformation, Executors.newSingleThreadScheduledExecutor());
+    private OpcDaSession getSession(Long deviceId, Map<String, AttributeInfo> driverInfo) throws Exception {
+        return driverConnectionService.getConnection(deviceId, driverInfo, sessionFactory);
+    }
+
+    /**
+     * 同步设备位号的订阅，新位号注册一次，删除的位号取消订阅
+     *
+     * @param deviceId Device Id
+     * @param session  OpcDaSession
+     */
+    private void subscribe(Long deviceId, OpcDaSession session) {
+        Map<String, Set<Long>> tagMap = new HashMap<>(16);
+        driverContext.getDevicePointInfoMap().getOrDefault(deviceId, Collections.emptyMap())
+                .forEach((pointId, pointInfo) -> tagMap.computeIfAbsent(attribute(pointInfo, "tag"), k -> new HashSet<>()).add(pointId));
+
+        Map<String, Set<Long>> subscribed = session.getSubscriptionMap();
+        Iterator<String> iterator = subscribed.keySet().iterator();
+        while (iterator.hasNext()) {
+            String tag = iterator.next();
+            if (!tagMap.containsKey(tag)) {
+                session.unsubscribe(tag);
+                iterator.remove();
+            }
         }
-        try {
-            server.connect();
-        } catch (AlreadyConnectedException ignored) {
+
+        for (Map.Entry<String, Set<Long>> entry : tagMap.entrySet()) {
+            String tag = entry.getKey();
+            boolean subscribe = !subscribed.containsKey(tag);
+            subscribed.put(tag, entry.getValue());
+            if (subscribe) {
+                try {
+                    session.subscribe(tag, (item, itemState) -> changed(deviceId, session, tag, itemState));
+                } catch (Exception e) {
+                    subscribed.remove(tag);
+                    log.warn("Opc Da device({}) subscribe tag({}) failed: {}", deviceId, tag, e.getMessage());
+                }
+            }
         }
-        serverMap.put(deviceId, server);
-        return server;
     }
 
     /**
-     * 获取 Opc Da Item
+     * 订阅位号值变化回调
      *
-     * @param server
-     * @param pointInfo
-     * @return
-     * @throws UnknownGroupException
-     * @throws NotConnectedException
-     * @throws JIException
-     * @throws UnknownHostException
-     * @throws DuplicateGroupException
+     * @param deviceId  Device Id
+     * @param session   OpcDaSession
+     * @param tag       Tag
+     * @param itemState ItemState
      */
-    public Item getItem(Server server, Map<String, AttributeInfo> pointInfo) throws NotConnectedException, JIException, UnknownHostException, DuplicateGroupException, AddFailedException {
-        Group group;
-        String groupName = attribute(pointInfo, "group");
+    private void changed(Long deviceId, OpcDaSession session, String tag, ItemState itemState) {
+        Set<Long> pointIds = session.getSubscriptionMap().get(tag);
+        if (null == pointIds) {
+            return;
+        }
+        if (itemState.getErrorCode() != 0 || null == itemState.getQuality() || (itemState.getQuality() & QUALITY_GOOD) != QUALITY_GOOD) {
+            log.debug("Opc Da device({}) tag({}) bad value, error: {}, quality: {}", deviceId, tag, itemState.getErrorCode(), itemState.getQuality());
+            return;
+        }
+        if (null != itemState.getTimestamp()) {
+            latencyTimer(deviceId).record(Math.max(0, System.currentTimeMillis() - itemState.getTimestamp().getTimeInMillis()), TimeUnit.MILLISECONDS);
+        }
+
         try {
-            group = server.findGroup(groupName);
-        } catch (UnknownGroupException e) {
-            group = server.addGroup(groupName);
+            String rawValue = value(itemState.getValue());
+            List<PointValue> pointValues = new ArrayList<>(pointIds.size());
+            for (Long pointId : pointIds) {
+                pointValues.add(new PointValue(deviceId, pointId, rawValue, driverService.convertValue(deviceId, pointId, rawValue)));
+            }
+            driverService.pointValueSender(pointValues);
+        } catch (Exception e) {
+            log.error("Opc Da device({}) tag({}) value convert failed: {}", deviceId, tag, e.getMessage());
         }
-        return group.addItem(attribute(pointInfo, "tag"));
+    }
+
+    private Timer latencyTimer(Long deviceId) {
+        return latencyTimerMap.computeIfAbsent(deviceId, id -> Timer.builder("dc3.driver.opcda.latency")
+                .description("Time from the Opc Da source timestamp to receiving the subscribed value")
+                .tag("deviceId", String.valueOf(id)).register(meterRegistry));
+    }
+
+    private Timer readTimer(Long deviceId) {
+        return readTimerMap.computeIfAbsent(deviceId, id -> Timer.builder("dc3.driver.opcda.read")
+                .description("Opc Da synchronous read duration")
+                .tag("deviceId", String.valueOf(id)).register(meterRegistry));
     }
 
     /**
@@ -160,7 +244,17 @@ public class CustomDriverServiceImpl implements CustomDriverService {
      * @throws JIException
      */
     public String readItem(Item item) throws JIException {
-        JIVariant jiVariant = item.read(false).getValue();
+        return value(item.read(false).getValue());
+    }
+
+    /**
+     * 转换 Opc Da 位号值
+     *
+     * @param jiVariant JIVariant
+     * @return String Value
+     * @throws JIException JIException
+     */
+    public String value(JIVariant jiVariant) throws JIException {
         switch (jiVariant.getType()) {
             case JIVariant.VT_I2:
                 short shortValue = jiVariant.getObjectAsShort();
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.driver.service.opc;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.jinterop.dcom.common.JIException;
+import org.openscada.opc.lib.common.ConnectionInformation;
+import org.openscada.opc.lib.common.NotConnectedException;
+import org.openscada.opc.lib.da.*;
+
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+/**
+ * 单个设备的 Opc Da 长连接会话
+ * <p>
+ * Server 在设备生命周期内保持连接，断开后由 AutoReconnectController 自动重连；
+ * 分组和位号在每次连接内只注册一次，订阅的位号由 Async20Access 在重连后重新注册
+ *
+ * @author pnoker
+ */
+@Slf4j
+public class OpcDaSession implements ServerConnectionStateListener {
+
+    private final Server server;
+    private final AutoReconnectController controller;
+    private final Async20Access access;
+
+    private volatile boolean connected = false;
+
+    /**
+     * groupName,group
+     */
+    private final Map<String, Group> groupMap = new ConcurrentHashMap<>(16);
+
+    /**
+     * groupName/tag,item
+     */
+    private final Map<String, Item> itemMap = new ConcurrentHashMap<>(64);
+
+    /**
+     * 已订阅的位号, tag,pointIds
+     */
+    @Getter
+    private final Map<String, Set<Long>> subscriptionMap = new ConcurrentHashMap<>(16);
+
+    public OpcDaSession(ConnectionInformation connectionInformation, int updateRate, int reconnectDelay, boolean subscribe) throws UnknownHostException, NotConnectedException, JIException, DuplicateGroupException {
+        this.server = new Server(connectionInformation, Executors.newSingleThreadScheduledExecutor());
+        this.server.setDefaultUpdateRate(updateRate);
+        this.server.addStateListener(this);
+        if (subscribe) {
+            this.access = new Async20Access(server, updateRate, true);
+            this.access.bind();
+        } else {
+            this.access = null;
+        }
+        this.controller = new AutoReconnectController(server, reconnectDelay);
+        this.controller.connect();
+    }
+
+    @Override
+    public void connectionStateChanged(boolean connected) {
+        this.connected = connected;
+        if (!connected) {
+            // groups and items belong to the lost connection
+            groupMap.clear();
+            itemMap.clear();
+        }
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * 获取位号对应的 Item，同一连接内只注册一次
+     *
+     * @param groupName Group Name
+     * @param tag       Tag
+     * @return Item
+     */
+    public synchronized Item getItem(String groupName, String tag) throws NotConnectedException, JIException, UnknownHostException, DuplicateGroupException, AddFailedException {
+        String key = groupName + "/" + tag;
+        Item item = itemMap.get(key);
+        if (null == item) {
+            Group group = groupMap.get(groupName);
+            if (null == group) {
+                try {
+                    group = server.findGroup(groupName);
+                } catch (UnknownGroupException e) {
+                    group = server.addGroup(groupName);
+                }
+                groupMap.put(groupName, group);
+            }
+            item = group.addItem(tag);
+            itemMap.put(key, item);
+        }
+        return item;
+    }
+
+    /**
+     * 订阅位号，重复订阅同一位号不会重复注册
+     *
+     * @param tag          Tag
+     * @param dataCallback DataCallback
+     */
+    public void subscribe(String tag, DataCallback dataCallback) throws JIException, AddFailedException {
+        if (null != access) {
+            access.addItem(tag, dataCallback);
+        }
+    }
+
+    /**
+     * 取消订阅位号
+     *
+     * @param tag Tag
+     */
+    public void unsubscribe(String tag) {
+        if (null != access) {
+            access.removeItem(tag);
+        }
+    }
+
+    /**
+     * 检查 Opc Da Server 状态，检查失败时断开连接并由 AutoReconnectController 重连
+     *
+     * @return 是否正常
+     */
+    public boolean check() {
+        return connected && null != server.getServerState();
+    }
+
+    /**
+     * 关闭会话，不再重连
+     */
+    public void close() {
+        try {
+            if (null != access) {
+                access.unbind();
+                access.clear();
+            }
+        } catch (JIException e) {
+            log.warn("Opc Da unbind access failed: {}", e.getMessage());
+        }
+        controller.disconnect();
+        server.getScheduler().shutdownNow();
+    }
+
+}
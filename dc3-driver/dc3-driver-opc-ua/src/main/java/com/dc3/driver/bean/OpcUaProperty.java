@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.driver.bean;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 驱动配置文件 driver.opc-ua 字段内容
+ *
+ * @author pnoker
+ */
+@Setter
+@Getter
+@ConfigurationProperties(prefix = "driver.opc-ua")
+public class OpcUaProperty {
+    /**
+     * 是否通过订阅的 Monitored Item 推送位号值，开启后读取调度只轮询创建 Monitored Item 失败的位号，
+     * 轮询周期为 driver.schedule.read 或 driver.scan 的周期
+     */
+    private Boolean subscribe = true;
+
+    /**
+     * 同时同步订阅的设备数量
+     */
+    private Integer subscribeConcurrency = 4;
+
+    /**
+     * 订阅发布周期，毫秒
+     */
+    private Double publishingInterval = 1000.0;
+
+    /**
+     * Monitored Item 采样周期，毫秒
+     */
+    private Double samplingInterval = 500.0;
+
+    /**
+     * Monitored Item 服务端队列长度
+     */
+    private Integer queueSize = 10;
+
+    /**
+     * 死区类型，0:None，1:Absolute，2:Percent
+     */
+    private Integer deadbandType = 0;
+
+    /**
+     * 死区值
+     */
+    private Double deadbandValue = 0.0;
+
+    /**
+     * 单个 ReadRequest 的最大节点数量，服务端 OperationLimits 更小时以服务端为准
+     */
+    private Integer maxNodesPerRead = 1000;
+
+    /**
+     * 单个 WriteRequest 的最大节点数量，服务端 OperationLimits 更小时以服务端为准
+     */
+    private Integer maxNodesPerWrite = 1000;
+
+    /**
+     * 单次创建、删除的最大 Monitored Item 数量，服务端 OperationLimits 更小时以服务端为准
+     */
+    private Integer maxMonitoredItemsPerCall = 1000;
+}
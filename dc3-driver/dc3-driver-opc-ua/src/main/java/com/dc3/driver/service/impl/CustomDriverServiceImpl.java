@@ -17,33 +17,49 @@
 package com.dc3.driver.service.impl;
 
 import com.alibaba.fastjson.JSON;
+import com.dc3.common.bean.driver.PointValue;
 import com.dc3.common.constant.Common;
 import com.dc3.common.model.Device;
 import com.dc3.common.model.Point;
 import com.dc3.common.sdk.bean.AttributeInfo;
 import com.dc3.common.sdk.bean.DriverContext;
 import com.dc3.common.sdk.service.CustomDriverService;
+import com.dc3.common.sdk.service.DriverConnectionFactory;
+import com.dc3.common.sdk.service.DriverConnectionService;
 import com.dc3.common.sdk.service.DriverService;
+import com.dc3.driver.bean.OpcUaProperty;
 import com.dc3.driver.key.KeyLoader;
+import com.dc3.driver.service.opc.OpcUaSubscription;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
 import org.eclipse.milo.opcua.sdk.client.api.identity.AnonymousProvider;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscription;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscriptionManager;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
 import org.eclipse.milo.opcua.stack.core.UaException;
 import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
 import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
 import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
 import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.dc3.common.sdk.util.DriverUtils.attribute;
 import static com.dc3.common.sdk.util.DriverUtils.value;
@@ -54,12 +70,22 @@ import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.
  */
 @Slf4j
 @Service
+@EnableConfigurationProperties({OpcUaProperty.class})
 public class CustomDriverServiceImpl implements CustomDriverService {
 
+    /**
+     * 读写请求等待超时时间，秒
+     */
+    private static final int TIMEOUT = 30;
+
     @Resource
     private DriverService driverService;
     @Resource
     private DriverContext driverContext;
+    @Resource
+    private OpcUaProperty opcUaProperty;
+    @Resource
+    private DriverConnectionService driverConnectionService;
 
     private static KeyLoader keyLoader;
 
@@ -79,24 +105,117 @@ public class CustomDriverServiceImpl implements CustomDriverService {
     }
 
     /**
-     * Opc Ua Client Map
+     * Opc Ua Client Factory，断线重连由 Milo 客户端自身负责
+     */
+    private final DriverConnectionFactory<OpcUaClient> clientFactory = new DriverConnectionFactory<OpcUaClient>() {
+        @Override
+        public OpcUaClient create(Long deviceId, Map<String, AttributeInfo> driverInfo) throws Exception {
+            log.debug("Opc Ua Client Info: {}", JSON.toJSONString(driverInfo));
+            OpcUaClient opcUaClient = OpcUaClient.create(
+                    String.format("opc.tcp://%s:%s%s",
+                            attribute(driverInfo, "host"),
+                            attribute(driverInfo, "port"),
+                            attribute(driverInfo, "path")
+                    ),
+                    endpoints -> endpoints
+                            .stream()
+                            .findFirst(),
+                    configBuilder -> configBuilder
+                            .setApplicationName(LocalizedText.english("DC3 Opc Ua Client"))
+                            .setApplicationUri("urn:dc3:opc:ua:client")
+                            .setCertificate(keyLoader.getClientCertificate())
+                            .setKeyPair(keyLoader.getClientKeyPair())
+                            .setIdentityProvider(new AnonymousProvider())
+                            .setRequestTimeout(uint(5000))
+                            .build()
+            );
+            opcUaClient.getSubscriptionManager().addSubscriptionListener(new UaSubscriptionManager.SubscriptionListener() {
+                @Override
+                public void onSubscriptionTransferFailed(UaSubscription subscription, StatusCode statusCode) {
+                    // the server lost the subscription after a reconnect, recreate it on the next schedule
+                    log.warn("Opc Ua device({}) subscription transfer failed: {}", deviceId, statusCode);
+                    subscriptionMap.remove(deviceId);
+                }
+            });
+            // the new endpoint may report different limits
+            operationLimitsMap.remove(deviceId);
+            return opcUaClient;
+        }
+
+        @Override
+        public void close(OpcUaClient opcUaClient) throws Exception {
+            opcUaClient.disconnect().get(TIMEOUT, TimeUnit.SECONDS);
+        }
+    };
+
+    /**
+     * Opc Ua Operation Limits Map, deviceId,limits
      */
-    private static Map<Long, OpcUaClient> clientMap = new ConcurrentHashMap<>(16);
+    private final Map<Long, OperationLimits> operationLimitsMap = new ConcurrentHashMap<>(16);
 
+    /**
+     * Opc Ua Subscription Map, deviceId,subscription
+     */
+    private final Map<Long, OpcUaSubscription> subscriptionMap = new ConcurrentHashMap<>(16);
+
+    /**
+     * 正在同步订阅的设备
+     */
+    private final Set<Long> syncingSet = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger threadAtomic = new AtomicInteger(1);
+    private ThreadPoolExecutor subscribeExecutor;
 
     @Override
     public void initial() {
     }
 
+    @PostConstruct
+    public void initialExecutor() {
+        int concurrency = Math.max(1, opcUaProperty.getSubscribeConcurrency());
+        // connecting and syncing may block for seconds, keep it off the custom schedule thread
+        subscribeExecutor = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                (r) -> new Thread(r, "[OpcUaSubscribe]" + threadAtomic.getAndIncrement()));
+        subscribeExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        subscribeExecutor.shutdownNow();
+        subscriptionMap.values().forEach(OpcUaSubscription::delete);
+        subscriptionMap.clear();
+    }
+
     @Override
     public String read(Map<String, AttributeInfo> driverInfo, Map<String, AttributeInfo> pointInfo, Device device, Point point) throws Exception {
         return readItem(device.getId(), driverInfo, pointInfo);
     }
 
+    @Override
+    public Map<Long, String> read(Map<String, AttributeInfo> driverInfo, Map<Long, Map<String, AttributeInfo>> pointInfoMap, Device device, Map<Long, Point> pointMap) throws Exception {
+        List<Long> pointIds = new ArrayList<>(pointMap.keySet());
+        List<NodeId> nodeIds = new ArrayList<>(pointIds.size());
+        for (Long pointId : pointIds) {
+            nodeIds.add(getNodeId(pointInfoMap.get(pointId)));
+        }
+
+        // all chunks are sent asynchronously, the calling thread only waits once for the whole batch
+        List<DataValue> dataValues = readValues(device.getId(), driverInfo, nodeIds).get(TIMEOUT, TimeUnit.SECONDS);
+        Map<Long, String> values = new HashMap<>(pointIds.size() * 4 / 3 + 1);
+        for (int i = 0; i < pointIds.size(); i++) {
+            DataValue dataValue = dataValues.get(i);
+            if (dataValue.getStatusCode().isGood() && null != dataValue.getValue().getValue()) {
+                values.put(pointIds.get(i), dataValue.getValue().getValue().toString());
+            } else {
+                log.debug("Opc Ua Point({}) read failed: {}", nodeIds.get(i), dataValue.getStatusCode());
+            }
+        }
+        return values;
+    }
+
     @Override
     public Boolean write(Map<String, AttributeInfo> driverInfo, Map<String, AttributeInfo> pointInfo, Device device, AttributeInfo value) throws Exception {
-        writeItem(device.getId(), driverInfo, pointInfo, value);
-        return true;
+        return writeItem(device.getId(), driverInfo, pointInfo, value);
     }
 
     @Override
@@ -114,6 +233,115 @@ public class CustomDriverServiceImpl implements CustomDriverService {
         FAULT:故障
          */
         driverContext.getDeviceMap().keySet().forEach(id -> driverService.deviceEventSender(id, Common.Device.Event.HEARTBEAT, Common.Device.Status.ONLINE));
+
+        if (opcUaProperty.getSubscribe()) {
+            subscribe();
+        }
+    }
+
+    /**
+     * 在订阅线程池中同步各设备的订阅，上次同步还未结束的设备跳过本次同步
+     */
+    private void subscribe() {
+        Map<Long, Device> deviceMap = driverContext.getDeviceMap();
+        // clients of removed devices are already closed by DriverConnectionService, their subscriptions went with them
+        subscriptionMap.keySet().removeIf(deviceId -> !deviceMap.containsKey(deviceId));
+
+        for (Device device : deviceMap.values()) {
+            if (syncingSet.add(device.getId())) {
+                subscribeExecutor.execute(() -> {
+                    try {
+                        subscribe(device);
+                    } finally {
+                        syncingSet.remove(device.getId());
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * 同步设备的订阅，订阅失败的位号由读取调度按读取或扫描周期轮询
+     *
+     * @param device Device
+     */
+    private void subscribe(Device device) {
+        Long deviceId = device.getId();
+        Map<NodeId, Set<Long>> nodeMap = new HashMap<>(16);
+        driverContext.getDevicePointInfoMap().getOrDefault(deviceId, Collections.emptyMap())
+                .forEach((pointId, pointInfo) -> nodeMap.computeIfAbsent(getNodeId(pointInfo), k -> new HashSet<>()).add(pointId));
+
+        try {
+            OpcUaClient client = getOpcUaClient(deviceId, driverContext.getProfileDriverInfo(device.getProfileId()));
+            OpcUaSubscription subscription = subscriptionMap.get(deviceId);
+            if (null == subscription || subscription.getClient() != client) {
+                // no subscription yet, or the client was replaced after a configuration change
+                client.connect().get(TIMEOUT, TimeUnit.SECONDS);
+                subscription = new OpcUaSubscription(client, opcUaProperty, (pointIds, dataValue) -> changed(deviceId, pointIds, dataValue));
+                subscriptionMap.put(deviceId, subscription);
+            }
+            OperationLimits limits = getOperationLimits(deviceId, client).get(TIMEOUT, TimeUnit.SECONDS);
+            Set<Long> unmonitored = subscription.sync(nodeMap, limits.monitoredItems);
+            if (unmonitored.size() > 0) {
+                log.debug("Opc Ua device({}) points({}) are not monitored, fall back to polling", deviceId, unmonitored);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Opc Ua device({}) subscribe failed, fall back to polling: {}", deviceId, e.getMessage());
+        }
+    }
+
+    /**
+     * 已通过 Monitored Item 推送的位号不再轮询，未开启订阅、还未订阅成功的设备轮询全部位号
+     */
+    @Override
+    public boolean poll(Long deviceId, Long pointId) {
+        if (!opcUaProperty.getSubscribe()) {
+            return true;
+        }
+        OpcUaSubscription subscription = subscriptionMap.get(deviceId);
+        return null == subscription || !subscription.monitored(pointId);
+    }
+
+    /**
+     * Monitored Item 数据变化回调
+     *
+     * @param deviceId  Device Id
+     * @param pointIds  Point Id Set
+     * @param dataValue DataValue
+     */
+    private void changed(Long deviceId, Set<Long> pointIds, DataValue dataValue) {
+        if (null == pointIds || pointIds.isEmpty()) {
+            return;
+        }
+        if (!dataValue.getStatusCode().isGood() || null == dataValue.getValue().getValue()) {
+            log.debug("Opc Ua device({}) points({}) bad value: {}", deviceId, pointIds, dataValue.getStatusCode());
+            return;
+        }
+
+        try {
+            String rawValue = dataValue.getValue().getValue().toString();
+            List<PointValue> pointValues = new ArrayList<>(pointIds.size());
+            for (Long pointId : pointIds) {
+                pointValues.add(new PointValue(deviceId, pointId, rawValue, driverService.convertValue(deviceId, pointId, rawValue)));
+            }
+            driverService.pointValueSender(pointValues);
+        } catch (Exception e) {
+            log.error("Opc Ua device({}) points({}) value convert failed: {}", deviceId, pointIds, e.getMessage());
+        }
+    }
+
+    /**
+     * Get Opc Ua Node Id
+     *
+     * @param pointInfo Point Info
+     * @return NodeId
+     */
+    private NodeId getNodeId(Map<String, AttributeInfo> pointInfo) {
+        int namespace = attribute(pointInfo, "namespace");
+        String tag = attribute(pointInfo, "tag");
+        return new NodeId(namespace, tag);
     }
 
     /**
@@ -122,38 +350,10 @@ public class CustomDriverServiceImpl implements CustomDriverService {
      * @param deviceId   Device Id
      * @param driverInfo Driver Info
      * @return OpcUaClient
-     * @throws UaException UaException
-     */
-    private OpcUaClient getOpcUaClient(Long deviceId, Map<String, AttributeInfo> driverInfo) throws UaException {
-        log.debug("Opc Ua Client Info: {}", JSON.toJSONString(driverInfo));
-        OpcUaClient opcUaClient = clientMap.get(deviceId);
-        if (null == opcUaClient) {
-            try {
-                opcUaClient = OpcUaClient.create(
-                        String.format("opc.tcp://%s:%s%s",
-                                attribute(driverInfo, "host"),
-                                attribute(driverInfo, "port"),
-                                attribute(driverInfo, "path")
-                        ),
-                        endpoints -> endpoints
-                                .stream()
-                                .findFirst(),
-                        configBuilder -> configBuilder
-                                .setApplicationName(LocalizedText.english("DC3 Opc Ua Client"))
-                                .setApplicationUri("urn:dc3:opc:ua:client")
-                                .setCertificate(keyLoader.getClientCertificate())
-                                .setKeyPair(keyLoader.getClientKeyPair())
-                                .setIdentityProvider(new AnonymousProvider())
-                                .setRequestTimeout(uint(5000))
-                                .build()
-                );
-                clientMap.put(deviceId, opcUaClient);
-            } catch (UaException e) {
-                clientMap.entrySet().removeIf(next -> next.getKey().equals(deviceId));
-                throw new UaException(e);
-            }
-        }
-        return opcUaClient;
+     * @throws Exception Exception
+     */
+    private OpcUaClient getOpcUaClient(Long deviceId, Map<String, AttributeInfo> driverInfo) throws Exception {
+        return driverConnectionService.getConnection(deviceId, driverInfo, clientFactory);
     }
 
     /**
@@ -165,29 +365,101 @@ public class CustomDriverServiceImpl implements CustomDriverService {
      * @return String Value
      * @throws Exception
      */
-    public String readItem(Long deviceId, Map<String, AttributeInfo> driverInfo, Map<String, AttributeInfo> pointInfo) {
-        CompletableFuture<String> value = new CompletableFuture<>();
+    public String readItem(Long deviceId, Map<String, AttributeInfo> driverInfo, Map<String, AttributeInfo> pointInfo) throws Exception {
+        NodeId nodeId = getNodeId(pointInfo);
+        DataValue dataValue = readValues(deviceId, driverInfo, Collections.singletonList(nodeId)).get(TIMEOUT, TimeUnit.SECONDS).get(0);
+        if (!dataValue.getStatusCode().isGood() || null == dataValue.getValue().getValue()) {
+            throw new UaException(dataValue.getStatusCode(), "Opc Ua Point(" + nodeId + ") read failed");
+        }
+        return dataValue.getValue().getValue().toString();
+    }
 
-        OpcUaClient client;
-        try {
-            int namespace = attribute(pointInfo, "namespace");
-            String tag = attribute(pointInfo, "tag");
-            NodeId nodeId = new NodeId(namespace, tag);
-
-            client = getOpcUaClient(deviceId, driverInfo);
-            client.connect().get();
-            client.readValue(0.0, TimestampsToReturn.Both, nodeId).thenAccept(dataValue -> {
-                try {
-                    value.complete(dataValue.getValue().getValue().toString());
-                } catch (Exception e) {
-                    log.error("Opc Ua Point(ns={};s={}) does not exist", namespace, tag);
-                }
+    /**
+     * 批量读取节点值，按服务端 MaxNodesPerRead 限制拆分为多个 ReadRequest 并发发送
+     *
+     * @param deviceId   Device Id
+     * @param driverInfo Driver Info
+     * @param nodeIds    NodeId Array
+     * @return DataValue Array，与 nodeIds 顺序一致
+     */
+    public CompletableFuture<List<DataValue>> readValues(Long deviceId, Map<String, AttributeInfo> driverInfo, List<NodeId> nodeIds) throws Exception {
+        OpcUaClient client = getOpcUaClient(deviceId, driverInfo);
+        return client.connect().thenCompose(c -> getOperationLimits(deviceId, client)).thenCompose(limits -> {
+            List<CompletableFuture<List<DataValue>>> futures = new ArrayList<>();
+            for (int i = 0; i < nodeIds.size(); i += limits.read) {
+                futures.add(client.readValues(0.0, TimestampsToReturn.Both, nodeIds.subList(i, Math.min(nodeIds.size(), i + limits.read))));
+            }
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+                List<DataValue> dataValues = new ArrayList<>(nodeIds.size());
+                futures.forEach(future -> dataValues.addAll(future.join()));
+                return dataValues;
             });
-            return value.get();
-        } catch (InterruptedException | ExecutionException | UaException e) {
-            log.error("Opc Ua Point Read Error: {}", e.getMessage(), e);
-            return null;
+        });
+    }
+
+    /**
+     * 批量写入节点值，按服务端 MaxNodesPerWrite 限制拆分为多个 WriteRequest 并发发送
+     *
+     * @param deviceId   Device Id
+     * @param driverInfo Driver Info
+     * @param nodeIds    NodeId Array
+     * @param values     DataValue Array，与 nodeIds 顺序一致
+     * @return StatusCode Array，与 nodeIds 顺序一致
+     */
+    public CompletableFuture<List<StatusCode>> writeValues(Long deviceId, Map<String, AttributeInfo> driverInfo, List<NodeId> nodeIds, List<DataValue> values) throws Exception {
+        OpcUaClient client = getOpcUaClient(deviceId, driverInfo);
+        return client.connect().thenCompose(c -> getOperationLimits(deviceId, client)).thenCompose(limits -> {
+            List<CompletableFuture<List<StatusCode>>> futures = new ArrayList<>();
+            for (int i = 0; i < nodeIds.size(); i += limits.write) {
+                int end = Math.min(nodeIds.size(), i + limits.write);
+                futures.add(client.writeValues(nodeIds.subList(i, end), values.subList(i, end)));
+            }
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+                List<StatusCode> statusCodes = new ArrayList<>(nodeIds.size());
+                futures.forEach(future -> statusCodes.addAll(future.join()));
+                return statusCodes;
+            });
+        });
+    }
+
+    /**
+     * 获取服务端单次读写的最大节点数量以及单次创建、删除的最大 Monitored Item 数量，首次连接后读取一次
+     *
+     * @param deviceId Device Id
+     * @param client   OpcUaClient
+     * @return OperationLimits
+     */
+    private CompletableFuture<OperationLimits> getOperationLimits(Long deviceId, OpcUaClient client) {
+        OperationLimits limits = operationLimitsMap.get(deviceId);
+        if (null != limits) {
+            return CompletableFuture.completedFuture(limits);
+        }
+
+        List<NodeId> nodeIds = Arrays.asList(Identifiers.Server_ServerCapabilities_OperationLimits_MaxNodesPerRead, Identifiers.Server_ServerCapabilities_OperationLimits_MaxNodesPerWrite,
+                Identifiers.Server_ServerCapabilities_OperationLimits_MaxMonitoredItemsPerCall);
+        return client.readValues(0.0, TimestampsToReturn.Neither, nodeIds).handle((dataValues, throwable) -> {
+            int read = opcUaProperty.getMaxNodesPerRead(), write = opcUaProperty.getMaxNodesPerWrite(), monitoredItems = opcUaProperty.getMaxMonitoredItemsPerCall();
+            if (null == throwable) {
+                read = limit(dataValues.get(0), read);
+                write = limit(dataValues.get(1), write);
+                monitoredItems = limit(dataValues.get(2), monitoredItems);
+            }
+            OperationLimits operationLimits = new OperationLimits(read, write, monitoredItems);
+            log.debug("Opc Ua device({}) max nodes per read: {}, per write: {}, max monitored items per call: {}", deviceId, read, write, monitoredItems);
+            operationLimitsMap.put(deviceId, operationLimits);
+            return operationLimits;
+        });
+    }
+
+    /**
+     * 服务端未设置（0）或读取失败时使用配置值，否则取两者较小值
+     */
+    private int limit(DataValue dataValue, int max) {
+        Object value = dataValue.getValue().getValue();
+        if (dataValue.getStatusCode().isGood() && value instanceof UInteger && ((UInteger) value).intValue() > 0) {
+            return Math.min(((UInteger) value).intValue(), max);
         }
+        return max;
     }
 
     /**
@@ -197,49 +469,66 @@ public class CustomDriverServiceImpl implements CustomDriverService {
      * @param driverInfo Driver Info
      * @param pointInfo  Point Info
      * @param values     Value Array
-     * @throws UaException          UaException
-     * @throws ExecutionException   ExecutionException
-     * @throws InterruptedException InterruptedException
+     * @return 是否写入成功
+     * @throws Exception Exception
      */
-    private void writeItem(Long deviceId, Map<String, AttributeInfo> driverInfo, Map<String, AttributeInfo> pointInfo, AttributeInfo values) {
-        OpcUaClient client;
-        try {
-            int namespace = attribute(pointInfo, "namespace");
-            String tag = attribute(pointInfo, "tag"), type = values.getType(), value = values.getValue();
-            NodeId nodeId = new NodeId(namespace, tag);
-
-            client = getOpcUaClient(deviceId, driverInfo);
-            client.connect().get();
-
-            switch (type.toLowerCase()) {
-                case Common.ValueType.INT:
-                    int intValue = value(type, value);
-                    client.writeValue(nodeId, new DataValue(new Variant(intValue)));
-                    break;
-                case Common.ValueType.LONG:
-                    long longValue = value(type, value);
-                    client.writeValue(nodeId, new DataValue(new Variant(longValue)));
-                    break;
-                case Common.ValueType.FLOAT:
-                    float floatValue = value(type, value);
-                    client.writeValue(nodeId, new DataValue(new Variant(floatValue)));
-                    break;
-                case Common.ValueType.DOUBLE:
-                    double doubleValue = value(type, value);
-                    client.writeValue(nodeId, new DataValue(new Variant(doubleValue)));
-                    break;
-                case Common.ValueType.BOOLEAN:
-                    boolean booleanValue = value(type, value);
-                    client.writeValue(nodeId, new DataValue(new Variant(booleanValue)));
-                    break;
-                case Common.ValueType.STRING:
-                    client.writeValue(nodeId, new DataValue(new Variant(value)));
-                    break;
-                default:
-                    break;
-            }
-        } catch (InterruptedException | ExecutionException | UaException e) {
-            log.error("Opc Ua Point Write Error: {}", e.getMessage(), e);
+    private boolean writeItem(Long deviceId, Map<String, AttributeInfo> driverInfo, Map<String, AttributeInfo> pointInfo, AttributeInfo values) throws Exception {
+        Variant variant = getVariant(values.getType(), values.getValue());
+        if (null == variant) {
+            return false;
+        }
+        NodeId nodeId = getNodeId(pointInfo);
+        StatusCode statusCode = writeValues(deviceId, driverInfo, Collections.singletonList(nodeId), Collections.singletonList(new DataValue(variant)))
+                .get(TIMEOUT, TimeUnit.SECONDS).get(0);
+        if (!statusCode.isGood()) {
+            log.error("Opc Ua Point({}) Write Error: {}", nodeId, statusCode);
+        }
+        return statusCode.isGood();
+    }
+
+    /**
+     * Get Opc Ua Variant
+     *
+     * @param type  Value Type
+     * @param value String Value
+     * @return Variant，不支持的类型返回 null
+     */
+    private Variant getVariant(String type, String value) {
+        switch (type.toLowerCase()) {
+            case Common.ValueType.INT:
+                int intValue = value(type, value);
+                return new Variant(intValue);
+            case Common.ValueType.LONG:
+                long longValue = value(type, value);
+                return new Variant(longValue);
+            case Common.ValueType.FLOAT:
+                float floatValue = value(type, value);
+                return new Variant(floatValue);
+            case Common.ValueType.DOUBLE:
+                double doubleValue = value(type, value);
+                return new Variant(doubleValue);
+            case Common.ValueType.BOOLEAN:
+                boolean booleanValue = value(type, value);
+                return new Variant(booleanValue);
+            case Common.ValueType.STRING:
+                return new Variant(value);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 服务端单次读写的最大节点数量，单次创建、删除的最大 Monitored Item 数量
+     */
+    private static class OperationLimits {
+        private final int read;
+        private final int write;
+        private final int monitoredItems;
+
+        private OperationLimits(int read, int write, int monitoredItems) {
+            this.read = Math.max(1, read);
+            this.write = Math.max(1, write);
+            this.monitoredItems = Math.max(1, monitoredItems);
         }
     }
 
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dc3.driver.service.opc;
+
+import com.dc3.driver.bean.OpcUaProperty;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaMonitoredItem;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscription;
+import org.eclipse.milo.opcua.stack.core.AttributeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExtensionObject;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.DataChangeTrigger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.DeadbandType;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.MonitoringMode;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.eclipse.milo.opcua.stack.core.types.structured.DataChangeFilter;
+import org.eclipse.milo.opcua.stack.core.types.structured.MonitoredItemCreateRequest;
+import org.eclipse.milo.opcua.stack.core.types.structured.MonitoringParameters;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+/**
+ * 单个设备的 Opc Ua 订阅
+ * <p>
+ * 设备的每个节点对应一个 Monitored Item，数据变化时回调该节点对应的位号；
+ * 创建失败的节点由读取调度轮询读取
+ *
+ * @author pnoker
+ */
+@Slf4j
+public class OpcUaSubscription {
+
+    /**
+     * 订阅相关请求超时时间，秒
+     */
+    private static final int TIMEOUT = 10;
+
+    @Getter
+    private final OpcUaClient client;
+    private final OpcUaProperty opcUaProperty;
+    private final BiConsumer<Set<Long>, DataValue> consumer;
+
+    @Getter
+    private final UaSubscription subscription;
+
+    /**
+     * nodeId,monitoredItem
+     */
+    private final Map<NodeId, UaMonitoredItem> itemMap = new ConcurrentHashMap<>(64);
+
+    /**
+     * nodeId,pointIds
+     */
+    private final Map<NodeId, Set<Long>> pointIdMap = new ConcurrentHashMap<>(64);
+
+    /**
+     * 上次同步后已订阅的位号
+     */
+    private volatile Set<Long> monitored = Collections.emptySet();
+
+    public OpcUaSubscription(OpcUaClient client, OpcUaProperty opcUaProperty, BiConsumer<Set<Long>, DataValue> consumer) throws InterruptedException, ExecutionException, TimeoutException {
+        this.client = client;
+        this.opcUaProperty = opcUaProperty;
+        this.consumer = consumer;
+        this.subscription = client.getSubscriptionManager().createSubscription(opcUaProperty.getPublishingInterval()).get(TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 同步 Monitored Item，新节点批量创建，删除的节点批量移除，每个请求的 Monitored Item 数量不超过 maxItemsPerCall
+     *
+     * @param nodeMap         nodeId,pointIds
+     * @param maxItemsPerCall 服务端 MaxMonitoredItemsPerCall
+     * @return 未能订阅、需要轮询读取的位号
+     */
+    public Set<Long> sync(Map<NodeId, Set<Long>> nodeMap, int maxItemsPerCall) throws InterruptedException, ExecutionException, TimeoutException {
+        pointIdMap.putAll(nodeMap);
+
+        List<UaMonitoredItem> removed = new ArrayList<>();
+        Iterator<Map.Entry<NodeId, UaMonitoredItem>> iterator = itemMap.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<NodeId, UaMonitoredItem> entry = iterator.next();
+            if (!nodeMap.containsKey(entry.getKey())) {
+                removed.add(entry.getValue());
+                iterator.remove();
+            }
+        }
+        pointIdMap.keySet().retainAll(nodeMap.keySet());
+        for (int i = 0; i < removed.size(); i += maxItemsPerCall) {
+            subscription.deleteMonitoredItems(removed.subList(i, Math.min(removed.size(), i + maxItemsPerCall))).get(TIMEOUT, TimeUnit.SECONDS);
+        }
+
+        List<MonitoredItemCreateRequest> requests = new ArrayList<>();
+        for (NodeId nodeId : nodeMap.keySet()) {
+            if (!itemMap.containsKey(nodeId)) {
+                requests.add(request(nodeId));
+            }
+        }
+        // all chunks are sent asynchronously, a failed chunk stays unmonitored and is created again on the next sync
+        List<CompletableFuture<List<UaMonitoredItem>>> futures = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i += maxItemsPerCall) {
+            // the value consumer is set while creating, so no notification is lost
+            futures.add(subscription.createMonitoredItems(TimestampsToReturn.Both, requests.subList(i, Math.min(requests.size(), i + maxItemsPerCall)),
+                    (item, index) -> item.setValueConsumer(value -> consumer.accept(pointIdMap.get(item.getReadValueId().getNodeId()), value))
+            ));
+        }
+        for (CompletableFuture<List<UaMonitoredItem>> future : futures) {
+            try {
+                for (UaMonitoredItem item : future.get(TIMEOUT, TimeUnit.SECONDS)) {
+                    if (item.getStatusCode().isGood()) {
+                        itemMap.put(item.getReadValueId().getNodeId(), item);
+                    } else {
+                        log.warn("Opc Ua create monitored item {} failed: {}", item.getReadValueId().getNodeId(), item.getStatusCode());
+                    }
+                }
+            } catch (ExecutionException | TimeoutException e) {
+                log.warn("Opc Ua create monitored items failed: {}", e.getMessage());
+            }
+        }
+
+        Set<Long> monitored = new HashSet<>(), unmonitored = new HashSet<>();
+        nodeMap.forEach((nodeId, pointIds) -> (itemMap.containsKey(nodeId) ? monitored : unmonitored).addAll(pointIds));
+        this.monitored = monitored;
+        return unmonitored;
+    }
+
+    /**
+     * 位号是否已经通过 Monitored Item 推送
+     *
+     * @param pointId Point Id
+     * @return boolean
+     */
+    public boolean monitored(Long pointId) {
+        return monitored.contains(pointId);
+    }
+
+    /**
+     * 删除订阅
+     */
+    public void delete() {
+        monitored = Collections.emptySet();
+        itemMap.clear();
+        pointIdMap.clear();
+        client.getSubscriptionManager().deleteSubscription(subscription.getSubscriptionId());
+    }
+
+    private MonitoredItemCreateRequest request(NodeId nodeId) {
+        ReadValueId readValueId = new ReadValueId(nodeId, AttributeId.Value.uid(), null, QualifiedName.NULL_VALUE);
+
+        ExtensionObject filter = null;
+        if (opcUaProperty.getDeadbandType() == DeadbandType.Absolute.getValue() || opcUaProperty.getDeadbandType() == DeadbandType.Percent.getValue()) {
+            filter = ExtensionObject.encode(client.getSerializationContext(),
+                    new DataChangeFilter(DataChangeTrigger.StatusValue, uint(opcUaProperty.getDeadbandType()), opcUaProperty.getDeadbandValue()));
+        }
+        MonitoringParameters parameters = new MonitoringParameters(
+                subscription.nextClientHandle(),
+                opcUaProperty.getSamplingInterval(),
+                filter,
+                uint(opcUaProperty.getQueueSize()),
+                true
+        );
+        return new MonitoredItemCreateRequest(readValueId, MonitoringMode.Reporting, parameters);
+    }
+
+}
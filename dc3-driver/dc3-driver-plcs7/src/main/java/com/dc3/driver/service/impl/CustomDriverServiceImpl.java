@@ -18,12 +18,13 @@ package com.dc3.driver.service.impl;
 
 import com.alibaba.fastjson.JSON;
 import com.dc3.common.constant.Common;
-import com.dc3.common.exception.ServiceException;
 import com.dc3.common.model.Device;
 import com.dc3.common.model.Point;
 import com.dc3.common.sdk.bean.AttributeInfo;
 import com.dc3.common.sdk.bean.DriverContext;
 import com.dc3.common.sdk.service.CustomDriverService;
+import com.dc3.common.sdk.service.DriverConnectionFactory;
+import com.dc3.common.sdk.service.DriverConnectionService;
 import com.dc3.common.sdk.service.DriverService;
 import com.dc3.driver.bean.Plcs7PointVariable;
 import com.github.s7connector.api.S7Connector;
@@ -34,8 +35,10 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import static com.dc3.common.sdk.util.DriverUtils.attribute;
 import static com.dc3.common.sdk.util.DriverUtils.value;
@@ -51,15 +54,32 @@ public class CustomDriverServiceImpl implements CustomDriverService {
     private DriverContext driverContext;
     @Resource
     private DriverService driverService;
+    @Resource
+    private DriverConnectionService driverConnectionService;
 
     /**
-     * Plc Connector Map
+     * Plc Connector Factory
      */
-    private volatile Map<Long, S7Connector> s7ConnectorMap;
+    private final DriverConnectionFactory<S7Connector> s7ConnectorFactory = new DriverConnectionFactory<S7Connector>() {
+        @Override
+        public S7Connector create(Long deviceId, Map<String, AttributeInfo> driverInfo) {
+            log.debug("Plc S7 Connection Info {}", JSON.toJSONString(driverInfo));
+            return S7ConnectorFactory.buildTCPConnector().withHost(attribute(driverInfo, "host")).withPort(attribute(driverInfo, "port")).build();
+        }
+
+        @Override
+        public boolean check(S7Connector s7Connector) {
+            return s7Connector.isConnected();
+        }
+
+        @Override
+        public void close(S7Connector s7Connector) throws Exception {
+            s7Connector.close();
+        }
+    };
 
     @Override
     public void initial() {
-        s7ConnectorMap = new ConcurrentHashMap<>(16);
     }
 
     @Override
@@ -70,6 +90,32 @@ public class CustomDriverServiceImpl implements CustomDriverService {
         return String.valueOf(serializer.dispense(plcs7PointVariable));
     }
 
+    @Override
+    public Map<Long, String> read(Map<String, AttributeInfo> driverInfo, Map<Long, Map<String, AttributeInfo>> pointInfoMap, Device device, Map<Long, Point> pointMap) throws Exception {
+        log.debug("Plc S7 Read, device: {}, points: {}", JSON.toJSONString(device), pointMap.keySet());
+        S7Serializer serializer = getS7Serializer(device.getId(), driverInfo);
+        List<Long> pointIds = new ArrayList<>(pointMap.keySet());
+        List<Plcs7PointVariable> plcs7PointVariables = new ArrayList<>(pointIds.size());
+        for (Long pointId : pointIds) {
+            plcs7PointVariables.add(getPointVariable(pointInfoMap.get(pointId), pointMap.get(pointId).getType()));
+        }
+
+        // all points are decoded from the multi-variable read responses
+        List<Object> values;
+        try {
+            values = serializer.dispense(plcs7PointVariables);
+        } catch (Exception e) {
+            // one bad address fails the whole request, read the points one by one instead
+            log.debug("Plc S7 multi-variable read failed, read points separately: {}", e.getMessage());
+            return CustomDriverService.super.read(driverInfo, pointInfoMap, device, pointMap);
+        }
+        Map<Long, String> valueMap = new HashMap<>(pointIds.size() * 4 / 3 + 1);
+        for (int i = 0; i < pointIds.size(); i++) {
+            valueMap.put(pointIds.get(i), String.valueOf(values.get(i)));
+        }
+        return valueMap;
+    }
+
     @Override
     public Boolean write(Map<String, AttributeInfo> driverInfo, Map<String, AttributeInfo> pointInfo, Device device, AttributeInfo value) throws Exception {
         log.debug("Opc Da Read, device: {}, value: {}", JSON.toJSONString(device), JSON.toJSONString(value));
@@ -98,27 +144,21 @@ public class CustomDriverServiceImpl implements CustomDriverService {
 
     /**
      * 获取 plcs7 serializer
-     * 先从缓存中取，没有就新建
+     * 连接由 DriverConnectionService 管理，没有就新建，传输已失败的连接立即重建
      *
      * @param deviceId
      * @param driverInfo
      * @return
+     * @throws Exception Exception
      */
-    private S7Serializer getS7Serializer(Long deviceId, Map<String, AttributeInfo> driverInfo) {
-        S7Connector s7Connector = s7ConnectorMap.get(deviceId);
-        if (null == s7Connector) {
-            log.debug("Plc S7 Connection Info {}", JSON.toJSONString(driverInfo));
-            try {
-                s7Connector = S7ConnectorFactory.buildTCPConnector().withHost(attribute(driverInfo, "host")).withPort(attribute(driverInfo, "port")).build();
-            } catch (Exception e) {
-                throw new ServiceException("new s7connector fail" + e.getMessage());
-            }
-        }
-        if (null != s7Connector) {
-            s7ConnectorMap.put(deviceId, s7Connector);
-            return S7SerializerFactory.buildSerializer(s7Connector);
+    private S7Serializer getS7Serializer(Long deviceId, Map<String, AttributeInfo> driverInfo) throws Exception {
+        S7Connector s7Connector = driverConnectionService.getConnection(deviceId, driverInfo, s7ConnectorFactory);
+        if (!s7Connector.isConnected()) {
+            // the socket failed since the last health check, don't wait for it
+            driverConnectionService.invalidate(deviceId);
+            s7Connector = driverConnectionService.getConnection(deviceId, driverInfo, s7ConnectorFactory);
         }
-        throw new ServiceException("new s7connector fail");
+        return S7SerializerFactory.buildSerializer(s7Connector);
     }
 
     /**
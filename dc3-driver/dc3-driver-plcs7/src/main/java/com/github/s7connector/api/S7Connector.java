@@ -16,6 +16,7 @@ limitations under the License.
 package com.github.s7connector.api;
 
 import java.io.Closeable;
+import java.util.List;
 
 /**
  * @author Thomas Rudin
@@ -32,6 +33,15 @@ public interface S7Connector extends Closeable {
      */
     public byte[] read(DaveArea area, int areaNumber, int bytes, int offset);
 
+    /**
+     * Reads several areas with as few exchanges as the negotiated PDU size allows,
+     * overlapping or adjacent ranges of the same area are merged into one variable
+     *
+     * @param areas the areas to read
+     * @return the bytes of each area, in the order of the given areas
+     */
+    public List<byte[]> read(List<S7ReadArea> areas);
+
     /**
      * Writes an area
      *
@@ -42,4 +52,12 @@ public interface S7Connector extends Closeable {
      */
     public void write(DaveArea area, int areaNumber, int offset, byte[] buffer);
 
+    /**
+     * Whether the transport is still usable, false once the socket failed or
+     * an exchange got no answer, the connector has to be rebuilt then
+     *
+     * @return true if requests can still be exchanged
+     */
+    public boolean isConnected();
+
 }
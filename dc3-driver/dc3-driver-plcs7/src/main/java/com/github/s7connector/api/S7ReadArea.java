@@ -0,0 +1,60 @@
+/*
+Copyright 2016 S7connector members (github.com/s7connector)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.github.s7connector.api;
+
+/**
+ * One area of a multi-variable read request
+ *
+ * @author pnoker
+ */
+public final class S7ReadArea {
+
+    private final DaveArea area;
+    private final int areaNumber;
+    private final int bytes;
+    private final int offset;
+
+    /**
+     * Creates a new read area
+     *
+     * @param area       the area
+     * @param areaNumber the area number, the db number for {@link DaveArea#DB}
+     * @param bytes      the number of bytes to read
+     * @param offset     the byte offset
+     */
+    public S7ReadArea(final DaveArea area, final int areaNumber, final int bytes, final int offset) {
+        this.area = area;
+        this.areaNumber = areaNumber;
+        this.bytes = bytes;
+        this.offset = offset;
+    }
+
+    public DaveArea getArea() {
+        return this.area;
+    }
+
+    public int getAreaNumber() {
+        return this.areaNumber;
+    }
+
+    public int getBytes() {
+        return this.bytes;
+    }
+
+    public int getOffset() {
+        return this.offset;
+    }
+}
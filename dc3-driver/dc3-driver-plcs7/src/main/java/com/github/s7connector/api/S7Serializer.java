@@ -18,6 +18,8 @@ package com.github.s7connector.api;
 import com.dc3.driver.bean.Plcs7PointVariable;
 import com.github.s7connector.exception.S7Exception;
 
+import java.util.List;
+
 /**
  * @author Thomas Rudin
  */
@@ -58,6 +60,15 @@ public interface S7Serializer {
      */
     Object dispense(Plcs7PointVariable plcs7PointVariable) throws S7Exception;
 
+    /**
+     * Dispenses several points with multi-variable read requests.
+     *
+     * @param plcs7PointVariables the points
+     * @return the values, in the order of the given points
+     * @throws S7Exception the s7 exception
+     */
+    List<Object> dispense(List<Plcs7PointVariable> plcs7PointVariables) throws S7Exception;
+
     /**
      * Stores an Object to the Datablock.
      *
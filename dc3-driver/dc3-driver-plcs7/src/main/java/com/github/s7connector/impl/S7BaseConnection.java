@@ -17,8 +17,12 @@ package com.github.s7connector.impl;
 
 import com.github.s7connector.api.DaveArea;
 import com.github.s7connector.api.S7Connector;
-import com.github.s7connector.impl.nodave.Nodave;
-import com.github.s7connector.impl.nodave.S7Connection;
+import com.github.s7connector.api.S7ReadArea;
+import com.github.s7connector.impl.nodave.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 
 /**
  * Base-Connection for the S7-PLC Connection Libnodave:
@@ -33,6 +37,28 @@ public abstract class S7BaseConnection implements S7Connector {
      */
     private static final int MAX_SIZE = 96;
 
+    /**
+     * PDU size used when the negotiation did not report one, the minimum of all S7 CPUs.
+     */
+    private static final int DEFAULT_PDU_SIZE = 240;
+
+    /**
+     * Max variables in one read request.
+     */
+    private static final int MAX_READ_ITEMS = 20;
+
+    /**
+     * Request: 10 bytes header, 2 bytes parameter head, 12 bytes per variable.
+     */
+    private static final int READ_REQUEST_HEAD = 12;
+    private static final int READ_REQUEST_ITEM = 12;
+
+    /**
+     * Response: 12 bytes header, 2 bytes parameter, 4 bytes head per variable plus data padded to even length.
+     */
+    private static final int READ_RESPONSE_HEAD = 14;
+    private static final int READ_RESPONSE_ITEM = 4;
+
     /**
      * The Constant PROPERTY_AREA.
      */
@@ -115,6 +141,137 @@ public abstract class S7BaseConnection implements S7Connector {
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized List<byte[]> read(final List<S7ReadArea> areas) {
+        final int pduSize = this.dc.maxPDUlength > 0 ? this.dc.maxPDUlength : DEFAULT_PDU_SIZE;
+        final int maxItemBytes = pduSize - READ_RESPONSE_HEAD - READ_RESPONSE_ITEM;
+
+        // merge overlapping and adjacent ranges of the same area
+        final List<ReadRange> ranges = new ArrayList<>();
+        final List<ReadRange> areaRanges = new ArrayList<>(areas.size());
+        final List<Integer> order = new ArrayList<>(areas.size());
+        for (int i = 0; i < areas.size(); i++) {
+            order.add(i);
+            areaRanges.add(null);
+        }
+        order.sort(Comparator.<Integer>comparingInt(i -> areas.get(i).getArea().ordinal())
+                .thenComparingInt(i -> areas.get(i).getAreaNumber())
+                .thenComparingInt(i -> areas.get(i).getOffset()));
+        ReadRange range = null;
+        for (final int i : order) {
+            final S7ReadArea area = areas.get(i);
+            final int end = area.getOffset() + area.getBytes();
+            if (range == null || range.area != area.getArea() || range.areaNumber != area.getAreaNumber()
+                    || area.getOffset() > range.offset + range.bytes
+                    || Math.max(end, range.offset + range.bytes) - range.offset > maxItemBytes) {
+                range = new ReadRange(area.getArea(), area.getAreaNumber(), area.getOffset());
+                ranges.add(range);
+            }
+            range.bytes = Math.max(range.bytes, end - range.offset);
+            areaRanges.set(i, range);
+        }
+
+        // pack as many ranges as fit into one request and response PDU
+        final List<ReadRange> batch = new ArrayList<>();
+        int requestSize = READ_REQUEST_HEAD, responseSize = READ_RESPONSE_HEAD;
+        for (final ReadRange readRange : ranges) {
+            if (readRange.bytes > maxItemBytes) {
+                this.readSplit(readRange, maxItemBytes);
+                continue;
+            }
+            final int itemResponse = READ_RESPONSE_ITEM + readRange.bytes + (readRange.bytes % 2);
+            if (!batch.isEmpty() && (batch.size() >= MAX_READ_ITEMS || requestSize + READ_REQUEST_ITEM > pduSize || responseSize + itemResponse > pduSize)) {
+                this.readBatch(batch, maxItemBytes);
+                batch.clear();
+                requestSize = READ_REQUEST_HEAD;
+                responseSize = READ_RESPONSE_HEAD;
+            }
+            batch.add(readRange);
+            requestSize += READ_REQUEST_ITEM;
+            responseSize += itemResponse;
+        }
+        if (!batch.isEmpty()) {
+            this.readBatch(batch, maxItemBytes);
+        }
+
+        final List<byte[]> result = new ArrayList<>(areas.size());
+        for (int i = 0; i < areas.size(); i++) {
+            final S7ReadArea area = areas.get(i);
+            final ReadRange readRange = areaRanges.get(i);
+            final byte[] buffer = new byte[area.getBytes()];
+            System.arraycopy(readRange.data, area.getOffset() - readRange.offset, buffer, 0, buffer.length);
+            result.add(buffer);
+        }
+        return result;
+    }
+
+    /**
+     * Reads the ranges with one multi-variable request
+     *
+     * @param batch        the ranges, fitting into one PDU
+     * @param maxItemBytes the max bytes of one variable
+     */
+    private void readBatch(final List<ReadRange> batch, final int maxItemBytes) {
+        if (batch.size() == 1) {
+            this.readSplit(batch.get(0), maxItemBytes);
+            return;
+        }
+
+        final PDU p = new PDU(this.dc.msgOut, this.dc.PDUstartOut);
+        p.initReadRequest();
+        for (final ReadRange readRange : batch) {
+            p.addVarToReadRequest(readRange.area, readRange.areaNumber, readRange.offset, readRange.bytes);
+        }
+        final ResultSet rs = this.dc.execReadRequest(p);
+        checkResult(rs.getErrorState());
+        if (rs.results.length < batch.size()) {
+            throw new IllegalArgumentException("Result: expected " + batch.size() + " variables, got " + rs.results.length);
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            final Result r = rs.results[i];
+            checkResult(r.error);
+            final ReadRange readRange = batch.get(i);
+            readRange.data = new byte[readRange.bytes];
+            System.arraycopy(this.dc.msgIn, r.bufferStart, readRange.data, 0, Math.min(readRange.bytes, r.length));
+        }
+    }
+
+    /**
+     * Reads one range with single-variable requests of at most maxItemBytes each
+     *
+     * @param readRange    the range
+     * @param maxItemBytes the max bytes of one variable
+     */
+    private void readSplit(final ReadRange readRange, final int maxItemBytes) {
+        readRange.data = new byte[readRange.bytes];
+        for (int done = 0; done < readRange.bytes; done += maxItemBytes) {
+            final int bytes = Math.min(maxItemBytes, readRange.bytes - done);
+            final byte[] buffer = new byte[bytes];
+            checkResult(this.dc.readBytes(readRange.area, readRange.areaNumber, readRange.offset + done, bytes, buffer));
+            System.arraycopy(buffer, 0, readRange.data, done, bytes);
+        }
+    }
+
+    /**
+     * A merged range of one read variable
+     */
+    private static final class ReadRange {
+        private final DaveArea area;
+        private final int areaNumber;
+        private final int offset;
+        private int bytes;
+        private byte[] data;
+
+        private ReadRange(final DaveArea area, final int areaNumber, final int offset) {
+            this.area = area;
+            this.areaNumber = areaNumber;
+            this.offset = offset;
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
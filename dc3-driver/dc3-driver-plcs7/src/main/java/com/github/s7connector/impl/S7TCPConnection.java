@@ -98,6 +98,14 @@ public final class S7TCPConnection extends S7BaseConnection {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isConnected() {
+        return null != this.socket && this.socket.isConnected() && !this.socket.isClosed() && null != this.di && !this.di.isFailed();
+    }
+
     /**
      * {@inheritDoc}
      */
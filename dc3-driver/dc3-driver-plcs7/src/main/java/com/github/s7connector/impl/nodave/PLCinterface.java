@@ -35,6 +35,11 @@ public final class PLCinterface {
     int protocol; // The kind of transport used on this interface.
     int wp, rp;
 
+    /**
+     * Set once the streams failed or a request got no answer
+     */
+    volatile boolean failed;
+
     public PLCinterface(final OutputStream out, final InputStream in, final String name, final int localMPI,
                         final int protocol) {
         this.init(out, in, name, localMPI, protocol);
@@ -72,6 +77,7 @@ public final class PLCinterface {
             return res;
         } catch (final IOException e) {
             e.printStackTrace();
+            this.failed = true;
             return 0;
         }
     }
@@ -81,7 +87,12 @@ public final class PLCinterface {
             this.out.write(b, start, len);
         } catch (final IOException e) {
             System.err.println("Interface.write: " + e);
+            this.failed = true;
         }
     }
 
+    public boolean isFailed() {
+        return this.failed;
+    }
+
 }
@@ -78,7 +78,24 @@ public abstract class S7Connection {
     public ResultSet execReadRequest(final PDU p) {
         PDU p2;
         int errorState;
+        try {
+            this.semaphore.acquire();
+        } catch (final InterruptedException e) {
+            // no permit was taken, so nothing to release
+            Thread.currentThread().interrupt();
+            final ResultSet rs = new ResultSet();
+            rs.results = new Result[0];
+            rs.setErrorState(Nodave.RESULT_UNKNOWN_ERROR);
+            return rs;
+        }
         errorState = this.exchange(p);
+        if (errorState != Nodave.RESULT_OK) {
+            final ResultSet rs = new ResultSet();
+            rs.results = new Result[0];
+            rs.setErrorState(errorState);
+            this.semaphore.release();
+            return rs;
+        }
 
         p2 = new PDU(this.msgIn, this.PDUstartIn);
         p2.setupReceivedPDU();
@@ -113,6 +130,7 @@ public abstract class S7Connection {
                     // System.arraycopy(p2.mem, pos + 4, r.data, 0, len);
                     // Nodave.dump("Result " + i + ":", r.data, 0, len);
                     r.bufferStart = pos + 4;
+                    r.length = len;
                     pos += len;
                     if ((len % 2) == 1) {
                         pos++;
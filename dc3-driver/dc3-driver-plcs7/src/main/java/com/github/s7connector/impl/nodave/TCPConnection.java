@@ -97,7 +97,11 @@ public final class TCPConnection extends S7Connection {
         this.msgOut[5] = (byte) 0xf0;
         this.msgOut[6] = (byte) 0x80;
         this.sendISOPacket(3 + p1.hlen + p1.plen + p1.dlen);
-        this.readISOPacket();
+        if (this.readISOPacket() == 0) {
+            // a late answer would be taken for the next request, the connection is out of sync
+            this.iface.failed = true;
+            return Nodave.RESULT_TIMEOUT;
+        }
         return 0;
     }
 
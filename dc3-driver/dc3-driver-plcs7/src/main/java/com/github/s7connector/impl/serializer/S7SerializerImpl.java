@@ -18,6 +18,7 @@ package com.github.s7connector.impl.serializer;
 import com.dc3.driver.bean.Plcs7PointVariable;
 import com.github.s7connector.api.DaveArea;
 import com.github.s7connector.api.S7Connector;
+import com.github.s7connector.api.S7ReadArea;
 import com.github.s7connector.api.S7Serializer;
 import com.github.s7connector.exception.S7Exception;
 import com.github.s7connector.impl.serializer.parser.BeanEntry;
@@ -26,6 +27,8 @@ import com.github.s7connector.impl.serializer.parser.BeanParser;
 import lombok.extern.slf4j.Slf4j;
 
 import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * The Class S7Serializer is responsible for serializing S7 TCP Connection
@@ -177,12 +180,35 @@ public final class S7SerializerImpl implements S7Serializer {
     public Object dispense(Plcs7PointVariable plcs7PointVariable) throws S7Exception {
         try {
             final byte[] buffer = this.connector.read(DaveArea.DB, plcs7PointVariable.getDbNum(), plcs7PointVariable.getSize(), plcs7PointVariable.getByteOffset());
-            return extractBytes(plcs7PointVariable, buffer, 0);
+            // the buffer starts at the byte offset of the point
+            return extractBytes(plcs7PointVariable, buffer, -plcs7PointVariable.getByteOffset());
         } catch (final Exception e) {
             throw new S7Exception("dispense dbnum(" + plcs7PointVariable.getDbNum() + ") byteoffset(" + plcs7PointVariable.getByteOffset() + ") blocksize(" + plcs7PointVariable.getSize() + ")", e);
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Object> dispense(List<Plcs7PointVariable> plcs7PointVariables) throws S7Exception {
+        final List<S7ReadArea> areas = new ArrayList<>(plcs7PointVariables.size());
+        for (final Plcs7PointVariable plcs7PointVariable : plcs7PointVariables) {
+            areas.add(new S7ReadArea(DaveArea.DB, plcs7PointVariable.getDbNum(), plcs7PointVariable.getSize(), plcs7PointVariable.getByteOffset()));
+        }
+        try {
+            final List<byte[]> buffers = this.connector.read(areas);
+            final List<Object> values = new ArrayList<>(plcs7PointVariables.size());
+            for (int i = 0; i < plcs7PointVariables.size(); i++) {
+                final Plcs7PointVariable plcs7PointVariable = plcs7PointVariables.get(i);
+                values.add(extractBytes(plcs7PointVariable, buffers.get(i), -plcs7PointVariable.getByteOffset()));
+            }
+            return values;
+        } catch (final Exception e) {
+            throw new S7Exception("dispense " + plcs7PointVariables.size() + " points", e);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018-2020 Pnoker. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dc3.driver.benchmark;
+
+import com.github.s7connector.api.DaveArea;
+import com.github.s7connector.api.S7ReadArea;
+import com.github.s7connector.impl.S7ConnectionStub;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 逐点读取与多变量读取的对比，使用内存中的 S7 协议桩模拟 PLC，默认不执行
+ * <p>
+ * mvn test -Dtest=S7ReadBenchmarkTest -Ddc3.benchmark.s7=true
+ * <p>
+ * 每次交互按 dc3.benchmark.exchangeMicros 模拟一次 PLC 往返，位号分布在 3 个 DB 中，
+ * 每 8 个位号之间空出 16 个字节，输出两种方式的交互次数和耗时
+ *
+ * @author pnoker
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "dc3.benchmark.s7", matches = ".+")
+class S7ReadBenchmarkTest {
+
+    private static final int POINTS = Integer.getInteger("dc3.benchmark.points", 200);
+    private static final int ROUNDS = Integer.getInteger("dc3.benchmark.rounds", 10);
+    private static final int PDU_SIZE = Integer.getInteger("dc3.benchmark.pduSize", 240);
+    private static final long EXCHANGE_MICROS = Long.getLong("dc3.benchmark.exchangeMicros", 2000L);
+
+    @Test
+    void compareMultiVariableRead() {
+        S7ConnectionStub stub = new S7ConnectionStub(PDU_SIZE, EXCHANGE_MICROS);
+        S7ConnectionStub.Connector connector = new S7ConnectionStub.Connector(stub);
+
+        List<S7ReadArea> areas = new ArrayList<>(POINTS);
+        int[] offsets = new int[3];
+        for (int i = 0; i < POINTS; i++) {
+            int db = i % 3;
+            // bool, int, real and string points
+            int bytes = new int[]{1, 2, 4, 20}[i % 4];
+            areas.add(new S7ReadArea(DaveArea.DB, db + 1, bytes, offsets[db]));
+            offsets[db] += bytes + (i % 8 == 7 ? 16 : 0);
+            stub.area(DaveArea.DB, db + 1);
+        }
+
+        List<byte[]> expected = new ArrayList<>(POINTS);
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            expected.clear();
+            for (S7ReadArea area : areas) {
+                expected.add(connector.read(area.getArea(), area.getAreaNumber(), area.getBytes(), area.getOffset()));
+            }
+        }
+        double perPoint = (System.nanoTime() - start) / 1e6 / ROUNDS;
+        int perPointExchanges = stub.exchanges() / ROUNDS;
+
+        stub.reset();
+        List<byte[]> values = null;
+        start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            values = connector.read(areas);
+        }
+        double multi = (System.nanoTime() - start) / 1e6 / ROUNDS;
+        int multiExchanges = stub.exchanges() / ROUNDS;
+
+        for (int i = 0; i < POINTS; i++) {
+            assertArrayEquals(expected.get(i), values.get(i));
+        }
+        log.info("S7 read, points: {}, pdu: {}, exchange: {}us, per point: {} exchanges {}ms, multi-variable: {} exchanges {}ms, speedup: {}",
+                POINTS, PDU_SIZE, EXCHANGE_MICROS, perPointExchanges, String.format("%.2f", perPoint), multiExchanges, String.format("%.2f", multi), String.format("%.1f", perPoint / multi));
+        assertTrue(multiExchanges < perPointExchanges);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+Copyright 2016 S7connector members (github.com/s7connector)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.github.s7connector.impl;
+
+import com.github.s7connector.api.DaveArea;
+import com.github.s7connector.api.S7ReadArea;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Multi-variable reads against the S7 protocol stub
+ *
+ * @author pnoker
+ */
+class S7BaseConnectionTest {
+
+    private static final int PDU_SIZE = 240;
+
+    private final S7ConnectionStub stub = new S7ConnectionStub(PDU_SIZE, 0);
+    private final S7ConnectionStub.Connector connector = new S7ConnectionStub.Connector(stub);
+
+    private byte[] expected(final S7ReadArea area) {
+        final byte[] memory = this.stub.area(area.getArea(), area.getAreaNumber());
+        return Arrays.copyOfRange(memory, area.getOffset(), area.getOffset() + area.getBytes());
+    }
+
+    private void assertRead(final List<S7ReadArea> areas) {
+        for (final S7ReadArea area : areas) {
+            this.stub.area(area.getArea(), area.getAreaNumber());
+        }
+        final List<byte[]> result = this.connector.read(areas);
+        assertEquals(areas.size(), result.size());
+        for (int i = 0; i < areas.size(); i++) {
+            assertArrayEquals(expected(areas.get(i)), result.get(i));
+        }
+        for (int i = 0; i < this.stub.exchanges(); i++) {
+            assertTrue(this.stub.requestSizes.get(i) <= PDU_SIZE);
+            assertTrue(this.stub.responseSizes.get(i) <= PDU_SIZE);
+        }
+    }
+
+    @Test
+    void resultsFollowTheRequestOrder() {
+        final List<S7ReadArea> areas = Arrays.asList(
+                new S7ReadArea(DaveArea.DB, 2, 4, 100),
+                new S7ReadArea(DaveArea.FLAGS, 0, 1, 3),
+                new S7ReadArea(DaveArea.DB, 1, 2, 10),
+                new S7ReadArea(DaveArea.INPUTS, 0, 2, 0),
+                new S7ReadArea(DaveArea.DB, 1, 4, 0),
+                new S7ReadArea(DaveArea.OUTPUTS, 0, 1, 7));
+        assertRead(areas);
+        // all six ranges fit into one request
+        assertEquals(1, this.stub.exchanges());
+        assertEquals(6, (int) this.stub.itemCounts.get(0));
+    }
+
+    @Test
+    void adjacentAndOverlappingRangesAreMerged() {
+        final List<S7ReadArea> areas = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            areas.add(new S7ReadArea(DaveArea.DB, 1, 2, i * 2));
+        }
+        // overlapping and duplicated points
+        areas.add(new S7ReadArea(DaveArea.DB, 1, 4, 3));
+        areas.add(new S7ReadArea(DaveArea.DB, 1, 2, 10));
+        Collections.shuffle(areas);
+        assertRead(areas);
+        assertEquals(1, this.stub.exchanges());
+        assertEquals(1, (int) this.stub.itemCounts.get(0));
+    }
+
+    @Test
+    void oddLengthItemsAreDecodedAfterPadding() {
+        final List<S7ReadArea> areas = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            areas.add(new S7ReadArea(DaveArea.DB, 1, 1 + i % 3, i * 10));
+        }
+        assertRead(areas);
+        assertEquals(1, this.stub.exchanges());
+        assertEquals(10, (int) this.stub.itemCounts.get(0));
+    }
+
+    @Test
+    void requestsHoldAtMostTwentyVariables() {
+        final List<S7ReadArea> areas = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            areas.add(new S7ReadArea(DaveArea.DB, 1, 1, i * 2));
+        }
+        assertRead(areas);
+        // 20 items of 12 bytes would not fit a 240 byte request either: 12 + 20 * 12 = 252
+        for (final int items : this.stub.itemCounts) {
+            assertTrue(items <= 19);
+        }
+        assertEquals(2, this.stub.exchanges());
+    }
+
+    @Test
+    void responsesStayWithinThePduSize() {
+        final List<S7ReadArea> areas = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            areas.add(new S7ReadArea(DaveArea.DB, 1, 40, i * 50));
+        }
+        assertRead(areas);
+        // 14 + 5 * (4 + 40) = 234, a sixth item would exceed 240
+        assertEquals(Arrays.asList(5, 5), this.stub.itemCounts);
+    }
+
+    @Test
+    void largerPduPacksMoreVariables() {
+        final S7ConnectionStub large = new S7ConnectionStub(960, 0);
+        final S7ConnectionStub.Connector largeConnector = new S7ConnectionStub.Connector(large);
+        final List<S7ReadArea> areas = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            areas.add(new S7ReadArea(DaveArea.DB, 1, 40, i * 50));
+        }
+        large.area(DaveArea.DB, 1);
+        final List<byte[]> result = largeConnector.read(areas);
+        for (int i = 0; i < areas.size(); i++) {
+            final S7ReadArea area = areas.get(i);
+            final byte[] memory = large.area(area.getArea(), area.getAreaNumber());
+            assertArrayEquals(Arrays.copyOfRange(memory, area.getOffset(), area.getOffset() + area.getBytes()), result.get(i));
+        }
+        assertEquals(1, large.exchanges());
+    }
+
+    @Test
+    void largePduStillHoldsAtMostTwentyVariables() {
+        final S7ConnectionStub large = new S7ConnectionStub(960, 0);
+        final S7ConnectionStub.Connector largeConnector = new S7ConnectionStub.Connector(large);
+        final List<S7ReadArea> areas = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            areas.add(new S7ReadArea(DaveArea.DB, 1, 1, i * 2));
+        }
+        large.area(DaveArea.DB, 1);
+        assertEquals(30, largeConnector.read(areas).size());
+        assertEquals(Arrays.asList(20, 10), large.itemCounts);
+    }
+
+    @Test
+    void rangesLargerThanOnePduAreSplit() {
+        final List<S7ReadArea> areas = Arrays.asList(
+                new S7ReadArea(DaveArea.DB, 1, 500, 0),
+                new S7ReadArea(DaveArea.DB, 2, 2, 0));
+        assertRead(areas);
+        // 500 bytes in reads of at most 240 - 14 - 4 = 222 bytes, plus the small range on its own
+        assertEquals(4, this.stub.exchanges());
+    }
+
+    @Test
+    void adjacentRangesAreNotMergedBeyondOnePdu() {
+        final List<S7ReadArea> areas = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            areas.add(new S7ReadArea(DaveArea.DB, 1, 2, i * 2));
+        }
+        assertRead(areas);
+        // 300 contiguous bytes become a 222 byte and a 78 byte variable
+        assertEquals(2, this.stub.exchanges());
+    }
+
+    @Test
+    void failedVariableFailsTheRead() {
+        final List<S7ReadArea> areas = Arrays.asList(
+                new S7ReadArea(DaveArea.DB, 1, 2, 0),
+                new S7ReadArea(DaveArea.DB, 99, 2, 0));
+        this.stub.area(DaveArea.DB, 1);
+        assertThrows(IllegalArgumentException.class, () -> this.connector.read(areas));
+    }
+
+    @Test
+    void singleAreaReadMatchesMemory() {
+        final S7ReadArea area = new S7ReadArea(DaveArea.FLAGS, 0, 8, 16);
+        assertArrayEquals(expected(area), this.connector.read(area.getArea(), area.getAreaNumber(), area.getBytes(), area.getOffset()));
+        assertEquals(1, this.stub.exchanges());
+    }
+}
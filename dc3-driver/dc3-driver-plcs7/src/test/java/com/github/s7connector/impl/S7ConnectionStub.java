@@ -0,0 +1,172 @@
+/*
+Copyright 2016 S7connector members (github.com/s7connector)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.github.s7connector.impl;
+
+import com.github.s7connector.api.DaveArea;
+import com.github.s7connector.impl.nodave.Nodave;
+import com.github.s7connector.impl.nodave.PDU;
+import com.github.s7connector.impl.nodave.S7Connection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-memory S7 protocol stub, answers read requests from simulated PLC memory
+ * <p>
+ * Requests and responses are parsed and built like on the wire, both are checked against
+ * the negotiated PDU size, and every exchange is counted.
+ *
+ * @author pnoker
+ */
+public class S7ConnectionStub extends S7Connection {
+
+    private static final int MEMORY_SIZE = 65536;
+
+    private final Map<Integer, byte[]> memory = new HashMap<>();
+    private final long exchangeNanos;
+
+    /**
+     * Size of each request PDU and the items it holds
+     */
+    public final List<Integer> requestSizes = new ArrayList<>();
+    public final List<Integer> responseSizes = new ArrayList<>();
+    public final List<Integer> itemCounts = new ArrayList<>();
+
+    /**
+     * @param pduSize       the negotiated PDU size
+     * @param exchangeMicros simulated round trip of one exchange
+     */
+    public S7ConnectionStub(final int pduSize, final long exchangeMicros) {
+        super(null);
+        this.maxPDUlength = pduSize;
+        this.exchangeNanos = TimeUnit.MICROSECONDS.toNanos(exchangeMicros);
+    }
+
+    /**
+     * Adds an area to the simulated memory, areas that were not added answer with item not available
+     */
+    public byte[] area(final DaveArea area, final int areaNumber) {
+        return this.memory.computeIfAbsent(key(area.getCode(), areaNumber), k -> {
+            final byte[] bytes = new byte[MEMORY_SIZE];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) (i * 31 + areaNumber * 7 + area.getCode());
+            }
+            return bytes;
+        });
+    }
+
+    public int exchanges() {
+        return this.requestSizes.size();
+    }
+
+    public void reset() {
+        this.requestSizes.clear();
+        this.responseSizes.clear();
+        this.itemCounts.clear();
+    }
+
+    @Override
+    public int exchange(final PDU p1) {
+        final byte[] in = this.msgOut;
+        final int header = this.PDUstartOut;
+        final int plen = Nodave.USBEWord(in, header + 6);
+        final int dlen = Nodave.USBEWord(in, header + 8);
+        final int param = header + 10;
+        if (in[param] != PDU.FUNC_READ) {
+            return Nodave.RESULT_UNEXPECTED_FUNC;
+        }
+        final int requestSize = 10 + plen + dlen;
+        if (requestSize > this.maxPDUlength) {
+            throw new IllegalStateException("Request of " + requestSize + " bytes exceeds the PDU size " + this.maxPDUlength);
+        }
+
+        final int items = in[param + 1] & 0xFF;
+        final byte[] out = this.msgIn;
+        final int data = this.PDUstartIn + 14;
+        int position = data;
+        for (int i = 0; i < items; i++) {
+            final int item = param + 2 + i * 12;
+            final int length = Nodave.USBEWord(in, item + 4);
+            final int areaNumber = Nodave.USBEWord(in, item + 6);
+            final int area = in[item + 8] & 0xFF;
+            final int offset = (((in[item + 9] & 0xFF) << 16) | ((in[item + 10] & 0xFF) << 8) | (in[item + 11] & 0xFF)) >> 3;
+            final byte[] bytes = this.memory.get(key(area, areaNumber));
+            if (bytes == null || offset + length > bytes.length) {
+                out[position] = Nodave.RESULT_ITEM_NOT_AVAILABLE;
+                out[position + 1] = 0;
+                Nodave.setUSBEWord(out, position + 2, 0);
+                position += 4;
+                continue;
+            }
+            out[position] = (byte) 0xFF;
+            out[position + 1] = 4;
+            Nodave.setUSBEWord(out, position + 2, length * 8);
+            System.arraycopy(bytes, offset, out, position + 4, length);
+            position += 4 + length;
+            // every item but the last is padded to an even length
+            if (length % 2 == 1 && i < items - 1) {
+                out[position++] = 0;
+            }
+        }
+
+        final int responseSize = position - this.PDUstartIn;
+        if (responseSize > this.maxPDUlength) {
+            throw new IllegalStateException("Response of " + responseSize + " bytes exceeds the PDU size " + this.maxPDUlength);
+        }
+        out[this.PDUstartIn] = 0x32;
+        out[this.PDUstartIn + 1] = 3;
+        Nodave.setUSBEWord(out, this.PDUstartIn + 6, 2);
+        Nodave.setUSBEWord(out, this.PDUstartIn + 8, position - data);
+        Nodave.setUSBEWord(out, this.PDUstartIn + 10, 0);
+        out[this.PDUstartIn + 12] = PDU.FUNC_READ;
+        out[this.PDUstartIn + 13] = (byte) items;
+
+        this.requestSizes.add(requestSize);
+        this.responseSizes.add(responseSize);
+        this.itemCounts.add(items);
+        if (this.exchangeNanos > 0) {
+            LockSupport.parkNanos(this.exchangeNanos);
+        }
+        return Nodave.RESULT_OK;
+    }
+
+    private static int key(final int area, final int areaNumber) {
+        return (area << 16) | areaNumber;
+    }
+
+    /**
+     * Connector on top of the stub
+     */
+    public static class Connector extends S7BaseConnection {
+
+        public Connector(final S7ConnectionStub connection) {
+            this.init(connection);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+    }
+}
@@ -160,6 +160,10 @@ CREATE TABLE `dc3_point`
     `accrue`      tinyint(4)                                              NULL DEFAULT 0 COMMENT '累计标识',
     `format`      varchar(64) CHARACTER SET utf8 COLLATE utf8_general_ci  NULL DEFAULT '' COMMENT '格式数据，Jave格式 %.3f',
     `unit`        varchar(64) CHARACTER SET utf8 COLLATE utf8_general_ci  NULL DEFAULT '' COMMENT '单位',
+    `deadband_type` varchar(64) CHARACTER SET utf8 COLLATE utf8_general_ci NULL DEFAULT 'none' COMMENT '死区类型：none\absolute\percent\swinging_door',
+    `deadband`    float(255, 6)                                           NULL DEFAULT 0 COMMENT '死区值，percent 时为量程或上次存储值的百分比',
+    `heartbeat`   int(11)                                                 NULL DEFAULT NULL COMMENT '心跳存储间隔，分钟',
+    `deviation`   float(255, 6)                                           NULL DEFAULT NULL COMMENT '旋转门压缩偏差，为空时不压缩',
     `profile_id`  bigint(20)                                              NULL DEFAULT NULL COMMENT '模板ID',
     `description` varchar(380) CHARACTER SET utf8 COLLATE utf8_general_ci NULL DEFAULT '' COMMENT '描述',
     `create_time` datetime(0)                                             NULL DEFAULT CURRENT_TIMESTAMP(0) COMMENT '创建时间',